@@ -0,0 +1,80 @@
+package com.studiohartman.jamepad;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A ControllerManager with a number of connected controllers for the benchmarks.
+ *
+ * With the "sdl" backend the controllers are joysticks of SDL's virtual joystick driver, so the
+ * whole native path is measured without any gamepad or display, e.g. on a headless Linux box. They
+ * pass for DualSense controllers, so trigger effects reach SDL as well. Virtual joysticks have
+ * neither a touchpad nor sensors. With the "memory" backend the controllers are simulated in Java,
+ * including touchpad and sensors, which measures the Java side on its own.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkControllers {
+    @Param({"sdl", "memory"})
+    public String backend;
+
+    @Param({"1", "4", "16", "64"})
+    public int numControllers;
+
+    ControllerManager manager;
+    ControllerIndex[] controllers;
+    MutableControllerState[] states;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Configuration configuration = new Configuration();
+        configuration.maxNumControllers = numControllers;
+        configuration.useSonyControllerFeatures = Configuration.SonyControllerFeature.DUALSENSE_FEATURES;
+
+        VirtualControllerLayout layout = new VirtualControllerLayout();
+        layout.vendorId = ControllerInfo.SONY_VENDOR_ID;
+        layout.productId = ControllerInfo.DUALSENSE_PRODUCT_ID;
+        if("memory".equals(backend)) {
+            configuration.backend = new InMemoryControllerBackend();
+            layout.numTouchpadFingers = 2;
+            layout.hasSensors = true;
+        } else if(!"sdl".equals(backend)) {
+            throw new IllegalArgumentException("Unknown backend " + backend + "!");
+        }
+
+        manager = new ControllerManager(configuration);
+        manager.initSDLGamepad();
+        for(int i = 0; i < numControllers; i++) {
+            layout.name = "Jamepad Benchmark " + i;
+            VirtualController controller = manager.attachVirtualController(layout);
+            controller.setButton(ControllerButton.A, true);
+            controller.setAxis(ControllerAxis.LEFTX, 0.5f);
+            controller.setAxis(ControllerAxis.TRIGGERRIGHT, 0.5f);
+            if(layout.hasSensors) {
+                controller.setTouchpadFinger(0, true, 0.25f, 0.5f, 1);
+                controller.setSensors(1000, 0, 9.81f, 0, 0.1f, 0, 0);
+            }
+        }
+
+        // Picks up the new controllers
+        manager.update();
+        controllers = new ControllerIndex[numControllers];
+        states = new MutableControllerState[numControllers];
+        for(int i = 0; i < numControllers; i++) {
+            controllers[i] = manager.getControllerIndex(i);
+            if(!controllers[i].isConnected()) {
+                throw new IllegalStateException("Controller " + i + " is not connected: " + manager.getLastNativeError());
+            }
+            states[i] = new MutableControllerState();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // Detaches the virtual controllers as well
+        manager.quitSDLGamepad();
+    }
+}
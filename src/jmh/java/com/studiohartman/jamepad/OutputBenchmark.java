@@ -0,0 +1,82 @@
+package com.studiohartman.jamepad;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of sending rumble, trigger effects and mixed haptic feedback to all controllers, as an
+ * application does it every frame while effects are playing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+    // Weapon effect: start zone, end zone and strength
+    private static final byte TRIGGER_EFFECT_WEAPON = 0x25;
+    private final byte[] triggerData = {2, 7, 8};
+
+    /**
+     * A haptics mixer on every controller, with MIXED_VOICES looping voices. The benchmark
+     * controllers have no haptics, so a tick measures the mixing, not the audio device.
+     */
+    @State(Scope.Benchmark)
+    public static class Mixers {
+        static final int MIXED_VOICES = 8;
+        // One tick of 10 ms
+        static final int TICK_FRAMES = HapticsMixer.SAMPLE_RATE / 100;
+
+        HapticsMixer[] mixers;
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkControllers controllers) {
+            // 1 second of a 150 Hz sine on both actuators, shared by all voices
+            short[] samples = new short[HapticsMixer.SAMPLE_RATE * 2];
+            for(int i = 0; i < samples.length; i += 2) {
+                samples[i] = samples[i + 1] = (short) (Math.sin(2 * Math.PI * 150 * (i / 2) / HapticsMixer.SAMPLE_RATE) * 8000);
+            }
+            mixers = new HapticsMixer[controllers.numControllers];
+            for(int i = 0; i < mixers.length; i++) {
+                mixers[i] = controllers.controllers[i].getHapticsMixer();
+                for(int v = 0; v < MIXED_VOICES; v++) {
+                    mixers[i].play(samples, 1f / MIXED_VOICES, true, 0);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void doVibration(BenchmarkControllers controllers, Blackhole blackhole) {
+        for(int i = 0; i < controllers.numControllers; i++) {
+            blackhole.consume(controllers.manager.doVibration(i, 0.5f, 0.25f, 100));
+        }
+    }
+
+    @Benchmark
+    public void sendAdaptiveTriggerEffects(BenchmarkControllers controllers, Blackhole blackhole) {
+        for(int i = 0; i < controllers.numControllers; i++) {
+            blackhole.consume(controllers.manager.sendAdaptiveTriggerEffects(i, TRIGGER_EFFECT_WEAPON, triggerData,
+                    TRIGGER_EFFECT_WEAPON, triggerData));
+        }
+    }
+
+    @Benchmark
+    public void tickHapticsMixer(Mixers mixers, Blackhole blackhole) throws ControllerUnpluggedException {
+        for(HapticsMixer mixer : mixers.mixers) {
+            blackhole.consume(mixer.tick(Mixers.TICK_FRAMES));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.studiohartman.jamepad;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading the controllers. Every benchmark reads all controllers once, so one operation is
+ * one frame of an application, and the scaling with the number of controllers shows directly.
+ * Allocations show up in the gc profiler, which the jmh task enables.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PollingBenchmark {
+    @Benchmark
+    public void getStateImmutable(BenchmarkControllers controllers, Blackhole blackhole) {
+        for(int i = 0; i < controllers.numControllers; i++) {
+            blackhole.consume(controllers.manager.getState(i));
+        }
+    }
+
+    @Benchmark
+    public void getStateMutable(BenchmarkControllers controllers, Blackhole blackhole) {
+        for(int i = 0; i < controllers.numControllers; i++) {
+            blackhole.consume(controllers.manager.getState(i, controllers.states[i]));
+        }
+    }
+
+    @Benchmark
+    public int pollAll(BenchmarkControllers controllers) {
+        return controllers.manager.pollAll(controllers.states);
+    }
+
+    @Benchmark
+    public boolean update(BenchmarkControllers controllers) {
+        return controllers.manager.update();
+    }
+
+    @Benchmark
+    public void isButtonPressed(BenchmarkControllers controllers, Blackhole blackhole) throws ControllerUnpluggedException {
+        for(ControllerIndex controller : controllers.controllers) {
+            blackhole.consume(controller.isButtonPressed(ControllerButton.A));
+        }
+    }
+
+    @Benchmark
+    public void getAxisState(BenchmarkControllers controllers, Blackhole blackhole) throws ControllerUnpluggedException {
+        for(ControllerIndex controller : controllers.controllers) {
+            blackhole.consume(controller.getAxisState(ControllerAxis.LEFTX));
+        }
+    }
+
+    /**
+     * Virtual joysticks of SDL have no sensors, so this only reads sensors with the memory backend.
+     */
+    @Benchmark
+    public void getSensorState(BenchmarkControllers controllers, Blackhole blackhole) throws ControllerUnpluggedException {
+        for(ControllerIndex controller : controllers.controllers) {
+            blackhole.consume(controller.getSensorState());
+        }
+    }
+}
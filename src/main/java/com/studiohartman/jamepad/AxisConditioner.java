@@ -0,0 +1,241 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Turns the raw values of a stick or trigger into the values a game wants: a deadzone around the
+ * center that hides the noise of a worn stick, an outer deadzone so the full range is actually
+ * reachable, an anti-deadzone that skips the deadzone a game applies on its own, and a response
+ * curve.
+ *
+ * Everything is baked into a lookup table with one 16-bit entry for every raw SDL axis value, so
+ * conditioning a value costs one table read, and a square root for the radial deadzones. The
+ * table is only rebuilt when a setting changes.
+ *
+ * Every ControllerIndex has one for each stick and trigger, see ControllerIndex.getConditioner().
+ * By default they don't change the values at all.
+ */
+public final class AxisConditioner {
+    public enum DeadzoneType {
+        /**
+         * No inner deadzone, only the outer deadzone, anti-deadzone and curve are applied
+         */
+        NONE,
+        /**
+         * Each axis is zeroed on its own while it is inside the deadzone. Cheap, but makes it
+         * hard to move a stick along a diagonal close to the center.
+         */
+        AXIAL,
+        /**
+         * The stick is zeroed while its distance from the center is inside the deadzone. Outside
+         * of it the values are passed on as they are, so there is a jump at the edge.
+         */
+        RADIAL,
+        /**
+         * Like RADIAL, but the range outside of the deadzone is stretched to the full range, so
+         * there is no jump at its edge.
+         */
+        SCALED_RADIAL
+    }
+
+    /**
+     * A response curve. It maps the position between the inner and outer deadzone, between 0
+     * and 1, to the output between 0 and 1. Only called while the lookup table is built.
+     */
+    public interface Curve {
+        float apply(float input);
+    }
+
+    /**
+     * The output is the input
+     */
+    public static final Curve LINEAR = new Curve() {
+        @Override
+        public float apply(float input) {
+            return input;
+        }
+    };
+
+    /**
+     * @param exponent greater than 1 for more precision near the center, between 0 and 1 for less
+     * @return a curve that raises the input to the given power
+     */
+    public static Curve exponential(final float exponent) {
+        if(exponent <= 0) {
+            throw new IllegalArgumentException("The exponent must be greater than 0!");
+        }
+        return new Curve() {
+            @Override
+            public float apply(float input) {
+                return (float) Math.pow(input, exponent);
+            }
+        };
+    }
+
+    private static final int MAX_RAW_VALUE = 32767;
+    private static final float RAW_TO_FLOAT = 1f / MAX_RAW_VALUE;
+
+    private DeadzoneType deadzoneType = DeadzoneType.NONE;
+    private float innerDeadzone = 0;
+    private float outerDeadzone = 1;
+    private float antiDeadzone = 0;
+    private Curve curve = LINEAR;
+
+    // The conditioned value for every distance from the center between 0 and 32767. Replaced as a
+    // whole when a setting changes, so the polling thread never sees a half built table.
+    private volatile short[] table;
+
+    AxisConditioner() {
+        rebuildTable();
+    }
+
+    public DeadzoneType getDeadzoneType() {
+        return deadzoneType;
+    }
+
+    /**
+     * Set how the inner deadzone is applied. Triggers only have one axis, so for them the types
+     * only differ in whether the range outside of the deadzone is stretched.
+     */
+    public void setDeadzoneType(DeadzoneType deadzoneType) {
+        if(deadzoneType == null) {
+            throw new IllegalArgumentException("The deadzone type must not be null!");
+        }
+        this.deadzoneType = deadzoneType;
+        rebuildTable();
+    }
+
+    public float getInnerDeadzone() {
+        return innerDeadzone;
+    }
+
+    public float getOuterDeadzone() {
+        return outerDeadzone;
+    }
+
+    /**
+     * Set the deadzones. Values closer to the center than the inner deadzone become 0, values
+     * further out than the outer deadzone become 1.
+     *
+     * @param innerDeadzone the inner deadzone between 0 and 1
+     * @param outerDeadzone the outer deadzone between 0 and 1, greater than the inner deadzone
+     */
+    public void setDeadzones(float innerDeadzone, float outerDeadzone) {
+        if(innerDeadzone < 0 || outerDeadzone > 1 || innerDeadzone >= outerDeadzone) {
+            throw new IllegalArgumentException("The deadzones must be between 0 and 1, and the inner one must be smaller than the outer one!");
+        }
+        this.innerDeadzone = innerDeadzone;
+        this.outerDeadzone = outerDeadzone;
+        rebuildTable();
+    }
+
+    public float getAntiDeadzone() {
+        return antiDeadzone;
+    }
+
+    /**
+     * Set the smallest value that is output as soon as the stick leaves the inner deadzone. Set
+     * this to the deadzone of the game the values are passed to, so it doesn't add its own.
+     *
+     * @param antiDeadzone the anti-deadzone, at least 0 and smaller than 1
+     */
+    public void setAntiDeadzone(float antiDeadzone) {
+        if(antiDeadzone < 0 || antiDeadzone >= 1) {
+            throw new IllegalArgumentException("The anti-deadzone must be at least 0 and smaller than 1!");
+        }
+        this.antiDeadzone = antiDeadzone;
+        rebuildTable();
+    }
+
+    public Curve getCurve() {
+        return curve;
+    }
+
+    /**
+     * Set the response curve, e.g. LINEAR, exponential() or one of your own.
+     */
+    public void setCurve(Curve curve) {
+        if(curve == null) {
+            throw new IllegalArgumentException("The curve must not be null!");
+        }
+        this.curve = curve;
+        rebuildTable();
+    }
+
+    private void rebuildTable() {
+        short[] newTable = new short[MAX_RAW_VALUE + 1];
+        for(int i = 0; i <= MAX_RAW_VALUE; i++) {
+            newTable[i] = (short) Math.round(response(i * RAW_TO_FLOAT) * MAX_RAW_VALUE);
+        }
+        table = newTable;
+    }
+
+    /**
+     * @param input the distance from the center between 0 and 1
+     * @return the conditioned distance from the center between 0 and 1
+     */
+    private float response(float input) {
+        float inner = deadzoneType == DeadzoneType.NONE ? 0 : innerDeadzone;
+        if(input == 0 || input < inner) {
+            return 0;
+        }
+
+        float position;
+        if(input >= outerDeadzone) {
+            position = 1;
+        } else if(deadzoneType == DeadzoneType.RADIAL) {
+            position = input / outerDeadzone;
+        } else {
+            position = (input - inner) / (outerDeadzone - inner);
+        }
+
+        position = Math.max(0, Math.min(1, curve.apply(position)));
+        return antiDeadzone + (1 - antiDeadzone) * position;
+    }
+
+    /**
+     * @return Whether or not both axes of a stick have to be conditioned together
+     */
+    boolean isRadial() {
+        return deadzoneType == DeadzoneType.RADIAL || deadzoneType == DeadzoneType.SCALED_RADIAL;
+    }
+
+    /**
+     * Condition a single axis or trigger on its own.
+     *
+     * @param raw the raw SDL axis value
+     * @return the conditioned value between -1 and 1
+     */
+    float conditionAxis(int raw) {
+        short[] currentTable = table;
+        if(raw >= 0) {
+            return currentTable[Math.min(raw, MAX_RAW_VALUE)] * RAW_TO_FLOAT;
+        }
+        return -currentTable[Math.min(-raw, MAX_RAW_VALUE)] * RAW_TO_FLOAT;
+    }
+
+    /**
+     * Condition both axes of a stick.
+     *
+     * @param rawX the raw SDL value of the x axis
+     * @param rawY the raw SDL value of the y axis
+     * @param out receives the conditioned x and y values
+     * @param offset the position of x in out, y is written right after it
+     */
+    void conditionStick(int rawX, int rawY, float[] out, int offset) {
+        if(!isRadial()) {
+            out[offset] = conditionAxis(rawX);
+            out[offset + 1] = conditionAxis(rawY);
+            return;
+        }
+
+        float distance = (float) Math.sqrt((float) rawX * rawX + (float) rawY * rawY);
+        if(distance == 0) {
+            out[offset] = 0;
+            out[offset + 1] = 0;
+            return;
+        }
+        // The conditioned distance, kept in the original direction
+        float scale = table[Math.min((int) distance, MAX_RAW_VALUE)] * RAW_TO_FLOAT / distance;
+        out[offset] = rawX * scale;
+        out[offset + 1] = rawY * scale;
+    }
+}
@@ -34,6 +34,41 @@ public class Configuration {
      */
     public SonyControllerFeature useSonyControllerFeatures = SonyControllerFeature.NONE;
 
+    /**
+     * The number of events the {@link ControllerEventBuffer} can hold. Set this to something
+     * greater than 0 to record every controller event, see {@link ControllerManager#getEventBuffer()}.
+     */
+    public int eventBufferCapacity = 0;
+
+    /**
+     * The number of sensor readings the {@link SensorSampleBuffer} of every controller can hold.
+     * Set this to something greater than 0 to keep every accelerometer and gyroscope reading, see
+     * {@link ControllerIndex#getSensorSampleBuffer()}. Needs the Sony controller features to be enabled.
+     */
+    public int sensorBufferCapacity = 0;
+
+    /**
+     * The file the gyro bias of every controller is saved to when Jamepad is shut down and read
+     * from when it is initialized, see {@link GyroCalibration}. If this is null, the biases are only
+     * remembered while the ControllerManager is initialized.
+     */
+    public String gyroCalibrationPath = null;
+
+    /**
+     * The maximum latency of haptic feedback in milliseconds. If more haptic feedback is sent than
+     * the controller plays, the audio queued for it is kept below this, and the oldest part of the
+     * audio that doesn't fit is dropped. See {@link ControllerIndex#getHapticsMetrics()}.
+     */
+    public int hapticsLatencyMs = 40;
+
+    /**
+     * The backend the controllers are read through. If this is null, SDL is used through the native
+     * library. Set it to an {@link InMemoryControllerBackend} or a {@link ReplayControllerBackend}
+     * to run on simulated controllers, then the native library is not loaded at all. Other
+     * backends can't be written, see ControllerBackend.
+     */
+    public ControllerBackend backend = null;
+
     public enum SonyControllerFeature {
         /**
          * Do not use any advanced Sony controller features
@@ -0,0 +1,281 @@
+package com.studiohartman.jamepad;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The layer underneath ControllerManager and ControllerIndex that talks to the actual devices:
+ * opening and closing them, taking snapshots of their state, reporting hotplug events, rumble,
+ * trigger effects and haptics. Everything above it, like conditioning, filtering, gyro aiming and
+ * recording, works the same no matter which backend is used.
+ *
+ * By default Jamepad uses SDL through its native library. Set {@link Configuration#backend} to an
+ * {@link InMemoryControllerBackend} or a {@link ReplayControllerBackend} to run the whole input
+ * pipeline on simulated controllers instead, e.g. in tests or load tests on machines without any
+ * gamepads. Those backends don't need the native library at all.
+ *
+ * The class is public so a backend can be chosen in the Configuration, but it can't be extended
+ * outside of Jamepad: its methods and the snapshot layout they fill are internal and change
+ * between versions. Only the bundled backends are supported. To feed other inputs into Jamepad,
+ * drive the SimulatedControllers of an InMemoryControllerBackend.
+ *
+ * Devices are addressed the way SDL does it: a device index while a device isn't opened yet, and
+ * a handle returned by open() afterwards. A handle of 0 means nothing is connected. The methods
+ * are called from one thread: the thread that polls the controllers, or the sampler thread while
+ * a ControllerSampler runs. Calls from other threads are turned away before they reach the
+ * backend.
+ */
+public abstract class ControllerBackend {
+    // Types of the hotplug events written by pumpEvents(), in pairs of type and device index or instance id
+    static final int HOTPLUG_ADDED = 0;
+    static final int HOTPLUG_REMOVED = 1;
+    // Not a hotplug event, but the cached power level of the controller has to be refreshed
+    static final int HOTPLUG_BATTERY = 2;
+
+    ControllerBackend() {
+    }
+
+    /**
+     * Initialize the backend. Devices connected at this point are not reported as hotplug events.
+     *
+     * @return false if the backend can't be used
+     */
+    abstract boolean init(boolean disableRawInput, int sonyControllerFeature);
+
+    /**
+     * Prepare sending haptic feedback to DualSense controllers.
+     *
+     * @return false if haptics are not available, the Sony features fall back to DUALSENSE_FEATURES then
+     */
+    abstract boolean initHaptics();
+
+    /**
+     * Shut the backend down. All devices have been closed before.
+     */
+    abstract void quit();
+
+    abstract boolean setHint(String name, String value);
+
+    abstract boolean addMappingsFromFile(String path);
+
+    abstract boolean addMappingsFromBuffer(byte[] buffer, int length);
+
+    /**
+     * @return The last error message of the backend, for debugging purposes
+     */
+    abstract String getLastError();
+
+    abstract String getCurrentAudioDriverName();
+
+    /**
+     * @return The number of attached devices, including the ones that aren't game controllers
+     */
+    abstract int getNumDevices();
+
+    abstract boolean isGameController(int deviceIndex);
+
+    abstract int getDeviceInstanceID(int deviceIndex);
+
+    /**
+     * Process everything that happened since the last call.
+     *
+     * @param eventRing the ring of the ControllerEventBuffer that receives all controller events, or null
+     * @param eventTail the tail of the ControllerEventBuffer
+     * @param eventCapacity the capacity of the ControllerEventBuffer
+     * @param hotplugEvents receives the hotplug events as pairs of HOTPLUG_ type and device index or instance id
+     * @param maxHotplugEvents the number of events hotplugEvents can hold
+     * @param sensorStaging receives every sensor update, starting with their number and the number that didn't fit, or null
+     * @param sensorStagingCapacity the number of sensor updates sensorStaging can hold
+     * @return the number of hotplug events, -1 if there were more than maxHotplugEvents
+     */
+    abstract int pumpEvents(ByteBuffer eventRing, long eventTail, int eventCapacity,
+                            int[] hotplugEvents, int maxHotplugEvents,
+                            ByteBuffer sensorStaging, int sensorStagingCapacity);
+
+    /**
+     * Pump the events once and take the snapshots of all passed controllers, see
+     * ControllerManager.pollAll(). The arguments are the ones of pumpEvents(), plus:
+     *
+     * @param handles the handles of the controllers, 0 for empty slots
+     * @param pollFlags the POLL_ flags of ControllerIndex for every controller
+     * @param count the number of controllers
+     * @param snapshots buffer with ControllerIndex.SNAPSHOT_SIZE bytes for every controller
+     * @return the number of hotplug events. If a device was added or removed, see
+     * hasDeviceChanges(), no snapshots are taken, since the controllers need to be connected or
+     * closed first.
+     */
+    int pollAll(long[] handles, int[] pollFlags, int count, ByteBuffer snapshots,
+                ByteBuffer eventRing, long eventTail, int eventCapacity,
+                int[] hotplugEvents, int maxHotplugEvents,
+                ByteBuffer sensorStaging, int sensorStagingCapacity) {
+        int numHotplugEvents = pumpEvents(eventRing, eventTail, eventCapacity, hotplugEvents, maxHotplugEvents,
+                sensorStaging, sensorStagingCapacity);
+        if(hasDeviceChanges(hotplugEvents, numHotplugEvents)) {
+            return numHotplugEvents;
+        }
+        for(int i = 0; i < count; i++) {
+            poll(handles[i], snapshots, i * ControllerIndex.SNAPSHOT_SIZE, pollFlags[i]);
+        }
+        return numHotplugEvents;
+    }
+
+    /**
+     * @return Whether or not the hotplug events returned by pumpEvents() include a device that was
+     * added or removed, or were too many to record. Battery updates alone don't count.
+     */
+    static boolean hasDeviceChanges(int[] hotplugEvents, int numHotplugEvents) {
+        if(numHotplugEvents < 0) {
+            return true;
+        }
+        for(int i = 0; i < numHotplugEvents; i++) {
+            if(hotplugEvents[i * 2] != HOTPLUG_BATTERY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The handle of the opened device, 0 if it couldn't be opened
+     */
+    abstract long open(int deviceIndex);
+
+    /**
+     * Close a device, also after it was unplugged.
+     */
+    abstract void close(long handle);
+
+    abstract boolean isAttached(long handle);
+
+    abstract int getInstanceID(long handle);
+
+    /**
+     * Fill the arrays in the layout of the INFO_ constants of ControllerInfo and the sensor data
+     * rates indexed by sensor type.
+     */
+    abstract void getInfo(long handle, int[] info, float[] sensorDataRates);
+
+    abstract void getTouchpadFingers(long handle, int[] fingers, int numTouchpads);
+
+    abstract String getName(long handle);
+
+    abstract String getGUID(long handle);
+
+    abstract String getSerial(long handle);
+
+    abstract int getPowerLevel(long handle);
+
+    abstract int getPlayerIndex(long handle);
+
+    abstract void setPlayerIndex(long handle, int playerIndex);
+
+    /**
+     * @return Whether or not the device has an accelerometer and a gyroscope, which are turned on now
+     */
+    abstract boolean enableSensors(long handle);
+
+    abstract boolean getButton(long handle, int button);
+
+    abstract int getAxis(long handle, int axis);
+
+    /**
+     * Fills down (0 or 1), x, y and pressure.
+     *
+     * @return false if the finger couldn't be read
+     */
+    abstract boolean getTouchpadFinger(long handle, int touchpad, int finger, float[] values);
+
+    /**
+     * Fills accel x, y, z and gyro x, y, z.
+     *
+     * @return The timestamp of the reading in microseconds, -1 if the sensors couldn't be read
+     */
+    abstract long getSensorState(long handle, float[] values);
+
+    /**
+     * Write the current state of a device in the SNAPSHOT_ layout of ControllerIndex. A device
+     * that is not attached is written as not connected.
+     *
+     * @param snapshots the buffer to write to, in native byte order
+     * @param offset the position of the snapshot in the buffer
+     * @param pollFlags which optional parts should be read, the POLL_ flags of ControllerIndex
+     */
+    abstract void poll(long handle, ByteBuffer snapshots, int offset, int pollFlags);
+
+    abstract boolean rumble(long handle, int leftMagnitude, int rightMagnitude, int durationMs);
+
+    abstract boolean sendTriggerEffects(long handle, byte leftTriggerEffect, byte[] triggerDataLeft, int leftTriggerDataSize,
+                                        byte rightTriggerEffect, byte[] triggerDataRight, int rightTriggerDataSize);
+
+    /**
+     * Allocate the haptics context of a newly connected DualSense controller. Every controller has
+     * its own context with its own audio output, so each of them can play haptic feedback.
+     *
+     * @param latencyMs The latency target, see setHapticsLatency()
+     * @return The haptics context, 0 if haptics can't be enabled
+     */
+    abstract long enableHaptics(long handle, int latencyMs);
+
+    /**
+     * Set the maximum amount of haptic feedback queued for the audio device of a context. Audio
+     * that would exceed it is dropped.
+     */
+    abstract void setHapticsLatency(long haptics, int latencyMs);
+
+    /**
+     * Fills the HapticsMetrics.METRIC_ values of a context.
+     */
+    abstract void getHapticsMetrics(long haptics, long[] values);
+
+    /**
+     * Open the audio output haptic feedback of a context is sent to. Called again if it fails the
+     * first time, since the audio device of a controller may show up a while after the controller
+     * itself.
+     */
+    abstract boolean connectHaptics(long haptics);
+
+    /**
+     * @param hapticFeedback audio data in 3 kHz, 2 channel, 16-bit little-endian PCM
+     */
+    abstract boolean sendHapticFeedback(long haptics, byte[] hapticFeedback, int hapticFeedbackSize);
+
+    /**
+     * Like sendHapticFeedback(long, byte[], int), but reads the data straight out of a direct buffer.
+     *
+     * @param offset the position of the data in the buffer
+     * @param size the number of bytes to send
+     */
+    abstract boolean sendHapticFeedback(long haptics, ByteBuffer hapticFeedback, int offset, int size);
+
+    /**
+     * Close the audio output of a context and free it.
+     */
+    abstract void releaseHaptics(long haptics);
+
+    /**
+     * Attach a virtual controller. It is reported by the next pump like a controller that was
+     * plugged in.
+     *
+     * @return A handle to set its inputs through, 0 if it couldn't be attached
+     * @throws IllegalArgumentException if the backend can't emulate the layout
+     */
+    abstract long attachVirtual(VirtualControllerLayout layout);
+
+    /**
+     * Detach a virtual controller. It is reported by the next pump like a controller that was unplugged.
+     */
+    abstract boolean detachVirtual(long virtualHandle);
+
+    abstract int getVirtualInstanceID(long virtualHandle);
+
+    abstract boolean setVirtualButton(long virtualHandle, int button, boolean pressed);
+
+    /**
+     * @param value The raw value like getAxis() returns it, between 0 and 32767 for the triggers
+     */
+    abstract boolean setVirtualAxis(long virtualHandle, int axis, int value);
+
+    abstract boolean setVirtualTouchpadFinger(long virtualHandle, int finger, boolean down, float x, float y, float pressure);
+
+    abstract boolean setVirtualSensors(long virtualHandle, long timestamp, float accelX, float accelY, float accelZ,
+                                       float gyroX, float gyroY, float gyroZ);
+}
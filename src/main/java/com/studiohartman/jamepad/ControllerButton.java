@@ -35,5 +35,15 @@ public enum ControllerButton {
     BUTTON_PADDLE2,  /* Xbox Elite paddle P3 */
     BUTTON_PADDLE3,  /* Xbox Elite paddle P2 */
     BUTTON_PADDLE4,  /* Xbox Elite paddle P4 */
-    BUTTON_TOUCHPAD, /* PS4/PS5 touchpad button */
+    BUTTON_TOUCHPAD; /* PS4/PS5 touchpad button */
+
+    /**
+     * Returns the bit of this button in the button masks of ControllerIndex, MutableControllerState
+     * and ControllerState. Masks of several buttons can be combined with |.
+     *
+     * @return the bit of this button in a button mask
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
 }
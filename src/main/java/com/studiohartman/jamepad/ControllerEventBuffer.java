@@ -0,0 +1,289 @@
+package com.studiohartman.jamepad;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A queue of the controller events SDL reports between two polls. Every button press and release,
+ * axis motion, touchpad and sensor update is recorded together with its timestamp, so even presses
+ * shorter than a frame are not lost.
+ *
+ * The events are written by native code into a preallocated ring of fixed size records while
+ * ControllerManager.update() or ControllerManager.pollAll() pump SDL. Reading them doesn't allocate
+ * anything:
+ *
+ * <pre>
+ * ControllerEventBuffer events = controllers.getEventBuffer();
+ * while(events.next()) {
+ *     if(events.getType() == ControllerEventBuffer.TYPE_BUTTON_DOWN) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * This is a single producer, single consumer queue. It is filled by the thread pumping SDL and
+ * may be read by one other thread without locking. If the consumer doesn't keep up, new events are
+ * dropped and counted, see getDroppedEvents().
+ *
+ * To enable the event buffer, set {@link Configuration#eventBufferCapacity}.
+ */
+public final class ControllerEventBuffer {
+    /**
+     * A button was pressed. getCode() is the ordinal of the {@link ControllerButton}
+     */
+    public static final int TYPE_BUTTON_DOWN = 1;
+
+    /**
+     * A button was released. getCode() is the ordinal of the {@link ControllerButton}
+     */
+    public static final int TYPE_BUTTON_UP = 2;
+
+    /**
+     * An axis moved. getCode() is the ordinal of the {@link ControllerAxis}, getValue() the raw
+     * axis value between -32768 and 32767
+     */
+    public static final int TYPE_AXIS_MOTION = 3;
+
+    /**
+     * A finger touched the touchpad. getCode() is the touchpad, getFinger() the finger
+     */
+    public static final int TYPE_TOUCHPAD_DOWN = 4;
+
+    /**
+     * A finger moved on the touchpad. getCode() is the touchpad, getFinger() the finger
+     */
+    public static final int TYPE_TOUCHPAD_MOTION = 5;
+
+    /**
+     * A finger was lifted from the touchpad. getCode() is the touchpad, getFinger() the finger
+     */
+    public static final int TYPE_TOUCHPAD_UP = 6;
+
+    /**
+     * A sensor was updated. getCode() is the SDL sensor type (1 for the accelerometer, 2 for the
+     * gyroscope), the values can be read with getSensorValue()
+     */
+    public static final int TYPE_SENSOR_UPDATE = 7;
+
+    /**
+     * A joystick was plugged in. getInstanceId() is the device index of the new joystick
+     */
+    public static final int TYPE_DEVICE_ADDED = 8;
+
+    /**
+     * A joystick was unplugged. getInstanceId() is the instance id of the removed joystick
+     */
+    public static final int TYPE_DEVICE_REMOVED = 9;
+
+    // Layout of the ring. Has to match jamepad_pump_events() in the native code of SDLControllerBackend.
+    private static final int RING_HEAD = 0;
+    private static final int RING_DROPPED = 8;
+    private static final int RING_RECORDS = 16;
+    private static final int RECORD_SIZE = 32;
+    private static final int RECORD_HEADER = 0;
+    private static final int RECORD_TIMESTAMP = 8;
+    private static final int RECORD_DATA = 16;
+
+    private final ByteBuffer ring;
+    private final int capacity;
+
+    // head is published by the producer after every pump, tail by the consumer after every read
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // The record read by the last successful call to next()
+    private long header;
+    private long timestamp;
+    private int data0;
+    private int data1;
+    private int data2;
+
+    ControllerEventBuffer(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("The capacity of the event buffer must be greater than 0!");
+        }
+        this.capacity = capacity;
+        ring = ByteBuffer.allocateDirect(RING_RECORDS + capacity * RECORD_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    ByteBuffer getRing() {
+        return ring;
+    }
+
+    /**
+     * @return The position of the consumer, native code may not write past tail + capacity
+     */
+    long getTail() {
+        return tail.get();
+    }
+
+    /**
+     * Write an event into a ring, for backends that don't write it in native code. Works just like
+     * jamepad_push_event() in the native code.
+     *
+     * @return false if the ring is full and the event was dropped
+     */
+    static boolean push(ByteBuffer ring, long tail, int capacity, int type, int instanceId, int code, int finger,
+                        long timestamp, int data0, int data1, int data2) {
+        long currentHead = ring.getLong(RING_HEAD);
+        if(currentHead - tail >= capacity) {
+            ring.putLong(RING_DROPPED, ring.getLong(RING_DROPPED) + 1);
+            return false;
+        }
+
+        int record = RING_RECORDS + (int) (currentHead % capacity) * RECORD_SIZE;
+        ring.putLong(record + RECORD_HEADER, (instanceId & 0xFFFFFFFFL) | ((long) type << 32)
+                | ((long) (code & 0xFF) << 40) | ((long) (finger & 0xFF) << 48));
+        ring.putLong(record + RECORD_TIMESTAMP, timestamp);
+        ring.putInt(record + RECORD_DATA, data0);
+        ring.putInt(record + RECORD_DATA + 4, data1);
+        ring.putInt(record + RECORD_DATA + 8, data2);
+        ring.putInt(record + RECORD_DATA + 12, 0);
+        ring.putLong(RING_HEAD, currentHead + 1);
+        return true;
+    }
+
+    /**
+     * Make the events written by native code visible to the consumer. Must be called by the
+     * producer after every pump.
+     */
+    void publish() {
+        dropped.lazySet(ring.getLong(RING_DROPPED));
+        head.lazySet(ring.getLong(RING_HEAD));
+    }
+
+    /**
+     * @return The maximum number of events the buffer can hold.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of events that can currently be read.
+     */
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    /**
+     * @return The number of events that were dropped because the buffer was full.
+     */
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    /**
+     * Read the next event. Its values can be read with the getters of this class until next() is
+     * called again.
+     *
+     * @return true if an event was read, false if there are no more events
+     */
+    public boolean next() {
+        long currentTail = tail.get();
+        if(currentTail >= head.get()) {
+            return false;
+        }
+
+        int record = RING_RECORDS + (int) (currentTail % capacity) * RECORD_SIZE;
+        header = ring.getLong(record + RECORD_HEADER);
+        timestamp = ring.getLong(record + RECORD_TIMESTAMP);
+        data0 = ring.getInt(record + RECORD_DATA);
+        data1 = ring.getInt(record + RECORD_DATA + 4);
+        data2 = ring.getInt(record + RECORD_DATA + 8);
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Skip all events that are currently in the buffer.
+     */
+    public void clear() {
+        tail.lazySet(head.get());
+    }
+
+    /**
+     * @return The type of the current event, one of the TYPE_ constants
+     */
+    public int getType() {
+        return (int) ((header >>> 32) & 0xFF);
+    }
+
+    /**
+     * @return The SDL instance id of the controller of the current event. Compare this with
+     * ControllerIndex.getDeviceInstanceID().
+     */
+    public int getInstanceId() {
+        return (int) header;
+    }
+
+    /**
+     * @return The button or axis ordinal, the touchpad or the sensor type of the current event
+     */
+    public int getCode() {
+        return (int) ((header >>> 40) & 0xFF);
+    }
+
+    /**
+     * @return The finger of the current touchpad event
+     */
+    public int getFinger() {
+        return (int) ((header >>> 48) & 0xFF);
+    }
+
+    /**
+     * @return The timestamp of the current event in microseconds. For sensor events this is the
+     * timestamp of the sensor reading if the hardware provides one, otherwise it is the time SDL
+     * received the event.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return 1 or 0 for button events, the raw axis value for axis events
+     */
+    public int getValue() {
+        return data0;
+    }
+
+    /**
+     * @return The x position of the finger of the current touchpad event, between 0 and 1
+     */
+    public float getTouchX() {
+        return Float.intBitsToFloat(data0);
+    }
+
+    /**
+     * @return The y position of the finger of the current touchpad event, between 0 and 1
+     */
+    public float getTouchY() {
+        return Float.intBitsToFloat(data1);
+    }
+
+    /**
+     * @return The pressure of the finger of the current touchpad event, between 0 and 1
+     */
+    public float getTouchPressure() {
+        return Float.intBitsToFloat(data2);
+    }
+
+    /**
+     * @param axis 0 for x, 1 for y and 2 for z
+     * @return The value of the current sensor event for the given axis
+     */
+    public float getSensorValue(int axis) {
+        switch(axis) {
+            case 0:
+                return Float.intBitsToFloat(data0);
+            case 1:
+                return Float.intBitsToFloat(data1);
+            case 2:
+                return Float.intBitsToFloat(data2);
+            default:
+                throw new IllegalArgumentException("The sensor axis must be 0, 1 or 2!");
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.studiohartman.jamepad;
 
-import com.badlogic.gdx.utils.SharedLibraryLoader;
-
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class is the main thing you're gonna need to deal with if you want lots of
@@ -14,24 +17,69 @@ import java.util.*;
  * A ControllerIndex represents the controller at a given index. There may or may not actually
  * be a controller at that index. Exceptions are thrown if the controller is not connected.
  *
+ * Use it from the thread that polls the controllers. While a ControllerSampler runs, that is the
+ * sampler thread, and calls from other threads throw an IllegalStateException; pass them to
+ * ControllerSampler.execute() instead.
+ *
  * @author William Hartman
  */
 public final class ControllerIndex {
-    /*JNI
-    #include "SDL.h"
-    */
-
-    private static final boolean IS_WINDOWS = System.getProperty("os.name", "").toLowerCase().contains("win");
-
-    private static final boolean IS_MAC = System.getProperty("os.name", "").toLowerCase().contains("mac")
-            || System.getProperty("os.name", "").toLowerCase().contains("darwin");
-
     private static final float AXIS_MAX_VAL = 32767;
-    private final int index;
-    private long controllerPtr;
+    // Triggers pressed less than this count as released for the drift estimation
+    private static final int IDLE_TRIGGER_VALUE = 1600;
+
+    // Layout of the snapshot written by ControllerBackend.poll(). Has to match JamepadSnapshot_t in
+    // the native code of SDLControllerBackend.
+    static final int SNAPSHOT_CONNECTED = 0;
+    static final int SNAPSHOT_BUTTONS = 4;
+    static final int SNAPSHOT_AXES = 8;
+    static final int SNAPSHOT_NUM_TOUCH_POINTS = 20;
+    static final int SNAPSHOT_SENSOR_TIMESTAMP = 24;
+    static final int SNAPSHOT_SENSOR_VALID = 32;
+    static final int SNAPSHOT_ACCEL = 36;
+    static final int SNAPSHOT_GYRO = 48;
+    static final int SNAPSHOT_TOUCH = 64;
+    static final int SNAPSHOT_MAX_TOUCH_POINTS = 8;
+    static final int TOUCH_POINT_SIZE = 16;
+    static final int TOUCH_POINT_VALID = 0;
+    static final int TOUCH_POINT_DOWN = 1;
+    static final int TOUCH_POINT_X = 4;
+    static final int TOUCH_POINT_Y = 8;
+    static final int TOUCH_POINT_PRESSURE = 12;
+    static final int SNAPSHOT_SIZE = SNAPSHOT_TOUCH + SNAPSHOT_MAX_TOUCH_POINTS * TOUCH_POINT_SIZE;
+
+    // Flags telling ControllerBackend.poll() which optional parts of a snapshot should be read
+    static final int POLL_TOUCHPAD = 1;
+    static final int POLL_SENSORS = 2;
+
+    // hapticsReady() of controllers without haptics
+    private static final HapticsDiscovery NO_HAPTICS = new HapticsDiscovery(null, 0, null, null);
 
-    private final boolean[] heldDownButtons;
-    private final boolean[] justPressedButtons;
+    private final int index;
+    private final ControllerBackend backend;
+    private final PollingThread pollingThread;
+    // The handle of the backend for the connected controller, 0 if nothing is connected. Volatile,
+    // like hapticsDiscovery, so a thread that takes over the controllers, e.g. a ControllerSampler
+    // that is started, sees the controller as the previous thread left it.
+    private volatile long handle;
+    private ControllerInfo info;
+    private int instanceID = -1;
+    // Connects the haptics context of the controller when the scheduler says so, null if it has none
+    private volatile HapticsDiscovery hapticsDiscovery;
+    private final ScheduledExecutorService hapticsScheduler;
+    private final AtomicBoolean hapticsScanRequested;
+    private int hapticsLatencyMs;
+    private final HapticsMetrics hapticsMetrics = new HapticsMetrics();
+    private HapticsMixer hapticsMixer;
+
+    // Bit n is set for the button with ordinal n. Used by isButtonPressed() and isButtonJustPressed()
+    private int heldDownButtons;
+    private int justPressedButtons;
+
+    // Button masks of the last poll(), see ControllerButton.mask()
+    private int buttonMask;
+    private int justPressedMask;
+    private int justReleasedMask;
 
     private final Configuration.SonyControllerFeature sonyControllerFeature;
 
@@ -39,13 +87,44 @@ public final class ControllerIndex {
 
     private boolean supportsSensors = false;
 
-    private boolean supportsHaptic = false;
-
     private boolean needToClearTriggerEffect = false;
 
     private final SensorState sensorState = new SensorState();
-
-    private final Map<Integer, TouchState> touchStates = new HashMap<>();
+    private final float[] sensorValues = new float[6];
+    private final SensorSampleBuffer sensorSamples;
+    private final SensorFusion sensorFusion = new SensorFusion();
+    private final GyroAim gyroAim = new GyroAim(sensorFusion);
+    private final GyroCalibration gyroCalibration = new GyroCalibration();
+    private final GyroCalibrationStore gyroCalibrationStore;
+    // Length of the latest accelerometer reading from the sample buffer, for the gyro calibration
+    private float sampleAccelMagnitude;
+
+    // Touch data of the last poll(), one element for every finger of every touchpad. The fingers of
+    // touchpad t start at touchpadOffsets[t]. The arrays are sized when a controller is connected.
+    private int[] touchpadOffsets = new int[1];
+    private boolean[] touchDown = new boolean[0];
+    private float[] touchX = new float[0];
+    private float[] touchY = new float[0];
+    private float[] touchPressure = new float[0];
+    private TouchState[] touchStates = new TouchState[0];
+    private final TouchState noTouchState = new TouchState();
+    private final float[] touchValues = new float[4];
+
+    private final ByteBuffer snapshot;
+
+    // Conditioning of the sticks and triggers, and the conditioned axes of the last poll()
+    private final AxisConditioner leftStickConditioner = new AxisConditioner();
+    private final AxisConditioner rightStickConditioner = new AxisConditioner();
+    private final AxisConditioner leftTriggerConditioner = new AxisConditioner();
+    private final AxisConditioner rightTriggerConditioner = new AxisConditioner();
+    private final float[] polledAxes = new float[ControllerAxis.values().length];
+    private final float[] conditionedStick = new float[2];
+    private final StickDriftEstimator leftStickDrift = new StickDriftEstimator();
+    private final StickDriftEstimator rightStickDrift = new StickDriftEstimator();
+
+    // Smoothing of the polled axes, and of accel x, y, z and gyro x, y, z of the sensor state
+    private final SmoothingFilter[] axisFilters = new SmoothingFilter[ControllerAxis.values().length];
+    private final SmoothingFilter[] sensorFilters = new SmoothingFilter[6];
 
     /**
      * Constructor. Builds a controller at the given index and attempts to connect to it.
@@ -53,186 +132,180 @@ public final class ControllerIndex {
      * before the native library is loaded or initialized.
      *
      * @param index The index of the controller
+     * @param backend The backend the controller is read through
+     * @param pollingThread The thread that may use the backend
      * @param sonyControllerFeature The indication for the controller if it should use Sony controller
      *                                  features like motion data and touchpad
+     * @param snapshot The direct buffer of SNAPSHOT_SIZE bytes that poll() writes to, see sliceSnapshot()
+     * @param sensorSamples The buffer that receives every sensor reading, or null if they are not recorded
+     * @param gyroCalibrationStore Where the gyro bias of a controller is kept while it is unplugged
+     * @param hapticsScheduler The thread timing the search for the audio devices of DualSense controllers, null without haptics
+     * @param hapticsScanRequested Set by the scheduler when connectPendingHaptics() should be called
+     * @param hapticsLatencyMs The latency target of haptic feedback, see setHapticsLatency()
      */
-    ControllerIndex(int index, Configuration.SonyControllerFeature sonyControllerFeature) {
+    ControllerIndex(int index, ControllerBackend backend, PollingThread pollingThread, Configuration.SonyControllerFeature sonyControllerFeature,
+                    ByteBuffer snapshot, SensorSampleBuffer sensorSamples, GyroCalibrationStore gyroCalibrationStore,
+                    ScheduledExecutorService hapticsScheduler, AtomicBoolean hapticsScanRequested, int hapticsLatencyMs) {
         this.index = index;
+        this.backend = backend;
+        this.pollingThread = pollingThread;
         this.sonyControllerFeature = sonyControllerFeature;
-
-        heldDownButtons = new boolean[ControllerButton.values().length];
-        justPressedButtons = new boolean[ControllerButton.values().length];
-        for(int i = 0; i < heldDownButtons.length; i++) {
-            heldDownButtons[i] = false;
-            justPressedButtons[i] = false;
+        this.snapshot = snapshot;
+        this.sensorSamples = sensorSamples;
+        this.gyroCalibrationStore = gyroCalibrationStore;
+        this.hapticsScheduler = hapticsScheduler;
+        this.hapticsScanRequested = hapticsScanRequested;
+        this.hapticsLatencyMs = hapticsLatencyMs;
+        for(int i = 0; i < axisFilters.length; i++) {
+            axisFilters[i] = new SmoothingFilter();
         }
-        connectController();
+        for(int i = 0; i < sensorFilters.length; i++) {
+            sensorFilters[i] = new SmoothingFilter();
+        }
+
+        connectController(index);
     }
 
-    private void connectController() {
-        controllerPtr = nativeConnectController(index);
+    private void connectController(int deviceIndex) {
+        handle = backend.open(deviceIndex);
+        info = null;
+        instanceID = -1;
+        if(handle == 0) {
+            return;
+        }
+        instanceID = backend.getInstanceID(handle);
+        info = readInfo();
+        allocateTouchPoints();
+        sensorFusion.reset();
+        gyroAim.reset();
+        resetFilters();
+        leftStickDrift.reset();
+        rightStickDrift.reset();
+        gyroCalibration.reset();
+        float[] bias = gyroCalibrationStore.get(GyroCalibrationStore.getKey(info));
+        if(bias != null) {
+            gyroCalibration.setBias(bias[0], bias[1], bias[2]);
+        }
+
         if(!Objects.equals(Configuration.SonyControllerFeature.NONE, sonyControllerFeature)) {
-            supportsTouchpad = nativeIsTouchpadSupported(controllerPtr);
-            supportsSensors = nativeEnableSensors(controllerPtr);
+            supportsTouchpad = info.getNumTouchpads() > 0;
+            supportsSensors = backend.enableSensors(handle);
         }
-        if(nativeIsDualSenseController(controllerPtr) &&
+        if(info.isDualSense() &&
                 Objects.equals(Configuration.SonyControllerFeature.DUALSENSE_FEATURES_AND_HAPTICS, sonyControllerFeature)){
-            boolean result = nativeEnableHaptics();
-            if(result) {
-                connectHaptics(1_000, 0);
-            } else {
+            long haptics = backend.enableHaptics(handle, hapticsLatencyMs);
+            if(haptics == 0) {
                 System.out.println("Enable haptics for DualSense did not work. Error: " + getLastNativeError());
             }
+            hapticsDiscovery = new HapticsDiscovery(backend, haptics, hapticsScheduler, hapticsScanRequested);
+            hapticsDiscovery.start();
         }
     }
 
-    private void connectHaptics(final int timeout, final int count) {
-        final Timer timer = new Timer();
-        timer.schedule(
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        if(!isConnected()){
-                            return;
-                        }
-                        supportsHaptic = nativeConnectHaptics(IS_WINDOWS || IS_MAC);
-                        if(!supportsHaptic){
-                            if(count == 0) {
-                                connectHaptics(10_000, count + 1); // try again one more time after timeout
-                            } else {
-                                System.out.println("Connect haptics for DualSense did not working. Error: " + getLastNativeError());
-                            }
-                        }
-                        timer.cancel();
-                    }
-                }, timeout);
-    }
-
     /**
      * @return last error message logged by the native lib. Use this for debugging purposes.
      */
-    public native String getLastNativeError(); /*
-        return env->NewStringUTF(SDL_GetError());
-    */
-
-    private native long nativeConnectController(int index); /*
-        return (jlong) SDL_GameControllerOpen(index);
-    */
-
-    private native boolean nativeIsTouchpadSupported(long controllerPtr); /*{
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return SDL_GameControllerGetNumTouchpads(pad) > 0 ? JNI_TRUE : JNI_FALSE;
-    }*/
-
-    private native boolean nativeEnableSensors(long controllerPtr); /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        if(SDL_GameControllerHasSensor(pad, SDL_SENSOR_ACCEL) && SDL_GameControllerHasSensor(pad, SDL_SENSOR_GYRO)) {
-            SDL_GameControllerSetSensorEnabled(pad, SDL_SENSOR_ACCEL, SDL_TRUE);
-		    SDL_GameControllerSetSensorEnabled(pad, SDL_SENSOR_GYRO, SDL_TRUE);
-
-		    return JNI_TRUE;
-        }
-        return JNI_FALSE;
-    */
-
-    /*JNI
-    uint8_t *haptics_resampler_buf = NULL;
-     */
-
-    /*JNI
-    #include <stdio.h>
-    */
-
-    private native boolean nativeEnableHaptics(); /*
-        SDL_AudioCVT cvt;
-	    int result = SDL_BuildAudioCVT(&cvt, AUDIO_S16LSB, 4, 3000, AUDIO_S16LSB, 4, 48000);
-	    if(result < 0) {
-	        return JNI_FALSE;
-	    }
-	    cvt.len = 240;  // 10 16bit stereo samples
-	    haptics_resampler_buf = (uint8_t*) SDL_calloc(cvt.len * cvt.len_mult, sizeof(uint8_t));
-	    return JNI_TRUE;
-    */
-
-    /*JNI
-    SDL_AudioDeviceID haptics_output = 0;
-     */
-
-    /*JNI
-    #include <string.h>
-    */
-
-    private native boolean nativeConnectHaptics(boolean isWindowsOrMac); /*
-        if(haptics_output != 0) {
-            return JNI_TRUE; // already initialized
-        }
-
-        SDL_AudioSpec want, have;
-	    SDL_zero(want);
-	    want.freq = 48000;
-	    want.format = AUDIO_S16LSB;
-	    want.channels = 4;
-	    want.samples = 480; // 10ms buffer
-	    want.callback = NULL;
-
-	    for (int i=0; i < SDL_GetNumAudioDevices(0); i++)
-	    {
-	        const char* device_name = SDL_GetAudioDeviceName(i, 0);
-	        if(isWindowsOrMac) {
-	            if (device_name == NULL || !strstr(device_name, "Wireless Controller")) {
-	                continue;
-	            }
-	        } else {
-	            if (device_name == NULL || !strstr(device_name, "DualSense")) {
-	                continue;
-	            }
-	        }
-	        haptics_output = SDL_OpenAudioDevice(device_name, 0, &want, &have, 0);
-	        if (haptics_output == 0) {
-	            continue;
-	        }
-	        SDL_PauseAudioDevice(haptics_output, 0);
-	        return JNI_TRUE;
-	    }
-
-	    return JNI_FALSE;
-    */
+    public String getLastNativeError() {
+        return backend.getLastError();
+    }
+
+    private ControllerInfo readInfo() {
+        int[] values = new int[ControllerInfo.INFO_SIZE];
+        float[] sensorDataRates = new float[ControllerInfo.NUM_SENSOR_TYPES];
+        backend.getInfo(handle, values, sensorDataRates);
+        int[] touchpadFingers = new int[Math.max(values[ControllerInfo.INFO_NUM_TOUCHPADS], 0)];
+        backend.getTouchpadFingers(handle, touchpadFingers, touchpadFingers.length);
+        return new ControllerInfo(backend.getName(handle), backend.getGUID(handle), backend.getSerial(handle),
+                values, touchpadFingers, sensorDataRates);
+    }
 
     /**
-     * Close the connection to this controller.
+     * Size the touch arrays for the touchpads of the connected controller. The arrays are only
+     * replaced if the number of touch points changes.
      */
-    public void close() {
-        if(controllerPtr != 0) {
-            if(needToClearTriggerEffect){
-                // clear trigger effects
-                nativeSendAdaptiveTriggerEffects(controllerPtr, (byte) 0x05, new byte[10], 10, (byte) 0x05, new byte[10], 10);
+    private void allocateTouchPoints() {
+        int numTouchpads = info.getNumTouchpads();
+        if(touchpadOffsets.length != numTouchpads + 1) {
+            touchpadOffsets = new int[numTouchpads + 1];
+        }
+        int numTouchPoints = 0;
+        for(int touchpad = 0; touchpad < numTouchpads; touchpad++) {
+            touchpadOffsets[touchpad] = numTouchPoints;
+            // The snapshot has room for SNAPSHOT_MAX_TOUCH_POINTS fingers, the ones past that are ignored
+            numTouchPoints = Math.min(numTouchPoints + info.getNumTouchpadFingers(touchpad), SNAPSHOT_MAX_TOUCH_POINTS);
+        }
+        touchpadOffsets[numTouchpads] = numTouchPoints;
+
+        if(touchStates.length != numTouchPoints) {
+            touchDown = new boolean[numTouchPoints];
+            touchX = new float[numTouchPoints];
+            touchY = new float[numTouchPoints];
+            touchPressure = new float[numTouchPoints];
+            touchStates = new TouchState[numTouchPoints];
+            for(int i = 0; i < numTouchPoints; i++) {
+                touchStates[i] = new TouchState();
             }
-            nativeClose(controllerPtr);
-            controllerPtr = 0;
         }
-        touchStates.clear();
     }
 
-    /*JNI
-    #include <cstdlib>
+    /**
+     * @return The position of the finger in the touch arrays, -1 if there is no such touchpad or finger
+     */
+    private int getTouchPoint(int touchpad, int finger) {
+        if(touchpad < 0 || touchpad >= touchpadOffsets.length - 1 || finger < 0) {
+            return -1;
+        }
+        int touchPoint = touchpadOffsets[touchpad] + finger;
+        return touchPoint < touchpadOffsets[touchpad + 1] ? touchPoint : -1;
+    }
+
+    /**
+     * Read the power level again after SDL reported a battery change.
      */
+    void refreshPowerLevel() {
+        if(info != null) {
+            info.setPowerLevel(ControllerPowerLevel.valueOf(backend.getPowerLevel(handle)));
+        }
+    }
 
-    private native void nativeClose(long controllerPtr); /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        if(pad && SDL_GameControllerGetAttached(pad)) {
-            SDL_GameControllerClose(pad);
+    /**
+     * Close the connection to this controller.
+     */
+    public void close() {
+        pollingThread.verify();
+        if(info != null) {
+            gyroCalibration.saveTo(gyroCalibrationStore, GyroCalibrationStore.getKey(info));
+        }
+        if(handle != 0) {
+            if(needToClearTriggerEffect){
+                // clear trigger effects
+                backend.sendTriggerEffects(handle, (byte) 0x05, new byte[10], 10, (byte) 0x05, new byte[10], 10);
+            }
+            if(hapticsDiscovery != null) {
+                hapticsDiscovery.stop();
+                if(hapticsDiscovery.getHaptics() != 0) {
+                    backend.releaseHaptics(hapticsDiscovery.getHaptics());
+                }
+                hapticsDiscovery = null;
+            }
+            backend.close(handle);
+            handle = 0;
         }
-        pad = NULL;
-        if(haptics_resampler_buf != NULL) {
-            free(haptics_resampler_buf);
-            haptics_resampler_buf = NULL;
+        info = null;
+        instanceID = -1;
+        heldDownButtons = 0;
+        justPressedButtons = 0;
+        buttonMask = 0;
+        justPressedMask = 0;
+        justReleasedMask = 0;
+        for(int i = 0; i < touchStates.length; i++) {
+            touchDown[i] = false;
+            touchX[i] = 0;
+            touchY[i] = 0;
+            touchPressure[i] = 0;
+            touchStates[i].update(false, 0, 0, 0);
         }
-        if (haptics_output > 0)
-        {
-            SDL_CloseAudioDevice(haptics_output);
-		    haptics_output = 0;
-		}
-    */
+    }
 
     boolean isUsingSonyControllerFeatures() {
         return !Objects.equals(Configuration.SonyControllerFeature.NONE, sonyControllerFeature);
@@ -246,7 +319,32 @@ public final class ControllerIndex {
         return supportsSensors;
     }
 
-    public boolean isSupportingHaptics() { return supportsHaptic; }
+    /**
+     * Try to connect the audio device for haptic feedback, if the scheduler says it's time to.
+     */
+    void connectPendingHaptics() {
+        if(hapticsDiscovery != null) {
+            hapticsDiscovery.connectIfDue();
+        }
+    }
+
+    public boolean isSupportingHaptics() { return hapticsDiscovery != null && hapticsDiscovery.isConnected(); }
+
+    /**
+     * The audio device haptic feedback is played on shows up a while after the controller itself,
+     * so it is looked for again every few seconds after the controller was connected. The search
+     * runs as part of the update(), getState() or pollAll() calls of the ControllerManager, so the
+     * future only completes while they are called. It completes once the device is found: with true if haptic feedback can be sent from then on, with false
+     * if there is no audio device for the controller or the controller was closed before.
+     *
+     * Haptics need {@link Configuration.SonyControllerFeature#DUALSENSE_FEATURES_AND_HAPTICS}. If
+     * they are not enabled or the controller is not a DualSense, the future is completed with false.
+     *
+     * @return A future for whether or not haptic feedback is available for the connected controller
+     */
+    public Future<Boolean> hapticsReady() {
+        return hapticsDiscovery != null ? hapticsDiscovery : NO_HAPTICS;
+    }
 
     /**
      * Get the current sony configuration feature of this controller.
@@ -258,19 +356,45 @@ public final class ControllerIndex {
     }
 
     /**
-     * Close and reconnect to the native gamepad at the index associated with this ControllerIndex object.
-     * This will refresh the gamepad represented here. This should be called if something is plugged
-     * in or unplugged.
+     * Close and reconnect to the gamepad connected to this ControllerIndex object. This will
+     * refresh the gamepad represented here.
+     *
+     * The gamepad is looked up by its instance ID, so this never picks up a gamepad that belongs
+     * to another ControllerIndex. If the gamepad is gone, this index stays free, and the next
+     * update(), getState() or pollAll() of the ControllerManager connects whatever is plugged in
+     * next to the first free index.
      *
      * @return whether or not the controller could successfully reconnect.
      */
     public boolean reconnectController() {
+        pollingThread.verify();
+        int previousInstanceID = handle != 0 ? instanceID : -1;
         close();
-        connectController();
+        if(previousInstanceID < 0) {
+            return false;
+        }
+
+        int numDevices = backend.getNumDevices();
+        for(int deviceIndex = 0; deviceIndex < numDevices; deviceIndex++) {
+            if(backend.getDeviceInstanceID(deviceIndex) == previousInstanceID && backend.isGameController(deviceIndex)) {
+                connectController(deviceIndex);
+                break;
+            }
+        }
 
         return isConnected();
     }
 
+    /**
+     * Close this controller and connect it to the device with the given SDL device index instead.
+     *
+     * @param deviceIndex the SDL device index of the new controller
+     */
+    void connectDevice(int deviceIndex) {
+        close();
+        connectController(deviceIndex);
+    }
+
     /**
      * Return whether or not the controller is currently connected. This first checks that the controller
      * was successfully connected to our SDL backend. Then we check if the controller is currently plugged
@@ -279,15 +403,9 @@ public final class ControllerIndex {
      * @return Whether or not the controller is plugged in.
      */
     public boolean isConnected() {
-        return controllerPtr != 0 && nativeIsConnected(controllerPtr);
+        pollingThread.verify();
+        return handle != 0 && backend.isAttached(handle);
     }
-    private native boolean nativeIsConnected(long controllerPtr); /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        if (pad && SDL_GameControllerGetAttached(pad)) {
-            return JNI_TRUE;
-        }
-        return JNI_FALSE;
-    */
 
     /**
      * Returns the index of the current controller.
@@ -303,19 +421,9 @@ public final class ControllerIndex {
      */
     public boolean canVibrate() throws ControllerUnpluggedException {
         ensureConnected();
-        return nativeCanVibrate(controllerPtr);
+        return info.hasRumble();
     }
 
-    private native boolean nativeCanVibrate(long controllerPtr); /*
-        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
-        return SDL_JoystickHasRumble(joystick);
-    */
-
-    private native boolean nativeDoVibration(long controllerPtr, int leftMagnitude, int rightMagnitude, int duration_ms); /*
-        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
-        return SDL_JoystickRumble(joystick, leftMagnitude, rightMagnitude,  duration_ms) == 0;
-    */
-
     /**
      * Vibrate the controller using the new rumble API
      * Each call to this function cancels any previous rumble effect, and calling it with 0 intensity stops any rumbling.
@@ -339,19 +447,22 @@ public final class ControllerIndex {
             throw new IllegalArgumentException("The passed values are not in the range 0 to 1!");
         }
 
-        return nativeDoVibration(controllerPtr, (int) (65535 * leftMagnitude), (int) (65535 * rightMagnitude), duration_ms);
+        return backend.rumble(handle, (int) (65535 * leftMagnitude), (int) (65535 * rightMagnitude), duration_ms);
     }
 
     /**
      * Returns whether or not a given button has been pressed.
      *
+     * This queries the controller directly. If you check a lot of buttons every frame, poll() once
+     * and use isPolledButtonPressed() or getButtonMask() instead.
+     *
      * @param toCheck The ControllerButton to check the state of
      * @return Whether or not the button is pressed.
      * @throws ControllerUnpluggedException If the controller is not connected
      */
     public boolean isButtonPressed(ControllerButton toCheck) throws ControllerUnpluggedException {
         updateButton(toCheck.ordinal());
-        return heldDownButtons[toCheck.ordinal()];
+        return (heldDownButtons & toCheck.mask()) != 0;
     }
 
     /**
@@ -360,29 +471,27 @@ public final class ControllerIndex {
      * side of things). If the button was not pressed the last time you checked but is now, this method
      * will return true.
      *
+     * Asking twice for the same button gives different answers. If you need a stable answer for a
+     * whole frame, poll() once and use isPolledButtonJustPressed() instead.
+     *
      * @param toCheck The ControllerButton to check the state of
      * @return Whether or not the button has just been pressed.
      * @throws ControllerUnpluggedException If the controller is not connected
      */
     public boolean isButtonJustPressed(ControllerButton toCheck) throws ControllerUnpluggedException {
         updateButton(toCheck.ordinal());
-        return justPressedButtons[toCheck.ordinal()];
+        return (justPressedButtons & toCheck.mask()) != 0;
     }
 
     private void updateButton(int buttonIndex) throws ControllerUnpluggedException {
         ensureConnected();
 
-        boolean currButtonIsPressed = nativeCheckButton(controllerPtr, buttonIndex);
-        justPressedButtons[buttonIndex] = (currButtonIsPressed && !heldDownButtons[buttonIndex]);
-        heldDownButtons[buttonIndex] = currButtonIsPressed;
+        int buttonBit = 1 << buttonIndex;
+        int currButtonIsPressed = backend.getButton(handle, buttonIndex) ? buttonBit : 0;
+        justPressedButtons = (justPressedButtons & ~buttonBit) | (currButtonIsPressed & ~heldDownButtons);
+        heldDownButtons = (heldDownButtons & ~buttonBit) | currButtonIsPressed;
     }
 
-    private native boolean nativeCheckButton(long controllerPtr, int buttonIndex); /*
-        SDL_GameControllerUpdate();
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return SDL_GameControllerGetButton(pad, (SDL_GameControllerButton) buttonIndex);
-    */
-
     /**
      * Returns if a given button is available on controller.
      *
@@ -391,14 +500,9 @@ public final class ControllerIndex {
      */
     public boolean isButtonAvailable(ControllerButton toCheck) throws ControllerUnpluggedException {
         ensureConnected();
-        return nativeButtonAvailable(controllerPtr, toCheck.ordinal());
+        return info.hasButton(toCheck);
     }
 
-    private native boolean nativeButtonAvailable(long controllerPtr, int buttonIndex); /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return SDL_GameControllerHasButton(pad, (SDL_GameControllerButton) buttonIndex);
-    */
-
     /**
      * Returns the current state of a passed axis.
      *
@@ -409,14 +513,41 @@ public final class ControllerIndex {
     public float getAxisState(ControllerAxis toCheck) throws ControllerUnpluggedException {
         ensureConnected();
 
-        return nativeCheckAxis(controllerPtr, toCheck.ordinal()) / AXIS_MAX_VAL;
+        AxisConditioner conditioner = getConditioner(toCheck);
+        int raw = backend.getAxis(handle, toCheck.ordinal());
+        if(!conditioner.isRadial() || toCheck == ControllerAxis.TRIGGERLEFT || toCheck == ControllerAxis.TRIGGERRIGHT) {
+            return conditioner.conditionAxis(raw);
+        }
+
+        // A radial deadzone needs the other axis of the stick as well. X and Y of a stick only differ in the lowest bit.
+        int otherRaw = backend.getAxis(handle, toCheck.ordinal() ^ 1);
+        boolean isX = (toCheck.ordinal() & 1) == 0;
+        conditioner.conditionStick(isX ? raw : otherRaw, isX ? otherRaw : raw, conditionedStick, 0);
+        return isX ? conditionedStick[0] : conditionedStick[1];
     }
 
-    private native int nativeCheckAxis(long controllerPtr, int axisIndex); /*
-        SDL_GameControllerUpdate();
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return SDL_GameControllerGetAxis(pad, (SDL_GameControllerAxis) axisIndex);
-    */
+    /**
+     * Returns the conditioning of a stick or trigger: its deadzones and response curve. Both axes
+     * of a stick share the same AxisConditioner. It is applied to the values of getAxisState(),
+     * poll() and everything built on them, like ControllerManager.getState().
+     *
+     * @param axis Any axis of the stick, or the trigger
+     * @return The AxisConditioner of the stick or trigger
+     */
+    public AxisConditioner getConditioner(ControllerAxis axis) {
+        switch(axis) {
+            case LEFTX:
+            case LEFTY:
+                return leftStickConditioner;
+            case RIGHTX:
+            case RIGHTY:
+                return rightStickConditioner;
+            case TRIGGERLEFT:
+                return leftTriggerConditioner;
+            default:
+                return rightTriggerConditioner;
+        }
+    }
 
     /**
      * Returns if passed axis is available on controller.
@@ -426,14 +557,9 @@ public final class ControllerIndex {
      */
     public boolean isAxisAvailable(ControllerAxis toCheck) throws ControllerUnpluggedException {
         ensureConnected();
-        return nativeAxisAvailable(controllerPtr, toCheck.ordinal());
+        return info.hasAxis(toCheck);
     }
 
-    private native boolean nativeAxisAvailable(long controllerPtr, int axisIndex); /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return SDL_GameControllerHasAxis(pad, (SDL_GameControllerAxis) axisIndex);
-    */
-
     /**
      * Returns the implementation dependent name of this controller.
      *
@@ -442,20 +568,27 @@ public final class ControllerIndex {
      */
     public String getName() throws ControllerUnpluggedException {
         ensureConnected();
+        return info.getName();
+    }
 
-        String controllerName = nativeGetName(controllerPtr);
-
-        //Return a descriptive string instead of null if the attached controller does not have a name
-        if(controllerName == null) {
-            return "Unnamed Controller";
-        }
-        return controllerName;
+    /**
+     * @return The name read when the controller was connected, without checking the connection
+     */
+    String getCachedName() {
+        return info == null ? null : info.getName();
     }
 
-    private native String nativeGetName(long controllerPtr); /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return env->NewStringUTF(SDL_GameControllerName(pad));
-    */
+    /**
+     * Returns the information about this controller that was read when it was connected. Nothing
+     * in there crosses into native code, so this is fine to use every frame.
+     *
+     * @return The ControllerInfo of the connected controller
+     * @throws ControllerUnpluggedException If the controller is not connected
+     */
+    public ControllerInfo getInfo() throws ControllerUnpluggedException {
+        ensureConnected();
+        return info;
+    }
 
     /**
      * Returns the instance ID of the current controller, which uniquely identifies
@@ -466,27 +599,24 @@ public final class ControllerIndex {
      */
     public int getDeviceInstanceID() throws ControllerUnpluggedException {
         ensureConnected();
-        return nativeGetDeviceInstanceID(controllerPtr);
+        return instanceID;
     }
 
-    private native int nativeGetDeviceInstanceID(long controllerPtr); /*
-        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
-        return SDL_JoystickInstanceID(joystick);
+    /**
+     * @return The instance ID read when the controller was connected, -1 if nothing is connected
      */
+    int getCachedInstanceID() {
+        return instanceID;
+    }
 
     /**
      * @return player index if set and supported, -1 otherwise
      */
     public int getPlayerIndex() throws ControllerUnpluggedException {
         ensureConnected();
-        return nativeGetPlayerIndex(controllerPtr);
+        return backend.getPlayerIndex(handle);
     }
 
-    private native int nativeGetPlayerIndex(long controllerPtr); /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return SDL_GameControllerGetPlayerIndex(pad);
-    */
-
     /**
      * Sets player index. At the time being, this doesn't seem to change the indication lights on
      * a controller on Windows, Linux and Mac, but only an internal representation index.
@@ -494,69 +624,56 @@ public final class ControllerIndex {
      */
     public void setPlayerIndex(int index) throws ControllerUnpluggedException {
         ensureConnected();
-        nativeSetPlayerIndex(controllerPtr, index);
+        backend.setPlayerIndex(handle, index);
     }
 
-    private native void nativeSetPlayerIndex(long controllerPtr, int index); /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        return SDL_GameControllerSetPlayerIndex(pad, index);
-    */
-
     /**
      * @return current power level of game controller, see {@link ControllerPowerLevel} enum values
      * @throws ControllerUnpluggedException If the controller is not connected
      */
     public ControllerPowerLevel getPowerLevel() throws ControllerUnpluggedException {
         ensureConnected();
-        return ControllerPowerLevel.valueOf(nativeGetPowerLevel(controllerPtr));
+        return info.getPowerLevel();
     }
 
-    private native int nativeGetPowerLevel(long controllerPtr); /*
-        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
-        return SDL_JoystickCurrentPowerLevel(joystick);
-    */
-
-
     /**
      * To use this function Sony controller features must be enabled in configuration of the
      * {@link com.studiohartman.jamepad.ControllerManager}.
      * @param finger the index of the finger of interest
-     * @return a TouchState object containing the touch information of the finger.
+     * @return a TouchState object containing the touch information of the finger on the first touchpad.
      * If the operation was not successful e.g. because the controller doesn't have
      * a touchpad then a default TouchState object is returned.
      * @throws ControllerUnpluggedException If the controller is not connected
      */
     public TouchState getTouchpadFinger(int finger) throws ControllerUnpluggedException {
+        return getTouchpadFinger(0, finger);
+    }
+
+    /**
+     * To use this function Sony controller features must be enabled in configuration of the
+     * {@link com.studiohartman.jamepad.ControllerManager}.
+     * @param touchpad the index of the touchpad, see ControllerInfo.getNumTouchpads()
+     * @param finger the index of the finger of interest, see ControllerInfo.getNumTouchpadFingers()
+     * @return a TouchState object containing the touch information of the finger.
+     * If the operation was not successful e.g. because the controller doesn't have
+     * this touchpad or finger then a default TouchState object is returned.
+     * @throws ControllerUnpluggedException If the controller is not connected
+     */
+    public TouchState getTouchpadFinger(int touchpad, int finger) throws ControllerUnpluggedException {
         ensureConnected();
 
-        TouchState touchState = touchStates.get(finger);
-        if(touchState == null){
-            touchState = new TouchState();
-            touchStates.put(finger, touchState);
+        int touchPoint = getTouchPoint(touchpad, finger);
+        if(touchPoint < 0) {
+            return noTouchState;
         }
-        if(!supportsTouchpad){
-            return touchState;
+        TouchState touchState = touchStates[touchPoint];
+        if(supportsTouchpad && backend.getTouchpadFinger(handle, touchpad, finger, touchValues)) {
+            touchState.update(touchValues[0] != 0, touchValues[1], touchValues[2], touchValues[3]);
         }
-        nativeGetTouchpadFinger(controllerPtr, finger, touchState);
 
         return touchState;
     }
 
-    private native void nativeGetTouchpadFinger(long controllerPtr, int finger, Object touchState); /*
-        SDL_GameControllerUpdate();
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-
-        Uint8 touch_state;
-        float x, y, pressure;
-        int result = SDL_GameControllerGetTouchpadFinger(pad, 0, finger, &touch_state, &x, &y, &pressure);
-        if(result == 0) {
-            jclass clazz = env->GetObjectClass(touchState);
-            jmethodID update_method = env->GetMethodID(clazz, "update", "(ZFF)V");
-
-            env->CallVoidMethod(touchState, update_method, touch_state == 0 ? JNI_FALSE : JNI_TRUE, x, y);
-        }
-     */
-
     /**
      * To use this function Sony controller features must be enabled in configuration of the
      * {@link com.studiohartman.jamepad.ControllerManager}.
@@ -570,31 +687,424 @@ public final class ControllerIndex {
         if(!supportsSensors) {
             return sensorState;
         }
-        nativeGetSensorState(controllerPtr, sensorState);
+        long timestamp = backend.getSensorState(handle, sensorValues);
+        if(timestamp >= 0) {
+            updateSensorState(sensorValues[0], sensorValues[1], sensorValues[2],
+                    sensorValues[3], sensorValues[4], sensorValues[5], timestamp);
+        }
 
         return sensorState;
     }
 
-    /*JNI
-    #include <chrono>
+    /**
+     * Returns the buffer that receives every accelerometer and gyroscope reading of this
+     * controller, not just the latest one. Only available if {@link Configuration#sensorBufferCapacity}
+     * is set.
+     *
+     * @return The SensorSampleBuffer of this controller, or null if sensor samples are not recorded
+     */
+    public SensorSampleBuffer getSensorSampleBuffer() {
+        return sensorSamples;
+    }
+
+    /**
+     * Hand a sensor reading from the event pump to the sample buffer and the sensor fusion.
+     */
+    void addSensorSample(int sensorType, long timestamp, float x, float y, float z) {
+        if(sensorType == ControllerInfo.SENSOR_ACCEL) {
+            sampleAccelMagnitude = (float) Math.sqrt(x * x + y * y + z * z);
+        } else if(sensorType == ControllerInfo.SENSOR_GYRO) {
+            gyroCalibration.addSample(x, y, z, sampleAccelMagnitude);
+            x -= gyroCalibration.getBiasX();
+            y -= gyroCalibration.getBiasY();
+            z -= gyroCalibration.getBiasZ();
+        }
+        sensorSamples.push(sensorType, timestamp, x, y, z);
+        sensorFusion.updateSample(sensorType, timestamp, x, y, z);
+        if(sensorType == ControllerInfo.SENSOR_GYRO) {
+            gyroAim.addGyroSample(timestamp, x, y, z);
+        }
+    }
+
+    /**
+     * Take over a new reading of both sensors into sensorState, with the gyro bias subtracted.
+     */
+    private void updateSensorState(float accelX, float accelY, float accelZ, float gyroX, float gyroY, float gyroZ, long timestamp) {
+        // A reading polled twice has already been taken over. Skipping it keeps it from being
+        // mistaken for a controller lying still, and from being fed to the filters twice.
+        if(timestamp == sensorState.getTimestamp()) {
+            return;
+        }
+        // With the sample buffer, the calibration and gyro aiming already get every reading from addSensorSample()
+        if(sensorSamples == null) {
+            gyroCalibration.addSample(gyroX, gyroY, gyroZ, (float) Math.sqrt(accelX * accelX + accelY * accelY + accelZ * accelZ));
+            gyroAim.addGyroSample(timestamp, gyroX - gyroCalibration.getBiasX(), gyroY - gyroCalibration.getBiasY(),
+                    gyroZ - gyroCalibration.getBiasZ());
+        }
+        sensorState.update(sensorFilters[0].filter(accelX, timestamp),
+                sensorFilters[1].filter(accelY, timestamp),
+                sensorFilters[2].filter(accelZ, timestamp),
+                sensorFilters[3].filter(gyroX - gyroCalibration.getBiasX(), timestamp),
+                sensorFilters[4].filter(gyroY - gyroCalibration.getBiasY(), timestamp),
+                sensorFilters[5].filter(gyroZ - gyroCalibration.getBiasZ(), timestamp),
+                timestamp);
+    }
+
+    /**
+     * Returns the gyro aiming and flick stick of this controller. Its deltas are updated by every
+     * poll(), and copied into the states of ControllerManager.getState() and pollAll().
+     *
+     * @return The GyroAim of this controller
+     */
+    public GyroAim getGyroAim() {
+        return gyroAim;
+    }
+
+    /**
+     * Returns the smoothing filter of an axis. It is applied to the values of poll() and everything
+     * built on it, like ControllerManager.getState(), after the conditioning of getConditioner().
+     * getAxisState() is not filtered, since it isn't called at a steady rate.
+     *
+     * @param axis The axis
+     * @return The SmoothingFilter of the axis
+     */
+    public SmoothingFilter getFilter(ControllerAxis axis) {
+        return axisFilters[axis.ordinal()];
+    }
+
+    /**
+     * Returns the smoothing filter of one axis of a motion sensor. It is applied to the values of
+     * getSensorState(), and to the SensorFusion if {@link Configuration#sensorBufferCapacity} is
+     * not set. The samples of the SensorSampleBuffer are not filtered.
+     *
+     * @param sensorType ControllerInfo.SENSOR_ACCEL or ControllerInfo.SENSOR_GYRO
+     * @param axis 0 for x, 1 for y, 2 for z
+     * @return The SmoothingFilter of the sensor axis
+     */
+    public SmoothingFilter getSensorFilter(int sensorType, int axis) {
+        if(axis < 0 || axis > 2) {
+            throw new IllegalArgumentException("The sensor axis must be 0, 1 or 2!");
+        }
+        if(sensorType == ControllerInfo.SENSOR_ACCEL) {
+            return sensorFilters[axis];
+        } else if(sensorType == ControllerInfo.SENSOR_GYRO) {
+            return sensorFilters[3 + axis];
+        }
+        throw new IllegalArgumentException("The sensor type must be ControllerInfo.SENSOR_ACCEL or ControllerInfo.SENSOR_GYRO!");
+    }
+
+    private void resetFilters() {
+        for(SmoothingFilter filter : axisFilters) {
+            filter.reset();
+        }
+        for(SmoothingFilter filter : sensorFilters) {
+            filter.reset();
+        }
+    }
+
+    /**
+     * Returns the gyro bias calibration of this controller. The bias it measures is already
+     * subtracted from all gyroscope values Jamepad hands out.
+     *
+     * @return The GyroCalibration of this controller
+     */
+    public GyroCalibration getGyroCalibration() {
+        return gyroCalibration;
+    }
+
+    /**
+     * Returns the orientation of this controller, computed from its motion sensors. It is updated
+     * by ControllerManager.update(), getState() and pollAll(), with every sensor reading if
+     * {@link Configuration#sensorBufferCapacity} is set. The Sony controller features have to be
+     * enabled for the sensors to be read at all.
+     *
+     * @return The SensorFusion of this controller
+     */
+    public SensorFusion getSensorFusion() {
+        return sensorFusion;
+    }
+
+    /**
+     * Reads the complete state of this controller (buttons, axes, touchpad and sensor data) with a
+     * single native call. SDL_GameControllerUpdate() is only run once, so all values of one poll
+     * belong to the same moment.
+     *
+     * This is what ControllerManager.getState() uses. If you read a lot of values at a high rate,
+     * this is a lot cheaper than calling isButtonPressed() and getAxisState() for every button and
+     * axis, since each of those crosses into native code on its own.
+     *
+     * Every poll is one frame for the button masks: getJustPressedMask() and getJustReleasedMask()
+     * compare the buttons of this poll with the ones of the previous poll, so they give the same
+     * answer no matter how often they are asked until poll() is called again.
+     *
+     * The touchpad and sensor objects returned by getTouchpadFinger() and getSensorState() are
+     * refreshed by this call as well.
+     *
+     * @return Whether or not the controller was connected at the time of the poll.
+     */
+    public boolean poll() {
+        pollingThread.verify();
+        if(handle == 0) {
+            snapshot.putInt(SNAPSHOT_CONNECTED, 0);
+        } else {
+            backend.poll(handle, snapshot, 0, getPollFlags());
+        }
+        return readSnapshot();
+    }
+
+    /**
+     * Take over the values of the snapshot buffer after it was written by the backend.
+     *
+     * @return Whether or not the controller was connected when the snapshot was taken.
+     */
+    boolean readSnapshot() {
+        if(snapshot.getInt(SNAPSHOT_CONNECTED) == 0) {
+            buttonMask = 0;
+            justPressedMask = 0;
+            justReleasedMask = 0;
+            Arrays.fill(polledAxes, 0);
+            return false;
+        }
+
+        int previousButtonMask = buttonMask;
+        buttonMask = snapshot.getInt(SNAPSHOT_BUTTONS);
+        int changedButtons = buttonMask ^ previousButtonMask;
+        justPressedMask = changedButtons & buttonMask;
+        justReleasedMask = changedButtons & previousButtonMask;
+
+        int rawLeftX = snapshot.getShort(SNAPSHOT_AXES);
+        int rawLeftY = snapshot.getShort(SNAPSHOT_AXES + 2);
+        int rawRightX = snapshot.getShort(SNAPSHOT_AXES + 4);
+        int rawRightY = snapshot.getShort(SNAPSHOT_AXES + 6);
+        int rawLeftTrigger = snapshot.getShort(SNAPSHOT_AXES + 8);
+        int rawRightTrigger = snapshot.getShort(SNAPSHOT_AXES + 10);
+
+        long pollTimestamp = System.nanoTime() / 1000;
+        // Both sticks have to rest, a resting stick while the other one is used isn't an idle controller
+        boolean leftResting = leftStickDrift.observe(rawLeftX / AXIS_MAX_VAL, rawLeftY / AXIS_MAX_VAL, pollTimestamp);
+        boolean rightResting = rightStickDrift.observe(rawRightX / AXIS_MAX_VAL, rawRightY / AXIS_MAX_VAL, pollTimestamp);
+        boolean padIdle = buttonMask == 0 && rawLeftTrigger < IDLE_TRIGGER_VALUE && rawRightTrigger < IDLE_TRIGGER_VALUE
+                && leftResting && rightResting;
+        leftStickDrift.learn(padIdle);
+        rightStickDrift.learn(padIdle);
+        conditionStick(leftStickConditioner, leftStickDrift, rawLeftX, rawLeftY, 0);
+        conditionStick(rightStickConditioner, rightStickDrift, rawRightX, rawRightY, 2);
+        polledAxes[4] = leftTriggerConditioner.conditionAxis(rawLeftTrigger);
+        polledAxes[5] = rightTriggerConditioner.conditionAxis(rawRightTrigger);
+        for(int i = 0; i < polledAxes.length; i++) {
+            polledAxes[i] = axisFilters[i].filter(polledAxes[i], pollTimestamp);
+        }
+
+        int numTouchPoints = Math.min(snapshot.getInt(SNAPSHOT_NUM_TOUCH_POINTS), touchStates.length);
+        for(int i = 0; i < numTouchPoints; i++) {
+            int touchPoint = SNAPSHOT_TOUCH + i * TOUCH_POINT_SIZE;
+            if(snapshot.get(touchPoint + TOUCH_POINT_VALID) != 0) {
+                touchDown[i] = snapshot.get(touchPoint + TOUCH_POINT_DOWN) != 0;
+                touchX[i] = snapshot.getFloat(touchPoint + TOUCH_POINT_X);
+                touchY[i] = snapshot.getFloat(touchPoint + TOUCH_POINT_Y);
+                touchPressure[i] = snapshot.getFloat(touchPoint + TOUCH_POINT_PRESSURE);
+                touchStates[i].update(touchDown[i], touchX[i], touchY[i], touchPressure[i]);
+            }
+        }
+
+        if(snapshot.getInt(SNAPSHOT_SENSOR_VALID) != 0) {
+            updateSensorState(snapshot.getFloat(SNAPSHOT_ACCEL), snapshot.getFloat(SNAPSHOT_ACCEL + 4), snapshot.getFloat(SNAPSHOT_ACCEL + 8),
+                    snapshot.getFloat(SNAPSHOT_GYRO), snapshot.getFloat(SNAPSHOT_GYRO + 4), snapshot.getFloat(SNAPSHOT_GYRO + 8),
+                    snapshot.getLong(SNAPSHOT_SENSOR_TIMESTAMP));
+            if(sensorSamples == null) {
+                // Without the sample buffer, the fusion only gets the latest reading of every poll
+                sensorFusion.update(sensorState);
+            }
+        }
+
+        gyroAim.endFrame(polledAxes[ControllerAxis.RIGHTX.ordinal()], polledAxes[ControllerAxis.RIGHTY.ordinal()], pollTimestamp);
+        return true;
+    }
+
+    /**
+     * Correct the drift of a polled stick and condition it into polledAxes.
+     */
+    private void conditionStick(AxisConditioner conditioner, StickDriftEstimator drift, int rawX, int rawY, int offset) {
+        float x = rawX / AXIS_MAX_VAL;
+        float y = rawY / AXIS_MAX_VAL;
+        if(drift.isResting(x, y)) {
+            polledAxes[offset] = 0;
+            polledAxes[offset + 1] = 0;
+            return;
+        }
+
+        int correctedX = Math.max(-32768, Math.min(32767, rawX - Math.round(drift.getCorrectionX() * AXIS_MAX_VAL)));
+        int correctedY = Math.max(-32768, Math.min(32767, rawY - Math.round(drift.getCorrectionY() * AXIS_MAX_VAL)));
+        conditioner.conditionStick(correctedX, correctedY, polledAxes, offset);
+    }
+
+    /**
+     * Returns the drift estimation of a stick. Both axes of a stick share the same
+     * StickDriftEstimator. Its correction is applied to the values of poll() and everything built
+     * on it, like ControllerManager.getState(), before the conditioning of getConditioner().
+     *
+     * @param axis Any axis of the stick
+     * @return The StickDriftEstimator of the stick
+     * @throws IllegalArgumentException If the axis is a trigger
+     */
+    public StickDriftEstimator getDriftEstimator(ControllerAxis axis) {
+        switch(axis) {
+            case LEFTX:
+            case LEFTY:
+                return leftStickDrift;
+            case RIGHTX:
+            case RIGHTY:
+                return rightStickDrift;
+            default:
+                throw new IllegalArgumentException("Drift is only estimated for the sticks!");
+        }
+    }
+
+    /**
+     * @return Whether or not the controller was connected during the last poll()
+     */
+    boolean isPolledConnected() {
+        return snapshot.getInt(SNAPSHOT_CONNECTED) != 0;
+    }
+
+    /**
+     * @return The backend handle of the connected controller, or 0 if nothing is connected
+     */
+    long getHandle() {
+        return handle;
+    }
+
+    /**
+     * @return The POLL_ flags for this controller
+     */
+    int getPollFlags() {
+        return (supportsTouchpad ? POLL_TOUCHPAD : 0) | (supportsSensors ? POLL_SENSORS : 0);
+    }
+
+    /**
+     * Cut the snapshot buffer of one controller out of a buffer holding the snapshots of all controllers.
+     *
+     * @param snapshots direct buffer of SNAPSHOT_SIZE bytes per controller
+     * @param index the index of the controller
+     * @return a view of the snapshot of the controller with the given index, in native byte order
+     */
+    static ByteBuffer sliceSnapshot(ByteBuffer snapshots, int index) {
+        ByteBuffer snapshot = snapshots.duplicate();
+        snapshot.position(index * SNAPSHOT_SIZE);
+        snapshot.limit((index + 1) * SNAPSHOT_SIZE);
+        return snapshot.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns the buttons that were held down during the last poll(). The bit of a button is
+     * ControllerButton.mask(), so testing a chord is a single comparison:
+     * {@code (getButtonMask() & chord) == chord}.
+     *
+     * @return The mask of all buttons pressed during the last poll.
+     */
+    public int getButtonMask() {
+        return buttonMask;
+    }
+
+    /**
+     * @return The mask of all buttons that are pressed in the last poll(), but weren't in the poll before.
      */
+    public int getJustPressedMask() {
+        return justPressedMask;
+    }
 
-    private native void nativeGetSensorState(long controllerPtr, Object sensorState);/*
-        SDL_GameControllerUpdate();
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+    /**
+     * @return The mask of all buttons that were pressed in the poll before, but aren't in the last poll().
+     */
+    public int getJustReleasedMask() {
+        return justReleasedMask;
+    }
 
-        float gyro_data[3], accel_data[3];
-		int resultGyro = SDL_GameControllerGetSensorData(pad, SDL_SENSOR_GYRO, &gyro_data[0], 3);
-		int resultAccel = SDL_GameControllerGetSensorData(pad, SDL_SENSOR_ACCEL, &accel_data[0], 3);
-		Uint64 microsecondsSinceEpoch = std::chrono::duration_cast<std::chrono::microseconds>(std::chrono::system_clock::now().time_since_epoch()).count();
+    /**
+     * @param button The ControllerButton to check
+     * @return Whether or not the button was pressed during the last poll()
+     */
+    public boolean isPolledButtonPressed(ControllerButton button) {
+        return (buttonMask & button.mask()) != 0;
+    }
 
-		if(resultGyro == 0 && resultAccel == 0) {
-		   jclass clazz = env->GetObjectClass(sensorState);
-		   jmethodID update_method = env->GetMethodID(clazz, "update", "(FFFFFFJ)V");
+    /**
+     * @param button The ControllerButton to check
+     * @return Whether or not the button got pressed between the two last polls
+     */
+    public boolean isPolledButtonJustPressed(ControllerButton button) {
+        return (justPressedMask & button.mask()) != 0;
+    }
+
+    /**
+     * @param button The ControllerButton to check
+     * @return Whether or not the button got released between the two last polls
+     */
+    public boolean isPolledButtonJustReleased(ControllerButton button) {
+        return (justReleasedMask & button.mask()) != 0;
+    }
+
+    /**
+     * @return The state of the axis during the last poll()
+     */
+    float getPolledAxisState(ControllerAxis axis) {
+        return polledAxes[axis.ordinal()];
+    }
+
+    /**
+     * @return The touch state of the finger on the first touchpad from the last poll()
+     */
+    TouchState getPolledTouchpadFinger(int finger) {
+        int touchPoint = getTouchPoint(0, finger);
+        return touchPoint < 0 ? noTouchState : touchStates[touchPoint];
+    }
+
+    /**
+     * @param touchpad The index of the touchpad, see ControllerInfo.getNumTouchpads()
+     * @param finger The index of the finger, see ControllerInfo.getNumTouchpadFingers()
+     * @return Whether or not the finger touched the touchpad during the last poll()
+     */
+    public boolean isPolledTouchpadFingerDown(int touchpad, int finger) {
+        int touchPoint = getTouchPoint(touchpad, finger);
+        return touchPoint >= 0 && touchDown[touchPoint];
+    }
+
+    /**
+     * @param touchpad The index of the touchpad, see ControllerInfo.getNumTouchpads()
+     * @param finger The index of the finger, see ControllerInfo.getNumTouchpadFingers()
+     * @return The x position of the finger between 0 and 1 during the last poll()
+     */
+    public float getPolledTouchpadFingerX(int touchpad, int finger) {
+        int touchPoint = getTouchPoint(touchpad, finger);
+        return touchPoint < 0 ? 0 : touchX[touchPoint];
+    }
+
+    /**
+     * @param touchpad The index of the touchpad, see ControllerInfo.getNumTouchpads()
+     * @param finger The index of the finger, see ControllerInfo.getNumTouchpadFingers()
+     * @return The y position of the finger between 0 and 1 during the last poll()
+     */
+    public float getPolledTouchpadFingerY(int touchpad, int finger) {
+        int touchPoint = getTouchPoint(touchpad, finger);
+        return touchPoint < 0 ? 0 : touchY[touchPoint];
+    }
+
+    /**
+     * @param touchpad The index of the touchpad, see ControllerInfo.getNumTouchpads()
+     * @param finger The index of the finger, see ControllerInfo.getNumTouchpadFingers()
+     * @return The pressure of the finger between 0 and 1 during the last poll()
+     */
+    public float getPolledTouchpadFingerPressure(int touchpad, int finger) {
+        int touchPoint = getTouchPoint(touchpad, finger);
+        return touchPoint < 0 ? 0 : touchPressure[touchPoint];
+    }
 
-		   env->CallVoidMethod(sensorState, update_method, accel_data[0], accel_data[1], accel_data[2], gyro_data[0], gyro_data[1], gyro_data[2], microsecondsSinceEpoch);
-		}
-    */
+    /**
+     * @return The sensor state from the last poll()
+     */
+    SensorState getPolledSensorState() {
+        return sensorState;
+    }
 
     /**
      * Send adaptive trigger effects to the controller.
@@ -609,75 +1119,13 @@ public final class ControllerIndex {
     public boolean sendAdaptiveTriggerEffects(byte leftTriggerEffect, byte[] triggerDataLeft, byte rightTriggerEffect, byte[] triggerDataRight) throws ControllerUnpluggedException {
         ensureConnected();
 
-        if(!hasBasicDualSenseFeatures() || !nativeIsDualSenseController(controllerPtr)) {
+        if(!hasBasicDualSenseFeatures() || !info.isDualSense()) {
             return false;
         }
 
         needToClearTriggerEffect = true;
-        return nativeSendAdaptiveTriggerEffects(controllerPtr, leftTriggerEffect, triggerDataLeft, triggerDataLeft.length, rightTriggerEffect, triggerDataRight, triggerDataRight.length);
-    }
-
-    private native boolean nativeIsDualSenseController(long controllerPtr); /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-        Uint16 sonyVendorId = 0x054c;
-        Uint16 dualSenseProductId = 0x0ce6;
-        Uint16 dualSenseEdgeProductId = 0x0df2;
-
-        Uint16 vendorId = SDL_GameControllerGetVendor(pad);
-        Uint16 productId = SDL_GameControllerGetProduct(pad);
-
-        return vendorId == sonyVendorId && (productId == dualSenseProductId || productId == dualSenseEdgeProductId) ? JNI_TRUE : JNI_FALSE;
-    */
-
-    // PS5 trigger effect documentation:
-    // https://controllers.fandom.com/wiki/Sony_DualSense#FFB_Trigger_Modes
-    /*JNI
-    typedef struct
-    {
-        Uint8 ucEnableBits1;                // 0
-        Uint8 ucEnableBits2;                // 1
-        Uint8 ucRumbleRight;                // 2
-        Uint8 ucRumbleLeft;                 // 3
-        Uint8 ucHeadphoneVolume;            // 4
-        Uint8 ucSpeakerVolume;              // 5
-        Uint8 ucMicrophoneVolume;           // 6
-        Uint8 ucAudioEnableBits;            // 7
-        Uint8 ucMicLightMode;               // 8
-        Uint8 ucAudioMuteBits;              // 9
-        Uint8 rgucRightTriggerEffect[11];   // 10
-        Uint8 rgucLeftTriggerEffect[11];    // 21
-        Uint8 rgucUnknown1[6];              // 32
-        Uint8 ucLedFlags;                   // 38
-        Uint8 rgucUnknown2[2];              // 39
-        Uint8 ucLedAnim;                    // 41
-        Uint8 ucLedBrightness;              // 42
-        Uint8 ucPadLights;                  // 43
-        Uint8 ucLedRed;                     // 44
-        Uint8 ucLedGreen;                   // 45
-        Uint8 ucLedBlue;                    // 46
-    } DS5EffectsState_t;
-     */
-
-    private native boolean nativeSendAdaptiveTriggerEffects(long controllerPtr,
-                                                         byte leftTriggerEffect,
-                                                         byte[] triggerDataLeft,
-                                                         int leftTriggerDataSize,
-                                                         byte rightTriggerEffect,
-                                                         byte[] triggerDataRight,
-                                                         int rightTriggerDataSize); /*
-        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
-
-        DS5EffectsState_t state;
-        SDL_zero(state);
-
-        state.ucEnableBits1 |= (0x04 | 0x08); // Modify right and left trigger effect respectively
-        state.rgucLeftTriggerEffect[0] = leftTriggerEffect;
-        SDL_memcpy(state.rgucLeftTriggerEffect + 1, triggerDataLeft, leftTriggerDataSize);
-        state.rgucRightTriggerEffect[0] = rightTriggerEffect;
-        SDL_memcpy(state.rgucRightTriggerEffect + 1, triggerDataRight, rightTriggerDataSize);
-
-        return SDL_GameControllerSendEffect(pad, &state, sizeof(state)) == 0 ? JNI_TRUE : JNI_FALSE;
-    */
+        return backend.sendTriggerEffects(handle, leftTriggerEffect, triggerDataLeft, triggerDataLeft.length, rightTriggerEffect, triggerDataRight, triggerDataRight.length);
+    }
 
     /**
      * Send haptic feedback audio data to the controller.
@@ -690,42 +1138,97 @@ public final class ControllerIndex {
     public boolean sendHapticFeedbackAudioPacket(byte[] hapticFeedback) throws ControllerUnpluggedException {
         ensureConnected();
 
-        if(!hasBasicDualSenseFeatures() || !nativeIsDualSenseController(controllerPtr)) {
+        if(!hasBasicDualSenseFeatures() || !info.isDualSense()) {
             return false;
         }
 
-        return nativeSendHapticFeedback(hapticFeedback, hapticFeedback.length);
+        HapticsDiscovery haptics = hapticsDiscovery;
+        return haptics != null && haptics.isConnected()
+                && backend.sendHapticFeedback(haptics.getHaptics(), hapticFeedback, hapticFeedback.length);
     }
 
-    private native boolean nativeSendHapticFeedback(byte[] hapticFeedback, int hapticFeedbackSize); /*
-        if(haptics_output == 0) {
-            return JNI_FALSE;
+    /**
+     * Send haptic feedback audio data to the controller, straight out of a direct buffer without
+     * copying it. The data must be in the same format as for sendHapticFeedbackAudioPacket(), but
+     * it may be of any length, so several packets can be sent in one batch. The resampler keeps its
+     * state between calls, so the packets are played as one continuous stream.
+     *
+     * If the controller is not a DualSense controller calling this function doesn't have any effect.
+     * @param hapticFeedback a direct buffer, the bytes between its position and limit are sent. Its
+     *                       position is moved to the limit if they were sent.
+     * @return true if the haptic feedback audio data was sent successfully, false otherwise
+     * @throws ControllerUnpluggedException If the controller is not connected
+     */
+    public boolean sendHapticFeedbackAudio(ByteBuffer hapticFeedback) throws ControllerUnpluggedException {
+        if(!hapticFeedback.isDirect()) {
+            throw new IllegalArgumentException("The haptic feedback must be in a direct ByteBuffer!");
         }
+        ensureConnected();
 
-        SDL_AudioCVT cvt;
-        // Haptics samples are coming in at 3KHZ, but the DualSense expects 48KHZ
-        SDL_BuildAudioCVT(&cvt, AUDIO_S16LSB, 4, 3000, AUDIO_S16LSB, 4, 48000);
-        cvt.len = hapticFeedbackSize * 2;
-        cvt.buf = haptics_resampler_buf;
-        // Remix to 4 channels
-	    for (int i=0; i < hapticFeedbackSize; i+=4)
-	    {
-		    SDL_memset(haptics_resampler_buf + i * 2, 0, 4);
-		    SDL_memcpy(haptics_resampler_buf + (i * 2) + 4, hapticFeedback + i, 4);
-	    }
-	    // Resample to 48kHZ
-	    if (SDL_ConvertAudio(&cvt) != 0)
-	    {
-		    return JNI_FALSE;
-	    }
+        if(!hasBasicDualSenseFeatures() || !info.isDualSense()) {
+            return false;
+        }
 
-	    if (SDL_QueueAudio(haptics_output, cvt.buf, cvt.len_cvt) < 0)
-	    {
-		    return JNI_FALSE;
-	    }
+        HapticsDiscovery haptics = hapticsDiscovery;
+        if(haptics == null || !haptics.isConnected()
+                || !backend.sendHapticFeedback(haptics.getHaptics(), hapticFeedback, hapticFeedback.position(), hapticFeedback.remaining())) {
+            return false;
+        }
+        hapticFeedback.position(hapticFeedback.limit());
+        return true;
+    }
 
-	    return JNI_TRUE;
-    */
+    /**
+     * Set the maximum latency of haptic feedback. If haptic feedback is sent faster than the
+     * controller plays it, e.g. because the clock of a remote sender drifts or packets arrive in
+     * bursts, the audio queued for the controller is kept below this many milliseconds and the
+     * oldest audio that doesn't fit is dropped. Lower values keep the vibration closer to the game,
+     * higher values absorb more jitter. The value is kept for controllers connected later.
+     *
+     * @param latencyMs The latency target in milliseconds, greater than 0
+     */
+    public void setHapticsLatency(int latencyMs) {
+        if(latencyMs <= 0) {
+            throw new IllegalArgumentException("The haptics latency must be greater than 0!");
+        }
+        pollingThread.verify();
+        hapticsLatencyMs = latencyMs;
+        HapticsDiscovery haptics = hapticsDiscovery;
+        if(haptics != null && haptics.getHaptics() != 0) {
+            backend.setHapticsLatency(haptics.getHaptics(), latencyMs);
+        }
+    }
+
+    /**
+     * Get the state of the haptic feedback queue of the controller, to see whether haptic feedback
+     * is sent too slowly (underruns) or too fast (overruns) for the latency target. The counters
+     * start over when a controller is connected. All values are 0 if the controller has no haptics.
+     *
+     * @return The metrics, the same object is reused and overwritten by the next call
+     */
+    public HapticsMetrics getHapticsMetrics() {
+        pollingThread.verify();
+        HapticsDiscovery haptics = hapticsDiscovery;
+        if(haptics != null && haptics.getHaptics() != 0) {
+            backend.getHapticsMetrics(haptics.getHaptics(), hapticsMetrics.getValues());
+        } else {
+            hapticsMetrics.clear();
+        }
+        return hapticsMetrics;
+    }
+
+    /**
+     * Get the mixer that plays several sources of haptic feedback on this controller at once. It
+     * is created on the first call and kept for any controller connected to this index later.
+     *
+     * @return The haptics mixer of this index
+     */
+    public HapticsMixer getHapticsMixer() {
+        if(hapticsMixer == null) {
+            hapticsMixer = new HapticsMixer(this);
+        }
+        return hapticsMixer;
+    }
 
     /**
      * Convenience method to throw an exception if the controller is not connected.
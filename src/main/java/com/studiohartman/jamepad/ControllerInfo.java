@@ -0,0 +1,250 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Everything about a connected controller that doesn't change while it stays connected: its name,
+ * ids and which buttons, axes and features it has. It is read once when the controller is
+ * connected, so asking for it never calls into native code. The only value that gets refreshed is
+ * the power level, whenever SDL reports a battery change.
+ *
+ * A new ControllerInfo is created every time a controller is connected to a ControllerIndex, so
+ * comparing the objects tells you whether the controller was exchanged.
+ */
+public final class ControllerInfo {
+    // Layout of the int array filled by ControllerBackend.getInfo(). Has to match nativeGetInfo() in
+    // the native code of SDLControllerBackend.
+    static final int INFO_VENDOR = 0;
+    static final int INFO_PRODUCT = 1;
+    static final int INFO_PRODUCT_VERSION = 2;
+    static final int INFO_TYPE = 3;
+    static final int INFO_BUTTONS = 4;
+    static final int INFO_AXES = 5;
+    static final int INFO_FEATURES = 6;
+    static final int INFO_NUM_TOUCHPADS = 7;
+    static final int INFO_SENSORS = 8;
+    static final int INFO_POWER_LEVEL = 9;
+    static final int INFO_SIZE = 10;
+
+    // Bits of INFO_FEATURES
+    static final int FEATURE_RUMBLE = 1;
+    static final int FEATURE_TRIGGER_RUMBLE = 2;
+    static final int FEATURE_LED = 4;
+
+    /**
+     * SDL_SENSOR_ACCEL, see getSensorTypes()
+     */
+    public static final int SENSOR_ACCEL = 1;
+
+    /**
+     * SDL_SENSOR_GYRO, see getSensorTypes()
+     */
+    public static final int SENSOR_GYRO = 2;
+
+    // Number of SDL_SensorType values we keep the rate of, the rate array is indexed by the type
+    static final int NUM_SENSOR_TYPES = 7;
+
+    static final int SONY_VENDOR_ID = 0x054c;
+    static final int DUALSENSE_PRODUCT_ID = 0x0ce6;
+    private static final int DUALSENSE_EDGE_PRODUCT_ID = 0x0df2;
+
+    private final String name;
+    private final String guid;
+    private final String serial;
+    private final int vendorId;
+    private final int productId;
+    private final int productVersion;
+    private final ControllerType type;
+    private final int buttonMask;
+    private final int axisMask;
+    private final int features;
+    private final int numTouchpads;
+    private final int[] touchpadFingers;
+    private final int sensorTypes;
+    private final float[] sensorDataRates;
+    private volatile ControllerPowerLevel powerLevel;
+
+    ControllerInfo(String name, String guid, String serial, int[] info, int[] touchpadFingers, float[] sensorDataRates) {
+        //Use a descriptive string instead of null if the attached controller does not have a name
+        this.name = name == null ? "Unnamed Controller" : name;
+        this.guid = guid;
+        this.serial = serial;
+        this.vendorId = info[INFO_VENDOR];
+        this.productId = info[INFO_PRODUCT];
+        this.productVersion = info[INFO_PRODUCT_VERSION];
+        this.type = ControllerType.valueOf(info[INFO_TYPE]);
+        this.buttonMask = info[INFO_BUTTONS];
+        this.axisMask = info[INFO_AXES];
+        this.features = info[INFO_FEATURES];
+        this.numTouchpads = info[INFO_NUM_TOUCHPADS];
+        this.touchpadFingers = touchpadFingers;
+        this.sensorTypes = info[INFO_SENSORS];
+        this.sensorDataRates = sensorDataRates.clone();
+        this.powerLevel = ControllerPowerLevel.valueOf(info[INFO_POWER_LEVEL]);
+    }
+
+    void setPowerLevel(ControllerPowerLevel powerLevel) {
+        this.powerLevel = powerLevel;
+    }
+
+    /**
+     * @return The implementation dependent name of the controller
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The GUID of the controller as a string of 32 hex digits. Identifies the model of the
+     * controller, not the single device.
+     */
+    public String getGUID() {
+        return guid;
+    }
+
+    /**
+     * @return The serial number of the controller, or null if it doesn't report one
+     */
+    public String getSerial() {
+        return serial;
+    }
+
+    /**
+     * @return The USB vendor id, or 0 if it isn't known
+     */
+    public int getVendorId() {
+        return vendorId;
+    }
+
+    /**
+     * @return The USB product id, or 0 if it isn't known
+     */
+    public int getProductId() {
+        return productId;
+    }
+
+    /**
+     * @return The product version, or 0 if it isn't known
+     */
+    public int getProductVersion() {
+        return productVersion;
+    }
+
+    /**
+     * @return The kind of controller, as far as SDL can tell
+     */
+    public ControllerType getType() {
+        return type;
+    }
+
+    /**
+     * @return Whether or not this is a DualSense or DualSense Edge controller
+     */
+    public boolean isDualSense() {
+        return vendorId == SONY_VENDOR_ID && (productId == DUALSENSE_PRODUCT_ID || productId == DUALSENSE_EDGE_PRODUCT_ID);
+    }
+
+    /**
+     * @return The mask of all buttons the controller has, see ControllerButton.mask()
+     */
+    public int getAvailableButtonMask() {
+        return buttonMask;
+    }
+
+    /**
+     * @return The mask of all axes the controller has, bit n is the axis with ordinal n
+     */
+    public int getAvailableAxisMask() {
+        return axisMask;
+    }
+
+    /**
+     * @param button The ControllerButton to check
+     * @return Whether or not the controller has the button
+     */
+    public boolean hasButton(ControllerButton button) {
+        return (buttonMask & button.mask()) != 0;
+    }
+
+    /**
+     * @param axis The ControllerAxis to check
+     * @return Whether or not the controller has the axis
+     */
+    public boolean hasAxis(ControllerAxis axis) {
+        return (axisMask & (1 << axis.ordinal())) != 0;
+    }
+
+    /**
+     * @return Whether or not the controller has rumble motors
+     */
+    public boolean hasRumble() {
+        return (features & FEATURE_RUMBLE) != 0;
+    }
+
+    /**
+     * @return Whether or not the controller has rumble motors in its triggers
+     */
+    public boolean hasTriggerRumble() {
+        return (features & FEATURE_TRIGGER_RUMBLE) != 0;
+    }
+
+    /**
+     * @return Whether or not the color of the controller's LED can be set
+     */
+    public boolean hasLED() {
+        return (features & FEATURE_LED) != 0;
+    }
+
+    /**
+     * @return The number of touchpads of the controller
+     */
+    public int getNumTouchpads() {
+        return numTouchpads;
+    }
+
+    /**
+     * @param touchpad The index of the touchpad
+     * @return The number of fingers the touchpad can track at once, 0 if there is no such touchpad
+     */
+    public int getNumTouchpadFingers(int touchpad) {
+        if(touchpad < 0 || touchpad >= touchpadFingers.length) {
+            return 0;
+        }
+        return touchpadFingers[touchpad];
+    }
+
+    /**
+     * Returns the sensors of the controller. Bit n is set if the controller has a sensor with the
+     * SDL_SensorType n, for example {@code 1 << SENSOR_GYRO}.
+     *
+     * @return The mask of the sensor types of the controller
+     */
+    public int getSensorTypes() {
+        return sensorTypes;
+    }
+
+    /**
+     * @param sensorType The SDL_SensorType, e.g. SENSOR_ACCEL or SENSOR_GYRO
+     * @return Whether or not the controller has a sensor of the given type
+     */
+    public boolean hasSensor(int sensorType) {
+        return sensorType >= 0 && sensorType < NUM_SENSOR_TYPES && (sensorTypes & (1 << sensorType)) != 0;
+    }
+
+    /**
+     * @param sensorType The SDL_SensorType, e.g. SENSOR_ACCEL or SENSOR_GYRO
+     * @return The number of readings per second the sensor delivers, or 0 if it isn't known
+     */
+    public float getSensorDataRate(int sensorType) {
+        if(sensorType < 0 || sensorType >= NUM_SENSOR_TYPES) {
+            return 0;
+        }
+        return sensorDataRates[sensorType];
+    }
+
+    /**
+     * @return The power level from when the controller was connected or SDL last reported a
+     * battery change, see {@link ControllerPowerLevel}
+     */
+    public ControllerPowerLevel getPowerLevel() {
+        return powerLevel;
+    }
+}
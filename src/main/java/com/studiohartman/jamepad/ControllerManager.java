@@ -1,14 +1,21 @@
 package com.studiohartman.jamepad;
 
-import com.badlogic.gdx.utils.SharedLibraryLoader;
-
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class handles initializing the native library, connecting to controllers, and managing the
@@ -24,20 +31,55 @@ import java.util.Objects;
  * @author William Hartman
  */
 public class ControllerManager {
-    /*JNI
-
-    #include "SDL.h"
-
-    SDL_Event event;
-    */
-
-    private static final boolean IS_UNIX = System.getProperty("os.name", "").toLowerCase().contains("nix") ||
-            System.getProperty("os.name", "").toLowerCase().contains("nux");
-
     private final Configuration configuration;
+    private final ControllerBackend backend;
     private final String mappingsPath;
     private boolean isInitialized;
     private ControllerIndex[] controllers;
+    private final MutableControllerState stateBuffer = new MutableControllerState();
+    private final ControllerEventBuffer eventBuffer;
+    private volatile ControllerSampler sampler;
+    // The thread that may use the backend, see ControllerSampler.execute()
+    private final PollingThread pollingThread = new PollingThread();
+
+    // Everything pollAll() hands to the backend, allocated once in initSDLGamepad()
+    private ByteBuffer snapshots;
+    private long[] handles;
+    private int[] pollFlags;
+    private long frameNumber;
+
+    // Joystick hotplug events of the last pump: pairs of ControllerBackend.HOTPLUG_ type and device index or instance id
+    private static final int MAX_HOTPLUG_EVENTS = 32;
+    private final int[] hotplugEvents = new int[MAX_HOTPLUG_EVENTS * 2];
+
+    // Sensor updates of the last pump, distributed to the SensorSampleBuffer of each controller
+    // afterwards. The number of records and the number of updates that didn't fit come first, the
+    // layout of the records has to match JamepadSensorRecord_t.
+    static final int SENSOR_STAGING_COUNT = 0;
+    static final int SENSOR_STAGING_DROPPED = 4;
+    static final int SENSOR_STAGING_RECORDS = 8;
+    static final int SENSOR_RECORD_SIZE = 32;
+    static final int SENSOR_RECORD_INSTANCE_ID = 0;
+    static final int SENSOR_RECORD_TYPE = 4;
+    static final int SENSOR_RECORD_TIMESTAMP = 8;
+    static final int SENSOR_RECORD_DATA = 16;
+    private ByteBuffer sensorStaging;
+    private int sensorStagingCapacity;
+    private final AtomicLong droppedSensorSamples = new AtomicLong();
+
+    private final GyroCalibrationStore gyroCalibrationStore;
+
+    // Receives the states handed out by getState() and pollAll(), if set
+    private volatile InputRecorder recorder;
+
+    // Detached when Jamepad is shut down
+    private final List<VirtualController> virtualControllers = new ArrayList<>();
+
+    // A single thread timing the search for the audio devices of all DualSense controllers, see
+    // HapticsDiscovery. It only sets the flag, the search itself runs on the thread polling the
+    // controllers, since SDL must not be used by two threads at once.
+    private ScheduledExecutorService hapticsScheduler;
+    private final AtomicBoolean hapticsScanRequested = new AtomicBoolean();
 
     /**
      * Default constructor. Makes a manager for 4 controllers with the built in mappings from here:
@@ -67,10 +109,9 @@ public class ControllerManager {
         this.mappingsPath = mappingsPath;
         isInitialized = false;
         controllers = new ControllerIndex[configuration.maxNumControllers];
-
-        if (configuration.loadNativeLibrary) {
-            new SharedLibraryLoader().load("jamepad");
-        }
+        eventBuffer = configuration.eventBufferCapacity > 0 ? new ControllerEventBuffer(configuration.eventBufferCapacity) : null;
+        gyroCalibrationStore = new GyroCalibrationStore(configuration.gyroCalibrationPath);
+        backend = configuration.backend != null ? configuration.backend : new SDLControllerBackend(configuration.loadNativeLibrary);
     }
 
     /**
@@ -80,13 +121,9 @@ public class ControllerManager {
      * @return true if the hint was set, false otherwise.
      */
     public boolean setSdlHint(String name, String value) {
-        return nativeSetSdlHint(name, value);
+        return backend.setHint(name, value);
     }
 
-    private native boolean nativeSetSdlHint(String name, String value); /*
-        return SDL_SetHint(name, value) == SDL_TRUE ? JNI_TRUE : JNI_FALSE;
-    */
-
     /**
      * Initialize the ControllerIndex library. This loads the native library and initializes SDL
      * in the native code.
@@ -100,28 +137,15 @@ public class ControllerManager {
         Configuration.SonyControllerFeature sonyControllerFeature = configuration.useSonyControllerFeatures;
 
         //Initialize SDL
-        if (!nativeInitSDLGamepad(!configuration.useRawInput, sonyControllerFeature.getValue())) {
+        if (!backend.init(!configuration.useRawInput, sonyControllerFeature.getValue())) {
             throw new IllegalStateException("Failed to initialize SDL in native method!");
         } else {
             isInitialized = true;
         }
 
-        if(Objects.equals(Configuration.SonyControllerFeature.DUALSENSE_FEATURES_AND_HAPTICS, sonyControllerFeature)) {
-            if(IS_UNIX){
-                String audioDriverName = getCurrentAudioDriverName();
-                if(!nativeInitHapticsOnUnix()) {
-                    System.err.println("Failed to load SLD Audio for DualSense haptics with pipewire" + getLastNativeError() + ". Try again with standard driver");
-                    if(!nativeInitHaptics(audioDriverName == null || audioDriverName.isEmpty() ? "pulse" : audioDriverName)) {
-                        System.err.println("Failed to load SLD Audio for DualSense haptics " + getLastNativeError());
-                        sonyControllerFeature = Configuration.SonyControllerFeature.DUALSENSE_FEATURES; // Fallback
-                    }
-                }
-            } else {
-                if(!nativeInitHaptics()) {
-                    System.err.println("Failed to load SLD Audio for DualSense haptics " + getLastNativeError());
-                    sonyControllerFeature = Configuration.SonyControllerFeature.DUALSENSE_FEATURES; // Fallback
-                }
-            }
+        if(Objects.equals(Configuration.SonyControllerFeature.DUALSENSE_FEATURES_AND_HAPTICS, sonyControllerFeature)
+                && !backend.initHaptics()) {
+            sonyControllerFeature = Configuration.SonyControllerFeature.DUALSENSE_FEATURES; // Fallback
         }
 
         //Set controller mappings. The possible exception is caught, since stuff will still work ok
@@ -134,87 +158,55 @@ public class ControllerManager {
             e.printStackTrace();
         }
 
-        //Connect and keep track of the controllers
-        for(int i = 0; i < controllers.length; i++) {
-            controllers[i] = new ControllerIndex(i, sonyControllerFeature);
-        }
-    }
-    private native boolean nativeInitSDLGamepad(boolean disableRawInput, int sonyControllerFeature); /*
-        if (disableRawInput) {
-            SDL_SetHint(SDL_HINT_JOYSTICK_RAWINPUT, "0");
-        }
-        if(sonyControllerFeature != 0) {
-            SDL_SetHint(SDL_HINT_JOYSTICK_HIDAPI_PS4_RUMBLE, "1");
-            SDL_SetHint(SDL_HINT_JOYSTICK_HIDAPI_PS5_RUMBLE, "1");
-            SDL_SetHint(SDL_HINT_JOYSTICK_HIDAPI_PS4, "1");
-            SDL_SetHint(SDL_HINT_JOYSTICK_HIDAPI_PS5, "1");
-            SDL_SetHint(SDL_HINT_JOYSTICK_HIDAPI_PS5_PLAYER_LED, "1");
-            SDL_SetHint(SDL_HINT_JOYSTICK_ALLOW_BACKGROUND_EVENTS, "1");
-        }
-
-        if (SDL_Init(SDL_INIT_EVENTS | SDL_INIT_JOYSTICK | SDL_INIT_GAMECONTROLLER) != 0) {
-            printf("NATIVE METHOD: SDL_Init failed: %s\n", SDL_GetError());
-            return JNI_FALSE;
-        }
-
-        //We don't want any controller connections events (which are automatically generated at init)
-        //since they interfere with us detecting new controllers, so we go through all events and clear them.
-        while (SDL_PollEvent(&event));
-
-        return JNI_TRUE;
-    */
-
-    private native boolean nativeInitHaptics(String audioDriverName); /*
-        if(SDL_WasInit(SDL_INIT_AUDIO) != 0) {
-            return JNI_TRUE;
-        }
-        SDL_SetHint("SDL_AUDIODRIVER", audioDriverName);
-
-        if (SDL_Init(SDL_INIT_AUDIO) < 0) {
-            return JNI_FALSE;
-        }
-
-        return JNI_TRUE;
-    */
+        gyroCalibrationStore.load();
 
-    private native boolean nativeInitHaptics(); /*
-        if(SDL_WasInit(SDL_INIT_AUDIO) != 0) {
-            return JNI_TRUE;
-        }
-        if (SDL_Init(SDL_INIT_AUDIO) < 0) {
-            return JNI_FALSE;
+        //Connect and keep track of the controllers
+        snapshots = ByteBuffer.allocateDirect(ControllerIndex.SNAPSHOT_SIZE * controllers.length).order(ByteOrder.nativeOrder());
+        handles = new long[controllers.length];
+        pollFlags = new int[controllers.length];
+        if(configuration.sensorBufferCapacity > 0) {
+            sensorStagingCapacity = configuration.sensorBufferCapacity * controllers.length;
+            sensorStaging = ByteBuffer.allocateDirect(SENSOR_STAGING_RECORDS + sensorStagingCapacity * SENSOR_RECORD_SIZE)
+                    .order(ByteOrder.nativeOrder());
         }
-
-        return JNI_TRUE;
-    */
-
-    private native boolean nativeInitHapticsOnUnix(); /*
-        if(SDL_WasInit(SDL_INIT_AUDIO) != 0) {
-            return JNI_TRUE;
+        if(Objects.equals(Configuration.SonyControllerFeature.DUALSENSE_FEATURES_AND_HAPTICS, sonyControllerFeature)) {
+            hapticsScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Jamepad Haptics Discovery");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
         }
-        SDL_SetHint("SDL_AUDIODRIVER", "pipewire"); // Seems to work better with controller haptics
-
-        if (SDL_Init(SDL_INIT_AUDIO) < 0) {
-            return JNI_FALSE;
+        for(int i = 0; i < controllers.length; i++) {
+            SensorSampleBuffer sensorSamples = configuration.sensorBufferCapacity > 0 ? new SensorSampleBuffer(configuration.sensorBufferCapacity) : null;
+            controllers[i] = new ControllerIndex(i, backend, pollingThread, sonyControllerFeature, ControllerIndex.sliceSnapshot(snapshots, i),
+                    sensorSamples, gyroCalibrationStore, hapticsScheduler, hapticsScanRequested, configuration.hapticsLatencyMs);
         }
-
-        return JNI_TRUE;
-    */
+    }
 
     /**
      * This method quits all the native stuff. Call it when you're done with Jamepad.
      */
     public void quitSDLGamepad() {
+        stopSampler();
         for(ControllerIndex c: controllers) {
             c.close();
         }
-        nativeCloseSDLGamepad();
+        for(VirtualController virtualController : virtualControllers) {
+            virtualController.detach();
+        }
+        virtualControllers.clear();
+        if(hapticsScheduler != null) {
+            hapticsScheduler.shutdownNow();
+            hapticsScheduler = null;
+        }
+        gyroCalibrationStore.save();
+        backend.quit();
         controllers = new ControllerIndex[0];
         isInitialized = false;
     }
-    private native void nativeCloseSDLGamepad(); /*
-        SDL_Quit();
-    */
 
     /**
      * Return the state of a controller at the passed index. This is probably the way most people
@@ -226,8 +218,8 @@ public class ControllerManager {
      *
      * The returned state is immutable. This means an object is allocated every time you call this
      * (unless the controller is disconnected). This shouldn't be a big deal (even for games) if your
-     * GC is tuned well, but if this is a problem for you, you can go directly through the internal
-     * ControllerIndex objects using getControllerIndex().
+     * GC is tuned well, but if this is a problem for you, you can use
+     * getState(int, MutableControllerState) instead, which fills an object you provide.
      *
      * update() is called each time this method is called. Buttons are also queried, so values
      * returned from isButtonJustPressed() in ControllerIndex may not be what you expect. Calling
@@ -240,14 +232,175 @@ public class ControllerManager {
      * @throws IllegalStateException if Jamepad was not initialized
      */
     public ControllerState getState(int index) throws IllegalStateException {
+        return ControllerState.getInstanceFromState(getState(index, stateBuffer));
+    }
+
+    /**
+     * Fill the passed state with the state of the controller at the passed index. This works just
+     * like getState(int), but nothing is allocated. Keep one MutableControllerState per controller
+     * around and pass it in every frame.
+     *
+     * If the controller is disconnected, the isConnected field of the passed state is set to false
+     * and all other fields are reset.
+     *
+     * @param index The index of the controller to be checked
+     * @param target The state object that will be filled
+     * @return The passed target, filled with the state of the controller at the passed index.
+     * @throws IllegalStateException if Jamepad was not initialized
+     */
+    public MutableControllerState getState(int index, MutableControllerState target) throws IllegalStateException {
         verifyInitialized();
+        verifyNotSampled();
 
         if(index < controllers.length && index >= 0) {
             update();
-            return ControllerState.getInstanceFromController(controllers[index]);
+            ControllerIndex controller = controllers[index];
+            if(controller.poll()) {
+                target.update(controller);
+                target.setFrame(++frameNumber, System.nanoTime());
+                if(recorder != null) {
+                    recorder.record(index, target);
+                }
+                return target;
+            }
+        }
+
+        target.setDisconnected();
+        target.setFrame(++frameNumber, System.nanoTime());
+        if(recorder != null && index < controllers.length && index >= 0) {
+            recorder.record(index, target);
+        }
+        return target;
+    }
+
+    /**
+     * Read the state of all controllers at once. SDL is pumped a single time and all controllers
+     * are read with one native call, so this is a lot cheaper than calling getState() for every
+     * index, which checks for newly connected controllers and reads the controller on every call.
+     *
+     * The state of the controller at index i is written to targets[i]. If the array is shorter
+     * than the number of controllers, the remaining controllers are not read into it. If it is longer,
+     * the extra elements are left alone. All filled states get the same frame number and timestamp.
+     *
+     * If something was plugged in or unplugged, the affected controllers are connected or closed
+     * first, just like with update().
+     *
+     * @param targets The state objects that will be filled, one per controller index
+     * @return The number of connected controllers that were written to targets
+     * @throws IllegalStateException if Jamepad was not initialized
+     */
+    public int pollAll(MutableControllerState[] targets) throws IllegalStateException {
+        verifyInitialized();
+        verifyNotSampled();
+
+        for(int i = 0; i < controllers.length; i++) {
+            handles[i] = controllers[i].getHandle();
+            pollFlags[i] = controllers[i].getPollFlags();
+        }
+
+        int numHotplugEvents;
+        if(eventBuffer != null) {
+            numHotplugEvents = backend.pollAll(handles, pollFlags, controllers.length, snapshots,
+                    eventBuffer.getRing(), eventBuffer.getTail(), eventBuffer.getCapacity(), hotplugEvents, MAX_HOTPLUG_EVENTS,
+                    sensorStaging, sensorStagingCapacity);
+            eventBuffer.publish();
+        } else {
+            numHotplugEvents = backend.pollAll(handles, pollFlags, controllers.length, snapshots,
+                    null, 0, 0, hotplugEvents, MAX_HOTPLUG_EVENTS, sensorStaging, sensorStagingCapacity);
+        }
+
+        // Battery updates alone leave the snapshots valid, only added or removed controllers need
+        // the slow path. Sensor samples go first, so gyro aiming has all of them when the snapshots are read
+        boolean changed = numHotplugEvents != 0 && handleHotplugEvents(numHotplugEvents);
+        if(changed) {
+            distributeSensorSamples();
+            for(ControllerIndex controller : controllers) {
+                controller.poll();
+            }
         } else {
-            return ControllerState.getDisconnectedControllerInstance();
+            distributeSensorSamples();
+            for(ControllerIndex controller : controllers) {
+                controller.readSnapshot();
+            }
+        }
+
+        connectPendingHaptics();
+
+        long frame = ++frameNumber;
+        long timestamp = System.nanoTime();
+        int numConnected = 0;
+        int numTargets = Math.min(targets.length, controllers.length);
+        for(int i = 0; i < numTargets; i++) {
+            if(controllers[i].isPolledConnected()) {
+                targets[i].update(controllers[i]);
+                numConnected++;
+            } else {
+                targets[i].setDisconnected();
+            }
+            targets[i].setFrame(frame, timestamp);
+        }
+        if(recorder != null && numTargets > 0) {
+            recorder.record(targets);
         }
+        return numConnected;
+    }
+
+    /**
+     * Record every state returned by getState(int, MutableControllerState) and pollAll() from now
+     * on, including the ones read by the sampler. The recorder is not closed by Jamepad.
+     *
+     * @param recorder The recorder to write to, or null to stop recording
+     */
+    public void setRecorder(InputRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Start a background thread that reads all controllers at a fixed rate, independent of how
+     * often your application looks at them. This decouples input latency from your frame rate.
+     * The latest state can be read from any thread with the getState() method of the returned
+     * sampler.
+     *
+     * While the sampler is running, its thread owns the controllers: SDL must only be used by a
+     * single thread, and an unplugged controller is closed by the sampler thread. update(),
+     * getState(), pollAll(), the output methods like doVibration(), and the methods of ControllerIndex,
+     * HapticsMixer and VirtualController throw an IllegalStateException when called from other
+     * threads. Pass those calls to ControllerSampler.execute() instead, which runs them on the
+     * sampler thread before its next sample.
+     *
+     * @param samplesPerSecond How often the controllers should be read, e.g. 1000
+     * @return The running sampler
+     * @throws IllegalStateException if Jamepad was not initialized or if a sampler is already running
+     */
+    public ControllerSampler startSampler(int samplesPerSecond) throws IllegalStateException {
+        verifyInitialized();
+        if(sampler != null && sampler.isRunning()) {
+            throw new IllegalStateException("The sampler is already running!");
+        }
+
+        ControllerSampler newSampler = new ControllerSampler(this, pollingThread, controllers.length, samplesPerSecond);
+        sampler = newSampler;
+        newSampler.start();
+        return newSampler;
+    }
+
+    /**
+     * Stop the sampler started with startSampler() and wait for its thread to finish. Does
+     * nothing if no sampler is running.
+     */
+    public void stopSampler() {
+        ControllerSampler currentSampler = sampler;
+        if(currentSampler != null) {
+            currentSampler.stop();
+            sampler = null;
+        }
+    }
+
+    /**
+     * @return The running sampler, or null if startSampler() wasn't called
+     */
+    public ControllerSampler getSampler() {
+        return sampler;
     }
 
     /**
@@ -261,7 +414,7 @@ public class ControllerManager {
      * @param leftMagnitude The intensity of the left rumble motor (0-1)
      * @param rightMagnitude The intensity of the rught rumble motor (0-1)
      * @return Whether or not vibration was successfully started
-     * @throws IllegalStateException if Jamepad was not initialized
+     * @throws IllegalStateException if Jamepad was not initialized, or if a ControllerSampler runs and this is not its thread
      */
     public boolean doVibration(int index, float leftMagnitude, float rightMagnitude, int duration_ms) throws IllegalStateException {
         verifyInitialized();
@@ -289,7 +442,7 @@ public class ControllerManager {
      * @param rightTriggerEffect The right trigger effect type
      * @param triggerDataRight The right trigger adaptive data
      * @return true if the adaptive trigger data was sent successfully, false otherwise
-     * @throws IllegalStateException if Jamepad was not initialized
+     * @throws IllegalStateException if Jamepad was not initialized, or if a ControllerSampler runs and this is not its thread
      */
     public boolean sendAdaptiveTriggerEffects(int index, byte leftTriggerEffect, byte[] triggerDataLeft, byte rightTriggerEffect, byte[] triggerDataRight){
         verifyInitialized();
@@ -313,7 +466,7 @@ public class ControllerManager {
      * @param index The index of the controller that will be used to send the adaptive trigger data
      * @param hapticFeedback the haptic feedback audio data
      * @return true if the haptic feedback audio data was sent successfully, false otherwise
-     * @throws IllegalStateException if Jamepad was not initialized
+     * @throws IllegalStateException if Jamepad was not initialized, or if a ControllerSampler runs and this is not its thread
      */
     public boolean sendHapticFeedbackAudioData(int index, byte[] hapticFeedback) {
         verifyInitialized();
@@ -329,6 +482,30 @@ public class ControllerManager {
         return false;
     }
 
+    /**
+     * Sends haptic feedback audio data to the controller at this given index, straight out of a
+     * direct buffer. See ControllerIndex.sendHapticFeedbackAudio(ByteBuffer).
+     *
+     * @param index The index of the controller that will be used to send the haptic feedback
+     * @param hapticFeedback a direct buffer with 3KHZ, 2 channel, 16-bit Little-Endian PCM data
+     *                       between its position and limit
+     * @return true if the haptic feedback audio data was sent successfully, false otherwise
+     * @throws IllegalStateException if Jamepad was not initialized, or if a ControllerSampler runs and this is not its thread
+     */
+    public boolean sendHapticFeedbackAudioData(int index, ByteBuffer hapticFeedback) {
+        verifyInitialized();
+
+        if(index < controllers.length && index >= 0) {
+            try {
+                return controllers[index].sendHapticFeedbackAudio(hapticFeedback);
+            } catch (ControllerUnpluggedException e) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Checks if the controller at the given index supports touchpad inputs
      *
@@ -387,8 +564,9 @@ public class ControllerManager {
      * It is generally safe to store objects returned from this method. They will only change internally
      * if you call quitSDLGamepad() followed by a call to initSDLGamepad().
      *
-     * Calling update() will run through all the controllers to check for newly plugged in or unplugged
-     * controllers. You could do this from your code, but keep that in mind.
+     * Calling update() checks for newly plugged in or unplugged controllers. An unplugged controller
+     * is closed, and a newly plugged in one is connected to the first free ControllerIndex. The other
+     * ControllerIndex objects are left alone, so their controllers keep their index.
      *
      * @param index the index of the ControllerIndex that will be returned
      * @return The internal ControllerIndex object for the passed index.
@@ -409,26 +587,28 @@ public class ControllerManager {
      */
     public int getNumControllers() {
         verifyInitialized();
-        return nativeGetNumRollers();
-    }
-    private native int nativeGetNumRollers(); /*
-        int numJoysticks = SDL_NumJoysticks();
+        pollingThread.verify();
+        int numJoysticks = backend.getNumDevices();
 
         int numGamepads = 0;
 
         for(int i = 0; i < numJoysticks; i++) {
-            if(SDL_IsGameController(i)) {
+            if(backend.isGameController(i)) {
                 numGamepads++;
             }
         }
 
         return numGamepads;
-    */
+    }
 
     /**
      * Refresh the connected controllers in the controller list if something has been connected or
      * unplugged.
      *
+     * Only the affected entries are touched: an unplugged controller is closed, and a newly plugged
+     * in controller is connected to the first free ControllerIndex. All other controllers stay
+     * connected as they are, so a controller keeps its index as long as it is plugged in.
+     *
      * If there hasn't been a change in whether controller are connected or not, nothing will happen.
      *
      * @return True if the controller list was refreshed, false otherwise
@@ -436,23 +616,217 @@ public class ControllerManager {
      */
     public boolean update() {
         verifyInitialized();
-        if (nativeControllerConnectedOrDisconnected()) {
-            for (int i = 0; i < controllers.length; i++) {
-                controllers[i].reconnectController();
+        verifyNotSampled();
+        int numHotplugEvents;
+        if(eventBuffer != null) {
+            numHotplugEvents = backend.pumpEvents(eventBuffer.getRing(), eventBuffer.getTail(), eventBuffer.getCapacity(),
+                    hotplugEvents, MAX_HOTPLUG_EVENTS, sensorStaging, sensorStagingCapacity);
+            eventBuffer.publish();
+        } else {
+            numHotplugEvents = backend.pumpEvents(null, 0, 0, hotplugEvents, MAX_HOTPLUG_EVENTS,
+                    sensorStaging, sensorStagingCapacity);
+        }
+
+        boolean refreshed = numHotplugEvents != 0 && handleHotplugEvents(numHotplugEvents);
+        distributeSensorSamples();
+        connectPendingHaptics();
+        return refreshed;
+    }
+
+    /**
+     * Make the attempts to connect the audio devices of DualSense controllers the scheduler asked for.
+     */
+    private void connectPendingHaptics() {
+        if(hapticsScanRequested.get() && hapticsScanRequested.getAndSet(false)) {
+            for(ControllerIndex controller : controllers) {
+                controller.connectPendingHaptics();
             }
-            return true;
         }
-        return false;
     }
-    private native boolean nativeControllerConnectedOrDisconnected(); /*
-        SDL_JoystickUpdate();
-        while (SDL_PollEvent(&event)) {
-            if (event.type == SDL_JOYDEVICEADDED || event.type == SDL_JOYDEVICEREMOVED) {
-                return JNI_TRUE;
+
+    /**
+     * Hand the sensor updates of the last pump to the SensorSampleBuffer of their controller.
+     * Updates of controllers that aren't connected to one of our ControllerIndex objects are dropped.
+     */
+    private void distributeSensorSamples() {
+        if(sensorStaging == null) {
+            return;
+        }
+
+        int numDropped = sensorStaging.getInt(SENSOR_STAGING_DROPPED);
+        if(numDropped > 0) {
+            droppedSensorSamples.addAndGet(numDropped);
+        }
+        int numRecords = sensorStaging.getInt(SENSOR_STAGING_COUNT);
+        ControllerIndex controller = null;
+        for(int i = 0; i < numRecords; i++) {
+            int record = SENSOR_STAGING_RECORDS + i * SENSOR_RECORD_SIZE;
+            int instanceID = sensorStaging.getInt(record + SENSOR_RECORD_INSTANCE_ID);
+            // Updates usually come in runs of the same controller
+            if(controller == null || controller.getCachedInstanceID() != instanceID) {
+                controller = findControllerByInstanceID(instanceID);
+                if(controller == null) {
+                    continue;
+                }
+            }
+            controller.addSensorSample(sensorStaging.getInt(record + SENSOR_RECORD_TYPE),
+                    sensorStaging.getLong(record + SENSOR_RECORD_TIMESTAMP),
+                    sensorStaging.getFloat(record + SENSOR_RECORD_DATA),
+                    sensorStaging.getFloat(record + SENSOR_RECORD_DATA + 4),
+                    sensorStaging.getFloat(record + SENSOR_RECORD_DATA + 8));
+        }
+    }
+
+    /**
+     * Close the controllers that were unplugged and connect the ones that were plugged in.
+     *
+     * @param numHotplugEvents The number of events in hotplugEvents, or -1 if there were too many to record
+     * @return Whether or not a controller was plugged in or unplugged
+     */
+    private boolean handleHotplugEvents(int numHotplugEvents) {
+        boolean deviceAdded = false;
+        boolean deviceRemoved = false;
+        if(numHotplugEvents < 0) {
+            // We don't know what happened, so check every controller
+            for(ControllerIndex controller : controllers) {
+                if(controller.getHandle() != 0 && !controller.isConnected()) {
+                    controller.close();
+                } else {
+                    controller.refreshPowerLevel();
+                }
+            }
+            deviceAdded = true;
+            deviceRemoved = true;
+        } else {
+            for(int i = 0; i < numHotplugEvents; i++) {
+                ControllerIndex controller;
+                switch(hotplugEvents[i * 2]) {
+                    case ControllerBackend.HOTPLUG_ADDED:
+                        deviceAdded = true;
+                        break;
+                    case ControllerBackend.HOTPLUG_REMOVED:
+                        deviceRemoved = true;
+                        controller = findControllerByInstanceID(hotplugEvents[i * 2 + 1]);
+                        if(controller != null) {
+                            controller.close();
+                        }
+                        break;
+                    case ControllerBackend.HOTPLUG_BATTERY:
+                        controller = findControllerByInstanceID(hotplugEvents[i * 2 + 1]);
+                        if(controller != null) {
+                            controller.refreshPowerLevel();
+                        }
+                        break;
+                }
+            }
+        }
+
+        if(deviceAdded) {
+            connectNewControllers();
+        }
+        return deviceAdded || deviceRemoved;
+    }
+
+    /**
+     * Connect every game controller SDL knows about, but which isn't connected to one of our
+     * ControllerIndex objects yet, to the first free ControllerIndex.
+     *
+     * The device indices in the hotplug events aren't used directly, since they shift when a
+     * device with a lower index is removed in the same batch of events.
+     */
+    private void connectNewControllers() {
+        int numJoysticks = backend.getNumDevices();
+        for(int deviceIndex = 0; deviceIndex < numJoysticks; deviceIndex++) {
+            if(!backend.isGameController(deviceIndex)) {
+                continue;
+            }
+            if(findControllerByInstanceID(backend.getDeviceInstanceID(deviceIndex)) != null) {
+                continue;
+            }
+
+            ControllerIndex freeController = null;
+            for(ControllerIndex controller : controllers) {
+                if(controller.getHandle() == 0) {
+                    freeController = controller;
+                    break;
+                }
+            }
+            if(freeController == null) {
+                return;
+            }
+            freeController.connectDevice(deviceIndex);
+        }
+    }
+
+    private ControllerIndex findControllerByInstanceID(int instanceID) {
+        for(ControllerIndex controller : controllers) {
+            if(controller.getHandle() != 0 && controller.getCachedInstanceID() == instanceID) {
+                return controller;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Attach a virtual controller, whose inputs are set from Java. It is connected to a
+     * ControllerIndex by the next update(), getState() or pollAll() like a controller that was
+     * plugged in, and from then on read like any other controller. Use it to load test the input
+     * handling with many players, or to feed inputs received over the network into it.
+     *
+     * With the default SDL backend it is a joystick of SDL's virtual joystick driver, which works
+     * without any gamepad or display. SDL can't emulate touchpads and sensors on it, use an
+     * {@link InMemoryControllerBackend} for layouts with those.
+     *
+     * @param layout The buttons, axes, touchpad and sensors of the controller
+     * @return The new controller. It is detached by quitSDLGamepad() at the latest.
+     * @throws IllegalStateException if Jamepad was not initialized or the controller couldn't be attached
+     * @throws IllegalArgumentException if the backend can't emulate the layout
+     */
+    public VirtualController attachVirtualController(VirtualControllerLayout layout) throws IllegalStateException {
+        verifyInitialized();
+        if(layout.numTouchpadFingers < 0 || layout.numTouchpadFingers > ControllerIndex.SNAPSHOT_MAX_TOUCH_POINTS) {
+            throw new IllegalArgumentException("The number of touchpad fingers must be between 0 and "
+                    + ControllerIndex.SNAPSHOT_MAX_TOUCH_POINTS + "!");
+        }
+        pollingThread.verify();
+
+        long handle = backend.attachVirtual(layout);
+        if(handle == 0) {
+            throw new IllegalStateException("Failed to attach the virtual controller: " + backend.getLastError());
+        }
+        VirtualController virtualController = new VirtualController(backend, pollingThread, handle, layout);
+        for(int i = virtualControllers.size() - 1; i >= 0; i--) {
+            if(!virtualControllers.get(i).isAttached()) {
+                virtualControllers.remove(i);
             }
         }
-        return JNI_FALSE;
-    */
+        virtualControllers.add(virtualController);
+        return virtualController;
+    }
+
+    /**
+     * Returns the buffer that records all controller events SDL reports while update(), getState()
+     * or pollAll() are called. Use it if you need every button press or sensor reading, even those
+     * that happen between two polls.
+     *
+     * @return The event buffer, or null if it is not enabled in the {@link Configuration}
+     */
+    public ControllerEventBuffer getEventBuffer() {
+        return eventBuffer;
+    }
+
+    /**
+     * Sensor readings are collected while SDL is pumped, and handed to the SensorSampleBuffer of
+     * their controller afterwards. If more readings arrive between two polls than
+     * {@link Configuration#sensorBufferCapacity} times the number of controllers, the rest are
+     * dropped before they reach any SensorSampleBuffer, so they aren't counted by
+     * SensorSampleBuffer.getDroppedSamples(). Poll more often if this grows.
+     *
+     * @return The number of sensor readings that were dropped while pumping SDL
+     */
+    public long getDroppedSensorSamples() {
+        return droppedSensorSamples.get();
+    }
 
     /**
      * This method adds mappings held in the specified file. The file is copied to the temp folder so
@@ -463,6 +837,7 @@ public class ControllerManager {
      * @throws IllegalStateException if the mappings cannot be applied to SDL
      */
     public void addMappingsFromFile(String path) throws IOException, IllegalStateException {
+        pollingThread.verify();
         InputStream source = getClass().getResourceAsStream(path);
         if(source==null) source = ClassLoader.getSystemResourceAsStream(path);
         if(source==null) throw new IOException("Cannot open resource from classpath "+path);
@@ -478,7 +853,7 @@ public class ControllerManager {
             }
 
             byte[] b = buffer.toByteArray();
-            if(!nativeAddMappingsFromBuffer(b, b.length)) {
+            if(!backend.addMappingsFromBuffer(b, b.length)) {
                 throw new IllegalStateException("Failed to set SDL controller mappings! Falling back to build in SDL mappings.");
             }
         }
@@ -491,7 +866,7 @@ public class ControllerManager {
 
             Files.copy(source, extractedLoc, StandardCopyOption.REPLACE_EXISTING);
 
-            if(!nativeAddMappingsFromFile(extractedLoc.toString())) {
+            if(!backend.addMappingsFromFile(extractedLoc.toString())) {
                 throw new IllegalStateException("Failed to set SDL controller mappings! Falling back to build in SDL mappings.");
             }
 
@@ -499,44 +874,22 @@ public class ControllerManager {
         }
     }
 
-    private native boolean nativeAddMappingsFromFile(String path); /*
-        if(SDL_GameControllerAddMappingsFromFile(path) < 0) {
-            printf("NATIVE METHOD: Failed to load mappings from \"%s\"\n", path);
-            printf("               %s\n", SDL_GetError());
-            return JNI_FALSE;
-        }
-
-        return JNI_TRUE;
-    */
-
-    private native boolean nativeAddMappingsFromBuffer(byte[] buffer, int length); /*
-        SDL_RWops *rw = SDL_RWFromMem(buffer, length);
-
-        if(rw == NULL) {
-            printf("NATIVE METHOD: Failed to create SDL_RWFromMem");
-            printf("               %s\n", SDL_GetError());
-            return JNI_FALSE;
-        }
-
-        if(SDL_GameControllerAddMappingsFromRW(rw, 1) < 0) {
-            printf("NATIVE METHOD: Failed to load mappings from SDL_RWFromMem");
-            printf("               %s\n", SDL_GetError());
-            return JNI_FALSE;
-        }
-
-        return JNI_TRUE;
-    */
-
     /**
      * @return last error message logged by the native lib. Use this for debugging purposes.
      */
-    public native String getLastNativeError(); /*
-        return env->NewStringUTF(SDL_GetError());
-    */
+    public String getLastNativeError() {
+        return backend.getLastError();
+    }
+
+    public String getCurrentAudioDriverName() {
+        return backend.getCurrentAudioDriverName();
+    }
 
-    public native String getCurrentAudioDriverName(); /*
-        return env->NewStringUTF(SDL_GetError());
-    */
+    private void verifyNotSampled() throws IllegalStateException {
+        if(!pollingThread.isCurrent()) {
+            throw new IllegalStateException("Controllers are read by the ControllerSampler, use its getState() instead!");
+        }
+    }
 
     private boolean verifyInitialized() throws IllegalStateException {
         if(!isInitialized) {
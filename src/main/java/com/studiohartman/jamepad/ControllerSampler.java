@@ -0,0 +1,326 @@
+package com.studiohartman.jamepad;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads all controllers on a background thread at a fixed rate, independent of the frame rate of
+ * your application. Start it with ControllerManager.startSampler().
+ *
+ * The latest state of every controller is published after every sample and can be read from any
+ * thread with getState(). Readers never block the sampler thread, and the sampler thread never
+ * waits for readers. A reader only has to read again if the sampler published a new state while
+ * it was reading.
+ *
+ * The just pressed and just released values are relative to the state that was last read into the
+ * passed MutableControllerState, not to the previous sample. That way a reader running at 60 Hz
+ * still sees a press the sampler picked up at 1000 Hz. Presses that are released again before the
+ * reader looks are not visible here; use the {@link ControllerEventBuffer} if you need those.
+ * The same goes for the gyro aiming deltas: they cover all samples since the last read.
+ *
+ * While the sampler is running, its thread owns the controllers. SDL is pumped by it only, and a
+ * controller that is unplugged is closed by it. ControllerManager.update(), getState(), pollAll(),
+ * the output methods of the ControllerManager and the methods of ControllerIndex, HapticsMixer and
+ * VirtualController throw an exception when called from another thread. Use execute() to run them
+ * on the sampler thread, e.g. to rumble a controller or to tick its HapticsMixer.
+ */
+public final class ControllerSampler {
+    // Layout of the published state of one controller in published
+    private static final int SLOT_FRAME = 0;
+    private static final int SLOT_TIMESTAMP = 1;
+    private static final int SLOT_FLAGS = 2;
+    private static final int SLOT_AXES = 3;
+    private static final int SLOT_TOUCH = 9;
+    private static final int SLOT_SENSOR = 17;
+    private static final int SLOT_SENSOR_TIMESTAMP = 23;
+    // Running totals of the gyro aiming deltas as doubles, readers take the difference to their last read
+    private static final int SLOT_AIM_TOTAL = 24;
+    private static final int SLOTS_PER_CONTROLLER = 26;
+
+    // The lower 32 bits of SLOT_FLAGS hold the button mask
+    private static final long FLAG_CONNECTED = 1L << 32;
+    private static final long FLAG_TOUCHPAD = 1L << 33;
+    private static final long FLAG_SENSOR = 1L << 34;
+
+    private final ControllerManager manager;
+    private final PollingThread pollingThread;
+    private final long periodNanos;
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile long numSamples;
+    // Run by the sampler thread before its next sample
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+    // Only touched by the sampler thread
+    private final MutableControllerState[] samples;
+    private final double[] aimTotalYaw;
+    private final double[] aimTotalPitch;
+
+    // Seqlock protecting published and publishedNames: odd while the sampler is writing
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLongArray published;
+    private final AtomicReferenceArray<String> publishedNames;
+
+    ControllerSampler(ControllerManager manager, PollingThread pollingThread, int numControllers, int samplesPerSecond) {
+        if(samplesPerSecond <= 0) {
+            throw new IllegalArgumentException("The sample rate must be greater than 0!");
+        }
+        this.manager = manager;
+        this.pollingThread = pollingThread;
+        this.periodNanos = 1_000_000_000L / samplesPerSecond;
+
+        samples = new MutableControllerState[numControllers];
+        for(int i = 0; i < samples.length; i++) {
+            samples[i] = new MutableControllerState();
+        }
+        aimTotalYaw = new double[numControllers];
+        aimTotalPitch = new double[numControllers];
+        published = new AtomicLongArray(numControllers * SLOTS_PER_CONTROLLER);
+        publishedNames = new AtomicReferenceArray<>(numControllers);
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, "Jamepad sampler");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        running = true;
+        pollingThread.setOwner(thread);
+        thread.start();
+    }
+
+    /**
+     * Stop the sampler thread and wait until it is done.
+     */
+    void stop() {
+        running = false;
+        if(Thread.currentThread() == thread) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run a command on the sampler thread, before the next sample. While the sampler runs, the
+     * controllers can only be used from its thread, so this is how other threads rumble a controller,
+     * send haptic feedback, tick a HapticsMixer or set the inputs of a VirtualController. Commands
+     * run in the order they were passed. A command that throws is reported and doesn't stop the
+     * sampler. Commands still queued when the sampler stops are not run.
+     *
+     * @param command The command to run, it shouldn't block, since it delays the next sample
+     * @return false if the sampler doesn't run, then the command is not run either
+     */
+    public boolean execute(Runnable command) {
+        if(command == null) {
+            throw new IllegalArgumentException("The command must not be null!");
+        }
+        if(!running) {
+            return false;
+        }
+        commands.add(command);
+        return true;
+    }
+
+    /**
+     * @return Whether or not the sampler thread is running. It stops if Jamepad is shut down or if
+     *         reading the controllers failed.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return The number of samples taken so far.
+     */
+    public long getNumSamples() {
+        return numSamples;
+    }
+
+    private void sample() {
+        try {
+            sampleUntilStopped();
+        } catch (IllegalStateException e) {
+            // Jamepad was shut down under our feet
+        } catch (RuntimeException e) {
+            System.err.println("The ControllerSampler stopped, reading the controllers failed:");
+            e.printStackTrace();
+        } finally {
+            // Give the controllers back before a new sampler can be started
+            pollingThread.setOwner(null);
+            commands.clear();
+            running = false;
+        }
+    }
+
+    private void sampleUntilStopped() {
+        long nextSample = System.nanoTime();
+        while(running) {
+            runCommands();
+            manager.pollAll(samples);
+            publish();
+            numSamples++;
+
+            nextSample += periodNanos;
+            long waitTime = nextSample - System.nanoTime();
+            if(waitTime > 0) {
+                LockSupport.parkNanos(this, waitTime);
+            } else {
+                // We fell behind, don't try to catch up with a burst of samples
+                nextSample = System.nanoTime();
+            }
+        }
+    }
+
+    private void runCommands() {
+        Runnable command;
+        while((command = commands.poll()) != null) {
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                System.err.println("A command passed to ControllerSampler.execute() failed:");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void publish() {
+        long seq = sequence.incrementAndGet();
+
+        for(int i = 0; i < samples.length; i++) {
+            MutableControllerState s = samples[i];
+            int base = i * SLOTS_PER_CONTROLLER;
+
+            long flags = s.buttonMask & 0xFFFFFFFFL;
+            if(s.isConnected) {
+                flags |= FLAG_CONNECTED;
+            }
+            if(s.hasTouchpadData) {
+                flags |= FLAG_TOUCHPAD;
+            }
+            if(s.hasSensorData) {
+                flags |= FLAG_SENSOR;
+            }
+
+            published.lazySet(base + SLOT_FRAME, s.frame);
+            published.lazySet(base + SLOT_TIMESTAMP, s.timestamp);
+            published.lazySet(base + SLOT_FLAGS, flags);
+            putFloat(base + SLOT_AXES, s.leftStickX);
+            putFloat(base + SLOT_AXES + 1, s.leftStickY);
+            putFloat(base + SLOT_AXES + 2, s.rightStickX);
+            putFloat(base + SLOT_AXES + 3, s.rightStickY);
+            putFloat(base + SLOT_AXES + 4, s.leftTrigger);
+            putFloat(base + SLOT_AXES + 5, s.rightTrigger);
+            putTouch(base + SLOT_TOUCH, s.touchStateFinger0);
+            putTouch(base + SLOT_TOUCH + 4, s.touchStateFinger1);
+            putFloat(base + SLOT_SENSOR, s.sensorState.getAccelX());
+            putFloat(base + SLOT_SENSOR + 1, s.sensorState.getAccelY());
+            putFloat(base + SLOT_SENSOR + 2, s.sensorState.getAccelZ());
+            putFloat(base + SLOT_SENSOR + 3, s.sensorState.getGyroX());
+            putFloat(base + SLOT_SENSOR + 4, s.sensorState.getGyroY());
+            putFloat(base + SLOT_SENSOR + 5, s.sensorState.getGyroZ());
+            published.lazySet(base + SLOT_SENSOR_TIMESTAMP, s.sensorState.getTimestamp());
+            aimTotalYaw[i] += s.aimDeltaYaw;
+            aimTotalPitch[i] += s.aimDeltaPitch;
+            published.lazySet(base + SLOT_AIM_TOTAL, Double.doubleToRawLongBits(aimTotalYaw[i]));
+            published.lazySet(base + SLOT_AIM_TOTAL + 1, Double.doubleToRawLongBits(aimTotalPitch[i]));
+            publishedNames.lazySet(i, s.controllerType);
+        }
+
+        sequence.set(seq + 1);
+    }
+
+    private void putFloat(int slot, float value) {
+        published.lazySet(slot, Float.floatToRawIntBits(value));
+    }
+
+    private void putTouch(int slot, TouchState touchState) {
+        published.lazySet(slot, touchState.getState() ? 1 : 0);
+        putFloat(slot + 1, touchState.getX());
+        putFloat(slot + 2, touchState.getY());
+        putFloat(slot + 3, touchState.getPressure());
+    }
+
+    private float getFloat(int slot) {
+        return Float.intBitsToFloat((int) published.get(slot));
+    }
+
+    /**
+     * Fill the passed state with the latest sample of the controller at the passed index. This can
+     * be called from any thread. Use one MutableControllerState per reader and controller, since
+     * the just pressed and just released values are computed against its previous content.
+     *
+     * @param index The index of the controller to be read
+     * @param target The state object that will be filled
+     * @return Whether or not the controller was connected in the latest sample
+     */
+    public boolean getState(int index, MutableControllerState target) {
+        if(index < 0 || index >= samples.length) {
+            target.setDisconnected();
+            return false;
+        }
+
+        int previousButtonMask = target.isConnected ? target.buttonMask : 0;
+        boolean hasAimTotal = target.isConnected;
+        double previousAimYaw = target.aimTotalYaw;
+        double previousAimPitch = target.aimTotalPitch;
+        while(true) {
+            long seq = sequence.get();
+            if((seq & 1) == 0) {
+                read(index, target, previousButtonMask, hasAimTotal, previousAimYaw, previousAimPitch);
+                if(sequence.get() == seq) {
+                    return target.isConnected;
+                }
+            }
+        }
+    }
+
+    private void read(int index, MutableControllerState target, int previousButtonMask,
+                      boolean hasAimTotal, double previousAimYaw, double previousAimPitch) {
+        int base = index * SLOTS_PER_CONTROLLER;
+
+        long flags = published.get(base + SLOT_FLAGS);
+        if((flags & FLAG_CONNECTED) == 0) {
+            target.setDisconnected();
+        } else {
+            target.isConnected = true;
+            target.controllerType = publishedNames.get(index);
+            target.setAxes(getFloat(base + SLOT_AXES), getFloat(base + SLOT_AXES + 1),
+                    getFloat(base + SLOT_AXES + 2), getFloat(base + SLOT_AXES + 3),
+                    getFloat(base + SLOT_AXES + 4), getFloat(base + SLOT_AXES + 5));
+
+            int buttonMask = (int) flags;
+            int changedButtons = buttonMask ^ previousButtonMask;
+            target.setButtons(buttonMask, changedButtons & buttonMask, changedButtons & previousButtonMask);
+
+            target.hasTouchpadData = (flags & FLAG_TOUCHPAD) != 0;
+            target.touchStateFinger0.update(published.get(base + SLOT_TOUCH) != 0,
+                    getFloat(base + SLOT_TOUCH + 1), getFloat(base + SLOT_TOUCH + 2), getFloat(base + SLOT_TOUCH + 3));
+            target.touchStateFinger1.update(published.get(base + SLOT_TOUCH + 4) != 0,
+                    getFloat(base + SLOT_TOUCH + 5), getFloat(base + SLOT_TOUCH + 6), getFloat(base + SLOT_TOUCH + 7));
+
+            target.hasSensorData = (flags & FLAG_SENSOR) != 0;
+            target.sensorState.update(getFloat(base + SLOT_SENSOR), getFloat(base + SLOT_SENSOR + 1), getFloat(base + SLOT_SENSOR + 2),
+                    getFloat(base + SLOT_SENSOR + 3), getFloat(base + SLOT_SENSOR + 4), getFloat(base + SLOT_SENSOR + 5),
+                    published.get(base + SLOT_SENSOR_TIMESTAMP));
+
+            target.aimTotalYaw = Double.longBitsToDouble(published.get(base + SLOT_AIM_TOTAL));
+            target.aimTotalPitch = Double.longBitsToDouble(published.get(base + SLOT_AIM_TOTAL + 1));
+            target.aimDeltaYaw = hasAimTotal ? (float) (target.aimTotalYaw - previousAimYaw) : 0;
+            target.aimDeltaPitch = hasAimTotal ? (float) (target.aimTotalPitch - previousAimPitch) : 0;
+        }
+        target.setFrame(published.get(base + SLOT_FRAME), published.get(base + SLOT_TIMESTAMP));
+    }
+}
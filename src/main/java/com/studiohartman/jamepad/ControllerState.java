@@ -18,7 +18,8 @@ import java.io.Serializable;
  */
 public final class ControllerState implements Serializable {
     private static final ControllerState DISCONNECTED_CONTROLLER = new ControllerState();
-    private static final long serialVersionUID = -3068755590868647792L;
+    // Changed with the button masks and aim deltas, a state of an older version would read as no button pressed
+    private static final long serialVersionUID = -3924301122237295418L;
 
     /**
      * Whether or not the controller is currently connected.
@@ -267,6 +268,21 @@ public final class ControllerState implements Serializable {
     public final boolean touchpadButton;
     public final boolean touchpadButtonJustPressed;
 
+    /**
+     * All buttons that are pressed. Bit n is set for the button with ordinal n, see {@link ControllerButton#mask()}
+     */
+    public final int buttonMask;
+
+    /**
+     * All buttons that were just pressed, see {@link ControllerButton#mask()}
+     */
+    public final int justPressedMask;
+
+    /**
+     * All buttons that were just released, see {@link ControllerButton#mask()}
+     */
+    public final int justReleasedMask;
+
     /**
      * PS4/PS5 touchpad information for the finger with index 0.
      * If enhanced Sony controller features are
@@ -295,19 +311,53 @@ public final class ControllerState implements Serializable {
     public SensorState sensorState = null;
 
     /**
-     * Return a controller state based on the current state of the passed controller.
+     * The degrees the camera should turn to the right since the previous poll, from gyro aiming and
+     * the flick stick. 0 unless enabled through ControllerIndex.getGyroAim().
+     */
+    public final float aimDeltaYaw;
+
+    /**
+     * The degrees the camera should tilt up since the previous poll, from gyro aiming. 0 unless
+     * enabled through ControllerIndex.getGyroAim().
+     */
+    public final float aimDeltaPitch;
+
+    /**
+     * @param button The ControllerButton to check
+     * @return Whether or not the button is pressed
+     */
+    public boolean isPressed(ControllerButton button) {
+        return (buttonMask & button.mask()) != 0;
+    }
+
+    /**
+     * @param button The ControllerButton to check
+     * @return Whether or not the button was just pressed
+     */
+    public boolean isJustPressed(ControllerButton button) {
+        return (justPressedMask & button.mask()) != 0;
+    }
+
+    /**
+     * @param button The ControllerButton to check
+     * @return Whether or not the button was just released
+     */
+    public boolean isJustReleased(ControllerButton button) {
+        return (justReleasedMask & button.mask()) != 0;
+    }
+
+    /**
+     * Return an immutable copy of the passed controller state.
      *
-     * If the controller a disconnected mid-read, the disconnected controller is returned, and the
-     * pre-disconnection read data is ignored.
+     * If the passed state belongs to a disconnected controller, the shared disconnected instance is returned.
      *
-     * @param c The ControllerIndex object whose state should be read.
+     * @param state The state that should be copied.
      */
-    static ControllerState getInstanceFromController(ControllerIndex c) {
-        try {
-            return new ControllerState(c);
-        } catch (ControllerUnpluggedException e) {
+    static ControllerState getInstanceFromState(MutableControllerState state) {
+        if(!state.isConnected) {
             return DISCONNECTED_CONTROLLER;
         }
+        return new ControllerState(state);
     }
 
     /**
@@ -319,78 +369,79 @@ public final class ControllerState implements Serializable {
         return DISCONNECTED_CONTROLLER;
     }
 
-    private ControllerState(ControllerIndex c) throws ControllerUnpluggedException {
-        isConnected = true;
-        controllerType = c.getName();
-        leftStickX = c.getAxisState(ControllerAxis.LEFTX);
-        leftStickY = c.getAxisState(ControllerAxis.LEFTY);
-        rightStickX = c.getAxisState(ControllerAxis.RIGHTX);
-        rightStickY = c.getAxisState(ControllerAxis.RIGHTY);
-        leftStickAngle = (float) Math.toDegrees(Math.atan2(leftStickY, leftStickX));
-        leftStickMagnitude = (float) Math.sqrt((leftStickX * leftStickX) + (leftStickY * leftStickY));
-        rightStickAngle = (float) Math.toDegrees(Math.atan2(rightStickY, rightStickX));
-        rightStickMagnitude = (float) Math.sqrt((rightStickX * rightStickX) + (rightStickY * rightStickY));
-        leftTrigger = c.getAxisState(ControllerAxis.TRIGGERLEFT);
-        rightTrigger = c.getAxisState(ControllerAxis.TRIGGERRIGHT);
-
-        leftStickJustClicked = c.isButtonJustPressed(ControllerButton.LEFTSTICK);
-        rightStickJustClicked = c.isButtonJustPressed(ControllerButton.RIGHTSTICK);
-        leftStickClick = c.isButtonPressed(ControllerButton.LEFTSTICK);
-        rightStickClick = c.isButtonPressed(ControllerButton.RIGHTSTICK);
-
-        aJustPressed = c.isButtonJustPressed(ControllerButton.A);
-        bJustPressed = c.isButtonJustPressed(ControllerButton.B);
-        xJustPressed = c.isButtonJustPressed(ControllerButton.X);
-        yJustPressed = c.isButtonJustPressed(ControllerButton.Y);
-        lbJustPressed = c.isButtonJustPressed(ControllerButton.LEFTBUMPER);
-        rbJustPressed = c.isButtonJustPressed(ControllerButton.RIGHTBUMPER);
-        startJustPressed = c.isButtonJustPressed(ControllerButton.START);
-        backJustPressed = c.isButtonJustPressed(ControllerButton.BACK);
-        guideJustPressed = c.isButtonJustPressed(ControllerButton.GUIDE);
-        dpadUpJustPressed = c.isButtonJustPressed(ControllerButton.DPAD_UP);
-        dpadDownJustPressed = c.isButtonJustPressed(ControllerButton.DPAD_DOWN);
-        dpadLeftJustPressed = c.isButtonJustPressed(ControllerButton.DPAD_LEFT);
-        dpadRightJustPressed = c.isButtonJustPressed(ControllerButton.DPAD_RIGHT);
-        misc1JustPressed = c.isButtonJustPressed(ControllerButton.BUTTON_MISC1);
-        paddle1JustPressed = c.isButtonJustPressed(ControllerButton.BUTTON_PADDLE1);
-        paddle2JustPressed = c.isButtonJustPressed(ControllerButton.BUTTON_PADDLE2);
-        paddle3JustPressed = c.isButtonJustPressed(ControllerButton.BUTTON_PADDLE3);
-        paddle4JustPressed = c.isButtonJustPressed(ControllerButton.BUTTON_PADDLE4);
-        touchpadButtonJustPressed = c.isButtonJustPressed(ControllerButton.BUTTON_TOUCHPAD);
-
-        a = c.isButtonPressed(ControllerButton.A);
-        b = c.isButtonPressed(ControllerButton.B);
-        x = c.isButtonPressed(ControllerButton.X);
-        y = c.isButtonPressed(ControllerButton.Y);
-        lb = c.isButtonPressed(ControllerButton.LEFTBUMPER);
-        rb = c.isButtonPressed(ControllerButton.RIGHTBUMPER);
-        start = c.isButtonPressed(ControllerButton.START);
-        back = c.isButtonPressed(ControllerButton.BACK);
-        guide = c.isButtonPressed(ControllerButton.GUIDE);
-        dpadUp = c.isButtonPressed(ControllerButton.DPAD_UP);
-        dpadDown = c.isButtonPressed(ControllerButton.DPAD_DOWN);
-        dpadLeft = c.isButtonPressed(ControllerButton.DPAD_LEFT);
-        dpadRight = c.isButtonPressed(ControllerButton.DPAD_RIGHT);
-        misc1 = c.isButtonPressed(ControllerButton.BUTTON_MISC1);
-        paddle1 = c.isButtonPressed(ControllerButton.BUTTON_PADDLE1);
-        paddle2 = c.isButtonPressed(ControllerButton.BUTTON_PADDLE2);
-        paddle3 = c.isButtonPressed(ControllerButton.BUTTON_PADDLE3);
-        paddle4 = c.isButtonPressed(ControllerButton.BUTTON_PADDLE4);
-        touchpadButton = c.isButtonPressed(ControllerButton.BUTTON_TOUCHPAD);
-
-        if(c.isUsingSonyControllerFeatures()) {
-            if(c.isSupportingTouchpadData()) {
-                touchStateFinger0 = new TouchState();
-                touchStateFinger0.update(c.getTouchpadFinger(0));
-                touchStateFinger1 = new TouchState();
-                touchStateFinger1.update(c.getTouchpadFinger(0));
-            }
-
-            if(c.isSupportingSensorData()) {
-                sensorState = new SensorState();
-                sensorState.update(c.getSensorState());
-            }
+    private ControllerState(MutableControllerState state) {
+        isConnected = state.isConnected;
+        controllerType = state.controllerType;
+        leftStickX = state.leftStickX;
+        leftStickY = state.leftStickY;
+        rightStickX = state.rightStickX;
+        rightStickY = state.rightStickY;
+        leftStickAngle = state.getLeftStickAngle();
+        leftStickMagnitude = state.getLeftStickMagnitude();
+        rightStickAngle = state.getRightStickAngle();
+        rightStickMagnitude = state.getRightStickMagnitude();
+        leftStickClick = state.leftStickClick;
+        rightStickClick = state.rightStickClick;
+        leftTrigger = state.leftTrigger;
+        rightTrigger = state.rightTrigger;
+        leftStickJustClicked = state.leftStickJustClicked;
+        rightStickJustClicked = state.rightStickJustClicked;
+        a = state.a;
+        b = state.b;
+        x = state.x;
+        y = state.y;
+        lb = state.lb;
+        rb = state.rb;
+        start = state.start;
+        back = state.back;
+        guide = state.guide;
+        dpadUp = state.dpadUp;
+        dpadDown = state.dpadDown;
+        dpadLeft = state.dpadLeft;
+        dpadRight = state.dpadRight;
+        aJustPressed = state.aJustPressed;
+        bJustPressed = state.bJustPressed;
+        xJustPressed = state.xJustPressed;
+        yJustPressed = state.yJustPressed;
+        lbJustPressed = state.lbJustPressed;
+        rbJustPressed = state.rbJustPressed;
+        startJustPressed = state.startJustPressed;
+        backJustPressed = state.backJustPressed;
+        guideJustPressed = state.guideJustPressed;
+        dpadUpJustPressed = state.dpadUpJustPressed;
+        dpadDownJustPressed = state.dpadDownJustPressed;
+        dpadLeftJustPressed = state.dpadLeftJustPressed;
+        dpadRightJustPressed = state.dpadRightJustPressed;
+        misc1 = state.misc1;
+        misc1JustPressed = state.misc1JustPressed;
+        paddle1 = state.paddle1;
+        paddle1JustPressed = state.paddle1JustPressed;
+        paddle2 = state.paddle2;
+        paddle2JustPressed = state.paddle2JustPressed;
+        paddle3 = state.paddle3;
+        paddle3JustPressed = state.paddle3JustPressed;
+        paddle4 = state.paddle4;
+        paddle4JustPressed = state.paddle4JustPressed;
+        touchpadButton = state.touchpadButton;
+        touchpadButtonJustPressed = state.touchpadButtonJustPressed;
+        buttonMask = state.buttonMask;
+        justPressedMask = state.justPressedMask;
+        justReleasedMask = state.justReleasedMask;
+
+        if(state.hasTouchpadData) {
+            touchStateFinger0 = new TouchState();
+            touchStateFinger0.update(state.touchStateFinger0);
+            touchStateFinger1 = new TouchState();
+            touchStateFinger1.update(state.touchStateFinger1);
         }
+
+        if(state.hasSensorData) {
+            sensorState = new SensorState();
+            sensorState.update(state.sensorState);
+        }
+
+        aimDeltaYaw = state.aimDeltaYaw;
+        aimDeltaPitch = state.aimDeltaPitch;
     }
 
     private ControllerState() {
@@ -452,8 +503,14 @@ public final class ControllerState implements Serializable {
         paddle4 = false;
         touchpadButton = false;
 
+        buttonMask = 0;
+        justPressedMask = 0;
+        justReleasedMask = 0;
+
         touchStateFinger0 = null;
         touchStateFinger1 = null;
         sensorState = null;
+        aimDeltaYaw = 0;
+        aimDeltaPitch = 0;
     }
 }
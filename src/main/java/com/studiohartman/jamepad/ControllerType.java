@@ -0,0 +1,32 @@
+package com.studiohartman.jamepad;
+
+/**
+ * This is an enumerated type for the kind of a controller.
+ * <p>
+ * Derived from enum SDL_GameControllerType in SDL_gamecontroller.h.
+ */
+public enum ControllerType {
+    UNKNOWN,
+    XBOX360,
+    XBOXONE,
+    PS3,
+    PS4,
+    NINTENDO_SWITCH_PRO,
+    VIRTUAL,
+    PS5,
+    AMAZON_LUNA,
+    GOOGLE_STADIA,
+    NVIDIA_SHIELD,
+    NINTENDO_SWITCH_JOYCON_LEFT,
+    NINTENDO_SWITCH_JOYCON_RIGHT,
+    NINTENDO_SWITCH_JOYCON_PAIR;
+
+    public static ControllerType valueOf(int n) {
+        ControllerType[] types = ControllerType.values();
+        // Types added by newer SDL versions are unknown to us
+        if(n < 0 || n >= types.length) {
+            return UNKNOWN;
+        }
+        return types[n];
+    }
+}
@@ -0,0 +1,353 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Turns the gyroscope of a controller, and optionally its right stick as a flick stick, into
+ * camera movement. Every gyroscope reading between two polls is integrated with its own time
+ * step, so no motion is lost when the controller sends its readings faster than the game polls.
+ *
+ * The result of every poll is the rotation of the camera since the previous poll, in degrees. A
+ * positive yaw turns the camera to the right, a positive pitch tilts it up. Add them to the
+ * camera every frame, or use them as mouse movement for a pointer.
+ *
+ * <pre>
+ * GyroAim aim = controllers.getControllerIndex(0).getGyroAim();
+ * aim.setEnabled(true);
+ * aim.setFlickStick(true);
+ * ...
+ * controllers.getState(0, state);
+ * camera.yaw += state.aimDeltaYaw;
+ * camera.pitch += state.aimDeltaPitch;
+ * </pre>
+ *
+ * Every ControllerIndex has one, see ControllerIndex.getGyroAim(). It is fed with every reading
+ * if {@link Configuration#sensorBufferCapacity} is set, otherwise with the latest reading of
+ * every poll. The gyro bias of the GyroCalibration is already subtracted, and WORLD and PLAYER
+ * space take the direction of gravity from the SensorFusion. Read and configure it from the thread
+ * that polls the controller. All state is kept in primitive fields, so nothing is allocated.
+ */
+public final class GyroAim {
+    /**
+     * Which rotation of the controller turns the camera left and right
+     */
+    public enum Space {
+        /**
+         * Turning the controller around its own vertical axis. Simple, but turning a controller
+         * that is held tilted also moves the camera up or down.
+         */
+        LOCAL,
+        /**
+         * Turning the controller around the vertical axis of the room, no matter how it is held.
+         * Best for controllers held like a pointer or a steering wheel.
+         */
+        WORLD,
+        /**
+         * Turning or rolling the controller, whichever the player is doing, in the direction the
+         * room's vertical axis suggests. Works for every way of holding the controller, and is
+         * the best choice in most cases.
+         */
+        PLAYER
+    }
+
+    private static final float RADIANS_TO_DEGREES = (float) (180 / Math.PI);
+    // Time steps longer than this are treated as a gap in the data and not integrated
+    private static final float MAX_TIME_STEP = 0.1f;
+    // How much more a player has to turn than roll in PLAYER space
+    private static final float YAW_RELAX_FACTOR = 1.41f;
+
+    private final SensorFusion sensorFusion;
+
+    private boolean enabled;
+    private Space space = Space.PLAYER;
+    private float minSensitivity = 1;
+    private float maxSensitivity = 1;
+    private float slowThreshold;
+    private float fastThreshold;
+    private float tighteningThreshold;
+
+    private boolean flickStick;
+    private float flickThreshold = 0.9f;
+    private float flickTime = 0.1f;
+
+    // Accumulated since the last poll
+    private float pendingYaw;
+    private float pendingPitch;
+    private long lastGyroTimestamp = -1;
+
+    // Result of the last poll
+    private float deltaYaw;
+    private float deltaPitch;
+
+    // Flick stick state
+    private boolean flickActive;
+    private float lastStickAngle;
+    private float flickAngle;
+    private float flickProgress = 1;
+    private long lastFrameTimestamp = -1;
+
+    GyroAim(SensorFusion sensorFusion) {
+        this.sensorFusion = sensorFusion;
+    }
+
+    /**
+     * Turn the gyro aiming and flick stick on or off. Off by default. While it is off, the deltas
+     * are 0.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        reset();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Space getSpace() {
+        return space;
+    }
+
+    /**
+     * Set which rotation of the controller turns the camera left and right. PLAYER by default.
+     */
+    public void setSpace(Space space) {
+        if(space == null) {
+            throw new IllegalArgumentException("The space must not be null!");
+        }
+        this.space = space;
+    }
+
+    /**
+     * Set a constant sensitivity, without acceleration.
+     *
+     * @param sensitivity degrees the camera turns for every degree the controller turns
+     */
+    public void setSensitivity(float sensitivity) {
+        setAcceleration(sensitivity, sensitivity, 0, 0);
+    }
+
+    /**
+     * Set a sensitivity that depends on how fast the controller turns: slow turns for precise aiming,
+     * fast turns to quickly look around.
+     *
+     * @param minSensitivity the sensitivity at and below slowThreshold
+     * @param maxSensitivity the sensitivity at and above fastThreshold
+     * @param slowThreshold the speed of the controller in degrees per second where acceleration starts
+     * @param fastThreshold the speed of the controller in degrees per second where acceleration ends
+     */
+    public void setAcceleration(float minSensitivity, float maxSensitivity, float slowThreshold, float fastThreshold) {
+        if(minSensitivity < 0 || maxSensitivity < 0 || slowThreshold < 0 || fastThreshold < slowThreshold) {
+            throw new IllegalArgumentException("The sensitivities and thresholds must not be negative, and the fast threshold must not be smaller than the slow one!");
+        }
+        this.minSensitivity = minSensitivity;
+        this.maxSensitivity = maxSensitivity;
+        this.slowThreshold = slowThreshold;
+        this.fastThreshold = fastThreshold;
+    }
+
+    public float getMinSensitivity() {
+        return minSensitivity;
+    }
+
+    public float getMaxSensitivity() {
+        return maxSensitivity;
+    }
+
+    /**
+     * Set the speed below which rotation is scaled down towards 0. This hides the remaining noise of
+     * the gyroscope and the shaking of the player's hands, while slow deliberate turns still move the
+     * camera. 0 turns tightening off, a few degrees per second is usually enough.
+     *
+     * @param threshold the speed of the controller in degrees per second
+     */
+    public void setTightening(float threshold) {
+        if(threshold < 0) {
+            throw new IllegalArgumentException("The tightening threshold must not be negative!");
+        }
+        tighteningThreshold = threshold;
+    }
+
+    public float getTightening() {
+        return tighteningThreshold;
+    }
+
+    /**
+     * Turn the right stick into a flick stick. Pushing it to the edge turns the camera to the
+     * direction it points to within the flick time, and rotating it at the edge turns the camera
+     * by the same angle. Off by default.
+     */
+    public void setFlickStick(boolean flickStick) {
+        this.flickStick = flickStick;
+        flickActive = false;
+        flickProgress = 1;
+    }
+
+    public boolean isFlickStick() {
+        return flickStick;
+    }
+
+    /**
+     * @param threshold how far the stick has to be pushed for a flick, between 0 and 1. 0.9 by default.
+     * @param time how long a flick takes in seconds. 0.1 by default.
+     */
+    public void setFlick(float threshold, float time) {
+        if(threshold <= 0 || threshold > 1 || time < 0) {
+            throw new IllegalArgumentException("The flick threshold must be between 0 and 1 and the time must not be negative!");
+        }
+        flickThreshold = threshold;
+        flickTime = time;
+    }
+
+    /**
+     * @return The degrees the camera should turn to the right since the previous poll
+     */
+    public float getDeltaYaw() {
+        return deltaYaw;
+    }
+
+    /**
+     * @return The degrees the camera should tilt up since the previous poll
+     */
+    public float getDeltaPitch() {
+        return deltaPitch;
+    }
+
+    /**
+     * Forget all pending rotation and any flick in progress.
+     */
+    public void reset() {
+        pendingYaw = 0;
+        pendingPitch = 0;
+        lastGyroTimestamp = -1;
+        deltaYaw = 0;
+        deltaPitch = 0;
+        flickActive = false;
+        flickProgress = 1;
+        lastFrameTimestamp = -1;
+    }
+
+    /**
+     * Integrate a gyroscope reading with the bias already subtracted.
+     *
+     * @param timestamp the time of the reading in microseconds
+     */
+    void addGyroSample(long timestamp, float x, float y, float z) {
+        long previous = lastGyroTimestamp;
+        lastGyroTimestamp = timestamp;
+        if(!enabled || previous < 0 || timestamp <= previous) {
+            return;
+        }
+        float dt = (timestamp - previous) / 1_000_000f;
+        if(dt > MAX_TIME_STEP) {
+            return;
+        }
+
+        float yawSpeed;
+        float pitchSpeed;
+        if(space == Space.LOCAL) {
+            yawSpeed = y;
+            pitchSpeed = x;
+        } else {
+            // The direction of up in the frame of the controller
+            float upX = sensorFusion.getGravityX();
+            float upY = sensorFusion.getGravityY();
+            float upZ = sensorFusion.getGravityZ();
+            float length = (float) Math.sqrt(upX * upX + upY * upY + upZ * upZ);
+            if(length == 0) {
+                yawSpeed = y;
+                pitchSpeed = x;
+            } else {
+                upX /= length;
+                upY /= length;
+                upZ /= length;
+                if(space == Space.WORLD) {
+                    yawSpeed = x * upX + y * upY + z * upZ;
+                    // The x axis of the controller, made horizontal, is the axis the camera tilts around
+                    float pitchAxisX = 1 - upX * upX;
+                    float pitchAxisY = -upX * upY;
+                    float pitchAxisZ = -upX * upZ;
+                    float pitchAxisLength = (float) Math.sqrt(pitchAxisX * pitchAxisX + pitchAxisY * pitchAxisY + pitchAxisZ * pitchAxisZ);
+                    pitchSpeed = pitchAxisLength < 0.01f ? x
+                            : (x * pitchAxisX + y * pitchAxisY + z * pitchAxisZ) / pitchAxisLength;
+                } else {
+                    float worldYaw = y * upY + z * upZ;
+                    float localYaw = (float) Math.sqrt(y * y + z * z);
+                    yawSpeed = Math.copySign(Math.min(Math.abs(worldYaw) * YAW_RELAX_FACTOR, localYaw), worldYaw);
+                    pitchSpeed = x;
+                }
+            }
+        }
+
+        yawSpeed *= RADIANS_TO_DEGREES;
+        pitchSpeed *= RADIANS_TO_DEGREES;
+        float speed = (float) Math.sqrt(yawSpeed * yawSpeed + pitchSpeed * pitchSpeed);
+
+        float sensitivity = maxSensitivity;
+        if(speed < fastThreshold) {
+            float t = Math.max(0, (speed - slowThreshold) / (fastThreshold - slowThreshold));
+            sensitivity = minSensitivity + (maxSensitivity - minSensitivity) * t;
+        }
+        if(speed < tighteningThreshold) {
+            sensitivity *= speed / tighteningThreshold;
+        }
+
+        // Turning the controller to the left is a positive rotation around its up axis
+        pendingYaw -= yawSpeed * sensitivity * dt;
+        pendingPitch += pitchSpeed * sensitivity * dt;
+    }
+
+    /**
+     * Hand out the rotation since the previous poll and advance the flick stick.
+     *
+     * @param stickX the conditioned x value of the right stick
+     * @param stickY the conditioned y value of the right stick, positive is down like in SDL
+     * @param timestamp the time of the poll in microseconds
+     */
+    void endFrame(float stickX, float stickY, long timestamp) {
+        long previous = lastFrameTimestamp;
+        lastFrameTimestamp = timestamp;
+        if(!enabled) {
+            return;
+        }
+
+        deltaYaw = pendingYaw;
+        deltaPitch = pendingPitch;
+        pendingYaw = 0;
+        pendingPitch = 0;
+
+        if(!flickStick) {
+            return;
+        }
+
+        if(stickX * stickX + stickY * stickY >= flickThreshold * flickThreshold) {
+            // 0 is forward, 90 is right
+            float stickAngle = (float) Math.toDegrees(Math.atan2(stickX, -stickY));
+            if(!flickActive) {
+                flickActive = true;
+                flickAngle = stickAngle;
+                flickProgress = 0;
+            } else {
+                float rotation = stickAngle - lastStickAngle;
+                if(rotation > 180) {
+                    rotation -= 360;
+                } else if(rotation < -180) {
+                    rotation += 360;
+                }
+                deltaYaw += rotation;
+            }
+            lastStickAngle = stickAngle;
+        } else {
+            flickActive = false;
+        }
+
+        if(flickProgress < 1) {
+            float dt = previous < 0 || timestamp <= previous ? 0 : (timestamp - previous) / 1_000_000f;
+            float progress = flickTime <= 0 ? 1 : Math.min(1, flickProgress + dt / flickTime);
+            // Ease out, so the flick starts fast and settles on the target
+            deltaYaw += flickAngle * (easeOut(progress) - easeOut(flickProgress));
+            flickProgress = progress;
+        }
+    }
+
+    private static float easeOut(float t) {
+        return 1 - (1 - t) * (1 - t);
+    }
+}
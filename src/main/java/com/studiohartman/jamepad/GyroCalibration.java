@@ -0,0 +1,199 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Estimates the bias of a gyroscope, the rotation it reports while it isn't moving at all. Left
+ * alone, this bias makes motion controls slowly drift.
+ *
+ * The last WINDOW_SIZE readings are kept in a rolling window. Whenever both the gyroscope and the
+ * strength of the accelerometer reading barely vary over the whole window, the controller is
+ * considered to be lying still, and the average gyroscope reading of the window is taken as the
+ * bias. Every reading costs the same constant amount of work, no matter how big the window is.
+ *
+ * Every ControllerIndex has one, see ControllerIndex.getGyroCalibration(). The bias is subtracted
+ * from the gyroscope values of SensorState, the SensorSampleBuffer and the SensorFusion. When a
+ * controller is unplugged its bias is remembered, keyed by its serial number, so it is accurate
+ * right away when it comes back. Set {@link Configuration#gyroCalibrationPath} to keep the biases
+ * across runs. Controllers that don't report a serial number calibrate again every time they
+ * connect.
+ */
+public final class GyroCalibration {
+    /**
+     * The number of readings the controller has to lie still for until the bias is updated
+     */
+    public static final int WINDOW_SIZE = 64;
+
+    // Limits for the variance of the readings in the window while the controller lies still
+    private static final double STILL_GYRO_VARIANCE = 0.02 * 0.02;
+    private static final double STILL_ACCEL_VARIANCE = 0.1 * 0.1;
+    // A bias this big is a controller that is turning slowly, not lying still
+    private static final double MAX_BIAS = 0.1;
+    // How fast the bias follows the window once it has been set
+    private static final float SMOOTHING = 0.02f;
+
+    private final float[] windowX = new float[WINDOW_SIZE];
+    private final float[] windowY = new float[WINDOW_SIZE];
+    private final float[] windowZ = new float[WINDOW_SIZE];
+    private final float[] windowAccel = new float[WINDOW_SIZE];
+    private int windowPosition;
+    private int windowCount;
+
+    // Running sums and sums of squares over the window
+    private double sumX, sumY, sumZ, sumAccel;
+    private double sumSqX, sumSqY, sumSqZ, sumSqAccel;
+
+    private float biasX;
+    private float biasY;
+    private float biasZ;
+    private boolean calibrated;
+    private boolean still;
+    private boolean enabled = true;
+
+    /**
+     * Forget the window and the bias.
+     */
+    public void reset() {
+        clearWindow();
+        biasX = 0;
+        biasY = 0;
+        biasZ = 0;
+        calibrated = false;
+    }
+
+    private void clearWindow() {
+        windowPosition = 0;
+        windowCount = 0;
+        sumX = sumY = sumZ = sumAccel = 0;
+        sumSqX = sumSqY = sumSqZ = sumSqAccel = 0;
+        still = false;
+    }
+
+    /**
+     * Set the bias, e.g. from an earlier calibration. It is still refined whenever the controller
+     * lies still.
+     */
+    public void setBias(float x, float y, float z) {
+        biasX = x;
+        biasY = y;
+        biasZ = z;
+        calibrated = true;
+    }
+
+    /**
+     * Turn the calibration on or off. While it is off, the bias is neither updated nor subtracted.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        clearWindow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Whether or not a bias has been measured or set yet
+     */
+    public boolean isCalibrated() {
+        return calibrated;
+    }
+
+    /**
+     * @return Whether or not the controller was lying still over the last WINDOW_SIZE readings
+     */
+    public boolean isStill() {
+        return still;
+    }
+
+    public float getBiasX() {
+        return enabled ? biasX : 0;
+    }
+
+    public float getBiasY() {
+        return enabled ? biasY : 0;
+    }
+
+    public float getBiasZ() {
+        return enabled ? biasZ : 0;
+    }
+
+    /**
+     * Keep the bias in the store, so the controller starts with it when it comes back. The bias is
+     * kept while the calibration is off as well, it is only not subtracted then.
+     */
+    void saveTo(GyroCalibrationStore store, String key) {
+        if(calibrated) {
+            store.put(key, biasX, biasY, biasZ);
+        }
+    }
+
+    /**
+     * Add a raw reading to the window and update the bias if the controller lies still.
+     *
+     * @param gx raw rotation around x in rad/s
+     * @param gy raw rotation around y in rad/s
+     * @param gz raw rotation around z in rad/s
+     * @param accelMagnitude the length of the accelerometer reading in m/s^2
+     */
+    public void addSample(float gx, float gy, float gz, float accelMagnitude) {
+        if(!enabled) {
+            return;
+        }
+
+        if(windowCount == WINDOW_SIZE) {
+            float oldX = windowX[windowPosition];
+            float oldY = windowY[windowPosition];
+            float oldZ = windowZ[windowPosition];
+            float oldAccel = windowAccel[windowPosition];
+            sumX -= oldX;
+            sumY -= oldY;
+            sumZ -= oldZ;
+            sumAccel -= oldAccel;
+            sumSqX -= oldX * oldX;
+            sumSqY -= oldY * oldY;
+            sumSqZ -= oldZ * oldZ;
+            sumSqAccel -= oldAccel * oldAccel;
+        } else {
+            windowCount++;
+        }
+
+        windowX[windowPosition] = gx;
+        windowY[windowPosition] = gy;
+        windowZ[windowPosition] = gz;
+        windowAccel[windowPosition] = accelMagnitude;
+        sumX += gx;
+        sumY += gy;
+        sumZ += gz;
+        sumAccel += accelMagnitude;
+        sumSqX += gx * gx;
+        sumSqY += gy * gy;
+        sumSqZ += gz * gz;
+        sumSqAccel += accelMagnitude * accelMagnitude;
+        windowPosition = (windowPosition + 1) % WINDOW_SIZE;
+
+        if(windowCount < WINDOW_SIZE) {
+            still = false;
+            return;
+        }
+
+        double meanX = sumX / WINDOW_SIZE;
+        double meanY = sumY / WINDOW_SIZE;
+        double meanZ = sumZ / WINDOW_SIZE;
+        double meanAccel = sumAccel / WINDOW_SIZE;
+        still = sumSqX / WINDOW_SIZE - meanX * meanX < STILL_GYRO_VARIANCE
+                && sumSqY / WINDOW_SIZE - meanY * meanY < STILL_GYRO_VARIANCE
+                && sumSqZ / WINDOW_SIZE - meanZ * meanZ < STILL_GYRO_VARIANCE
+                && sumSqAccel / WINDOW_SIZE - meanAccel * meanAccel < STILL_ACCEL_VARIANCE
+                && Math.abs(meanX) < MAX_BIAS && Math.abs(meanY) < MAX_BIAS && Math.abs(meanZ) < MAX_BIAS;
+        if(!still) {
+            return;
+        }
+
+        if(calibrated) {
+            biasX += ((float) meanX - biasX) * SMOOTHING;
+            biasY += ((float) meanY - biasY) * SMOOTHING;
+            biasZ += ((float) meanZ - biasZ) * SMOOTHING;
+        } else {
+            setBias((float) meanX, (float) meanY, (float) meanZ);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.studiohartman.jamepad;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The gyroscope biases of all controllers seen so far, keyed by serial number. Kept in memory for
+ * the whole session and written to a properties file if a path is configured.
+ *
+ * A GUID only names the model of a controller, so two pads of the same model would share it, and
+ * one would start with the bias of the other. Controllers without a serial number are not stored
+ * and calibrate again whenever they are plugged in.
+ */
+class GyroCalibrationStore {
+    private static final String KEY_PREFIX = "serial.";
+
+    private final String path;
+    private final Map<String, float[]> biases = new HashMap<>();
+
+    GyroCalibrationStore(String path) {
+        this.path = path;
+    }
+
+    /**
+     * @return The key the bias of the controller is stored under, null if it has no serial number
+     */
+    static String getKey(ControllerInfo info) {
+        if(info.getSerial() != null && !info.getSerial().isEmpty()) {
+            return KEY_PREFIX + info.getSerial();
+        }
+        return null;
+    }
+
+    synchronized float[] get(String key) {
+        return key == null ? null : biases.get(key);
+    }
+
+    synchronized void put(String key, float x, float y, float z) {
+        if(key != null) {
+            biases.put(key, new float[] {x, y, z});
+        }
+    }
+
+    synchronized void load() {
+        if(path == null || !new File(path).exists()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(path)) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.err.println("Failed to load gyro calibration from \"" + path + "\": " + e.getMessage());
+            return;
+        }
+
+        for(String key : properties.stringPropertyNames()) {
+            // Only keys of serial numbers are written, skip anything else that ended up in the file
+            if(!key.startsWith(KEY_PREFIX)) {
+                continue;
+            }
+            String[] values = properties.getProperty(key).split(",");
+            if(values.length != 3) {
+                continue;
+            }
+            try {
+                biases.put(key, new float[] {Float.parseFloat(values[0]), Float.parseFloat(values[1]), Float.parseFloat(values[2])});
+            } catch (NumberFormatException e) {
+                // Skip broken entries, the controller will simply calibrate again
+            }
+        }
+    }
+
+    synchronized void save() {
+        if(path == null) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        for(Map.Entry<String, float[]> entry : biases.entrySet()) {
+            float[] bias = entry.getValue();
+            properties.setProperty(entry.getKey(), bias[0] + "," + bias[1] + "," + bias[2]);
+        }
+        try (OutputStream out = new FileOutputStream(path)) {
+            properties.store(out, "Jamepad gyro calibration");
+        } catch (IOException e) {
+            System.err.println("Failed to save gyro calibration to \"" + path + "\": " + e.getMessage());
+        }
+    }
+}
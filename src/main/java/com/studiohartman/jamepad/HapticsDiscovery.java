@@ -0,0 +1,194 @@
+package com.studiohartman.jamepad;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Finds the audio device of a DualSense controller for haptic feedback. The audio device usually
+ * shows up a while after the controller itself, so connecting is tried with growing delays until
+ * it works or a limit is reached.
+ *
+ * SDL must only be used by the thread polling the controllers. The shared scheduler of the
+ * ControllerManager therefore only times the attempts: when one is due, it sets the scan flag of
+ * the manager, and the next update() or pollAll() makes the attempt in connectIfDue().
+ *
+ * This is the future returned by ControllerIndex.hapticsReady(). It completes with true once
+ * haptic feedback can be sent, and with false if no audio device was found or the controller was
+ * closed before.
+ */
+final class HapticsDiscovery implements Runnable, Future<Boolean> {
+    // Delays between the attempts in milliseconds, the last one is repeated until MAX_ATTEMPTS
+    private static final long[] DELAYS = {1_000, 2_000, 4_000, 8_000};
+    private static final int MAX_ATTEMPTS = 6;
+
+    private final ControllerBackend backend;
+    private final long haptics;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean scanRequested;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    // Guards the attempts against stop(), which releases the haptics context afterwards
+    private final Object lock = new Object();
+    private ScheduledFuture<?> pending;
+    private boolean attemptDue;
+    private int attempt;
+    private boolean cancelled;
+
+    // Written by the thread polling the controllers, read by the ones waiting for the future
+    private volatile boolean connected;
+    private volatile boolean result;
+
+    /**
+     * @param haptics The context to connect, 0 if haptics couldn't be enabled. Then the discovery is
+     *                completed with false right away.
+     * @param scanRequested Set when an attempt is due, the polling thread calls connectIfDue() then
+     */
+    HapticsDiscovery(ControllerBackend backend, long haptics, ScheduledExecutorService scheduler, AtomicBoolean scanRequested) {
+        this.backend = backend;
+        this.haptics = haptics;
+        this.scheduler = scheduler;
+        this.scanRequested = scanRequested;
+        if(haptics == 0 || scheduler == null) {
+            complete(false);
+        }
+    }
+
+    void start() {
+        synchronized(lock) {
+            if(!isDone()) {
+                scheduleAttempt();
+            }
+        }
+    }
+
+    // Runs on the scheduler, which must not touch SDL
+    @Override
+    public void run() {
+        synchronized(lock) {
+            if(isDone()) {
+                return;
+            }
+            attemptDue = true;
+        }
+        scanRequested.set(true);
+    }
+
+    /**
+     * Make the attempt to connect the context, if one is due. Called by the thread polling the controllers.
+     */
+    void connectIfDue() {
+        synchronized(lock) {
+            if(!attemptDue || isDone()) {
+                return;
+            }
+            attemptDue = false;
+            if(backend.connectHaptics(haptics)) {
+                connected = true;
+                complete(true);
+                return;
+            }
+            attempt++;
+            if(attempt >= MAX_ATTEMPTS) {
+                System.out.println("Connect haptics for DualSense did not work. Error: " + backend.getLastError());
+                complete(false);
+                return;
+            }
+            scheduleAttempt();
+        }
+    }
+
+    private void scheduleAttempt() {
+        try {
+            pending = scheduler.schedule(this, DELAYS[Math.min(attempt, DELAYS.length - 1)], TimeUnit.MILLISECONDS);
+        } catch(RejectedExecutionException e) {
+            // The ControllerManager is shutting down
+            complete(false);
+        }
+    }
+
+    private void complete(boolean result) {
+        this.result = result;
+        done.countDown();
+    }
+
+    /**
+     * Stop the discovery, because the controller is closed.
+     */
+    void stop() {
+        synchronized(lock) {
+            if(pending != null) {
+                pending.cancel(false);
+            }
+            connected = false;
+            if(!isDone()) {
+                complete(false);
+            }
+        }
+    }
+
+    /**
+     * @return Whether or not haptic feedback can be sent to the context
+     */
+    boolean isConnected() {
+        return connected;
+    }
+
+    long getHaptics() {
+        return haptics;
+    }
+
+    /**
+     * Stop looking for the audio device. Haptic feedback can't be sent to the controller afterwards.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized(lock) {
+            if(isDone()) {
+                return false;
+            }
+            cancelled = true;
+            stop();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        synchronized(lock) {
+            return cancelled;
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public Boolean get() throws InterruptedException {
+        done.await();
+        return getResult();
+    }
+
+    @Override
+    public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if(!done.await(timeout, unit)) {
+            throw new TimeoutException("The audio device of the controller was not found yet!");
+        }
+        return getResult();
+    }
+
+    private Boolean getResult() {
+        if(isCancelled()) {
+            throw new CancellationException("Looking for the audio device of the controller was cancelled!");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+package com.studiohartman.jamepad;
+
+/**
+ * The state of the haptic feedback queue of a DualSense controller, see
+ * {@link ControllerIndex#getHapticsMetrics()}. Haptic feedback is played at 48 kHz, so if it is
+ * sent slightly faster than that, e.g. because it is streamed over the network, the queue would
+ * grow and the vibration would lag behind the game. The queue is kept below a latency target
+ * instead: audio that doesn't fit is dropped (an overrun), and if the queue ran dry (an underrun),
+ * some silence is queued before the next audio to absorb the jitter of the following packets.
+ *
+ * The values are those of the last call to getHapticsMetrics(), the object is reused.
+ */
+public final class HapticsMetrics {
+    // Layout of the values filled by ControllerBackend.getHapticsMetrics(), sizes in bytes of 48 kHz 4 channel audio
+    static final int METRIC_QUEUED_BYTES = 0;
+    static final int METRIC_TARGET_BYTES = 1;
+    static final int METRIC_UNDERRUNS = 2;
+    static final int METRIC_OVERRUNS = 3;
+    static final int METRIC_DROPPED_BYTES = 4;
+    static final int NUM_METRICS = 5;
+    static final int BYTES_PER_MS = 48 * 4 * 2;
+
+    private final long[] values = new long[NUM_METRICS];
+
+    HapticsMetrics() {
+    }
+
+    long[] getValues() {
+        return values;
+    }
+
+    void clear() {
+        for(int i = 0; i < values.length; i++) {
+            values[i] = 0;
+        }
+    }
+
+    /**
+     * @return The amount of haptic feedback waiting to be played, in milliseconds
+     */
+    public float getQueuedMs() {
+        return values[METRIC_QUEUED_BYTES] / (float) BYTES_PER_MS;
+    }
+
+    /**
+     * @return The latency target in milliseconds, see ControllerIndex.setHapticsLatency()
+     */
+    public float getLatencyTargetMs() {
+        return values[METRIC_TARGET_BYTES] / (float) BYTES_PER_MS;
+    }
+
+    /**
+     * @return How often the queue had run dry when new haptic feedback was sent
+     */
+    public long getUnderruns() {
+        return values[METRIC_UNDERRUNS];
+    }
+
+    /**
+     * @return How often haptic feedback had to be dropped to stay within the latency target
+     */
+    public long getOverruns() {
+        return values[METRIC_OVERRUNS];
+    }
+
+    /**
+     * @return The total amount of haptic feedback that was dropped, in milliseconds
+     */
+    public float getDroppedMs() {
+        return values[METRIC_DROPPED_BYTES] / (float) BYTES_PER_MS;
+    }
+}
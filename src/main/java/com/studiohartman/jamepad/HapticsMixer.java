@@ -0,0 +1,196 @@
+package com.studiohartman.jamepad;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Mixes several sources of haptic feedback for one controller, see
+ * {@link ControllerIndex#getHapticsMixer()}. Each source is a {@link HapticsVoice} with its own
+ * gain. Every tick, the next samples of all voices are added up and sent to the controller as
+ * one stream, like with {@link ControllerIndex#sendHapticFeedbackAudio(ByteBuffer)}.
+ *
+ * Call tick() regularly from the thread that polls the controllers, e.g. every 10 ms with 30
+ * frames. While a ControllerSampler runs, that is the sampler thread, see
+ * ControllerSampler.execute(). Mixing works on buffers allocated once, so ticking allocates
+ * nothing. At most MAX_VOICES voices play at once, lower priority voices make room for higher
+ * priority ones.
+ */
+public final class HapticsMixer {
+    /**
+     * The sample rate of haptic feedback in frames per second, a frame is one left and one right sample
+     */
+    public static final int SAMPLE_RATE = 3000;
+
+    /**
+     * The most frames one tick can mix, 100 ms
+     */
+    public static final int MAX_FRAMES_PER_TICK = SAMPLE_RATE / 10;
+
+    /**
+     * The most voices that play at once
+     */
+    public static final int MAX_VOICES = 16;
+
+    private final ControllerIndex controller;
+    private final HapticsVoice[] voices = new HapticsVoice[MAX_VOICES];
+    private int numVoices;
+
+    private final float[] mix = new float[MAX_FRAMES_PER_TICK * 2];
+    private final short[] output = new short[MAX_FRAMES_PER_TICK * 2];
+    private final ByteBuffer outputBuffer;
+    private final ShortBuffer outputSamples;
+
+    HapticsMixer(ControllerIndex controller) {
+        this.controller = controller;
+        outputBuffer = ByteBuffer.allocateDirect(output.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        outputSamples = outputBuffer.asShortBuffer();
+    }
+
+    /**
+     * Play a buffer. The samples are not copied, so they can be shared by several voices, e.g. one
+     * for each controller, but must not be changed while they play.
+     *
+     * @param samples Interleaved left and right samples at 3 kHz
+     * @param gain The factor the samples are multiplied with, 1 to play them as they are
+     * @param looping Whether or not the buffer starts over when its end is reached
+     * @param priority The priority of the voice, see HapticsVoice.getPriority()
+     * @return The voice, which doesn't play if the mixer had no room for it
+     */
+    public HapticsVoice play(short[] samples, float gain, boolean looping, int priority) {
+        if(samples.length % 2 != 0) {
+            throw new IllegalArgumentException("The samples must be pairs of left and right!");
+        }
+        return add(new HapticsVoice(samples, false, gain, looping, priority));
+    }
+
+    /**
+     * Open a stream, which plays the samples written to it with HapticsVoice.write() as they come,
+     * e.g. haptic feedback received over the network.
+     *
+     * @param capacity The most samples the stream holds, a multiple of 2
+     * @param gain The factor the samples are multiplied with, 1 to play them as they are
+     * @param priority The priority of the voice, see HapticsVoice.getPriority()
+     * @return The voice, which doesn't play if the mixer had no room for it
+     */
+    public HapticsVoice openStream(int capacity, float gain, int priority) {
+        if(capacity <= 0 || capacity % 2 != 0) {
+            throw new IllegalArgumentException("The capacity must be a positive multiple of 2!");
+        }
+        return add(new HapticsVoice(new short[capacity], true, gain, false, priority));
+    }
+
+    private HapticsVoice add(HapticsVoice voice) {
+        removeStopped();
+        if(numVoices == voices.length) {
+            // Voices are kept from oldest to newest, so the first with the lowest priority is the oldest
+            int lowest = 0;
+            for(int i = 1; i < numVoices; i++) {
+                if(voices[i].getPriority() < voices[lowest].getPriority()) {
+                    lowest = i;
+                }
+            }
+            if(voices[lowest].getPriority() > voice.getPriority()) {
+                voice.stop();
+                return voice;
+            }
+            voices[lowest].stop();
+            removeStopped();
+        }
+        voices[numVoices++] = voice;
+        return voice;
+    }
+
+    // Removes the voices that don't play anymore, keeping the order of the others
+    private void removeStopped() {
+        int kept = 0;
+        for(int i = 0; i < numVoices; i++) {
+            if(voices[i].isPlaying()) {
+                voices[kept++] = voices[i];
+            }
+        }
+        for(int i = kept; i < numVoices; i++) {
+            voices[i] = null;
+        }
+        numVoices = kept;
+    }
+
+    /**
+     * Stop all voices.
+     */
+    public void stopAll() {
+        for(int i = 0; i < numVoices; i++) {
+            voices[i].stop();
+        }
+        removeStopped();
+    }
+
+    /**
+     * @return The number of voices that play
+     */
+    public int getNumVoices() {
+        removeStopped();
+        return numVoices;
+    }
+
+    /**
+     * Mix the next frames of all voices and send them to the controller. Nothing is sent while no
+     * voice plays, so the controller isn't kept busy with silence.
+     *
+     * @param numFrames The number of frames to mix, at most MAX_FRAMES_PER_TICK. To play the voices
+     *                  in real time, this is the time since the last tick times SAMPLE_RATE.
+     * @return false if the mixed haptic feedback couldn't be sent, e.g. because the controller
+     *         doesn't support haptics. The voices don't advance then, and neither if the
+     *         controller was unplugged.
+     * @throws ControllerUnpluggedException If the controller is not connected
+     */
+    public boolean tick(int numFrames) throws ControllerUnpluggedException {
+        if(numFrames < 0 || numFrames > MAX_FRAMES_PER_TICK) {
+            throw new IllegalArgumentException("The number of frames must be between 0 and " + MAX_FRAMES_PER_TICK + "!");
+        }
+        removeStopped();
+        if(numVoices == 0 || numFrames == 0) {
+            return true;
+        }
+
+        int numSamples = numFrames * 2;
+        Arrays.fill(mix, 0, numSamples, 0f);
+        for(int i = 0; i < numVoices; i++) {
+            voices[i].mark();
+            voices[i].mixInto(mix, numSamples);
+        }
+        for(int i = 0; i < numSamples; i++) {
+            output[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+        }
+
+        outputSamples.clear();
+        outputSamples.put(output, 0, numSamples);
+        outputBuffer.clear();
+        outputBuffer.limit(numSamples * 2);
+
+        // The voices only move on once the controller took their samples, otherwise they are
+        // mixed again by the next tick
+        boolean sent = false;
+        try {
+            sent = controller.sendHapticFeedbackAudio(outputBuffer);
+        } finally {
+            if(!sent) {
+                for(int i = 0; i < numVoices; i++) {
+                    voices[i].rewind();
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Adds length samples of a voice to the mix. Kept to a plain loop over arrays so the JIT can
+     * vectorize it.
+     */
+    static void mix(float[] mix, int mixOffset, short[] samples, int offset, int length, float gain) {
+        for(int i = 0; i < length; i++) {
+            mix[mixOffset + i] += samples[offset + i] * gain;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.studiohartman.jamepad;
+
+/**
+ * One source of haptic feedback playing on a {@link HapticsMixer}, like footsteps, the recoil of a
+ * weapon or an ambient rumble. The samples are 3 kHz, 2 channel, 16-bit PCM, interleaved left and
+ * right, like the haptic feedback sent to a controller.
+ *
+ * A voice plays either a buffer, see {@link HapticsMixer#play(short[], float, boolean, int)}, or
+ * a stream that is written to while it plays, see {@link HapticsMixer#openStream(int, float, int)}.
+ * Use it from the thread that ticks the mixer.
+ */
+public final class HapticsVoice {
+    private final short[] samples;
+    private final boolean isStream;
+    private final int priority;
+    private float gain;
+    private boolean looping;
+    private boolean playing = true;
+
+    // A buffer is read from position to its end. A stream is a ring buffer, the samples between
+    // position and position + available are not played yet.
+    private int position;
+    private int available;
+    // Where the voice was before the last tick of the mixer, in case its mix couldn't be sent
+    private int markedPosition;
+    private int markedAvailable;
+    private boolean markedPlaying;
+
+    HapticsVoice(short[] samples, boolean isStream, float gain, boolean looping, int priority) {
+        this.samples = samples;
+        this.isStream = isStream;
+        this.priority = priority;
+        this.looping = looping;
+        setGain(gain);
+    }
+
+    /**
+     * @param gain The factor the samples are multiplied with, 1 to play them as they are
+     */
+    public void setGain(float gain) {
+        if(!(gain >= 0)) {
+            throw new IllegalArgumentException("The gain must be at least 0!");
+        }
+        this.gain = gain;
+    }
+
+    public float getGain() {
+        return gain;
+    }
+
+    /**
+     * @param looping Whether or not a buffer starts over when its end is reached. Streams ignore it.
+     */
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    public boolean isLooping() {
+        return looping;
+    }
+
+    /**
+     * @return The priority of the voice. If the mixer has no room for a new voice, the new voice
+     *         replaces the oldest voice with the lowest priority, as long as that one isn't higher.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return Whether or not the voice still plays. A buffer stops at its end unless it loops, a
+     *         stream plays until it is stopped. Both stop if they are replaced by a voice of a
+     *         higher priority.
+     */
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Stop the voice. It is removed from the mixer by its next tick.
+     */
+    public void stop() {
+        playing = false;
+    }
+
+    /**
+     * Append samples to a stream. If the stream runs out of samples it plays silence until more
+     * are written.
+     *
+     * @param pcm Interleaved left and right samples
+     * @param offset The first sample to write
+     * @param length The number of samples to write, a multiple of 2
+     * @return The number of samples written, less than length if the stream is full
+     */
+    public int write(short[] pcm, int offset, int length) {
+        if(length < 0 || length % 2 != 0) {
+            throw new IllegalArgumentException("The length must be a multiple of 2!");
+        }
+        int count = prepareWrite(length);
+        int end = (position + available) % samples.length;
+        int first = Math.min(count, samples.length - end);
+        System.arraycopy(pcm, offset, samples, end, first);
+        System.arraycopy(pcm, offset + first, samples, 0, count - first);
+        available += count;
+        return count;
+    }
+
+    /**
+     * Append samples to a stream, in the 16-bit Little-Endian format of
+     * {@link ControllerIndex#sendHapticFeedbackAudioPacket(byte[])}.
+     *
+     * @param pcm Interleaved left and right samples, 2 bytes each
+     * @param offset The first byte to write
+     * @param length The number of bytes to write, a multiple of 4
+     * @return The number of bytes written, less than length if the stream is full
+     */
+    public int write(byte[] pcm, int offset, int length) {
+        if(length < 0 || length % 4 != 0) {
+            throw new IllegalArgumentException("The length must be a multiple of 4!");
+        }
+        int count = prepareWrite(length / 2);
+        int end = (position + available) % samples.length;
+        for(int i = 0; i < count; i++) {
+            int b = offset + i * 2;
+            samples[end] = (short) ((pcm[b] & 0xFF) | (pcm[b + 1] << 8));
+            end = end + 1 == samples.length ? 0 : end + 1;
+        }
+        available += count;
+        return count * 2;
+    }
+
+    // The number of samples that fit, whole frames only, so left and right stay in place
+    private int prepareWrite(int numSamples) {
+        if(!isStream) {
+            throw new IllegalStateException("Only streams can be written to!");
+        }
+        return Math.min(numSamples, (samples.length - available) & ~1);
+    }
+
+    /**
+     * @return The number of samples written to a stream that are not played yet
+     */
+    public int getQueuedSamples() {
+        return isStream ? available : 0;
+    }
+
+    /**
+     * Remember where the voice is, see rewind().
+     */
+    void mark() {
+        markedPosition = position;
+        markedAvailable = available;
+        markedPlaying = playing;
+    }
+
+    /**
+     * Go back to where the voice was at the last mark(), so the samples that were mixed but never
+     * reached the controller are mixed again by the next tick.
+     */
+    void rewind() {
+        position = markedPosition;
+        available = markedAvailable;
+        playing = markedPlaying;
+    }
+
+    /**
+     * Add the next numSamples samples of the voice to the mix, and advance it.
+     *
+     * @return Whether or not the voice still plays afterwards
+     */
+    boolean mixInto(float[] mix, int numSamples) {
+        if(isStream) {
+            int count = Math.min(numSamples, available);
+            int first = Math.min(count, samples.length - position);
+            HapticsMixer.mix(mix, 0, samples, position, first, gain);
+            HapticsMixer.mix(mix, first, samples, 0, count - first, gain);
+            position = (position + count) % samples.length;
+            available -= count;
+            return playing;
+        }
+
+        int mixed = 0;
+        while(mixed < numSamples && playing) {
+            int count = Math.min(numSamples - mixed, samples.length - position);
+            HapticsMixer.mix(mix, mixed, samples, position, count, gain);
+            mixed += count;
+            position += count;
+            if(position == samples.length) {
+                position = 0;
+                playing = looping && samples.length > 0;
+            }
+        }
+        return playing;
+    }
+}
@@ -0,0 +1,611 @@
+package com.studiohartman.jamepad;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A ControllerBackend without any devices or native code: its controllers are
+ * {@link SimulatedController} objects set up by the application. Plugging them in and out is
+ * reported like SDL hotplug events, their state is read through the same snapshots as real
+ * controllers, and button, axis, touchpad and sensor changes show up in the ControllerEventBuffer.
+ * So everything ControllerManager does on top of the backend can be tested, and load tested with
+ * hundreds of controllers, on machines without any gamepad.
+ *
+ * <pre>
+ * InMemoryControllerBackend backend = new InMemoryControllerBackend();
+ * Configuration configuration = new Configuration();
+ * configuration.backend = backend;
+ * ControllerManager controllers = new ControllerManager(configuration);
+ * controllers.initSDLGamepad();
+ *
+ * SimulatedController pad = backend.connect("Test Pad");
+ * pad.setButton(ControllerButton.A, true);
+ * controllers.pollAll(states);
+ * </pre>
+ *
+ * Controllers connected before initSDLGamepad() are there right away, later ones are picked up
+ * by the next update(), getState() or pollAll(). Use the backend from the thread that polls the
+ * controllers. Polling doesn't allocate anything.
+ */
+public class InMemoryControllerBackend extends ControllerBackend {
+    // The attached controllers in the order of their device index
+    private final List<SimulatedController> devices = new ArrayList<>();
+    // The controllers that are attached or still opened, the handle of a controller is its slot + 1.
+    // A slot is reused once its controller is unplugged and closed, so the list doesn't grow when
+    // controllers keep coming and going.
+    private final List<SimulatedController> slots = new ArrayList<>();
+    private int nextInstanceID;
+    // Hotplug events since the last pump, pairs of HOTPLUG_ type and device index or instance id
+    private int[] pendingHotplugEvents = new int[16];
+    private int numPendingHotplugEvents;
+    private boolean initialized;
+    private String lastError = "";
+    private long hapticFeedbackBytes;
+    private int numSinglePolls;
+
+    /**
+     * Plug in a controller without touchpad and sensors.
+     *
+     * @param name The name of the controller
+     * @return The new controller
+     */
+    public SimulatedController connect(String name) {
+        return connect(name, ControllerType.UNKNOWN, 0, false);
+    }
+
+    /**
+     * Plug in a controller.
+     *
+     * @param name The name of the controller
+     * @param type The type it reports, e.g. PS5 for a DualSense
+     * @param numTouchpadFingers The number of fingers its touchpad tracks, 0 if it doesn't have one
+     * @param hasSensors Whether or not it has an accelerometer and a gyroscope
+     * @return The new controller
+     */
+    public SimulatedController connect(String name, ControllerType type, int numTouchpadFingers, boolean hasSensors) {
+        if(numTouchpadFingers < 0 || numTouchpadFingers > ControllerIndex.SNAPSHOT_MAX_TOUCH_POINTS) {
+            throw new IllegalArgumentException("The number of touchpad fingers must be between 0 and "
+                    + ControllerIndex.SNAPSHOT_MAX_TOUCH_POINTS + "!");
+        }
+        // Instance IDs are never reused, just like with SDL
+        SimulatedController controller = new SimulatedController(nextInstanceID++, name, type, numTouchpadFingers, hasSensors);
+        controller.attached = true;
+        controller.slot = slots.indexOf(null);
+        if(controller.slot < 0) {
+            controller.slot = slots.size();
+            slots.add(controller);
+        } else {
+            slots.set(controller.slot, controller);
+        }
+        devices.add(controller);
+        if(initialized) {
+            addHotplugEvent(HOTPLUG_ADDED, devices.size() - 1);
+        }
+        return controller;
+    }
+
+    /**
+     * Unplug a controller. It can't be connected again, connect a new one instead.
+     */
+    public void disconnect(SimulatedController controller) {
+        if(!controller.attached) {
+            return;
+        }
+        controller.attached = false;
+        devices.remove(controller);
+        if(!controller.opened) {
+            slots.set(controller.slot, null);
+        }
+        if(initialized) {
+            addHotplugEvent(HOTPLUG_REMOVED, controller.getInstanceID());
+        }
+    }
+
+    /**
+     * @return The number of controllers that are plugged in
+     */
+    public int getNumConnected() {
+        return devices.size();
+    }
+
+    /**
+     * @return The number of slots for controllers, the most that were attached or opened at once
+     */
+    int getNumSlots() {
+        return slots.size();
+    }
+
+    /**
+     * @return How often a single controller was read, instead of all of them with one pollAll()
+     */
+    int getNumSinglePolls() {
+        return numSinglePolls;
+    }
+
+    /**
+     * @return The number of bytes of haptic feedback the application sent to all controllers
+     */
+    public long getHapticFeedbackBytes() {
+        return hapticFeedbackBytes;
+    }
+
+    private void addHotplugEvent(int type, int which) {
+        if(numPendingHotplugEvents * 2 == pendingHotplugEvents.length) {
+            int[] newEvents = new int[pendingHotplugEvents.length * 2];
+            System.arraycopy(pendingHotplugEvents, 0, newEvents, 0, pendingHotplugEvents.length);
+            pendingHotplugEvents = newEvents;
+        }
+        pendingHotplugEvents[numPendingHotplugEvents * 2] = type;
+        pendingHotplugEvents[numPendingHotplugEvents * 2 + 1] = which;
+        numPendingHotplugEvents++;
+    }
+
+    private SimulatedController get(long handle) {
+        return slots.get((int) handle - 1);
+    }
+
+    private static long getHandle(SimulatedController controller) {
+        return controller.slot + 1;
+    }
+
+    @Override
+    boolean init(boolean disableRawInput, int sonyControllerFeature) {
+        initialized = true;
+        numPendingHotplugEvents = 0;
+        return true;
+    }
+
+    @Override
+    boolean initHaptics() {
+        return true;
+    }
+
+    @Override
+    void quit() {
+        initialized = false;
+        numPendingHotplugEvents = 0;
+    }
+
+    @Override
+    boolean setHint(String name, String value) {
+        return false;
+    }
+
+    @Override
+    boolean addMappingsFromFile(String path) {
+        return true;
+    }
+
+    @Override
+    boolean addMappingsFromBuffer(byte[] buffer, int length) {
+        return true;
+    }
+
+    @Override
+    String getLastError() {
+        return lastError;
+    }
+
+    @Override
+    String getCurrentAudioDriverName() {
+        return "";
+    }
+
+    @Override
+    int getNumDevices() {
+        return devices.size();
+    }
+
+    @Override
+    boolean isGameController(int deviceIndex) {
+        return deviceIndex >= 0 && deviceIndex < devices.size();
+    }
+
+    @Override
+    int getDeviceInstanceID(int deviceIndex) {
+        return isGameController(deviceIndex) ? devices.get(deviceIndex).getInstanceID() : -1;
+    }
+
+    @Override
+    int pumpEvents(ByteBuffer eventRing, long eventTail, int eventCapacity, int[] hotplugEvents, int maxHotplugEvents,
+                   ByteBuffer sensorStaging, int sensorStagingCapacity) {
+        long timestamp = System.nanoTime() / 1000;
+        int numHotplugEvents = 0;
+        for(int i = 0; i < numPendingHotplugEvents; i++) {
+            int type = pendingHotplugEvents[i * 2];
+            int which = pendingHotplugEvents[i * 2 + 1];
+            if(numHotplugEvents >= 0 && numHotplugEvents < maxHotplugEvents) {
+                hotplugEvents[numHotplugEvents * 2] = type;
+                hotplugEvents[numHotplugEvents * 2 + 1] = which;
+                numHotplugEvents++;
+            } else {
+                numHotplugEvents = -1;
+            }
+            if(eventRing != null) {
+                ControllerEventBuffer.push(eventRing, eventTail, eventCapacity,
+                        type == HOTPLUG_ADDED ? ControllerEventBuffer.TYPE_DEVICE_ADDED : ControllerEventBuffer.TYPE_DEVICE_REMOVED,
+                        which, 0, 0, timestamp, 0, 0, 0);
+            }
+        }
+        numPendingHotplugEvents = 0;
+
+        int numSensorRecords = 0;
+        int numDroppedSensorRecords = 0;
+        for(int i = 0; i < devices.size(); i++) {
+            SimulatedController controller = devices.get(i);
+            if(controller.powerLevelChanged) {
+                controller.powerLevelChanged = false;
+                if(numHotplugEvents >= 0 && numHotplugEvents < maxHotplugEvents) {
+                    hotplugEvents[numHotplugEvents * 2] = HOTPLUG_BATTERY;
+                    hotplugEvents[numHotplugEvents * 2 + 1] = controller.getInstanceID();
+                    numHotplugEvents++;
+                } else {
+                    numHotplugEvents = -1;
+                }
+            }
+            if(eventRing != null) {
+                pushChanges(controller, eventRing, eventTail, eventCapacity, timestamp);
+            }
+            if(controller.sensorsPending && controller.sensorsEnabled && sensorStaging != null) {
+                if(numSensorRecords + 2 <= sensorStagingCapacity) {
+                    putSensorRecord(sensorStaging, numSensorRecords++, controller, ControllerInfo.SENSOR_ACCEL, controller.accel);
+                    putSensorRecord(sensorStaging, numSensorRecords++, controller, ControllerInfo.SENSOR_GYRO, controller.gyro);
+                } else {
+                    numDroppedSensorRecords += 2;
+                }
+            }
+            controller.sensorsPending = false;
+        }
+        if(sensorStaging != null) {
+            sensorStaging.putInt(ControllerManager.SENSOR_STAGING_COUNT, numSensorRecords);
+            sensorStaging.putInt(ControllerManager.SENSOR_STAGING_DROPPED, numDroppedSensorRecords);
+        }
+        return numHotplugEvents;
+    }
+
+    /**
+     * Write an event for everything that changed on the controller since the last pump.
+     */
+    private static void pushChanges(SimulatedController controller, ByteBuffer eventRing, long eventTail, int eventCapacity,
+                                    long timestamp) {
+        int instanceID = controller.getInstanceID();
+        int changedButtons = controller.buttons ^ controller.pumpedButtons;
+        for(int button = 0; changedButtons != 0; button++, changedButtons >>>= 1) {
+            if((changedButtons & 1) != 0) {
+                boolean pressed = (controller.buttons & (1 << button)) != 0;
+                ControllerEventBuffer.push(eventRing, eventTail, eventCapacity,
+                        pressed ? ControllerEventBuffer.TYPE_BUTTON_DOWN : ControllerEventBuffer.TYPE_BUTTON_UP,
+                        instanceID, button, 0, timestamp, pressed ? 1 : 0, 0, 0);
+            }
+        }
+        controller.pumpedButtons = controller.buttons;
+
+        for(int axis = 0; axis < controller.axes.length; axis++) {
+            if(controller.axes[axis] != controller.pumpedAxes[axis]) {
+                ControllerEventBuffer.push(eventRing, eventTail, eventCapacity, ControllerEventBuffer.TYPE_AXIS_MOTION,
+                        instanceID, axis, 0, timestamp, controller.axes[axis], 0, 0);
+                controller.pumpedAxes[axis] = controller.axes[axis];
+            }
+        }
+
+        for(int finger = 0; finger < controller.touchDown.length; finger++) {
+            int type;
+            if(controller.touchDown[finger] != controller.pumpedTouchDown[finger]) {
+                type = controller.touchDown[finger] ? ControllerEventBuffer.TYPE_TOUCHPAD_DOWN : ControllerEventBuffer.TYPE_TOUCHPAD_UP;
+            } else if(controller.touchDown[finger] && (controller.touchX[finger] != controller.pumpedTouchX[finger]
+                    || controller.touchY[finger] != controller.pumpedTouchY[finger])) {
+                type = ControllerEventBuffer.TYPE_TOUCHPAD_MOTION;
+            } else {
+                continue;
+            }
+            ControllerEventBuffer.push(eventRing, eventTail, eventCapacity, type, instanceID, 0, finger, timestamp,
+                    Float.floatToRawIntBits(controller.touchX[finger]), Float.floatToRawIntBits(controller.touchY[finger]),
+                    Float.floatToRawIntBits(controller.touchPressure[finger]));
+            controller.pumpedTouchDown[finger] = controller.touchDown[finger];
+            controller.pumpedTouchX[finger] = controller.touchX[finger];
+            controller.pumpedTouchY[finger] = controller.touchY[finger];
+        }
+
+        if(controller.sensorsPending && controller.sensorsEnabled) {
+            pushSensorEvent(eventRing, eventTail, eventCapacity, controller, ControllerInfo.SENSOR_ACCEL, controller.accel);
+            pushSensorEvent(eventRing, eventTail, eventCapacity, controller, ControllerInfo.SENSOR_GYRO, controller.gyro);
+        }
+    }
+
+    private static void pushSensorEvent(ByteBuffer eventRing, long eventTail, int eventCapacity, SimulatedController controller,
+                                        int sensorType, float[] values) {
+        ControllerEventBuffer.push(eventRing, eventTail, eventCapacity, ControllerEventBuffer.TYPE_SENSOR_UPDATE,
+                controller.getInstanceID(), sensorType, 0, controller.sensorTimestamp, Float.floatToRawIntBits(values[0]),
+                Float.floatToRawIntBits(values[1]), Float.floatToRawIntBits(values[2]));
+    }
+
+    private static void putSensorRecord(ByteBuffer sensorStaging, int index, SimulatedController controller, int sensorType,
+                                        float[] values) {
+        int record = ControllerManager.SENSOR_STAGING_RECORDS + index * ControllerManager.SENSOR_RECORD_SIZE;
+        sensorStaging.putInt(record + ControllerManager.SENSOR_RECORD_INSTANCE_ID, controller.getInstanceID());
+        sensorStaging.putInt(record + ControllerManager.SENSOR_RECORD_TYPE, sensorType);
+        sensorStaging.putLong(record + ControllerManager.SENSOR_RECORD_TIMESTAMP, controller.sensorTimestamp);
+        sensorStaging.putFloat(record + ControllerManager.SENSOR_RECORD_DATA, values[0]);
+        sensorStaging.putFloat(record + ControllerManager.SENSOR_RECORD_DATA + 4, values[1]);
+        sensorStaging.putFloat(record + ControllerManager.SENSOR_RECORD_DATA + 8, values[2]);
+    }
+
+    @Override
+    long open(int deviceIndex) {
+        if(!isGameController(deviceIndex)) {
+            lastError = "There is no simulated controller with the device index " + deviceIndex;
+            return 0;
+        }
+        SimulatedController controller = devices.get(deviceIndex);
+        controller.opened = true;
+        return getHandle(controller);
+    }
+
+    @Override
+    void close(long handle) {
+        SimulatedController controller = get(handle);
+        controller.sensorsEnabled = false;
+        controller.opened = false;
+        if(!controller.attached) {
+            slots.set(controller.slot, null);
+        }
+    }
+
+    @Override
+    boolean isAttached(long handle) {
+        return get(handle).attached;
+    }
+
+    @Override
+    int getInstanceID(long handle) {
+        return get(handle).getInstanceID();
+    }
+
+    @Override
+    void getInfo(long handle, int[] info, float[] sensorDataRates) {
+        SimulatedController controller = get(handle);
+        // A simulated PS5 controller passes for a DualSense, so adaptive triggers and haptics can be sent to it
+        boolean isDualSense = controller.getType() == ControllerType.PS5;
+        info[ControllerInfo.INFO_VENDOR] = isDualSense ? ControllerInfo.SONY_VENDOR_ID : 0;
+        info[ControllerInfo.INFO_PRODUCT] = isDualSense ? ControllerInfo.DUALSENSE_PRODUCT_ID : 0;
+        info[ControllerInfo.INFO_PRODUCT_VERSION] = 0;
+        info[ControllerInfo.INFO_TYPE] = controller.getType().ordinal();
+        info[ControllerInfo.INFO_BUTTONS] = controller.buttonLayout;
+        info[ControllerInfo.INFO_AXES] = controller.axisLayout;
+        info[ControllerInfo.INFO_FEATURES] = ControllerInfo.FEATURE_RUMBLE;
+        info[ControllerInfo.INFO_NUM_TOUCHPADS] = controller.getNumTouchpadFingers() > 0 ? 1 : 0;
+        info[ControllerInfo.INFO_SENSORS] = 0;
+        for(int i = 0; i < sensorDataRates.length; i++) {
+            sensorDataRates[i] = 0;
+        }
+        if(controller.hasSensors()) {
+            info[ControllerInfo.INFO_SENSORS] = (1 << ControllerInfo.SENSOR_ACCEL) | (1 << ControllerInfo.SENSOR_GYRO);
+            sensorDataRates[ControllerInfo.SENSOR_ACCEL] = 250;
+            sensorDataRates[ControllerInfo.SENSOR_GYRO] = 250;
+        }
+        info[ControllerInfo.INFO_POWER_LEVEL] = controller.getPowerLevel().ordinal() - 1;
+    }
+
+    @Override
+    void getTouchpadFingers(long handle, int[] fingers, int numTouchpads) {
+        for(int i = 0; i < numTouchpads; i++) {
+            fingers[i] = i == 0 ? get(handle).getNumTouchpadFingers() : 0;
+        }
+    }
+
+    @Override
+    String getName(long handle) {
+        return get(handle).getName();
+    }
+
+    @Override
+    String getGUID(long handle) {
+        return "00000000000000000000000000000000";
+    }
+
+    @Override
+    String getSerial(long handle) {
+        // Simulated controllers have no serial, so their gyro calibration isn't persisted
+        return null;
+    }
+
+    @Override
+    int getPowerLevel(long handle) {
+        return get(handle).getPowerLevel().ordinal() - 1;
+    }
+
+    @Override
+    int getPlayerIndex(long handle) {
+        return get(handle).playerIndex;
+    }
+
+    @Override
+    void setPlayerIndex(long handle, int playerIndex) {
+        get(handle).playerIndex = playerIndex;
+    }
+
+    @Override
+    boolean enableSensors(long handle) {
+        SimulatedController controller = get(handle);
+        controller.sensorsEnabled = controller.hasSensors();
+        return controller.sensorsEnabled;
+    }
+
+    @Override
+    boolean getButton(long handle, int button) {
+        return (get(handle).buttons & (1 << button)) != 0;
+    }
+
+    @Override
+    int getAxis(long handle, int axis) {
+        return get(handle).axes[axis];
+    }
+
+    @Override
+    boolean getTouchpadFinger(long handle, int touchpad, int finger, float[] values) {
+        SimulatedController controller = get(handle);
+        if(touchpad != 0 || finger < 0 || finger >= controller.getNumTouchpadFingers()) {
+            return false;
+        }
+        values[0] = controller.touchDown[finger] ? 1 : 0;
+        values[1] = controller.touchX[finger];
+        values[2] = controller.touchY[finger];
+        values[3] = controller.touchPressure[finger];
+        return true;
+    }
+
+    @Override
+    long getSensorState(long handle, float[] values) {
+        SimulatedController controller = get(handle);
+        if(!controller.sensorsEnabled || controller.sensorTimestamp < 0) {
+            return -1;
+        }
+        System.arraycopy(controller.accel, 0, values, 0, 3);
+        System.arraycopy(controller.gyro, 0, values, 3, 3);
+        return controller.sensorTimestamp;
+    }
+
+    @Override
+    void poll(long handle, ByteBuffer snapshots, int offset, int pollFlags) {
+        numSinglePolls++;
+        for(int i = 0; i < ControllerIndex.SNAPSHOT_SIZE; i += 8) {
+            snapshots.putLong(offset + i, 0);
+        }
+        SimulatedController controller = handle == 0 ? null : get(handle);
+        if(controller == null || !controller.attached) {
+            return;
+        }
+
+        snapshots.putInt(offset + ControllerIndex.SNAPSHOT_CONNECTED, 1);
+        snapshots.putInt(offset + ControllerIndex.SNAPSHOT_BUTTONS, controller.buttons);
+        for(int i = 0; i < controller.axes.length; i++) {
+            snapshots.putShort(offset + ControllerIndex.SNAPSHOT_AXES + i * 2, controller.axes[i]);
+        }
+
+        if((pollFlags & ControllerIndex.POLL_TOUCHPAD) != 0) {
+            int numTouchPoints = controller.getNumTouchpadFingers();
+            snapshots.putInt(offset + ControllerIndex.SNAPSHOT_NUM_TOUCH_POINTS, numTouchPoints);
+            for(int i = 0; i < numTouchPoints; i++) {
+                int touchPoint = offset + ControllerIndex.SNAPSHOT_TOUCH + i * ControllerIndex.TOUCH_POINT_SIZE;
+                snapshots.put(touchPoint + ControllerIndex.TOUCH_POINT_VALID, (byte) 1);
+                snapshots.put(touchPoint + ControllerIndex.TOUCH_POINT_DOWN, (byte) (controller.touchDown[i] ? 1 : 0));
+                snapshots.putFloat(touchPoint + ControllerIndex.TOUCH_POINT_X, controller.touchX[i]);
+                snapshots.putFloat(touchPoint + ControllerIndex.TOUCH_POINT_Y, controller.touchY[i]);
+                snapshots.putFloat(touchPoint + ControllerIndex.TOUCH_POINT_PRESSURE, controller.touchPressure[i]);
+            }
+        }
+
+        if((pollFlags & ControllerIndex.POLL_SENSORS) != 0 && controller.sensorsEnabled && controller.sensorTimestamp >= 0) {
+            snapshots.putInt(offset + ControllerIndex.SNAPSHOT_SENSOR_VALID, 1);
+            snapshots.putLong(offset + ControllerIndex.SNAPSHOT_SENSOR_TIMESTAMP, controller.sensorTimestamp);
+            for(int i = 0; i < 3; i++) {
+                snapshots.putFloat(offset + ControllerIndex.SNAPSHOT_ACCEL + i * 4, controller.accel[i]);
+                snapshots.putFloat(offset + ControllerIndex.SNAPSHOT_GYRO + i * 4, controller.gyro[i]);
+            }
+        }
+    }
+
+    @Override
+    boolean rumble(long handle, int leftMagnitude, int rightMagnitude, int durationMs) {
+        get(handle).rumble(leftMagnitude, rightMagnitude, durationMs);
+        return true;
+    }
+
+    @Override
+    boolean sendTriggerEffects(long handle, byte leftTriggerEffect, byte[] triggerDataLeft, int leftTriggerDataSize,
+                               byte rightTriggerEffect, byte[] triggerDataRight, int rightTriggerDataSize) {
+        get(handle).sendTriggerEffects(leftTriggerEffect, rightTriggerEffect);
+        return true;
+    }
+
+    // The haptics context of a controller is its handle. Nothing is ever queued, so there is no
+    // latency to control.
+    @Override
+    long enableHaptics(long handle, int latencyMs) {
+        get(handle).hapticsLatencyMs = latencyMs;
+        return handle;
+    }
+
+    @Override
+    void setHapticsLatency(long haptics, int latencyMs) {
+        get(haptics).hapticsLatencyMs = latencyMs;
+    }
+
+    @Override
+    void getHapticsMetrics(long haptics, long[] values) {
+        for(int i = 0; i < values.length; i++) {
+            values[i] = 0;
+        }
+        values[HapticsMetrics.METRIC_TARGET_BYTES] = (long) get(haptics).hapticsLatencyMs * HapticsMetrics.BYTES_PER_MS;
+    }
+
+    @Override
+    boolean connectHaptics(long haptics) {
+        return true;
+    }
+
+    @Override
+    boolean sendHapticFeedback(long haptics, byte[] hapticFeedback, int hapticFeedbackSize) {
+        get(haptics).hapticFeedbackBytes += hapticFeedbackSize;
+        hapticFeedbackBytes += hapticFeedbackSize;
+        return true;
+    }
+
+    @Override
+    boolean sendHapticFeedback(long haptics, ByteBuffer hapticFeedback, int offset, int size) {
+        get(haptics).hapticFeedbackBytes += size;
+        hapticFeedbackBytes += size;
+        return true;
+    }
+
+    @Override
+    void releaseHaptics(long haptics) {
+    }
+
+    @Override
+    long attachVirtual(VirtualControllerLayout layout) {
+        ControllerType type = layout.vendorId == ControllerInfo.SONY_VENDOR_ID && layout.productId == ControllerInfo.DUALSENSE_PRODUCT_ID
+                ? ControllerType.PS5 : ControllerType.UNKNOWN;
+        SimulatedController controller = connect(layout.name, type, layout.numTouchpadFingers, layout.hasSensors);
+        controller.buttonLayout = layout.buttons;
+        controller.axisLayout = layout.axes;
+        return getHandle(controller);
+    }
+
+    @Override
+    boolean detachVirtual(long virtualHandle) {
+        disconnect(get(virtualHandle));
+        return true;
+    }
+
+    @Override
+    int getVirtualInstanceID(long virtualHandle) {
+        return get(virtualHandle).getInstanceID();
+    }
+
+    @Override
+    boolean setVirtualButton(long virtualHandle, int button, boolean pressed) {
+        get(virtualHandle).setButton(ControllerButton.values()[button], pressed);
+        return true;
+    }
+
+    @Override
+    boolean setVirtualAxis(long virtualHandle, int axis, int value) {
+        get(virtualHandle).setRawAxis(ControllerAxis.values()[axis], value);
+        return true;
+    }
+
+    @Override
+    boolean setVirtualTouchpadFinger(long virtualHandle, int finger, boolean down, float x, float y, float pressure) {
+        get(virtualHandle).setTouchpadFinger(finger, down, x, y, pressure);
+        return true;
+    }
+
+    @Override
+    boolean setVirtualSensors(long virtualHandle, long timestamp, float accelX, float accelY, float accelZ,
+                              float gyroX, float gyroY, float gyroZ) {
+        get(virtualHandle).setSensors(timestamp, accelX, accelY, accelZ, gyroX, gyroY, gyroZ);
+        return true;
+    }
+}
@@ -0,0 +1,334 @@
+package com.studiohartman.jamepad;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the controller states an application sees to a compact binary file, so they can be
+ * replayed later with an {@link InputReplayer}: to reproduce input bugs from a session log, or to
+ * run input processing without any controller attached.
+ *
+ * Hand it to ControllerManager.setRecorder() to record every state returned by getState() and
+ * pollAll(), or call record() yourself with the states you want to keep.
+ *
+ * The file is written append-only, one frame after the other. Every frame only holds what changed
+ * since the previous one: controllers that didn't change at all are left out, and of the others
+ * only the changed values are written. All numbers are varints, frame numbers and timestamps are
+ * stored as differences to the previous frame, and floats as the XOR with their previous bits, so
+ * a frame of an idle controller takes a few bytes. Recording a frame doesn't allocate anything,
+ * except when the name of a controller changes.
+ *
+ * If writing fails, an error is printed and the recorder stops recording, so an application
+ * isn't taken down by a full disk.
+ */
+public final class InputRecorder implements Closeable {
+    // "JPRC"
+    static final int MAGIC = 0x4A505243;
+    static final int VERSION = 1;
+
+    // The values of a controller that are stored as 32 bits in every frame
+    static final int VALUE_AXES = 0;
+    static final int VALUE_TOUCH = 6;
+    static final int VALUES_PER_FINGER = 4;
+    static final int VALUE_SENSOR = 14;
+    static final int VALUE_AIM = 20;
+    static final int NUM_VALUES = 22;
+
+    static final int FLAG_CONNECTED = 1;
+    static final int FLAG_TOUCHPAD = 2;
+    static final int FLAG_SENSOR = 4;
+    static final int FLAG_NAME = 8;
+    static final int FLAG_BUTTONS = 16;
+    static final int FLAG_SENSOR_TIMESTAMP = 32;
+    static final int STATE_FLAGS = FLAG_CONNECTED | FLAG_TOUCHPAD | FLAG_SENSOR;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final OutputStream out;
+    private final int numControllers;
+    private byte[] buffer = new byte[1024];
+    private int position;
+    private final byte[] lengthBuffer = new byte[5];
+    private boolean failed;
+    private boolean closed;
+
+    // The last written state of every controller
+    private final boolean[] written;
+    private final int[] stateFlags;
+    private final String[] names;
+    private final int[] buttonMasks;
+    private final int[] values;
+    private final long[] sensorTimestamps;
+    private long lastFrame;
+    private long lastTimestamp;
+
+    private final int[] currentValues = new int[NUM_VALUES];
+
+    /**
+     * Create a new recording. An existing file is overwritten.
+     *
+     * @param path The file to write to
+     * @param numControllers The number of controller indices that can be recorded
+     * @throws IOException If the file can't be created
+     */
+    public InputRecorder(String path, int numControllers) throws IOException {
+        if(numControllers <= 0) {
+            throw new IllegalArgumentException("The number of controllers must be greater than 0!");
+        }
+        this.numControllers = numControllers;
+        written = new boolean[numControllers];
+        stateFlags = new int[numControllers];
+        names = new String[numControllers];
+        buttonMasks = new int[numControllers];
+        values = new int[numControllers * NUM_VALUES];
+        sensorTimestamps = new long[numControllers];
+
+        out = new BufferedOutputStream(new FileOutputStream(path), 64 * 1024);
+        position = 0;
+        writeByte(MAGIC >>> 24);
+        writeByte(MAGIC >>> 16);
+        writeByte(MAGIC >>> 8);
+        writeByte(MAGIC);
+        writeByte(VERSION);
+        writeVarint(numControllers);
+        out.write(buffer, 0, position);
+    }
+
+    /**
+     * @return The number of controller indices that can be recorded
+     */
+    public int getNumControllers() {
+        return numControllers;
+    }
+
+    /**
+     * @return Whether or not recording stopped because of a write error
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * Record a frame with the states of all controllers, as filled by ControllerManager.pollAll().
+     * All states have to share the frame number and timestamp of the first one.
+     *
+     * @param states The state of the controller at index i in states[i]
+     */
+    public void record(MutableControllerState[] states) {
+        if(failed || closed || states.length == 0) {
+            return;
+        }
+        beginFrame(states[0]);
+        for(int i = 0; i < Math.min(states.length, numControllers); i++) {
+            writeController(i, states[i]);
+        }
+        endFrame();
+    }
+
+    /**
+     * Record a frame with the state of a single controller, as filled by ControllerManager.getState().
+     * The other controllers keep their previously recorded state.
+     *
+     * @param index The index of the controller
+     * @param state The state of the controller
+     */
+    public void record(int index, MutableControllerState state) {
+        if(failed || closed) {
+            return;
+        }
+        if(index < 0 || index >= numControllers) {
+            throw new IllegalArgumentException("The controller index must be between 0 and " + (numControllers - 1) + "!");
+        }
+        beginFrame(state);
+        writeController(index, state);
+        endFrame();
+    }
+
+    private void beginFrame(MutableControllerState state) {
+        position = 0;
+        writeVarint(zigZag(state.frame - lastFrame));
+        writeVarint(zigZag(state.timestamp - lastTimestamp));
+        lastFrame = state.frame;
+        lastTimestamp = state.timestamp;
+    }
+
+    private void writeController(int index, MutableControllerState state) {
+        int[] current = currentValues;
+        current[VALUE_AXES] = Float.floatToRawIntBits(state.leftStickX);
+        current[VALUE_AXES + 1] = Float.floatToRawIntBits(state.leftStickY);
+        current[VALUE_AXES + 2] = Float.floatToRawIntBits(state.rightStickX);
+        current[VALUE_AXES + 3] = Float.floatToRawIntBits(state.rightStickY);
+        current[VALUE_AXES + 4] = Float.floatToRawIntBits(state.leftTrigger);
+        current[VALUE_AXES + 5] = Float.floatToRawIntBits(state.rightTrigger);
+        putTouch(current, VALUE_TOUCH, state.touchStateFinger0);
+        putTouch(current, VALUE_TOUCH + VALUES_PER_FINGER, state.touchStateFinger1);
+        SensorState sensor = state.sensorState;
+        current[VALUE_SENSOR] = Float.floatToRawIntBits(sensor.getAccelX());
+        current[VALUE_SENSOR + 1] = Float.floatToRawIntBits(sensor.getAccelY());
+        current[VALUE_SENSOR + 2] = Float.floatToRawIntBits(sensor.getAccelZ());
+        current[VALUE_SENSOR + 3] = Float.floatToRawIntBits(sensor.getGyroX());
+        current[VALUE_SENSOR + 4] = Float.floatToRawIntBits(sensor.getGyroY());
+        current[VALUE_SENSOR + 5] = Float.floatToRawIntBits(sensor.getGyroZ());
+        current[VALUE_AIM] = Float.floatToRawIntBits(state.aimDeltaYaw);
+        current[VALUE_AIM + 1] = Float.floatToRawIntBits(state.aimDeltaPitch);
+
+        int base = index * NUM_VALUES;
+        int changedValues = 0;
+        for(int i = 0; i < NUM_VALUES; i++) {
+            if(current[i] != values[base + i]) {
+                changedValues |= 1 << i;
+            }
+        }
+
+        int flags = 0;
+        if(state.isConnected) {
+            flags |= FLAG_CONNECTED;
+        }
+        if(state.hasTouchpadData) {
+            flags |= FLAG_TOUCHPAD;
+        }
+        if(state.hasSensorData) {
+            flags |= FLAG_SENSOR;
+        }
+        boolean first = !written[index];
+        String name = state.controllerType;
+        if(first || (name == null ? names[index] != null : !name.equals(names[index]))) {
+            flags |= FLAG_NAME;
+        }
+        if(first || state.buttonMask != buttonMasks[index]) {
+            flags |= FLAG_BUTTONS;
+        }
+        if(first || sensor.getTimestamp() != sensorTimestamps[index]) {
+            flags |= FLAG_SENSOR_TIMESTAMP;
+        }
+
+        if(!first && changedValues == 0 && (flags & ~STATE_FLAGS) == 0 && (flags & STATE_FLAGS) == stateFlags[index]) {
+            return;
+        }
+
+        writeVarint(index + 1);
+        writeVarint(flags);
+        if((flags & FLAG_NAME) != 0) {
+            if(name == null) {
+                writeVarint(0);
+            } else {
+                byte[] bytes = name.getBytes(UTF_8);
+                writeVarint(bytes.length + 1);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                position += bytes.length;
+            }
+            names[index] = name;
+        }
+        if((flags & FLAG_BUTTONS) != 0) {
+            writeVarint(state.buttonMask & 0xFFFFFFFFL);
+            buttonMasks[index] = state.buttonMask;
+        }
+        writeVarint(changedValues);
+        for(int i = 0; i < NUM_VALUES; i++) {
+            if((changedValues & (1 << i)) != 0) {
+                writeVarint((current[i] ^ values[base + i]) & 0xFFFFFFFFL);
+                values[base + i] = current[i];
+            }
+        }
+        if((flags & FLAG_SENSOR_TIMESTAMP) != 0) {
+            writeVarint(zigZag(sensor.getTimestamp() - sensorTimestamps[index]));
+            sensorTimestamps[index] = sensor.getTimestamp();
+        }
+        stateFlags[index] = flags & STATE_FLAGS;
+        written[index] = true;
+    }
+
+    private static void putTouch(int[] current, int offset, TouchState touchState) {
+        current[offset] = touchState.getState() ? 1 : 0;
+        current[offset + 1] = Float.floatToRawIntBits(touchState.getX());
+        current[offset + 2] = Float.floatToRawIntBits(touchState.getY());
+        current[offset + 3] = Float.floatToRawIntBits(touchState.getPressure());
+    }
+
+    /**
+     * Write the frame in the buffer, prefixed with its length, so a frame cut off by a crash can
+     * be recognized when replaying.
+     */
+    private void endFrame() {
+        writeVarint(0);
+
+        int length = position;
+        int lengthBytes = 0;
+        long value = length;
+        while(value >= 0x80) {
+            lengthBuffer[lengthBytes++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        lengthBuffer[lengthBytes++] = (byte) value;
+
+        try {
+            out.write(lengthBuffer, 0, lengthBytes);
+            out.write(buffer, 0, length);
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Failed to write input recording, recording stopped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write everything recorded so far to the file.
+     */
+    public void flush() {
+        if(failed || closed) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Failed to write input recording, recording stopped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write everything recorded so far to the file and close it. Frames recorded afterwards are ignored.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        out.close();
+    }
+
+    private void ensureCapacity(int bytes) {
+        if(position + bytes > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(buffer.length * 2, position + bytes)];
+            System.arraycopy(buffer, 0, newBuffer, 0, position);
+            buffer = newBuffer;
+        }
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,311 @@
+package com.studiohartman.jamepad;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays back a recording written by an {@link InputRecorder}. It fills MutableControllerState
+ * objects just like ControllerManager does, so code that reads controllers through pollAll() or
+ * getState() can run on a recording instead of real controllers:
+ *
+ * <pre>
+ * try(InputReplayer replayer = new InputReplayer("session.jprc")) {
+ *     MutableControllerState[] states = ...;
+ *     while(replayer.pollAll(states) >= 0) {
+ *         processInput(states);
+ *     }
+ * }
+ * </pre>
+ *
+ * The file is memory mapped, so replaying doesn't copy it and doesn't allocate anything, except
+ * when the name of a controller changes. The states carry the frame numbers and timestamps of the
+ * recording. The just pressed and just released buttons are relative to the previous frame. If the
+ * last frame was cut off, e.g. because the application crashed while recording, it is skipped. A
+ * frame that can't be read otherwise ends the replay, see isCorrupted().
+ */
+public final class InputReplayer implements Closeable {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer data;
+    private final int numControllers;
+    private final int firstFrame;
+
+    // The state of every controller in the current frame
+    private final int[] stateFlags;
+    private final String[] names;
+    private final int[] buttonMasks;
+    private final int[] justPressedMasks;
+    private final int[] justReleasedMasks;
+    private final int[] values;
+    private final long[] sensorTimestamps;
+    private long frame;
+    private long timestamp;
+    private boolean corrupted;
+
+    /**
+     * Open a recording.
+     *
+     * @param path The file written by an InputRecorder
+     * @throws IOException If the file can't be read or is not a recording
+     */
+    public InputReplayer(String path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The recording \"" + path + "\" is too large to be replayed");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(data.remaining() < 5 || data.getInt() != InputRecorder.MAGIC) {
+                throw new IOException("\"" + path + "\" is not a Jamepad recording");
+            }
+            int version = data.get();
+            if(version != InputRecorder.VERSION) {
+                throw new IOException("The recording \"" + path + "\" has the unsupported version " + version);
+            }
+            numControllers = (int) readVarint();
+            firstFrame = data.position();
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+
+        stateFlags = new int[numControllers];
+        names = new String[numControllers];
+        buttonMasks = new int[numControllers];
+        justPressedMasks = new int[numControllers];
+        justReleasedMasks = new int[numControllers];
+        values = new int[numControllers * InputRecorder.NUM_VALUES];
+        sensorTimestamps = new long[numControllers];
+    }
+
+    /**
+     * @return The number of controller indices in the recording
+     */
+    public int getNumControllers() {
+        return numControllers;
+    }
+
+    /**
+     * @return The frame number of the current frame
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return The timestamp of the current frame, as System.nanoTime() of the recording application
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return Whether or not the replay ended early, because the recording has a frame that
+     *         doesn't make sense, e.g. because the file was damaged
+     */
+    public boolean isCorrupted() {
+        return corrupted;
+    }
+
+    /**
+     * Go back to before the first frame.
+     */
+    public void rewind() {
+        data.position(firstFrame);
+        corrupted = false;
+        frame = 0;
+        timestamp = 0;
+        for(int i = 0; i < numControllers; i++) {
+            stateFlags[i] = 0;
+            names[i] = null;
+            buttonMasks[i] = 0;
+            justPressedMasks[i] = 0;
+            justReleasedMasks[i] = 0;
+            sensorTimestamps[i] = 0;
+        }
+        for(int i = 0; i < values.length; i++) {
+            values[i] = 0;
+        }
+    }
+
+    /**
+     * Advance to the next frame.
+     *
+     * @return false if the recording has ended
+     */
+    public boolean nextFrame() {
+        if(corrupted || !data.hasRemaining()) {
+            return false;
+        }
+        int frameStart = data.position();
+        long length;
+        try {
+            length = readVarint();
+        } catch (BufferUnderflowException e) {
+            data.position(frameStart);
+            return false;
+        }
+        if(length <= 0 || length > data.remaining()) {
+            data.position(frameStart);
+            return false;
+        }
+
+        for(int i = 0; i < numControllers; i++) {
+            justPressedMasks[i] = 0;
+            justReleasedMasks[i] = 0;
+        }
+
+        int frameEnd = data.position() + (int) length;
+        boolean valid;
+        try {
+            valid = readFrame(frameEnd);
+        } catch (BufferUnderflowException e) {
+            valid = false;
+        }
+        if(!valid || data.position() != frameEnd) {
+            System.err.println("The recording is corrupted at frame " + frame + ", the replay ends here");
+            corrupted = true;
+            data.position(frameStart);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the frame doesn't make sense
+     */
+    private boolean readFrame(int frameEnd) {
+        frame += InputRecorder.unZigZag(readVarint());
+        timestamp += InputRecorder.unZigZag(readVarint());
+
+        long index;
+        while((index = readVarint() - 1) >= 0) {
+            if(index >= numControllers || !readController((int) index, frameEnd)) {
+                return false;
+            }
+        }
+        return data.position() <= frameEnd;
+    }
+
+    private boolean readController(int index, int frameEnd) {
+        int flags = (int) readVarint();
+        if((flags & InputRecorder.FLAG_NAME) != 0) {
+            long length = readVarint() - 1;
+            if(length > frameEnd - data.position()) {
+                return false;
+            }
+            if(length < 0) {
+                names[index] = null;
+            } else {
+                byte[] bytes = new byte[(int) length];
+                data.get(bytes);
+                names[index] = new String(bytes, InputRecorder.UTF_8);
+            }
+        }
+        if((flags & InputRecorder.FLAG_BUTTONS) != 0) {
+            int previousButtonMask = buttonMasks[index];
+            buttonMasks[index] = (int) readVarint();
+            int changedButtons = buttonMasks[index] ^ previousButtonMask;
+            justPressedMasks[index] = changedButtons & buttonMasks[index];
+            justReleasedMasks[index] = changedButtons & previousButtonMask;
+        }
+        int changedValues = (int) readVarint();
+        int base = index * InputRecorder.NUM_VALUES;
+        for(int i = 0; i < InputRecorder.NUM_VALUES; i++) {
+            if((changedValues & (1 << i)) != 0) {
+                values[base + i] ^= (int) readVarint();
+            }
+        }
+        if((flags & InputRecorder.FLAG_SENSOR_TIMESTAMP) != 0) {
+            sensorTimestamps[index] += InputRecorder.unZigZag(readVarint());
+        }
+        stateFlags[index] = flags & InputRecorder.STATE_FLAGS;
+        return true;
+    }
+
+    /**
+     * Fill the passed state with the state of a controller in the current frame.
+     *
+     * @param index The index of the controller
+     * @param target The state object that will be filled
+     * @return The passed target
+     */
+    public MutableControllerState getState(int index, MutableControllerState target) {
+        if(index < 0 || index >= numControllers || (stateFlags[index] & InputRecorder.FLAG_CONNECTED) == 0) {
+            target.setDisconnected();
+            target.setFrame(frame, timestamp);
+            return target;
+        }
+
+        int base = index * InputRecorder.NUM_VALUES;
+        target.isConnected = true;
+        target.controllerType = names[index];
+        target.setAxes(getFloat(base + InputRecorder.VALUE_AXES), getFloat(base + InputRecorder.VALUE_AXES + 1),
+                getFloat(base + InputRecorder.VALUE_AXES + 2), getFloat(base + InputRecorder.VALUE_AXES + 3),
+                getFloat(base + InputRecorder.VALUE_AXES + 4), getFloat(base + InputRecorder.VALUE_AXES + 5));
+        target.setButtons(buttonMasks[index], justPressedMasks[index], justReleasedMasks[index]);
+
+        target.hasTouchpadData = (stateFlags[index] & InputRecorder.FLAG_TOUCHPAD) != 0;
+        int touch = base + InputRecorder.VALUE_TOUCH;
+        target.touchStateFinger0.update(values[touch] != 0, getFloat(touch + 1), getFloat(touch + 2), getFloat(touch + 3));
+        touch += InputRecorder.VALUES_PER_FINGER;
+        target.touchStateFinger1.update(values[touch] != 0, getFloat(touch + 1), getFloat(touch + 2), getFloat(touch + 3));
+
+        target.hasSensorData = (stateFlags[index] & InputRecorder.FLAG_SENSOR) != 0;
+        int sensor = base + InputRecorder.VALUE_SENSOR;
+        target.sensorState.update(getFloat(sensor), getFloat(sensor + 1), getFloat(sensor + 2),
+                getFloat(sensor + 3), getFloat(sensor + 4), getFloat(sensor + 5), sensorTimestamps[index]);
+
+        target.aimDeltaYaw = getFloat(base + InputRecorder.VALUE_AIM);
+        target.aimDeltaPitch = getFloat(base + InputRecorder.VALUE_AIM + 1);
+        target.setFrame(frame, timestamp);
+        return target;
+    }
+
+    /**
+     * Advance to the next frame and fill the passed states with it, like ControllerManager.pollAll().
+     *
+     * @param targets The state objects that will be filled, one per controller index
+     * @return The number of connected controllers that were written to targets, -1 if the recording has ended
+     */
+    public int pollAll(MutableControllerState[] targets) {
+        if(!nextFrame()) {
+            return -1;
+        }
+        int numConnected = 0;
+        int numTargets = Math.min(targets.length, numControllers);
+        for(int i = 0; i < numTargets; i++) {
+            if(getState(i, targets[i]).isConnected) {
+                numConnected++;
+            }
+        }
+        return numConnected;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private float getFloat(int value) {
+        return Float.intBitsToFloat(values[value]);
+    }
+
+    private long readVarint() {
+        long value = 0;
+        int shift = 0;
+        while(true) {
+            byte b = data.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package com.studiohartman.jamepad;
+
+/**
+ * A mutable version of {@link ControllerState}. It holds the same values, but can be filled again
+ * and again through ControllerManager.getState(int, MutableControllerState), so reading the state
+ * of a controller every frame doesn't allocate anything.
+ *
+ * The touchpad and sensor objects are allocated once together with this object and are only
+ * updated afterwards. Use hasTouchpadData and hasSensorData to check if they hold valid data.
+ *
+ * If isConnected is false, all other fields will be zero or false.
+ */
+public final class MutableControllerState {
+    /**
+     * The number of the poll this state was filled in. All states filled by one call of
+     * ControllerManager.pollAll() share the same frame number.
+     */
+    public long frame;
+
+    /**
+     * The value of System.nanoTime() when this state was filled. All states filled by one call of
+     * ControllerManager.pollAll() share the same timestamp.
+     */
+    public long timestamp;
+
+    /**
+     * Whether or not the controller is currently connected.
+     *
+     * If the controller is disconnected, all other fields will be 0 or false.
+     */
+    public boolean isConnected;
+
+    /**
+     * A string describing the type of controller (i.e. "PS4 Controller" or "XInput Controller")
+     */
+    public String controllerType = "Not Connected";
+
+    /**
+     * The x position of the left stick between -1 and 1
+     */
+    public float leftStickX;
+
+    /**
+     * The y position of the left stick between -1 and 1
+     */
+    public float leftStickY;
+
+    /**
+     * The x position of the right stick between -1 and 1
+     */
+    public float rightStickX;
+
+    /**
+     * The y position of the right stick between -1 and 1
+     */
+    public float rightStickY;
+
+    /**
+     * Whether or not the left stick is clicked in
+     */
+    public boolean leftStickClick;
+
+    /**
+     * Whether or not the right stick is clicked in
+     */
+    public boolean rightStickClick;
+
+    /**
+     * The position of the left trigger between 0 and 1
+     */
+    public float leftTrigger;
+
+    /**
+     * The position of the right trigger between 0 and 1
+     */
+    public float rightTrigger;
+
+    /**
+     * Whether or not the left stick was just is clicked in
+     */
+    public boolean leftStickJustClicked;
+
+    /**
+     * Whether or not the right stick was just is clicked in
+     */
+    public boolean rightStickJustClicked;
+
+    /**
+     * Whether or not the a button is pressed
+     */
+    public boolean a;
+
+    /**
+     * Whether or not the b button is pressed
+     */
+    public boolean b;
+
+    /**
+     * Whether or not the x button is pressed
+     */
+    public boolean x;
+
+    /**
+     * Whether or not the y button is pressed
+     */
+    public boolean y;
+
+    /**
+     * Whether or not the left bumper is pressed
+     */
+    public boolean lb;
+
+    /**
+     * Whether or not the right bumper is pressed
+     */
+    public boolean rb;
+
+    /**
+     * Whether or not the start button is pressed
+     */
+    public boolean start;
+
+    /**
+     * Whether or not the back button is pressed
+     */
+    public boolean back;
+
+    /**
+     * Whether or not the guide button is pressed. For some controller/platform combinations this
+     * doesn't work. You probably shouldn't use this.
+     */
+    public boolean guide;
+
+    /**
+     * Whether or not the up button on the dpad is pushed
+     */
+    public boolean dpadUp;
+
+    /**
+     * Whether or not the down button on the dpad is pushed
+     */
+    public boolean dpadDown;
+
+    /**
+     * Whether or not the left button on the dpad is pushed
+     */
+    public boolean dpadLeft;
+
+    /**
+     * Whether or not the right button on the dpad is pushed
+     */
+    public boolean dpadRight;
+
+    /**
+     * Whether or not the a button was just pressed
+     */
+    public boolean aJustPressed;
+
+
+    /**
+     * Whether or not the b button was just pressed
+     */
+    public boolean bJustPressed;
+
+    /**
+     * Whether or not the x button was just pressed
+     */
+    public boolean xJustPressed;
+
+    /**
+     * Whether or not the y button was just pressed
+     */
+    public boolean yJustPressed;
+
+    /**
+     * Whether or not the left bumper was just pressed
+     */
+    public boolean lbJustPressed;
+
+    /**
+     * Whether or not the right bumper was just pressed
+     */
+    public boolean rbJustPressed;
+
+    /**
+     * Whether or not the start button was just pressed
+     */
+    public boolean startJustPressed;
+
+    /**
+     * Whether or not the back button was just pressed
+     */
+    public boolean backJustPressed;
+
+    /**
+     * Whether or not the guide button was just pressed
+     */
+    public boolean guideJustPressed;
+
+    /**
+     * Whether or not the up button on the dpad was just pressed
+     */
+    public boolean dpadUpJustPressed;
+
+    /**
+     * Whether or not the down button on the dpad was just pressed
+     */
+    public boolean dpadDownJustPressed;
+
+    /**
+     * Whether or not the left button on the dpad was just pressed
+     */
+    public boolean dpadLeftJustPressed;
+
+    /**
+     * Whether or not the right button on the dpad was just pressed
+     */
+    public boolean dpadRightJustPressed;
+
+    /**
+     * Xbox Series X share button, PS5 microphone button, Nintendo Switch Pro capture button
+     */
+    public boolean misc1;
+    public boolean misc1JustPressed;
+    /**
+     * Xbox Elite paddle P1
+     */
+    public boolean paddle1;
+    public boolean paddle1JustPressed;
+    /**
+     * Xbox Elite paddle P3
+     */
+    public boolean paddle2;
+    public boolean paddle2JustPressed;
+    /**
+     * Xbox Elite paddle P2
+     */
+    public boolean paddle3;
+    public boolean paddle3JustPressed;
+    /**
+     * Xbox Elite paddle P4
+     */
+    public boolean paddle4;
+    public boolean paddle4JustPressed;
+    /**
+     * PS4/PS5 touchpad button
+     */
+    public boolean touchpadButton;
+    public boolean touchpadButtonJustPressed;
+
+    /**
+     * All buttons that are pressed. Bit n is set for the button with ordinal n, see {@link ControllerButton#mask()}
+     */
+    public int buttonMask;
+
+    /**
+     * All buttons that were just pressed, see {@link ControllerButton#mask()}
+     */
+    public int justPressedMask;
+
+    /**
+     * All buttons that were just released, see {@link ControllerButton#mask()}
+     */
+    public int justReleasedMask;
+
+    /**
+     * Whether or not touchStateFinger0 and touchStateFinger1 hold data of the PS4/PS5 touchpad.
+     * This is false if enhanced Sony controller features are not enabled via the
+     * {@link com.studiohartman.jamepad.Configuration} or if the controller reports that this
+     * feature is not supported.
+     */
+    public boolean hasTouchpadData;
+
+    /**
+     * PS4/PS5 touchpad information for the finger with index 0.
+     */
+    public final TouchState touchStateFinger0 = new TouchState();
+
+    /**
+     * PS4/PS5 touchpad information for the finger with index 1.
+     */
+    public final TouchState touchStateFinger1 = new TouchState();
+
+    /**
+     * Whether or not sensorState holds data of the PS4/PS5 motion sensors.
+     * This is false if enhanced Sony controller features are not enabled via the
+     * {@link com.studiohartman.jamepad.Configuration} or if the controller reports that this
+     * feature is not supported.
+     */
+    public boolean hasSensorData;
+
+    /**
+     * PS4/PS5 sensor information.
+     */
+    public final SensorState sensorState = new SensorState();
+
+    /**
+     * The degrees the camera should turn to the right since the previous poll, from gyro aiming and
+     * the flick stick. 0 unless enabled through ControllerIndex.getGyroAim().
+     */
+    public float aimDeltaYaw;
+
+    /**
+     * The degrees the camera should tilt up since the previous poll, from gyro aiming. 0 unless
+     * enabled through ControllerIndex.getGyroAim().
+     */
+    public float aimDeltaPitch;
+
+    // The running totals of the aim deltas at the last ControllerSampler.getState()
+    double aimTotalYaw;
+    double aimTotalPitch;
+
+    /**
+     * @param button The ControllerButton to check
+     * @return Whether or not the button is pressed
+     */
+    public boolean isPressed(ControllerButton button) {
+        return (buttonMask & button.mask()) != 0;
+    }
+
+    /**
+     * @param button The ControllerButton to check
+     * @return Whether or not the button was just pressed
+     */
+    public boolean isJustPressed(ControllerButton button) {
+        return (justPressedMask & button.mask()) != 0;
+    }
+
+    /**
+     * @param button The ControllerButton to check
+     * @return Whether or not the button was just released
+     */
+    public boolean isJustReleased(ControllerButton button) {
+        return (justReleasedMask & button.mask()) != 0;
+    }
+
+    /**
+     * The angle of the left stick (for reference, 0 is right, 90 is up, 180 is left, 270 is down).
+     * Computed from leftStickX and leftStickY on every call.
+     */
+    public float getLeftStickAngle() {
+        return (float) Math.toDegrees(Math.atan2(leftStickY, leftStickX));
+    }
+
+    /**
+     * The amount the left stick is pushed in the current direction. This probably between 0 and 1,
+     * but this can't be guaranteed due to weird gamepads (like the square holes on a Logitech Dual Action).
+     * Computed from leftStickX and leftStickY on every call.
+     */
+    public float getLeftStickMagnitude() {
+        return (float) Math.sqrt((leftStickX * leftStickX) + (leftStickY * leftStickY));
+    }
+
+    /**
+     * The angle of the right stick (for reference, 0 is right, 90 is up, 180 is left, 270 is down).
+     * Computed from rightStickX and rightStickY on every call.
+     */
+    public float getRightStickAngle() {
+        return (float) Math.toDegrees(Math.atan2(rightStickY, rightStickX));
+    }
+
+    /**
+     * The amount the right stick is pushed in the current direction. This probably between 0 and 1,
+     * but this can't be guaranteed due to weird gamepads (like the square holes on a Logitech Dual Action).
+     * Computed from rightStickX and rightStickY on every call.
+     */
+    public float getRightStickMagnitude() {
+        return (float) Math.sqrt((rightStickX * rightStickX) + (rightStickY * rightStickY));
+    }
+
+    /**
+     * Fill this state with the values read by the last poll() of the passed controller.
+     *
+     * @param c The ControllerIndex object whose state should be read. It must have been polled successfully.
+     */
+    void update(ControllerIndex c) {
+        isConnected = true;
+        controllerType = c.getCachedName();
+        setAxes(c.getPolledAxisState(ControllerAxis.LEFTX), c.getPolledAxisState(ControllerAxis.LEFTY),
+                c.getPolledAxisState(ControllerAxis.RIGHTX), c.getPolledAxisState(ControllerAxis.RIGHTY),
+                c.getPolledAxisState(ControllerAxis.TRIGGERLEFT), c.getPolledAxisState(ControllerAxis.TRIGGERRIGHT));
+        setButtons(c.getButtonMask(), c.getJustPressedMask(), c.getJustReleasedMask());
+
+        hasTouchpadData = c.isUsingSonyControllerFeatures() && c.isSupportingTouchpadData();
+        if(hasTouchpadData) {
+            touchStateFinger0.update(c.getPolledTouchpadFinger(0));
+            touchStateFinger1.update(c.getPolledTouchpadFinger(1));
+        }
+
+        hasSensorData = c.isUsingSonyControllerFeatures() && c.isSupportingSensorData();
+        if(hasSensorData) {
+            sensorState.update(c.getPolledSensorState());
+        }
+
+        GyroAim aim = c.getGyroAim();
+        aimDeltaYaw = aim.getDeltaYaw();
+        aimDeltaPitch = aim.getDeltaPitch();
+    }
+
+    /**
+     * Set the axis values.
+     */
+    void setAxes(float leftStickX, float leftStickY, float rightStickX, float rightStickY, float leftTrigger, float rightTrigger) {
+        this.leftStickX = leftStickX;
+        this.leftStickY = leftStickY;
+        this.rightStickX = rightStickX;
+        this.rightStickY = rightStickY;
+        this.leftTrigger = leftTrigger;
+        this.rightTrigger = rightTrigger;
+    }
+
+    /**
+     * Set the button masks and all button fields derived from them.
+     */
+    void setButtons(int buttonMask, int justPressedMask, int justReleasedMask) {
+        this.buttonMask = buttonMask;
+        this.justPressedMask = justPressedMask;
+        this.justReleasedMask = justReleasedMask;
+
+        leftStickJustClicked = (justPressedMask & ControllerButton.LEFTSTICK.mask()) != 0;
+        rightStickJustClicked = (justPressedMask & ControllerButton.RIGHTSTICK.mask()) != 0;
+        leftStickClick = (buttonMask & ControllerButton.LEFTSTICK.mask()) != 0;
+        rightStickClick = (buttonMask & ControllerButton.RIGHTSTICK.mask()) != 0;
+
+        aJustPressed = (justPressedMask & ControllerButton.A.mask()) != 0;
+        bJustPressed = (justPressedMask & ControllerButton.B.mask()) != 0;
+        xJustPressed = (justPressedMask & ControllerButton.X.mask()) != 0;
+        yJustPressed = (justPressedMask & ControllerButton.Y.mask()) != 0;
+        lbJustPressed = (justPressedMask & ControllerButton.LEFTBUMPER.mask()) != 0;
+        rbJustPressed = (justPressedMask & ControllerButton.RIGHTBUMPER.mask()) != 0;
+        startJustPressed = (justPressedMask & ControllerButton.START.mask()) != 0;
+        backJustPressed = (justPressedMask & ControllerButton.BACK.mask()) != 0;
+        guideJustPressed = (justPressedMask & ControllerButton.GUIDE.mask()) != 0;
+        dpadUpJustPressed = (justPressedMask & ControllerButton.DPAD_UP.mask()) != 0;
+        dpadDownJustPressed = (justPressedMask & ControllerButton.DPAD_DOWN.mask()) != 0;
+        dpadLeftJustPressed = (justPressedMask & ControllerButton.DPAD_LEFT.mask()) != 0;
+        dpadRightJustPressed = (justPressedMask & ControllerButton.DPAD_RIGHT.mask()) != 0;
+        misc1JustPressed = (justPressedMask & ControllerButton.BUTTON_MISC1.mask()) != 0;
+        paddle1JustPressed = (justPressedMask & ControllerButton.BUTTON_PADDLE1.mask()) != 0;
+        paddle2JustPressed = (justPressedMask & ControllerButton.BUTTON_PADDLE2.mask()) != 0;
+        paddle3JustPressed = (justPressedMask & ControllerButton.BUTTON_PADDLE3.mask()) != 0;
+        paddle4JustPressed = (justPressedMask & ControllerButton.BUTTON_PADDLE4.mask()) != 0;
+        touchpadButtonJustPressed = (justPressedMask & ControllerButton.BUTTON_TOUCHPAD.mask()) != 0;
+
+        a = (buttonMask & ControllerButton.A.mask()) != 0;
+        b = (buttonMask & ControllerButton.B.mask()) != 0;
+        x = (buttonMask & ControllerButton.X.mask()) != 0;
+        y = (buttonMask & ControllerButton.Y.mask()) != 0;
+        lb = (buttonMask & ControllerButton.LEFTBUMPER.mask()) != 0;
+        rb = (buttonMask & ControllerButton.RIGHTBUMPER.mask()) != 0;
+        start = (buttonMask & ControllerButton.START.mask()) != 0;
+        back = (buttonMask & ControllerButton.BACK.mask()) != 0;
+        guide = (buttonMask & ControllerButton.GUIDE.mask()) != 0;
+        dpadUp = (buttonMask & ControllerButton.DPAD_UP.mask()) != 0;
+        dpadDown = (buttonMask & ControllerButton.DPAD_DOWN.mask()) != 0;
+        dpadLeft = (buttonMask & ControllerButton.DPAD_LEFT.mask()) != 0;
+        dpadRight = (buttonMask & ControllerButton.DPAD_RIGHT.mask()) != 0;
+        misc1 = (buttonMask & ControllerButton.BUTTON_MISC1.mask()) != 0;
+        paddle1 = (buttonMask & ControllerButton.BUTTON_PADDLE1.mask()) != 0;
+        paddle2 = (buttonMask & ControllerButton.BUTTON_PADDLE2.mask()) != 0;
+        paddle3 = (buttonMask & ControllerButton.BUTTON_PADDLE3.mask()) != 0;
+        paddle4 = (buttonMask & ControllerButton.BUTTON_PADDLE4.mask()) != 0;
+        touchpadButton = (buttonMask & ControllerButton.BUTTON_TOUCHPAD.mask()) != 0;
+    }
+
+    void setFrame(long frame, long timestamp) {
+        this.frame = frame;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Reset this state to represent a disconnected controller.
+     */
+    void setDisconnected() {
+        isConnected = false;
+        controllerType = "Not Connected";
+        setAxes(0, 0, 0, 0, 0, 0);
+        setButtons(0, 0, 0);
+
+        hasTouchpadData = false;
+        touchStateFinger0.update(false, 0, 0, 0);
+        touchStateFinger1.update(false, 0, 0, 0);
+        hasSensorData = false;
+        sensorState.update(0, 0, 0, 0, 0, 0, 0);
+        aimDeltaYaw = 0;
+        aimDeltaPitch = 0;
+    }
+}
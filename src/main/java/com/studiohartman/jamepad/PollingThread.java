@@ -0,0 +1,39 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Keeps track of which thread may call into the ControllerBackend. SDL must only be used by one
+ * thread at a time, and a controller that is closed by one thread must not be used by another one,
+ * or the native code would work with a freed controller.
+ *
+ * Without a ControllerSampler, the application is responsible for using Jamepad from one thread.
+ * While a sampler runs, its thread owns the controllers, and every other thread is turned away
+ * with an IllegalStateException. Those threads reach the controllers through
+ * ControllerSampler.execute() instead.
+ */
+final class PollingThread {
+    private volatile Thread owner;
+
+    /**
+     * @param owner The only thread that may use the backend from now on, null for any thread
+     */
+    void setOwner(Thread owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * @return Whether or not the calling thread may use the backend
+     */
+    boolean isCurrent() {
+        Thread currentOwner = owner;
+        return currentOwner == null || currentOwner == Thread.currentThread();
+    }
+
+    /**
+     * @throws IllegalStateException if a ControllerSampler owns the controllers and this is not its thread
+     */
+    void verify() throws IllegalStateException {
+        if(!isCurrent()) {
+            throw new IllegalStateException("The controllers are used by the ControllerSampler, use ControllerSampler.execute() to reach them!");
+        }
+    }
+}
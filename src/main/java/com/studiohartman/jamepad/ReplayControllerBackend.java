@@ -0,0 +1,109 @@
+package com.studiohartman.jamepad;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A ControllerBackend that plays a recording of an {@link InputRecorder} back through the whole
+ * input pipeline of ControllerManager. Unlike reading the recording with InputReplayer directly,
+ * the recorded states are turned back into controllers, so conditioning, filters, gyro aiming and
+ * the event buffer all run again. That makes it possible to check how changed settings would
+ * have behaved on a real session.
+ *
+ * Every pump plays one frame of the recording, so read the controllers with
+ * ControllerManager.pollAll(), which pumps once per call. Controllers of the recording are
+ * plugged in and unplugged as they were recorded, in the order of their recorded index, so they
+ * end up at the same indices as long as the ControllerManager has room for all of them.
+ *
+ * The recording holds the values after conditioning, and they are conditioned a second time, so
+ * leave the conditioning at its defaults unless that is what should be tested. The recorded gyro
+ * aiming isn't played back, but computed again from the sensor values. The replayer is not closed
+ * by this backend.
+ */
+public final class ReplayControllerBackend extends InMemoryControllerBackend {
+    private static final int NUM_TOUCHPAD_FINGERS = 2;
+
+    private final InputReplayer replayer;
+    private final SimulatedController[] controllers;
+    private final MutableControllerState state = new MutableControllerState();
+    private boolean finished;
+
+    /**
+     * @param replayer The recording to play, starting with the frame after its current one
+     */
+    public ReplayControllerBackend(InputReplayer replayer) {
+        this.replayer = replayer;
+        controllers = new SimulatedController[replayer.getNumControllers()];
+    }
+
+    /**
+     * @return Whether or not the last frame of the recording has been played
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return The replayer the frames are read from, e.g. for its frame number
+     */
+    public InputReplayer getReplayer() {
+        return replayer;
+    }
+
+    @Override
+    int pumpEvents(ByteBuffer eventRing, long eventTail, int eventCapacity, int[] hotplugEvents, int maxHotplugEvents,
+                   ByteBuffer sensorStaging, int sensorStagingCapacity) {
+        if(!finished && replayer.nextFrame()) {
+            for(int i = 0; i < controllers.length; i++) {
+                playController(i, replayer.getState(i, state));
+            }
+        } else {
+            finished = true;
+        }
+        return super.pumpEvents(eventRing, eventTail, eventCapacity, hotplugEvents, maxHotplugEvents,
+                sensorStaging, sensorStagingCapacity);
+    }
+
+    private void playController(int index, MutableControllerState state) {
+        SimulatedController controller = controllers[index];
+        if(!state.isConnected) {
+            if(controller != null) {
+                disconnect(controller);
+                controllers[index] = null;
+            }
+            return;
+        }
+
+        String name = state.controllerType;
+        if(controller != null && (controller.getNumTouchpadFingers() > 0 != state.hasTouchpadData
+                || controller.hasSensors() != state.hasSensorData
+                || !(name == null ? controller.getName() == null : name.equals(controller.getName())))) {
+            // A different controller was plugged in at this index in the same frame
+            disconnect(controller);
+            controller = null;
+        }
+        if(controller == null) {
+            controller = connect(name, ControllerType.UNKNOWN, state.hasTouchpadData ? NUM_TOUCHPAD_FINGERS : 0,
+                    state.hasSensorData);
+            controllers[index] = controller;
+        }
+
+        controller.setButtonMask(state.buttonMask);
+        controller.setAxis(ControllerAxis.LEFTX, state.leftStickX);
+        controller.setAxis(ControllerAxis.LEFTY, state.leftStickY);
+        controller.setAxis(ControllerAxis.RIGHTX, state.rightStickX);
+        controller.setAxis(ControllerAxis.RIGHTY, state.rightStickY);
+        controller.setAxis(ControllerAxis.TRIGGERLEFT, state.leftTrigger);
+        controller.setAxis(ControllerAxis.TRIGGERRIGHT, state.rightTrigger);
+        if(state.hasTouchpadData) {
+            TouchState finger0 = state.touchStateFinger0;
+            TouchState finger1 = state.touchStateFinger1;
+            controller.setTouchpadFinger(0, finger0.getState(), finger0.getX(), finger0.getY(), finger0.getPressure());
+            controller.setTouchpadFinger(1, finger1.getState(), finger1.getX(), finger1.getY(), finger1.getPressure());
+        }
+        SensorState sensor = state.sensorState;
+        if(state.hasSensorData && sensor.getTimestamp() != controller.sensorTimestamp) {
+            controller.setSensors(sensor.getTimestamp(), sensor.getAccelX(), sensor.getAccelY(), sensor.getAccelZ(),
+                    sensor.getGyroX(), sensor.getGyroY(), sensor.getGyroZ());
+        }
+    }
+}
@@ -0,0 +1,1252 @@
+package com.studiohartman.jamepad;
+
+import com.badlogic.gdx.utils.SharedLibraryLoader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The default ControllerBackend, which reads the controllers through SDL in the native library.
+ *
+ * @author William Hartman
+ */
+final class SDLControllerBackend extends ControllerBackend {
+    /*JNI
+
+    #include "SDL.h"
+    */
+
+    /*JNI
+    // Layout of the event ring, see ControllerEventBuffer
+    typedef struct
+    {
+        Sint64 head;                        // 0
+        Sint64 dropped;                     // 8
+    } JamepadEventRing_t;
+
+    typedef struct
+    {
+        Uint64 header;                      // 0, instance id | type << 32 | code << 40 | finger << 48
+        Uint64 timestamp;                   // 8, microseconds
+        Sint32 data[4];                     // 16
+    } JamepadEventRecord_t;
+
+    static_assert(sizeof(JamepadEventRing_t) == 16 && sizeof(JamepadEventRecord_t) == 32, "Event ring does not match the Java side layout");
+
+    typedef struct
+    {
+        Sint32 instanceId;                  // 0
+        Sint32 sensor;                      // 4, SDL_SensorType
+        Uint64 timestamp;                   // 8, microseconds
+        float data[3];                      // 16
+        Sint32 padding;                     // 28
+    } JamepadSensorRecord_t;
+
+    static_assert(sizeof(JamepadSensorRecord_t) == 32, "Sensor staging does not match the Java side layout");
+
+    static JamepadEventRecord_t* jamepad_push_event(char* ring, jlong tail, jint capacity, int type, Sint32 instanceId, int code, int finger, Uint64 timestamp) {
+        if(ring == NULL) {
+            return NULL;
+        }
+        JamepadEventRing_t* header = (JamepadEventRing_t*) ring;
+        if(header->head - tail >= capacity) {
+            header->dropped++;
+            return NULL;
+        }
+
+        JamepadEventRecord_t* records = (JamepadEventRecord_t*) (ring + sizeof(JamepadEventRing_t));
+        JamepadEventRecord_t* record = &records[header->head % capacity];
+        SDL_zerop(record);
+        record->header = (Uint64) (Uint32) instanceId | ((Uint64) type << 32) | ((Uint64) (code & 0xFF) << 40) | ((Uint64) (finger & 0xFF) << 48);
+        record->timestamp = timestamp;
+        header->head++;
+        return record;
+    }
+
+    // Drains the SDL event queue. If a ring is passed, all controller events are copied into it.
+    // The event types are the TYPE_ constants of ControllerEventBuffer.
+    // Joystick hotplug and battery events are written to hotplug as pairs of HOTPLUG_ type and the 'which' of the event.
+    // If sensorStaging is passed, every sensor update is copied into it. It starts with the number of records
+    // and the number of updates that didn't fit.
+    // Returns the number of hotplug events, or -1 if there were more than hotplugCapacity.
+    int jamepad_pump_events(char* ring, jlong tail, jint capacity, int* hotplug, int hotplugCapacity,
+                            char* sensorStaging, int sensorStagingCapacity) {
+        int numHotplugEvents = 0;
+        JamepadEventRecord_t* record;
+        SDL_Event event;
+
+        Sint32* numSensorRecords = (Sint32*) sensorStaging;
+        Sint32* numDroppedSensorRecords = (Sint32*) (sensorStaging + 4);
+        JamepadSensorRecord_t* sensorRecords = (JamepadSensorRecord_t*) (sensorStaging + 8);
+        if(sensorStaging) {
+            *numSensorRecords = 0;
+            *numDroppedSensorRecords = 0;
+        }
+
+        while (SDL_PollEvent(&event)) {
+            Uint64 timestamp = (Uint64) event.common.timestamp * 1000;
+            switch (event.type) {
+                case SDL_JOYDEVICEADDED:
+                case SDL_JOYDEVICEREMOVED:
+                    if(numHotplugEvents >= 0 && numHotplugEvents < hotplugCapacity) {
+                        hotplug[numHotplugEvents * 2] = event.type == SDL_JOYDEVICEADDED ? 0 : 1;
+                        hotplug[numHotplugEvents * 2 + 1] = event.jdevice.which;
+                        numHotplugEvents++;
+                    } else {
+                        numHotplugEvents = -1;
+                    }
+                    jamepad_push_event(ring, tail, capacity, event.type == SDL_JOYDEVICEADDED ? 8 : 9, event.jdevice.which, 0, 0, timestamp);
+                    break;
+                case SDL_JOYBATTERYUPDATED:
+                    if(numHotplugEvents >= 0 && numHotplugEvents < hotplugCapacity) {
+                        hotplug[numHotplugEvents * 2] = 2;
+                        hotplug[numHotplugEvents * 2 + 1] = event.jbattery.which;
+                        numHotplugEvents++;
+                    } else {
+                        numHotplugEvents = -1;
+                    }
+                    break;
+                case SDL_CONTROLLERBUTTONDOWN:
+                case SDL_CONTROLLERBUTTONUP:
+                    record = jamepad_push_event(ring, tail, capacity, event.type == SDL_CONTROLLERBUTTONDOWN ? 1 : 2, event.cbutton.which, event.cbutton.button, 0, timestamp);
+                    if(record) {
+                        record->data[0] = event.cbutton.state == SDL_PRESSED ? 1 : 0;
+                    }
+                    break;
+                case SDL_CONTROLLERAXISMOTION:
+                    record = jamepad_push_event(ring, tail, capacity, 3, event.caxis.which, event.caxis.axis, 0, timestamp);
+                    if(record) {
+                        record->data[0] = event.caxis.value;
+                    }
+                    break;
+                case SDL_CONTROLLERTOUCHPADDOWN:
+                case SDL_CONTROLLERTOUCHPADMOTION:
+                case SDL_CONTROLLERTOUCHPADUP:
+                    record = jamepad_push_event(ring, tail, capacity, 4 + (event.type - SDL_CONTROLLERTOUCHPADDOWN), event.ctouchpad.which, event.ctouchpad.touchpad, event.ctouchpad.finger, timestamp);
+                    if(record) {
+                        SDL_memcpy(&record->data[0], &event.ctouchpad.x, sizeof(float));
+                        SDL_memcpy(&record->data[1], &event.ctouchpad.y, sizeof(float));
+                        SDL_memcpy(&record->data[2], &event.ctouchpad.pressure, sizeof(float));
+                    }
+                    break;
+                case SDL_CONTROLLERSENSORUPDATE:
+                    record = jamepad_push_event(ring, tail, capacity, 7, event.csensor.which, event.csensor.sensor, 0,
+                            event.csensor.timestamp_us != 0 ? event.csensor.timestamp_us : timestamp);
+                    if(record) {
+                        SDL_memcpy(&record->data[0], &event.csensor.data[0], 3 * sizeof(float));
+                    }
+                    if(sensorStaging && *numSensorRecords < sensorStagingCapacity) {
+                        JamepadSensorRecord_t* sensorRecord = &sensorRecords[(*numSensorRecords)++];
+                        sensorRecord->instanceId = event.csensor.which;
+                        sensorRecord->sensor = event.csensor.sensor;
+                        sensorRecord->timestamp = event.csensor.timestamp_us != 0 ? event.csensor.timestamp_us : timestamp;
+                        SDL_memcpy(&sensorRecord->data[0], &event.csensor.data[0], 3 * sizeof(float));
+                    } else if(sensorStaging) {
+                        (*numDroppedSensorRecords)++;
+                    }
+                    break;
+            }
+        }
+        return numHotplugEvents;
+    }
+    */
+
+    private static final boolean IS_UNIX = System.getProperty("os.name", "").toLowerCase().contains("nix") ||
+            System.getProperty("os.name", "").toLowerCase().contains("nux");
+
+    private static final boolean IS_WINDOWS = System.getProperty("os.name", "").toLowerCase().contains("win");
+
+    private static final boolean IS_MAC = System.getProperty("os.name", "").toLowerCase().contains("mac")
+            || System.getProperty("os.name", "").toLowerCase().contains("darwin");
+
+    /**
+     * @param loadNativeLibrary whether or not the native library should be loaded with the SharedLibraryLoader
+     */
+    SDLControllerBackend(boolean loadNativeLibrary) {
+        if(loadNativeLibrary) {
+            new SharedLibraryLoader().load("jamepad");
+        }
+    }
+
+    @Override
+    boolean setHint(String name, String value) {
+        return nativeSetSdlHint(name, value);
+    }
+
+    private native boolean nativeSetSdlHint(String name, String value); /*
+        return SDL_SetHint(name, value) == SDL_TRUE ? JNI_TRUE : JNI_FALSE;
+    */
+
+    @Override
+    boolean init(boolean disableRawInput, int sonyControllerFeature) {
+        return nativeInitSDLGamepad(disableRawInput, sonyControllerFeature);
+    }
+
+    @Override
+    boolean initHaptics() {
+        if(IS_UNIX){
+            String audioDriverName = getCurrentAudioDriverName();
+            if(!nativeInitHapticsOnUnix()) {
+                System.err.println("Failed to load SLD Audio for DualSense haptics with pipewire" + getLastError() + ". Try again with standard driver");
+                if(!nativeInitHaptics(audioDriverName == null || audioDriverName.isEmpty() ? "pulse" : audioDriverName)) {
+                    System.err.println("Failed to load SLD Audio for DualSense haptics " + getLastError());
+                    return false;
+                }
+            }
+        } else {
+            if(!nativeInitHaptics()) {
+                System.err.println("Failed to load SLD Audio for DualSense haptics " + getLastError());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private native boolean nativeInitSDLGamepad(boolean disableRawInput, int sonyControllerFeature); /*
+        if (disableRawInput) {
+            SDL_SetHint(SDL_HINT_JOYSTICK_RAWINPUT, "0");
+        }
+        if(sonyControllerFeature != 0) {
+            SDL_SetHint(SDL_HINT_JOYSTICK_HIDAPI_PS4_RUMBLE, "1");
+            SDL_SetHint(SDL_HINT_JOYSTICK_HIDAPI_PS5_RUMBLE, "1");
+            SDL_SetHint(SDL_HINT_JOYSTICK_HIDAPI_PS4, "1");
+            SDL_SetHint(SDL_HINT_JOYSTICK_HIDAPI_PS5, "1");
+            SDL_SetHint(SDL_HINT_JOYSTICK_HIDAPI_PS5_PLAYER_LED, "1");
+            SDL_SetHint(SDL_HINT_JOYSTICK_ALLOW_BACKGROUND_EVENTS, "1");
+        }
+
+        if (SDL_Init(SDL_INIT_EVENTS | SDL_INIT_JOYSTICK | SDL_INIT_GAMECONTROLLER) != 0) {
+            printf("NATIVE METHOD: SDL_Init failed: %s\n", SDL_GetError());
+            return JNI_FALSE;
+        }
+
+        //We don't want any controller connections events (which are automatically generated at init)
+        //since they interfere with us detecting new controllers, so we go through all events and clear them.
+        SDL_Event event;
+        while (SDL_PollEvent(&event));
+
+        return JNI_TRUE;
+    */
+
+    private native boolean nativeInitHaptics(String audioDriverName); /*
+        if(SDL_WasInit(SDL_INIT_AUDIO) != 0) {
+            return JNI_TRUE;
+        }
+        SDL_SetHint("SDL_AUDIODRIVER", audioDriverName);
+
+        if (SDL_Init(SDL_INIT_AUDIO) < 0) {
+            return JNI_FALSE;
+        }
+
+        return JNI_TRUE;
+    */
+
+    private native boolean nativeInitHaptics(); /*
+        if(SDL_WasInit(SDL_INIT_AUDIO) != 0) {
+            return JNI_TRUE;
+        }
+        if (SDL_Init(SDL_INIT_AUDIO) < 0) {
+            return JNI_FALSE;
+        }
+
+        return JNI_TRUE;
+    */
+
+    private native boolean nativeInitHapticsOnUnix(); /*
+        if(SDL_WasInit(SDL_INIT_AUDIO) != 0) {
+            return JNI_TRUE;
+        }
+        SDL_SetHint("SDL_AUDIODRIVER", "pipewire"); // Seems to work better with controller haptics
+
+        if (SDL_Init(SDL_INIT_AUDIO) < 0) {
+            return JNI_FALSE;
+        }
+
+        return JNI_TRUE;
+    */
+
+    @Override
+    void quit() {
+        nativeCloseSDLGamepad();
+    }
+
+    private native void nativeCloseSDLGamepad(); /*
+        SDL_Quit();
+    */
+
+    @Override
+    int pumpEvents(ByteBuffer eventRing, long eventTail, int eventCapacity, int[] hotplugEvents, int maxHotplugEvents,
+                   ByteBuffer sensorStaging, int sensorStagingCapacity) {
+        return nativePumpEvents(eventRing, eventTail, eventCapacity, hotplugEvents, maxHotplugEvents,
+                sensorStaging, sensorStagingCapacity);
+    }
+
+    private native int nativePumpEvents(ByteBuffer eventRing, long eventTail, int eventCapacity,
+                                         int[] hotplugEvents, int maxHotplugEvents,
+                                         ByteBuffer sensorStaging, int sensorStagingCapacity); /*
+        SDL_JoystickUpdate();
+        return jamepad_pump_events(eventRing, eventTail, eventCapacity, hotplugEvents, maxHotplugEvents,
+                                   sensorStaging, sensorStagingCapacity);
+    */
+
+    @Override
+    int getNumDevices() {
+        return nativeGetNumJoysticks();
+    }
+
+    private native int nativeGetNumJoysticks(); /*
+        return SDL_NumJoysticks();
+    */
+
+    @Override
+    boolean isGameController(int deviceIndex) {
+        return nativeIsGameController(deviceIndex);
+    }
+
+    private native boolean nativeIsGameController(int deviceIndex); /*
+        return SDL_IsGameController(deviceIndex) ? JNI_TRUE : JNI_FALSE;
+    */
+
+    @Override
+    int getDeviceInstanceID(int deviceIndex) {
+        return nativeGetJoystickDeviceInstanceID(deviceIndex);
+    }
+
+    private native int nativeGetJoystickDeviceInstanceID(int deviceIndex); /*
+        return SDL_JoystickGetDeviceInstanceID(deviceIndex);
+    */
+
+    @Override
+    boolean addMappingsFromFile(String path) {
+        return nativeAddMappingsFromFile(path);
+    }
+
+    private native boolean nativeAddMappingsFromFile(String path); /*
+        if(SDL_GameControllerAddMappingsFromFile(path) < 0) {
+            printf("NATIVE METHOD: Failed to load mappings from \"%s\"\n", path);
+            printf("               %s\n", SDL_GetError());
+            return JNI_FALSE;
+        }
+
+        return JNI_TRUE;
+    */
+
+    @Override
+    boolean addMappingsFromBuffer(byte[] buffer, int length) {
+        return nativeAddMappingsFromBuffer(buffer, length);
+    }
+
+    private native boolean nativeAddMappingsFromBuffer(byte[] buffer, int length); /*
+        SDL_RWops *rw = SDL_RWFromMem(buffer, length);
+
+        if(rw == NULL) {
+            printf("NATIVE METHOD: Failed to create SDL_RWFromMem");
+            printf("               %s\n", SDL_GetError());
+            return JNI_FALSE;
+        }
+
+        if(SDL_GameControllerAddMappingsFromRW(rw, 1) < 0) {
+            printf("NATIVE METHOD: Failed to load mappings from SDL_RWFromMem");
+            printf("               %s\n", SDL_GetError());
+            return JNI_FALSE;
+        }
+
+        return JNI_TRUE;
+    */
+
+    @Override
+    String getLastError() {
+        return nativeGetLastError();
+    }
+
+    private native String nativeGetLastError(); /*
+        return env->NewStringUTF(SDL_GetError());
+    */
+
+    @Override
+    String getCurrentAudioDriverName() {
+        return nativeGetCurrentAudioDriverName();
+    }
+
+    private native String nativeGetCurrentAudioDriverName(); /*
+        return env->NewStringUTF(SDL_GetError());
+    */
+
+    @Override
+    long open(int deviceIndex) {
+        return nativeConnectController(deviceIndex);
+    }
+
+    private native long nativeConnectController(int index); /*
+        return (jlong) SDL_GameControllerOpen(index);
+    */
+
+    @Override
+    void getTouchpadFingers(long handle, int[] fingers, int numTouchpads) {
+        nativeGetTouchpadFingers(handle, fingers, numTouchpads);
+    }
+
+    private native void nativeGetTouchpadFingers(long controllerPtr, int[] fingers, int numTouchpads); /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        for(int i = 0; i < numTouchpads; i++) {
+            fingers[i] = SDL_GameControllerGetNumTouchpadFingers(pad, i);
+        }
+    */
+
+    @Override
+    void getInfo(long handle, int[] info, float[] sensorDataRates) {
+        nativeGetInfo(handle, info, sensorDataRates);
+    }
+
+    // Fills the array in the layout of the INFO_ constants of ControllerInfo
+    private native void nativeGetInfo(long controllerPtr, int[] info, float[] sensorDataRates); /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        SDL_Joystick* joystick = SDL_GameControllerGetJoystick(pad);
+
+        info[0] = SDL_GameControllerGetVendor(pad);
+        info[1] = SDL_GameControllerGetProduct(pad);
+        info[2] = SDL_GameControllerGetProductVersion(pad);
+        info[3] = SDL_GameControllerGetType(pad);
+
+        info[4] = 0;
+        for(int i = 0; i < SDL_CONTROLLER_BUTTON_MAX; i++) {
+            if(SDL_GameControllerHasButton(pad, (SDL_GameControllerButton) i)) {
+                info[4] |= 1 << i;
+            }
+        }
+        info[5] = 0;
+        for(int i = 0; i < SDL_CONTROLLER_AXIS_MAX; i++) {
+            if(SDL_GameControllerHasAxis(pad, (SDL_GameControllerAxis) i)) {
+                info[5] |= 1 << i;
+            }
+        }
+
+        info[6] = (SDL_GameControllerHasRumble(pad) ? 1 : 0)
+                | (SDL_GameControllerHasRumbleTriggers(pad) ? 2 : 0)
+                | (SDL_GameControllerHasLED(pad) ? 4 : 0);
+        info[7] = SDL_GameControllerGetNumTouchpads(pad);
+
+        info[8] = 0;
+        for(int i = 0; i < 7; i++) {
+            sensorDataRates[i] = 0;
+            if(i > 0 && SDL_GameControllerHasSensor(pad, (SDL_SensorType) i)) {
+                info[8] |= 1 << i;
+                sensorDataRates[i] = SDL_GameControllerGetSensorDataRate(pad, (SDL_SensorType) i);
+            }
+        }
+        info[9] = SDL_JoystickCurrentPowerLevel(joystick);
+    */
+
+    @Override
+    String getGUID(long handle) {
+        return nativeGetGUID(handle);
+    }
+
+    private native String nativeGetGUID(long controllerPtr); /*
+        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
+        char guid[33];
+        SDL_JoystickGetGUIDString(SDL_JoystickGetGUID(joystick), guid, sizeof(guid));
+        return env->NewStringUTF(guid);
+    */
+
+    @Override
+    String getSerial(long handle) {
+        return nativeGetSerial(handle);
+    }
+
+    private native String nativeGetSerial(long controllerPtr); /*
+        const char* serial = SDL_GameControllerGetSerial((SDL_GameController*) controllerPtr);
+        return serial == NULL ? NULL : env->NewStringUTF(serial);
+    */
+
+    @Override
+    boolean enableSensors(long handle) {
+        return nativeEnableSensors(handle);
+    }
+
+    private native boolean nativeEnableSensors(long controllerPtr); /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        if(SDL_GameControllerHasSensor(pad, SDL_SENSOR_ACCEL) && SDL_GameControllerHasSensor(pad, SDL_SENSOR_GYRO)) {
+            SDL_GameControllerSetSensorEnabled(pad, SDL_SENSOR_ACCEL, SDL_TRUE);
+		    SDL_GameControllerSetSensorEnabled(pad, SDL_SENSOR_GYRO, SDL_TRUE);
+
+		    return JNI_TRUE;
+        }
+        return JNI_FALSE;
+    */
+
+    /*JNI
+    // Haptic feedback comes in as 3 kHz stereo, but the DualSense plays 48 kHz with 4 channels,
+    // where the third and fourth channel drive the left and right actuator
+    #define JAMEPAD_HAPTICS_UPSAMPLING 16
+    #define JAMEPAD_HAPTICS_CHANNELS 4
+    #define JAMEPAD_HAPTICS_FRAME_SIZE (JAMEPAD_HAPTICS_CHANNELS * sizeof(Sint16))
+    #define JAMEPAD_HAPTICS_BYTES_PER_MS (48 * JAMEPAD_HAPTICS_FRAME_SIZE)
+
+    // The haptics context of one controller
+    typedef struct JamepadHaptics
+    {
+        SDL_AudioDeviceID output;
+        char* deviceName;                   // name of the audio device opened for output, NULL if none is open
+        Sint16 previous[2];                 // the last input frame, interpolation continues from it on the next write
+        Sint16* buffer;                     // output of the resampler
+        int capacity;                       // size of the buffer in input frames
+        Uint32 maxQueuedBytes;              // the latency target, more queued audio is dropped
+        bool started;                       // whether anything was queued yet, the queue can't run dry before
+        Uint64 underruns;
+        Uint64 overruns;
+        Uint64 droppedBytes;
+        struct JamepadHaptics* next;
+    } JamepadHaptics_t;
+
+    static const Uint8 jamepad_haptics_silence[JAMEPAD_HAPTICS_BYTES_PER_MS * 5] = {0};
+
+    static void jamepad_haptics_queue_silence(JamepadHaptics_t* h, Uint32 bytes) {
+        while(bytes > 0) {
+            Uint32 chunk = SDL_min(bytes, (Uint32) sizeof(jamepad_haptics_silence));
+            SDL_QueueAudio(h->output, jamepad_haptics_silence, chunk);
+            bytes -= chunk;
+        }
+    }
+
+    // Keeps the queue of the audio device within the latency target. If the device ran dry since
+    // the last write, half the target is filled with silence first, which absorbs the jitter of the
+    // next writes. If the queue would grow past the target, the oldest part of the new audio is
+    // dropped, and the whole queue if it is already over the target by itself.
+    static bool jamepad_haptics_queue(JamepadHaptics_t* h, const Uint8* audio, Uint32 bytes) {
+        Uint32 queued = SDL_GetQueuedAudioSize(h->output);
+        if(queued == 0 && h->started) {
+            h->underruns++;
+            jamepad_haptics_queue_silence(h, h->maxQueuedBytes / 2 / JAMEPAD_HAPTICS_FRAME_SIZE * JAMEPAD_HAPTICS_FRAME_SIZE);
+            queued = SDL_GetQueuedAudioSize(h->output);
+        }
+        h->started = true;
+
+        if(queued + bytes > h->maxQueuedBytes) {
+            h->overruns++;
+            if(queued >= h->maxQueuedBytes) {
+                SDL_ClearQueuedAudio(h->output);
+                h->droppedBytes += queued;
+                queued = 0;
+            }
+            if(queued + bytes > h->maxQueuedBytes) {
+                Uint32 excess = queued + bytes - h->maxQueuedBytes;
+                // Whole frames only, so the channels stay in place
+                excess = (excess + JAMEPAD_HAPTICS_FRAME_SIZE - 1) / JAMEPAD_HAPTICS_FRAME_SIZE * JAMEPAD_HAPTICS_FRAME_SIZE;
+                excess = SDL_min(excess, bytes);
+                audio += excess;
+                bytes -= excess;
+                h->droppedBytes += excess;
+            }
+        }
+        return bytes == 0 || SDL_QueueAudio(h->output, audio, bytes) == 0;
+    }
+
+    // All contexts, to find the audio devices that are already taken by a controller
+    static JamepadHaptics_t* haptics_contexts = NULL;
+
+    static bool jamepad_haptics_reserve(JamepadHaptics_t* h, int frames) {
+        if(frames <= h->capacity) {
+            return true;
+        }
+        Sint16* buffer = (Sint16*) SDL_realloc(h->buffer, (size_t) frames * JAMEPAD_HAPTICS_UPSAMPLING * JAMEPAD_HAPTICS_CHANNELS * sizeof(Sint16));
+        if(buffer == NULL) {
+            SDL_OutOfMemory();
+            return false;
+        }
+        h->buffer = buffer;
+        h->capacity = frames;
+        return true;
+    }
+
+    // Remixes to 4 channels and upsamples to 48 kHz in a single pass and queues the result.
+    // Samples are interpolated linearly, which is plenty for the frequencies of the actuators,
+    // and the stream stays continuous across writes of any size.
+    static bool jamepad_haptics_write(JamepadHaptics_t* h, const Uint8* data, int size) {
+        if(h->output == 0) {
+            return false;
+        }
+        int frames = size / 4;
+        if(frames == 0) {
+            return true;
+        }
+        if(!jamepad_haptics_reserve(h, frames)) {
+            return false;
+        }
+
+        Sint16* out = h->buffer;
+        int left0 = h->previous[0];
+        int right0 = h->previous[1];
+        for(int i = 0; i < frames; i++) {
+            // 16 bit little endian, assembled byte by byte since the input may be unaligned
+            int left1 = (Sint16) (data[i * 4] | (data[i * 4 + 1] << 8));
+            int right1 = (Sint16) (data[i * 4 + 2] | (data[i * 4 + 3] << 8));
+            for(int j = 1; j <= JAMEPAD_HAPTICS_UPSAMPLING; j++) {
+                out[0] = 0;
+                out[1] = 0;
+                out[2] = (Sint16) SDL_SwapLE16((left0 * (JAMEPAD_HAPTICS_UPSAMPLING - j) + left1 * j) / JAMEPAD_HAPTICS_UPSAMPLING);
+                out[3] = (Sint16) SDL_SwapLE16((right0 * (JAMEPAD_HAPTICS_UPSAMPLING - j) + right1 * j) / JAMEPAD_HAPTICS_UPSAMPLING);
+                out += JAMEPAD_HAPTICS_CHANNELS;
+            }
+            left0 = left1;
+            right0 = right1;
+        }
+        h->previous[0] = (Sint16) left0;
+        h->previous[1] = (Sint16) right0;
+
+        return jamepad_haptics_queue(h, (const Uint8*) h->buffer, (Uint32) frames * JAMEPAD_HAPTICS_UPSAMPLING * JAMEPAD_HAPTICS_FRAME_SIZE);
+    }
+     */
+
+    /*JNI
+    #include <stdio.h>
+    */
+
+    @Override
+    long enableHaptics(long handle, int latencyMs) {
+        return nativeEnableHaptics(latencyMs);
+    }
+
+    private native long nativeEnableHaptics(int latencyMs); /*
+        JamepadHaptics_t* haptics = (JamepadHaptics_t*) SDL_calloc(1, sizeof(JamepadHaptics_t));
+        if(haptics == NULL) {
+            SDL_OutOfMemory();
+            return 0;
+        }
+        // Room for packets of 10 ms, bigger writes grow the buffer
+        if(!jamepad_haptics_reserve(haptics, 30)) {
+            SDL_free(haptics);
+            return 0;
+        }
+        haptics->maxQueuedBytes = (Uint32) latencyMs * JAMEPAD_HAPTICS_BYTES_PER_MS;
+        haptics->next = haptics_contexts;
+        haptics_contexts = haptics;
+        return (jlong) haptics;
+    */
+
+    @Override
+    void setHapticsLatency(long haptics, int latencyMs) {
+        nativeSetHapticsLatency(haptics, latencyMs);
+    }
+
+    private native void nativeSetHapticsLatency(long hapticsPtr, int latencyMs); /*
+        ((JamepadHaptics_t*) hapticsPtr)->maxQueuedBytes = (Uint32) latencyMs * JAMEPAD_HAPTICS_BYTES_PER_MS;
+    */
+
+    @Override
+    void getHapticsMetrics(long haptics, long[] values) {
+        nativeGetHapticsMetrics(haptics, values);
+    }
+
+    private native void nativeGetHapticsMetrics(long hapticsPtr, long[] values); /*
+        JamepadHaptics_t* haptics = (JamepadHaptics_t*) hapticsPtr;
+        values[0] = haptics->output != 0 ? SDL_GetQueuedAudioSize(haptics->output) : 0;
+        values[1] = haptics->maxQueuedBytes;
+        values[2] = (jlong) haptics->underruns;
+        values[3] = (jlong) haptics->overruns;
+        values[4] = (jlong) haptics->droppedBytes;
+    */
+
+    /*JNI
+    #include <string.h>
+    */
+
+    @Override
+    boolean connectHaptics(long haptics) {
+        return nativeConnectHaptics(haptics, IS_WINDOWS || IS_MAC);
+    }
+
+    private native boolean nativeConnectHaptics(long hapticsPtr, boolean isWindowsOrMac); /*
+        JamepadHaptics_t* haptics = (JamepadHaptics_t*) hapticsPtr;
+        if(haptics->output != 0) {
+            return JNI_TRUE; // already initialized
+        }
+
+        SDL_AudioSpec want, have;
+	    SDL_zero(want);
+	    want.freq = 48000;
+	    want.format = AUDIO_S16LSB;
+	    want.channels = 4;
+	    want.samples = 480; // 10ms buffer
+	    want.callback = NULL;
+
+	    for (int i=0; i < SDL_GetNumAudioDevices(0); i++)
+	    {
+	        const char* device_name = SDL_GetAudioDeviceName(i, 0);
+	        if(isWindowsOrMac) {
+	            if (device_name == NULL || !strstr(device_name, "Wireless Controller")) {
+	                continue;
+	            }
+	        } else {
+	            if (device_name == NULL || !strstr(device_name, "DualSense")) {
+	                continue;
+	            }
+	        }
+
+	        // SDL doesn't tell which audio device belongs to which controller, so every controller
+	        // takes the first one no other controller has. SDL keeps the names unique.
+	        bool taken = false;
+	        for(JamepadHaptics_t* other = haptics_contexts; other != NULL; other = other->next) {
+	            if(other->deviceName != NULL && SDL_strcmp(other->deviceName, device_name) == 0) {
+	                taken = true;
+	                break;
+	            }
+	        }
+	        if(taken) {
+	            continue;
+	        }
+
+	        haptics->output = SDL_OpenAudioDevice(device_name, 0, &want, &have, 0);
+	        if (haptics->output == 0) {
+	            continue;
+	        }
+	        haptics->deviceName = SDL_strdup(device_name);
+	        haptics->previous[0] = 0;
+	        haptics->previous[1] = 0;
+	        haptics->started = false;
+	        SDL_PauseAudioDevice(haptics->output, 0);
+	        return JNI_TRUE;
+	    }
+
+	    return JNI_FALSE;
+    */
+
+    @Override
+    void close(long handle) {
+        nativeClose(handle);
+    }
+
+    private native void nativeClose(long controllerPtr); /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        if(pad) {
+            // Unplugged controllers have to be closed as well, otherwise SDL keeps them around
+            SDL_GameControllerClose(pad);
+        }
+    */
+
+    @Override
+    void releaseHaptics(long haptics) {
+        nativeReleaseHaptics(haptics);
+    }
+
+    private native void nativeReleaseHaptics(long hapticsPtr); /*
+        JamepadHaptics_t* haptics = (JamepadHaptics_t*) hapticsPtr;
+        for(JamepadHaptics_t** link = &haptics_contexts; *link != NULL; link = &(*link)->next) {
+            if(*link == haptics) {
+                *link = haptics->next;
+                break;
+            }
+        }
+
+        if (haptics->output > 0)
+        {
+            SDL_CloseAudioDevice(haptics->output);
+		}
+		SDL_free(haptics->deviceName);
+        SDL_free(haptics->buffer);
+        SDL_free(haptics);
+    */
+
+    @Override
+    boolean isAttached(long handle) {
+        return nativeIsConnected(handle);
+    }
+
+    private native boolean nativeIsConnected(long controllerPtr); /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        if (pad && SDL_GameControllerGetAttached(pad)) {
+            return JNI_TRUE;
+        }
+        return JNI_FALSE;
+    */
+
+    @Override
+    boolean rumble(long handle, int leftMagnitude, int rightMagnitude, int durationMs) {
+        return nativeDoVibration(handle, leftMagnitude, rightMagnitude, durationMs);
+    }
+
+    private native boolean nativeDoVibration(long controllerPtr, int leftMagnitude, int rightMagnitude, int duration_ms); /*
+        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
+        return SDL_JoystickRumble(joystick, leftMagnitude, rightMagnitude,  duration_ms) == 0;
+    */
+
+    @Override
+    boolean getButton(long handle, int button) {
+        return nativeCheckButton(handle, button);
+    }
+
+    private native boolean nativeCheckButton(long controllerPtr, int buttonIndex); /*
+        SDL_GameControllerUpdate();
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        return SDL_GameControllerGetButton(pad, (SDL_GameControllerButton) buttonIndex);
+    */
+
+    @Override
+    int getAxis(long handle, int axis) {
+        return nativeCheckAxis(handle, axis);
+    }
+
+    private native int nativeCheckAxis(long controllerPtr, int axisIndex); /*
+        SDL_GameControllerUpdate();
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        return SDL_GameControllerGetAxis(pad, (SDL_GameControllerAxis) axisIndex);
+    */
+
+    @Override
+    String getName(long handle) {
+        return nativeGetName(handle);
+    }
+
+    private native String nativeGetName(long controllerPtr); /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        return env->NewStringUTF(SDL_GameControllerName(pad));
+    */
+
+    @Override
+    int getInstanceID(long handle) {
+        return nativeGetDeviceInstanceID(handle);
+    }
+
+    private native int nativeGetDeviceInstanceID(long controllerPtr); /*
+        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
+        return SDL_JoystickInstanceID(joystick);
+     */
+
+    @Override
+    int getPlayerIndex(long handle) {
+        return nativeGetPlayerIndex(handle);
+    }
+
+    private native int nativeGetPlayerIndex(long controllerPtr); /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        return SDL_GameControllerGetPlayerIndex(pad);
+    */
+
+    @Override
+    void setPlayerIndex(long handle, int playerIndex) {
+        nativeSetPlayerIndex(handle, playerIndex);
+    }
+
+    private native void nativeSetPlayerIndex(long controllerPtr, int index); /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+        return SDL_GameControllerSetPlayerIndex(pad, index);
+    */
+
+    @Override
+    int getPowerLevel(long handle) {
+        return nativeGetPowerLevel(handle);
+    }
+
+    private native int nativeGetPowerLevel(long controllerPtr); /*
+        SDL_Joystick* joystick = SDL_GameControllerGetJoystick((SDL_GameController*) controllerPtr);
+        return SDL_JoystickCurrentPowerLevel(joystick);
+    */
+
+    @Override
+    boolean getTouchpadFinger(long handle, int touchpad, int finger, float[] values) {
+        return nativeGetTouchpadFinger(handle, touchpad, finger, values);
+    }
+
+    // Fills down (0 or 1), x, y and pressure
+    private native boolean nativeGetTouchpadFinger(long controllerPtr, int touchpad, int finger, float[] values); /*
+        SDL_GameControllerUpdate();
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+
+        Uint8 touch_state;
+        if(SDL_GameControllerGetTouchpadFinger(pad, touchpad, finger, &touch_state, &values[1], &values[2], &values[3]) != 0) {
+            return JNI_FALSE;
+        }
+        values[0] = touch_state == 0 ? 0 : 1;
+        return JNI_TRUE;
+     */
+
+    /*JNI
+    // Defined further down, next to jamepad_snapshot()
+    static bool jamepad_read_sensors(SDL_GameController* pad, float* accel, float* gyro, Uint64* timestamp);
+     */
+
+    @Override
+    long getSensorState(long handle, float[] values) {
+        return nativeGetSensorState(handle, values);
+    }
+
+    // Fills accel x, y, z and gyro x, y, z. Returns the timestamp, -1 if the sensors couldn't be read
+    private native long nativeGetSensorState(long controllerPtr, float[] values); /*
+        SDL_GameControllerUpdate();
+
+        Uint64 timestamp;
+        if(!jamepad_read_sensors((SDL_GameController*) controllerPtr, &values[0], &values[3], &timestamp)) {
+            return -1;
+        }
+        return (jlong) timestamp;
+    */
+
+    /*JNI
+    typedef struct
+    {
+        Sint32 connected;                   // 0
+        Uint32 buttons;                     // 4, bit n is SDL_GameControllerButton n
+        Sint16 axes[6];                     // 8
+        Sint32 numTouchPoints;              // 20
+        Uint64 sensorTimestamp;             // 24
+        Sint32 sensorValid;                 // 32
+        float accel[3];                     // 36
+        float gyro[3];                      // 48
+        Sint32 padding;                     // 60
+        struct
+        {
+            Uint8 valid;                    // 0
+            Uint8 down;                     // 1
+            Uint8 padding[2];               // 2
+            float x;                        // 4
+            float y;                        // 8
+            float pressure;                 // 12
+        } touch[8];                         // 64, the fingers of all touchpads one after another
+    } JamepadSnapshot_t;
+
+    static_assert(sizeof(JamepadSnapshot_t) == 192, "JamepadSnapshot_t does not match the Java side layout");
+
+    // Reads the latest accelerometer and gyroscope values. The timestamp is the one of the gyroscope
+    // reading in microseconds, as reported by the controller, or the current SDL time if it doesn't report one.
+    static bool jamepad_read_sensors(SDL_GameController* pad, float* accel, float* gyro, Uint64* timestamp) {
+        Uint64 accelTimestamp;
+        int resultGyro = SDL_GameControllerGetSensorDataWithTimestamp(pad, SDL_SENSOR_GYRO, timestamp, gyro, 3);
+        int resultAccel = SDL_GameControllerGetSensorDataWithTimestamp(pad, SDL_SENSOR_ACCEL, &accelTimestamp, accel, 3);
+        if(resultGyro != 0 || resultAccel != 0) {
+            return false;
+        }
+        if(*timestamp == 0) {
+            *timestamp = SDL_GetTicks64() * 1000;
+        }
+        return true;
+    }
+
+    static void jamepad_snapshot(SDL_GameController* pad, JamepadSnapshot_t* out, int pollFlags) {
+        SDL_zerop(out);
+
+        if(!pad || !SDL_GameControllerGetAttached(pad)) {
+            return;
+        }
+        out->connected = 1;
+
+        for(int i = 0; i < SDL_CONTROLLER_BUTTON_MAX; i++) {
+            if(SDL_GameControllerGetButton(pad, (SDL_GameControllerButton) i)) {
+                out->buttons |= (1u << i);
+            }
+        }
+        for(int i = 0; i < SDL_CONTROLLER_AXIS_MAX; i++) {
+            out->axes[i] = SDL_GameControllerGetAxis(pad, (SDL_GameControllerAxis) i);
+        }
+
+        if(pollFlags & 1) { // POLL_TOUCHPAD
+            int numTouchpads = SDL_GameControllerGetNumTouchpads(pad);
+            for(int touchpad = 0; touchpad < numTouchpads; touchpad++) {
+                int numFingers = SDL_GameControllerGetNumTouchpadFingers(pad, touchpad);
+                for(int finger = 0; finger < numFingers && out->numTouchPoints < 8; finger++) {
+                    Uint8 touch_state;
+                    float x, y, pressure;
+                    if(SDL_GameControllerGetTouchpadFinger(pad, touchpad, finger, &touch_state, &x, &y, &pressure) == 0) {
+                        out->touch[out->numTouchPoints].valid = 1;
+                        out->touch[out->numTouchPoints].down = touch_state;
+                        out->touch[out->numTouchPoints].x = x;
+                        out->touch[out->numTouchPoints].y = y;
+                        out->touch[out->numTouchPoints].pressure = pressure;
+                    }
+                    out->numTouchPoints++;
+                }
+            }
+        }
+
+        if(pollFlags & 2) { // POLL_SENSORS
+            out->sensorValid = jamepad_read_sensors(pad, out->accel, out->gyro, &out->sensorTimestamp) ? 1 : 0;
+        }
+    }
+     */
+
+    @Override
+    void poll(long handle, ByteBuffer snapshots, int offset, int pollFlags) {
+        nativePoll(handle, snapshots, offset, pollFlags);
+    }
+
+    private native void nativePoll(long controllerPtr, ByteBuffer snapshots, int offset, int pollFlags); /*
+        SDL_GameControllerUpdate();
+        jamepad_snapshot((SDL_GameController*) controllerPtr, (JamepadSnapshot_t*) (snapshots + offset), pollFlags);
+    */
+
+    @Override
+    int pollAll(long[] handles, int[] pollFlags, int count, ByteBuffer snapshots,
+                ByteBuffer eventRing, long eventTail, int eventCapacity,
+                int[] hotplugEvents, int maxHotplugEvents,
+                ByteBuffer sensorStaging, int sensorStagingCapacity) {
+        // Pumps and takes all snapshots in a single native call
+        return nativePollAll(handles, pollFlags, count, snapshots, eventRing, eventTail, eventCapacity,
+                hotplugEvents, maxHotplugEvents, sensorStaging, sensorStagingCapacity);
+    }
+
+    private native int nativePollAll(long[] controllerPtrs, int[] pollFlags, int count, ByteBuffer snapshots,
+                                     ByteBuffer eventRing, long eventTail, int eventCapacity,
+                                     int[] hotplugEvents, int maxHotplugEvents,
+                                     ByteBuffer sensorStaging, int sensorStagingCapacity); /*
+        SDL_JoystickUpdate();
+
+        int numHotplugEvents = jamepad_pump_events(eventRing, eventTail, eventCapacity, hotplugEvents, maxHotplugEvents,
+                                                   sensorStaging, sensorStagingCapacity);
+        // Battery updates don't change which controllers are connected, so they keep the snapshots
+        int deviceChanged = numHotplugEvents < 0;
+        for(int i = 0; i < numHotplugEvents; i++) {
+            if(hotplugEvents[i * 2] != 2) {
+                deviceChanged = 1;
+            }
+        }
+        if(deviceChanged) {
+            return numHotplugEvents;
+        }
+
+        JamepadSnapshot_t* out = (JamepadSnapshot_t*) snapshots;
+        for(int i = 0; i < count; i++) {
+            jamepad_snapshot((SDL_GameController*) controllerPtrs[i], &out[i], pollFlags[i]);
+        }
+        return numHotplugEvents;
+    */
+
+    // PS5 trigger effect documentation:
+    // https://controllers.fandom.com/wiki/Sony_DualSense#FFB_Trigger_Modes
+    /*JNI
+    typedef struct
+    {
+        Uint8 ucEnableBits1;                // 0
+        Uint8 ucEnableBits2;                // 1
+        Uint8 ucRumbleRight;                // 2
+        Uint8 ucRumbleLeft;                 // 3
+        Uint8 ucHeadphoneVolume;            // 4
+        Uint8 ucSpeakerVolume;              // 5
+        Uint8 ucMicrophoneVolume;           // 6
+        Uint8 ucAudioEnableBits;            // 7
+        Uint8 ucMicLightMode;               // 8
+        Uint8 ucAudioMuteBits;              // 9
+        Uint8 rgucRightTriggerEffect[11];   // 10
+        Uint8 rgucLeftTriggerEffect[11];    // 21
+        Uint8 rgucUnknown1[6];              // 32
+        Uint8 ucLedFlags;                   // 38
+        Uint8 rgucUnknown2[2];              // 39
+        Uint8 ucLedAnim;                    // 41
+        Uint8 ucLedBrightness;              // 42
+        Uint8 ucPadLights;                  // 43
+        Uint8 ucLedRed;                     // 44
+        Uint8 ucLedGreen;                   // 45
+        Uint8 ucLedBlue;                    // 46
+    } DS5EffectsState_t;
+     */
+
+    @Override
+    boolean sendTriggerEffects(long handle, byte leftTriggerEffect, byte[] triggerDataLeft, int leftTriggerDataSize,
+                               byte rightTriggerEffect, byte[] triggerDataRight, int rightTriggerDataSize) {
+        return nativeSendAdaptiveTriggerEffects(handle, leftTriggerEffect, triggerDataLeft, leftTriggerDataSize,
+                rightTriggerEffect, triggerDataRight, rightTriggerDataSize);
+    }
+
+    private native boolean nativeSendAdaptiveTriggerEffects(long controllerPtr,
+                                                         byte leftTriggerEffect,
+                                                         byte[] triggerDataLeft,
+                                                         int leftTriggerDataSize,
+                                                         byte rightTriggerEffect,
+                                                         byte[] triggerDataRight,
+                                                         int rightTriggerDataSize); /*
+        SDL_GameController* pad = (SDL_GameController*) controllerPtr;
+
+        DS5EffectsState_t state;
+        SDL_zero(state);
+
+        state.ucEnableBits1 |= (0x04 | 0x08); // Modify right and left trigger effect respectively
+        state.rgucLeftTriggerEffect[0] = leftTriggerEffect;
+        SDL_memcpy(state.rgucLeftTriggerEffect + 1, triggerDataLeft, leftTriggerDataSize);
+        state.rgucRightTriggerEffect[0] = rightTriggerEffect;
+        SDL_memcpy(state.rgucRightTriggerEffect + 1, triggerDataRight, rightTriggerDataSize);
+
+        return SDL_GameControllerSendEffect(pad, &state, sizeof(state)) == 0 ? JNI_TRUE : JNI_FALSE;
+    */
+
+    @Override
+    boolean sendHapticFeedback(long haptics, byte[] hapticFeedback, int hapticFeedbackSize) {
+        return nativeSendHapticFeedback(haptics, hapticFeedback, hapticFeedbackSize);
+    }
+
+    private native boolean nativeSendHapticFeedback(long hapticsPtr, byte[] hapticFeedback, int hapticFeedbackSize); /*
+        return jamepad_haptics_write((JamepadHaptics_t*) hapticsPtr, (const Uint8*) hapticFeedback, hapticFeedbackSize) ? JNI_TRUE : JNI_FALSE;
+    */
+
+    @Override
+    boolean sendHapticFeedback(long haptics, ByteBuffer hapticFeedback, int offset, int size) {
+        return nativeSendHapticFeedbackBuffer(haptics, hapticFeedback, offset, size);
+    }
+
+    private native boolean nativeSendHapticFeedbackBuffer(long hapticsPtr, ByteBuffer hapticFeedback, int offset, int size); /*
+        return jamepad_haptics_write((JamepadHaptics_t*) hapticsPtr, (const Uint8*) (hapticFeedback + offset), size) ? JNI_TRUE : JNI_FALSE;
+    */
+
+    /*JNI
+    // Virtual joysticks accept every output, so rumble and effects can be sent to them like to a real controller
+    static void jamepad_virtual_set_player_index(void* userdata, int player_index) {
+    }
+
+    static int jamepad_virtual_rumble(void* userdata, Uint16 low_frequency_rumble, Uint16 high_frequency_rumble) {
+        return 0;
+    }
+
+    static int jamepad_virtual_rumble_triggers(void* userdata, Uint16 left_rumble, Uint16 right_rumble) {
+        return 0;
+    }
+
+    static int jamepad_virtual_set_led(void* userdata, Uint8 red, Uint8 green, Uint8 blue) {
+        return 0;
+    }
+
+    static int jamepad_virtual_send_effect(void* userdata, const void* data, int size) {
+        return 0;
+    }
+
+    typedef struct
+    {
+        SDL_Joystick* joystick;
+        Uint32 buttonMask;
+        Uint32 axisMask;
+    } JamepadVirtual_t;
+
+    // SDL maps the buttons and axes of the layout to the joystick buttons and axes in order,
+    // so the joystick index of a controller button is the number of layout bits below it
+    static int jamepad_virtual_index(Uint32 mask, int bit) {
+        int index = 0;
+        for(int i = 0; i < bit; i++) {
+            if(mask & (1u << i)) {
+                index++;
+            }
+        }
+        return index;
+    }
+
+    static int jamepad_virtual_set_axis(JamepadVirtual_t* controller, int axis, int value) {
+        if(axis == SDL_CONTROLLER_AXIS_TRIGGERLEFT || axis == SDL_CONTROLLER_AXIS_TRIGGERRIGHT) {
+            // SDL maps the whole joystick axis range to 0 to 32767 for triggers
+            value = value * 2 - 32767;
+        }
+        return SDL_JoystickSetVirtualAxis(controller->joystick, jamepad_virtual_index(controller->axisMask, axis), (Sint16) value);
+    }
+     */
+
+    @Override
+    long attachVirtual(VirtualControllerLayout layout) {
+        if(layout.numTouchpadFingers > 0 || layout.hasSensors) {
+            throw new IllegalArgumentException("SDL can't emulate the touchpad and sensors of a virtual controller!");
+        }
+        return nativeAttachVirtual(layout.name, layout.buttons, layout.axes, layout.vendorId, layout.productId);
+    }
+
+    private native long nativeAttachVirtual(String name, int buttonMask, int axisMask, int vendorId, int productId); /*
+        SDL_VirtualJoystickDesc desc;
+        SDL_zero(desc);
+        desc.version = SDL_VIRTUAL_JOYSTICK_DESC_VERSION;
+        desc.type = SDL_JOYSTICK_TYPE_GAMECONTROLLER;
+        desc.naxes = jamepad_virtual_index(axisMask, SDL_CONTROLLER_AXIS_MAX);
+        desc.nbuttons = jamepad_virtual_index(buttonMask, SDL_CONTROLLER_BUTTON_MAX);
+        desc.axis_mask = axisMask;
+        desc.button_mask = buttonMask;
+        desc.vendor_id = (Uint16) vendorId;
+        desc.product_id = (Uint16) productId;
+        desc.name = name;
+        desc.SetPlayerIndex = jamepad_virtual_set_player_index;
+        desc.Rumble = jamepad_virtual_rumble;
+        desc.RumbleTriggers = jamepad_virtual_rumble_triggers;
+        desc.SetLED = jamepad_virtual_set_led;
+        desc.SendEffect = jamepad_virtual_send_effect;
+
+        int deviceIndex = SDL_JoystickAttachVirtualEx(&desc);
+        if(deviceIndex < 0) {
+            return 0;
+        }
+        // Opened right away, the inputs of a virtual joystick can only be set while it is open
+        SDL_Joystick* joystick = SDL_JoystickOpen(deviceIndex);
+        if(joystick == NULL) {
+            SDL_JoystickDetachVirtual(deviceIndex);
+            return 0;
+        }
+
+        JamepadVirtual_t* controller = (JamepadVirtual_t*) SDL_malloc(sizeof(JamepadVirtual_t));
+        if(controller == NULL) {
+            SDL_JoystickClose(joystick);
+            SDL_JoystickDetachVirtual(deviceIndex);
+            SDL_OutOfMemory();
+            return 0;
+        }
+        controller->joystick = joystick;
+        controller->buttonMask = buttonMask;
+        controller->axisMask = axisMask;
+        // Released triggers are at the bottom of the joystick axis range
+        if(axisMask & (1u << SDL_CONTROLLER_AXIS_TRIGGERLEFT)) {
+            jamepad_virtual_set_axis(controller, SDL_CONTROLLER_AXIS_TRIGGERLEFT, 0);
+        }
+        if(axisMask & (1u << SDL_CONTROLLER_AXIS_TRIGGERRIGHT)) {
+            jamepad_virtual_set_axis(controller, SDL_CONTROLLER_AXIS_TRIGGERRIGHT, 0);
+        }
+        return (jlong) controller;
+    */
+
+    @Override
+    boolean detachVirtual(long virtualHandle) {
+        return nativeDetachVirtual(virtualHandle);
+    }
+
+    private native boolean nativeDetachVirtual(long virtualPtr); /*
+        JamepadVirtual_t* controller = (JamepadVirtual_t*) virtualPtr;
+        SDL_JoystickID instanceId = SDL_JoystickInstanceID(controller->joystick);
+        SDL_JoystickClose(controller->joystick);
+        SDL_free(controller);
+
+        // The device index shifts when other joysticks are unplugged, so look it up by the instance id
+        for(int i = 0; i < SDL_NumJoysticks(); i++) {
+            if(SDL_JoystickGetDeviceInstanceID(i) == instanceId) {
+                return SDL_JoystickDetachVirtual(i) == 0 ? JNI_TRUE : JNI_FALSE;
+            }
+        }
+        return JNI_FALSE;
+    */
+
+    @Override
+    int getVirtualInstanceID(long virtualHandle) {
+        return nativeGetVirtualInstanceID(virtualHandle);
+    }
+
+    private native int nativeGetVirtualInstanceID(long virtualPtr); /*
+        return SDL_JoystickInstanceID(((JamepadVirtual_t*) virtualPtr)->joystick);
+    */
+
+    @Override
+    boolean setVirtualButton(long virtualHandle, int button, boolean pressed) {
+        return nativeSetVirtualButton(virtualHandle, button, pressed);
+    }
+
+    private native boolean nativeSetVirtualButton(long virtualPtr, int button, boolean pressed); /*
+        JamepadVirtual_t* controller = (JamepadVirtual_t*) virtualPtr;
+        return SDL_JoystickSetVirtualButton(controller->joystick, jamepad_virtual_index(controller->buttonMask, button),
+                                            pressed ? SDL_PRESSED : SDL_RELEASED) == 0 ? JNI_TRUE : JNI_FALSE;
+    */
+
+    @Override
+    boolean setVirtualAxis(long virtualHandle, int axis, int value) {
+        return nativeSetVirtualAxis(virtualHandle, axis, value);
+    }
+
+    private native boolean nativeSetVirtualAxis(long virtualPtr, int axis, int value); /*
+        return jamepad_virtual_set_axis((JamepadVirtual_t*) virtualPtr, axis, value) == 0 ? JNI_TRUE : JNI_FALSE;
+    */
+
+    @Override
+    boolean setVirtualTouchpadFinger(long virtualHandle, int finger, boolean down, float x, float y, float pressure) {
+        // Layouts with a touchpad are rejected by attachVirtual()
+        return false;
+    }
+
+    @Override
+    boolean setVirtualSensors(long virtualHandle, long timestamp, float accelX, float accelY, float accelZ,
+                              float gyroX, float gyroY, float gyroZ) {
+        return false;
+    }
+}
@@ -0,0 +1,295 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Combines the accelerometer and gyroscope readings of a controller into its orientation, using
+ * Madgwick's gradient descent filter. The gyroscope is integrated for fast response, and the
+ * accelerometer slowly pulls the result towards gravity, so the orientation doesn't drift away in
+ * pitch and roll. Yaw is not corrected, since there is no magnetometer.
+ *
+ * Every ControllerIndex has one, see ControllerIndex.getSensorFusion(). It is fed while SDL is
+ * pumped: with every reading if {@link Configuration#sensorBufferCapacity} is set, otherwise with
+ * the latest reading of every poll. Read it from the thread that pumps SDL.
+ *
+ * The orientation is a unit quaternion that rotates vectors from the frame of the controller into
+ * a world frame whose z axis points up. The controller frame is the one of SDL: with the controller
+ * held in front of you, x points right, y up and z towards you.
+ *
+ * All state is kept in primitive fields, so updating doesn't allocate anything.
+ */
+public final class SensorFusion {
+    /**
+     * Standard gravity in m/s^2
+     */
+    public static final float GRAVITY = 9.80665f;
+
+    // Time steps longer than this are treated as a gap in the data and not integrated
+    private static final float MAX_TIME_STEP = 0.1f;
+
+    private float beta = 0.1f;
+
+    private float q0 = 1;
+    private float q1;
+    private float q2;
+    private float q3;
+
+    private float accelX;
+    private float accelY;
+    private float accelZ;
+    private boolean hasAccel;
+    private boolean initialized;
+
+    private long lastGyroTimestamp = -1;
+
+    /**
+     * Forget the orientation. The next accelerometer reading sets it from gravity again.
+     */
+    public void reset() {
+        q0 = 1;
+        q1 = 0;
+        q2 = 0;
+        q3 = 0;
+        accelX = 0;
+        accelY = 0;
+        accelZ = 0;
+        hasAccel = false;
+        initialized = false;
+        lastGyroTimestamp = -1;
+    }
+
+    /**
+     * Set how strongly the accelerometer corrects the integrated gyroscope. Higher values converge
+     * faster, but let more of the controller's own acceleration into the orientation. The default
+     * is 0.1.
+     *
+     * @param beta the gain of the filter in rad/s
+     */
+    public void setBeta(float beta) {
+        if(beta < 0) {
+            throw new IllegalArgumentException("The gain of the filter must not be negative!");
+        }
+        this.beta = beta;
+    }
+
+    public float getBeta() {
+        return beta;
+    }
+
+    /**
+     * Feed an accelerometer reading. It is used by the following gyroscope readings.
+     *
+     * @param x acceleration along x in m/s^2
+     * @param y acceleration along y in m/s^2
+     * @param z acceleration along z in m/s^2
+     */
+    public void updateAccel(float x, float y, float z) {
+        accelX = x;
+        accelY = y;
+        accelZ = z;
+        hasAccel = x != 0 || y != 0 || z != 0;
+        if(hasAccel && !initialized) {
+            initFromGravity();
+        }
+    }
+
+    /**
+     * Feed a gyroscope reading. The time step is taken from the timestamp of the previous reading.
+     *
+     * @param timestamp the time of the reading in microseconds
+     * @param x rotation around x in rad/s
+     * @param y rotation around y in rad/s
+     * @param z rotation around z in rad/s
+     */
+    public void updateGyro(long timestamp, float x, float y, float z) {
+        long previous = lastGyroTimestamp;
+        lastGyroTimestamp = timestamp;
+        if(previous < 0 || timestamp <= previous) {
+            return;
+        }
+        float dt = (timestamp - previous) / 1_000_000f;
+        if(dt > MAX_TIME_STEP) {
+            return;
+        }
+        update(x, y, z, dt);
+    }
+
+    /**
+     * Feed the latest reading of both sensors. Does nothing if the reading has already been fed.
+     *
+     * @param sensorState the readings, as returned by ControllerIndex.getSensorState()
+     */
+    public void update(SensorState sensorState) {
+        if(sensorState.getTimestamp() == lastGyroTimestamp) {
+            return;
+        }
+        updateAccel(sensorState.getAccelX(), sensorState.getAccelY(), sensorState.getAccelZ());
+        updateGyro(sensorState.getTimestamp(), sensorState.getGyroX(), sensorState.getGyroY(), sensorState.getGyroZ());
+    }
+
+    /**
+     * Feed a reading from a {@link SensorSampleBuffer}.
+     *
+     * @param sensorType ControllerInfo.SENSOR_ACCEL or ControllerInfo.SENSOR_GYRO, other types are ignored
+     * @param timestamp the time of the reading in microseconds
+     */
+    public void updateSample(int sensorType, long timestamp, float x, float y, float z) {
+        if(sensorType == ControllerInfo.SENSOR_ACCEL) {
+            updateAccel(x, y, z);
+        } else if(sensorType == ControllerInfo.SENSOR_GYRO) {
+            updateGyro(timestamp, x, y, z);
+        }
+    }
+
+    /**
+     * Advance the orientation by one time step with the given gyroscope reading and the latest
+     * accelerometer reading.
+     *
+     * @param gx rotation around x in rad/s
+     * @param gy rotation around y in rad/s
+     * @param gz rotation around z in rad/s
+     * @param dt the time step in seconds
+     */
+    public void update(float gx, float gy, float gz, float dt) {
+        // Rate of change of the quaternion from the gyroscope
+        float qDot0 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+        float qDot1 = 0.5f * (q0 * gx + q2 * gz - q3 * gy);
+        float qDot2 = 0.5f * (q0 * gy - q1 * gz + q3 * gx);
+        float qDot3 = 0.5f * (q0 * gz + q1 * gy - q2 * gx);
+
+        if(hasAccel) {
+            float norm = invSqrt(accelX * accelX + accelY * accelY + accelZ * accelZ);
+            float ax = accelX * norm;
+            float ay = accelY * norm;
+            float az = accelZ * norm;
+
+            // Gradient descent step towards the orientation in which up matches the accelerometer
+            float _2q0 = 2 * q0;
+            float _2q1 = 2 * q1;
+            float _2q2 = 2 * q2;
+            float _2q3 = 2 * q3;
+            float _4q0 = 4 * q0;
+            float _4q1 = 4 * q1;
+            float _4q2 = 4 * q2;
+            float _8q1 = 8 * q1;
+            float _8q2 = 8 * q2;
+            float q0q0 = q0 * q0;
+            float q1q1 = q1 * q1;
+            float q2q2 = q2 * q2;
+            float q3q3 = q3 * q3;
+
+            float s0 = _4q0 * q2q2 + _2q2 * ax + _4q0 * q1q1 - _2q1 * ay;
+            float s1 = _4q1 * q3q3 - _2q3 * ax + 4 * q0q0 * q1 - _2q0 * ay - _4q1 + _8q1 * q1q1 + _8q1 * q2q2 + _4q1 * az;
+            float s2 = 4 * q0q0 * q2 + _2q0 * ax + _4q2 * q3q3 - _2q3 * ay - _4q2 + _8q2 * q1q1 + _8q2 * q2q2 + _4q2 * az;
+            float s3 = 4 * q1q1 * q3 - _2q1 * ax + 4 * q2q2 * q3 - _2q2 * ay;
+
+            float sNormSquared = s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3;
+            if(sNormSquared > 0) {
+                norm = invSqrt(sNormSquared);
+                qDot0 -= beta * s0 * norm;
+                qDot1 -= beta * s1 * norm;
+                qDot2 -= beta * s2 * norm;
+                qDot3 -= beta * s3 * norm;
+            }
+        }
+
+        q0 += qDot0 * dt;
+        q1 += qDot1 * dt;
+        q2 += qDot2 * dt;
+        q3 += qDot3 * dt;
+
+        float norm = invSqrt(q0 * q0 + q1 * q1 + q2 * q2 + q3 * q3);
+        q0 *= norm;
+        q1 *= norm;
+        q2 *= norm;
+        q3 *= norm;
+    }
+
+    /**
+     * Start from the orientation that turns the measured acceleration into up, so the filter
+     * doesn't need to converge from an arbitrary orientation first.
+     */
+    private void initFromGravity() {
+        float norm = invSqrt(accelX * accelX + accelY * accelY + accelZ * accelZ);
+        float ax = accelX * norm;
+        float ay = accelY * norm;
+        float az = accelZ * norm;
+
+        // Shortest rotation from a to z: (1 + a.z, a x z)
+        float w = 1 + az;
+        if(w < 1e-6f) {
+            // Upside down, turn around x
+            q0 = 0;
+            q1 = 1;
+            q2 = 0;
+            q3 = 0;
+        } else {
+            norm = invSqrt(w * w + ay * ay + ax * ax);
+            q0 = w * norm;
+            q1 = ay * norm;
+            q2 = -ax * norm;
+            q3 = 0;
+        }
+        initialized = true;
+    }
+
+    private static float invSqrt(float x) {
+        return (float) (1 / Math.sqrt(x));
+    }
+
+    public float getQuaternionW() {
+        return q0;
+    }
+
+    public float getQuaternionX() {
+        return q1;
+    }
+
+    public float getQuaternionY() {
+        return q2;
+    }
+
+    public float getQuaternionZ() {
+        return q3;
+    }
+
+    /**
+     * @return The part of the accelerometer's x reading that is caused by gravity, in m/s^2
+     */
+    public float getGravityX() {
+        return 2 * (q1 * q3 - q0 * q2) * GRAVITY;
+    }
+
+    /**
+     * @return The part of the accelerometer's y reading that is caused by gravity, in m/s^2
+     */
+    public float getGravityY() {
+        return 2 * (q0 * q1 + q2 * q3) * GRAVITY;
+    }
+
+    /**
+     * @return The part of the accelerometer's z reading that is caused by gravity, in m/s^2
+     */
+    public float getGravityZ() {
+        return (q0 * q0 - q1 * q1 - q2 * q2 + q3 * q3) * GRAVITY;
+    }
+
+    /**
+     * @return The acceleration along x without gravity, in m/s^2
+     */
+    public float getLinearAccelerationX() {
+        return hasAccel ? accelX - getGravityX() : 0;
+    }
+
+    /**
+     * @return The acceleration along y without gravity, in m/s^2
+     */
+    public float getLinearAccelerationY() {
+        return hasAccel ? accelY - getGravityY() : 0;
+    }
+
+    /**
+     * @return The acceleration along z without gravity, in m/s^2
+     */
+    public float getLinearAccelerationZ() {
+        return hasAccel ? accelZ - getGravityZ() : 0;
+    }
+}
@@ -0,0 +1,189 @@
+package com.studiohartman.jamepad;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Every accelerometer and gyroscope reading of one controller, with the timestamp the controller
+ * reported it at. A DualSense sends its sensor data at 250 Hz or more, so getSensorState() only
+ * sees a fraction of it when read once per frame. Motion controls and gyro aiming should integrate
+ * the samples from here instead:
+ *
+ * <pre>
+ * SensorSampleBuffer samples = controllers.getControllerIndex(0).getSensorSampleBuffer();
+ * while(samples.next()) {
+ *     if(samples.getSensorType() == ControllerInfo.SENSOR_GYRO) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * The samples are collected while ControllerManager.update() or ControllerManager.pollAll() pump
+ * SDL. Each SDL sensor update is one sample of a single sensor, so accelerometer and gyroscope
+ * readings arrive as separate samples.
+ *
+ * Like the {@link ControllerEventBuffer}, this is a single producer, single consumer queue that
+ * may be read by one other thread than the one pumping SDL. Samples that don't fit are dropped and
+ * counted, see getDroppedSamples(). The buffer belongs to the ControllerIndex, not to the device:
+ * samples of an unplugged controller stay in it until they are read.
+ *
+ * To enable the sample buffers, set {@link Configuration#sensorBufferCapacity}.
+ */
+public final class SensorSampleBuffer {
+    private final int capacity;
+    private final int[] types;
+    private final long[] timestamps;
+    private final float[] values;
+
+    // head is published by the producer after every sample, tail by the consumer after every read
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // The sample read by the last successful call to next()
+    private int type;
+    private long timestamp;
+    private float x;
+    private float y;
+    private float z;
+
+    SensorSampleBuffer(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("The capacity of the sensor buffer must be greater than 0!");
+        }
+        this.capacity = capacity;
+        types = new int[capacity];
+        timestamps = new long[capacity];
+        values = new float[capacity * 3];
+    }
+
+    /**
+     * Add a sample. Must only be called by the thread pumping SDL.
+     */
+    void push(int sensorType, long timestamp, float x, float y, float z) {
+        long currentHead = head.get();
+        if(currentHead - tail.get() >= capacity) {
+            dropped.lazySet(dropped.get() + 1);
+            return;
+        }
+
+        int slot = (int) (currentHead % capacity);
+        types[slot] = sensorType;
+        timestamps[slot] = timestamp;
+        values[slot * 3] = x;
+        values[slot * 3 + 1] = y;
+        values[slot * 3 + 2] = z;
+        head.lazySet(currentHead + 1);
+    }
+
+    /**
+     * @return The maximum number of samples the buffer can hold.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of samples that can currently be read.
+     */
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    /**
+     * @return The number of samples that were dropped because the buffer was full.
+     */
+    public long getDroppedSamples() {
+        return dropped.get();
+    }
+
+    /**
+     * Read the next sample. Its values can be read with the getters of this class until next() is
+     * called again.
+     *
+     * @return true if a sample was read, false if there are no more samples
+     */
+    public boolean next() {
+        long currentTail = tail.get();
+        if(currentTail >= head.get()) {
+            return false;
+        }
+
+        int slot = (int) (currentTail % capacity);
+        type = types[slot];
+        timestamp = timestamps[slot];
+        x = values[slot * 3];
+        y = values[slot * 3 + 1];
+        z = values[slot * 3 + 2];
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Copy all samples since the last read into the passed arrays, oldest first. If the arrays are
+     * too small, the remaining samples stay in the buffer for the next call.
+     *
+     * @param sensorTypes receives the sensor type of every sample, see getSensorType()
+     * @param sampleTimestamps receives the timestamp of every sample, see getTimestamp()
+     * @param sampleValues receives x, y and z of every sample, so it needs 3 elements per sample
+     * @return The number of samples that were copied
+     */
+    public int drain(int[] sensorTypes, long[] sampleTimestamps, float[] sampleValues) {
+        long currentTail = tail.get();
+        int count = (int) Math.min(head.get() - currentTail,
+                Math.min(Math.min(sensorTypes.length, sampleTimestamps.length), sampleValues.length / 3));
+
+        for(int i = 0; i < count; i++) {
+            int slot = (int) ((currentTail + i) % capacity);
+            sensorTypes[i] = types[slot];
+            sampleTimestamps[i] = timestamps[slot];
+            sampleValues[i * 3] = values[slot * 3];
+            sampleValues[i * 3 + 1] = values[slot * 3 + 1];
+            sampleValues[i * 3 + 2] = values[slot * 3 + 2];
+        }
+        tail.lazySet(currentTail + count);
+        return count;
+    }
+
+    /**
+     * Skip all samples that are currently in the buffer.
+     */
+    public void clear() {
+        tail.lazySet(head.get());
+    }
+
+    /**
+     * @return The sensor of the current sample, ControllerInfo.SENSOR_ACCEL or ControllerInfo.SENSOR_GYRO
+     */
+    public int getSensorType() {
+        return type;
+    }
+
+    /**
+     * @return The timestamp of the current sample in microseconds. This is the time the controller
+     * took the reading if the hardware reports it, otherwise the time SDL received it.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return The x value of the current sample. m/s^2 for the accelerometer, rad/s for the gyroscope
+     */
+    public float getX() {
+        return x;
+    }
+
+    /**
+     * @return The y value of the current sample. m/s^2 for the accelerometer, rad/s for the gyroscope
+     */
+    public float getY() {
+        return y;
+    }
+
+    /**
+     * @return The z value of the current sample. m/s^2 for the accelerometer, rad/s for the gyroscope
+     */
+    public float getZ() {
+        return z;
+    }
+}
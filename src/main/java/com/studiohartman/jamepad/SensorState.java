@@ -1,9 +1,12 @@
 package com.studiohartman.jamepad;
 
+import java.io.Serializable;
+
 /**
  * Contains information about the accelerometer and gyroscope data of the controller.
  */
-public class SensorState {
+public class SensorState implements Serializable {
+    private static final long serialVersionUID = 2357335524704338688L;
 
     /*** accel data ***/
 
@@ -60,6 +63,10 @@ public class SensorState {
         return gyroZ;
     }
 
+    /**
+     * @return The time of the gyroscope reading in microseconds, as reported by the controller. If
+     * the controller doesn't report one, this is the time SDL received the reading.
+     */
     public long getTimestamp() {
         return timestamp;
     }
@@ -0,0 +1,262 @@
+package com.studiohartman.jamepad;
+
+/**
+ * A controller that only exists in an {@link InMemoryControllerBackend}. Tests and load tests
+ * set its buttons, axes, touchpad and sensors, and ControllerManager reads it like a real
+ * controller on its next poll. Everything the application sends to it, like rumble and trigger
+ * effects, is kept, so it can be checked as well.
+ *
+ * Create one with InMemoryControllerBackend.connect(). Change it from the thread that polls the
+ * controllers, between two polls.
+ */
+public final class SimulatedController {
+    private static final int MAX_RAW_VALUE = 32767;
+
+    private final int instanceID;
+    private final String name;
+    private final ControllerType type;
+    private final int numTouchpadFingers;
+    private final boolean hasSensors;
+    boolean attached;
+    // Whether or not a ControllerIndex has it open, and its slot in the backend
+    boolean opened;
+    int slot;
+    boolean sensorsEnabled;
+    // The buttons and axes it reports to have, all unless it was attached as a VirtualController
+    int buttonLayout = (1 << ControllerButton.values().length) - 1;
+    int axisLayout = (1 << ControllerAxis.values().length) - 1;
+
+    // The state set by the script
+    int buttons;
+    final short[] axes = new short[ControllerAxis.values().length];
+    final boolean[] touchDown;
+    final float[] touchX;
+    final float[] touchY;
+    final float[] touchPressure;
+    final float[] accel = new float[3];
+    final float[] gyro = new float[3];
+    long sensorTimestamp = -1;
+    private ControllerPowerLevel powerLevel = ControllerPowerLevel.POWER_WIRED;
+    int playerIndex = -1;
+
+    // The state at the last pump, to find out which events have to be written
+    int pumpedButtons;
+    final short[] pumpedAxes = new short[ControllerAxis.values().length];
+    final boolean[] pumpedTouchDown;
+    final float[] pumpedTouchX;
+    final float[] pumpedTouchY;
+    boolean sensorsPending;
+    boolean powerLevelChanged;
+
+    // What the application sent
+    private int leftRumble;
+    private int rightRumble;
+    private int rumbleDuration;
+    private byte leftTriggerEffect;
+    private byte rightTriggerEffect;
+    long hapticFeedbackBytes;
+    int hapticsLatencyMs;
+
+    SimulatedController(int instanceID, String name, ControllerType type, int numTouchpadFingers, boolean hasSensors) {
+        this.instanceID = instanceID;
+        this.name = name;
+        this.type = type;
+        this.numTouchpadFingers = numTouchpadFingers;
+        this.hasSensors = hasSensors;
+        touchDown = new boolean[numTouchpadFingers];
+        touchX = new float[numTouchpadFingers];
+        touchY = new float[numTouchpadFingers];
+        touchPressure = new float[numTouchpadFingers];
+        pumpedTouchDown = new boolean[numTouchpadFingers];
+        pumpedTouchX = new float[numTouchpadFingers];
+        pumpedTouchY = new float[numTouchpadFingers];
+    }
+
+    /**
+     * @return The instance ID the controller has while it is connected, see ControllerIndex.getDeviceInstanceID()
+     */
+    public int getInstanceID() {
+        return instanceID;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ControllerType getType() {
+        return type;
+    }
+
+    /**
+     * @return The number of fingers of its touchpad, 0 if it doesn't have one
+     */
+    public int getNumTouchpadFingers() {
+        return numTouchpadFingers;
+    }
+
+    public boolean hasSensors() {
+        return hasSensors;
+    }
+
+    /**
+     * @return Whether or not the controller is still plugged in
+     */
+    public boolean isConnected() {
+        return attached;
+    }
+
+    public void setButton(ControllerButton button, boolean pressed) {
+        if(pressed) {
+            buttons |= button.mask();
+        } else {
+            buttons &= ~button.mask();
+        }
+    }
+
+    /**
+     * @param buttonMask The pressed buttons, see ControllerButton.mask()
+     */
+    public void setButtonMask(int buttonMask) {
+        buttons = buttonMask;
+    }
+
+    public int getButtonMask() {
+        return buttons;
+    }
+
+    /**
+     * Move an axis. Just like with SDL, positive y values of the sticks are down.
+     *
+     * @param axis The axis to move
+     * @param value Between -1 and 1 for the sticks, between 0 and 1 for the triggers
+     */
+    public void setAxis(ControllerAxis axis, float value) {
+        setRawAxis(axis, Math.round(value * MAX_RAW_VALUE));
+    }
+
+    /**
+     * @param axis The axis to move
+     * @param value The raw value between -32768 and 32767, like SDL reports it
+     */
+    public void setRawAxis(ControllerAxis axis, int value) {
+        axes[axis.ordinal()] = (short) Math.max(-MAX_RAW_VALUE - 1, Math.min(MAX_RAW_VALUE, value));
+    }
+
+    /**
+     * @return The raw value of the axis between -32768 and 32767
+     */
+    public int getRawAxis(ControllerAxis axis) {
+        return axes[axis.ordinal()];
+    }
+
+    /**
+     * @param finger The finger on the touchpad, below getNumTouchpadFingers()
+     * @param down Whether or not the finger touches the touchpad
+     * @param x The x position between 0 and 1
+     * @param y The y position between 0 and 1
+     * @param pressure The pressure between 0 and 1
+     */
+    public void setTouchpadFinger(int finger, boolean down, float x, float y, float pressure) {
+        if(finger < 0 || finger >= numTouchpadFingers) {
+            throw new IllegalArgumentException("The finger must be between 0 and " + (numTouchpadFingers - 1) + "!");
+        }
+        touchDown[finger] = down;
+        touchX[finger] = x;
+        touchY[finger] = y;
+        touchPressure[finger] = pressure;
+    }
+
+    /**
+     * Set a new reading of the accelerometer and the gyroscope. It is reported as a sensor update
+     * on the next pump and read by the next poll.
+     *
+     * @param timestamp The time of the reading in microseconds, greater than the one of the previous reading
+     * @param accelX acceleration in m/s^2
+     * @param gyroX rotation in radians per second
+     */
+    public void setSensors(long timestamp, float accelX, float accelY, float accelZ, float gyroX, float gyroY, float gyroZ) {
+        if(!hasSensors) {
+            throw new IllegalStateException("The simulated controller has no sensors!");
+        }
+        sensorTimestamp = timestamp;
+        accel[0] = accelX;
+        accel[1] = accelY;
+        accel[2] = accelZ;
+        gyro[0] = gyroX;
+        gyro[1] = gyroY;
+        gyro[2] = gyroZ;
+        sensorsPending = true;
+    }
+
+    /**
+     * Change the power level. It is reported like a battery update of SDL.
+     */
+    public void setPowerLevel(ControllerPowerLevel powerLevel) {
+        this.powerLevel = powerLevel;
+        powerLevelChanged = true;
+    }
+
+    public ControllerPowerLevel getPowerLevel() {
+        return powerLevel;
+    }
+
+    /**
+     * @return The player index the application set, -1 if it didn't set one
+     */
+    public int getPlayerIndex() {
+        return playerIndex;
+    }
+
+    /**
+     * @return The intensity of the left rumble motor the application set last, between 0 and 1
+     */
+    public float getLeftRumble() {
+        return leftRumble / 65535f;
+    }
+
+    /**
+     * @return The intensity of the right rumble motor the application set last, between 0 and 1
+     */
+    public float getRightRumble() {
+        return rightRumble / 65535f;
+    }
+
+    /**
+     * @return The duration of the last rumble in milliseconds
+     */
+    public int getRumbleDuration() {
+        return rumbleDuration;
+    }
+
+    /**
+     * @return The type of the last left trigger effect the application sent
+     */
+    public byte getLeftTriggerEffect() {
+        return leftTriggerEffect;
+    }
+
+    /**
+     * @return The type of the last right trigger effect the application sent
+     */
+    public byte getRightTriggerEffect() {
+        return rightTriggerEffect;
+    }
+
+    /**
+     * @return The number of bytes of haptic feedback the application sent to this controller
+     */
+    public long getHapticFeedbackBytes() {
+        return hapticFeedbackBytes;
+    }
+
+    void rumble(int leftMagnitude, int rightMagnitude, int durationMs) {
+        leftRumble = leftMagnitude;
+        rightRumble = rightMagnitude;
+        rumbleDuration = durationMs;
+    }
+
+    void sendTriggerEffects(byte leftTriggerEffect, byte rightTriggerEffect) {
+        this.leftTriggerEffect = leftTriggerEffect;
+        this.rightTriggerEffect = rightTriggerEffect;
+    }
+}
@@ -0,0 +1,197 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Smooths the jitter of a single analog value over time, e.g. one axis of a worn stick or one
+ * axis of the gyroscope. The filters take the timestamp of every value into account, so they
+ * behave the same no matter how often the controller is polled.
+ *
+ * Every ControllerIndex has one for each axis and each sensor axis, see
+ * ControllerIndex.getFilter() and ControllerIndex.getSensorFilter(). They run while the controller
+ * is polled, so they apply to poll(), ControllerManager.getState() and getSensorState(), but not to
+ * getAxisState() or the SensorSampleBuffer. By default they don't change the values at all.
+ *
+ * All state is kept in primitive fields, so filtering doesn't allocate anything. Change the
+ * settings from the thread that polls the controller, or before polling starts.
+ */
+public final class SmoothingFilter {
+    public enum Type {
+        /**
+         * Values are passed on unchanged
+         */
+        NONE,
+        /**
+         * Exponential moving average. Cheap and smooth, but lags behind fast movements.
+         */
+        EMA,
+        /**
+         * The One Euro filter: smooths a lot while the value barely moves, and little while it
+         * moves fast, so there is neither jitter at rest nor lag during fast movements.
+         */
+        ONE_EURO,
+        /**
+         * The median of the last three values. Removes single spikes without blurring edges.
+         */
+        MEDIAN_OF_3
+    }
+
+    private Type type = Type.NONE;
+    private float timeConstant;
+    private float minCutoff;
+    private float beta;
+    private float derivativeCutoff;
+
+    private long lastTimestamp = -1;
+    private float lastValue;
+    private float lastDerivative;
+    // The two values before the current one, for the median
+    private float previous1;
+    private float previous2;
+    private int count;
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Pass the values on unchanged.
+     */
+    public void setNone() {
+        type = Type.NONE;
+        reset();
+    }
+
+    /**
+     * Smooth the values with an exponential moving average.
+     *
+     * @param timeConstant the time in seconds after which the output has covered 63% of a jump in
+     *                     the input. Greater values smooth more, but lag more.
+     */
+    public void setEMA(float timeConstant) {
+        if(timeConstant <= 0) {
+            throw new IllegalArgumentException("The time constant must be greater than 0!");
+        }
+        this.timeConstant = timeConstant;
+        type = Type.EMA;
+        reset();
+    }
+
+    /**
+     * Smooth the values with the One Euro filter. A good start for a stick is a minimum cutoff of
+     * 1 Hz and a beta of 0.5, then lower the minimum cutoff until the jitter at rest is gone and
+     * raise beta until fast movements don't lag anymore.
+     *
+     * @param minCutoff the cutoff frequency in Hz while the value doesn't move. Lower values smooth more.
+     * @param beta how much the cutoff frequency rises with the speed of the value
+     * @param derivativeCutoff the cutoff frequency in Hz for the speed of the value, 1 is usually fine
+     */
+    public void setOneEuro(float minCutoff, float beta, float derivativeCutoff) {
+        if(minCutoff <= 0 || derivativeCutoff <= 0 || beta < 0) {
+            throw new IllegalArgumentException("The cutoff frequencies must be greater than 0 and beta must not be negative!");
+        }
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+        this.derivativeCutoff = derivativeCutoff;
+        type = Type.ONE_EURO;
+        reset();
+    }
+
+    /**
+     * Output the median of the last three values.
+     */
+    public void setMedianOf3() {
+        type = Type.MEDIAN_OF_3;
+        reset();
+    }
+
+    /**
+     * Forget all previous values. The next value is passed on unchanged.
+     */
+    public void reset() {
+        lastTimestamp = -1;
+        lastValue = 0;
+        lastDerivative = 0;
+        previous1 = 0;
+        previous2 = 0;
+        count = 0;
+    }
+
+    /**
+     * Filter the next value.
+     *
+     * @param value the raw value
+     * @param timestamp the time of the value in microseconds
+     * @return the filtered value
+     */
+    public float filter(float value, long timestamp) {
+        switch(type) {
+            case EMA:
+                return filterEMA(value, timestamp);
+            case ONE_EURO:
+                return filterOneEuro(value, timestamp);
+            case MEDIAN_OF_3:
+                return filterMedian(value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * @return The time since the last value in seconds, 0 if there is no last value or it has the
+     * same timestamp. Remembers the timestamp for the next call.
+     */
+    private float advance(long timestamp) {
+        long previous = lastTimestamp;
+        lastTimestamp = timestamp;
+        if(previous < 0 || timestamp <= previous) {
+            return 0;
+        }
+        return (timestamp - previous) / 1_000_000f;
+    }
+
+    private float filterEMA(float value, long timestamp) {
+        boolean first = lastTimestamp < 0;
+        float dt = advance(timestamp);
+        if(first) {
+            lastValue = value;
+        } else if(dt > 0) {
+            lastValue += (value - lastValue) * (float) (1 - Math.exp(-dt / timeConstant));
+        }
+        return lastValue;
+    }
+
+    private float filterOneEuro(float value, long timestamp) {
+        boolean first = lastTimestamp < 0;
+        float dt = advance(timestamp);
+        if(first) {
+            lastValue = value;
+            lastDerivative = 0;
+        } else if(dt > 0) {
+            float derivative = (value - lastValue) / dt;
+            lastDerivative += (derivative - lastDerivative) * smoothingFactor(derivativeCutoff, dt);
+            float cutoff = minCutoff + beta * Math.abs(lastDerivative);
+            lastValue += (value - lastValue) * smoothingFactor(cutoff, dt);
+        }
+        return lastValue;
+    }
+
+    /**
+     * @return The factor of a low pass filter with the given cutoff frequency for one time step
+     */
+    private static float smoothingFactor(float cutoff, float dt) {
+        float tau = (float) (1 / (2 * Math.PI * cutoff));
+        return 1 / (1 + tau / dt);
+    }
+
+    private float filterMedian(float value) {
+        float result;
+        if(count < 2) {
+            count++;
+            result = value;
+        } else {
+            result = Math.max(Math.min(value, previous1), Math.min(Math.max(value, previous1), previous2));
+        }
+        previous2 = previous1;
+        previous1 = value;
+        return result;
+    }
+}
@@ -0,0 +1,258 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Measures where a stick rests while nobody touches it. Worn sticks don't return to the exact
+ * center anymore, so without correction a game sees a small constant push.
+ *
+ * A stick counts as resting once it has stayed close to the center, within a tiny range and with
+ * barely any noise, for REST_WINDOW_SECONDS. A thumb on a stick always trembles a bit and a stick
+ * that is pushed slowly leaves the range, so neither of them passes. While the controller is idle
+ * (no buttons pressed, triggers released and both sticks resting), the resting position of the
+ * stick is tracked with exponentially weighted averages of its position and its noise. Once the
+ * controller has been idle for MIN_IDLE_SECONDS in total, the average is subtracted as the new
+ * center, and everything closer to that center than the noise is zeroed. All durations are taken
+ * from the timestamps of the readings, so the estimate doesn't depend on how often the controller
+ * is polled. Every reading costs the same constant amount of work and nothing is allocated.
+ *
+ * Every ControllerIndex has one for each stick, see ControllerIndex.getDriftEstimator(). It runs
+ * while the controller is polled, so the correction applies to poll() and ControllerManager.getState(),
+ * but not to getAxisState(). getDriftMagnitude() is the distance of the resting position from the
+ * true center, which makes it a good indicator for controllers that should be replaced.
+ */
+public final class StickDriftEstimator {
+    /**
+     * How long the controller has to be idle in total before the center is corrected, in seconds
+     */
+    public static final float MIN_IDLE_SECONDS = 2;
+
+    /**
+     * How long a stick has to stay still before it counts as resting, in seconds
+     */
+    public static final float REST_WINDOW_SECONDS = 0.5f;
+
+    // Readings further from the center than this are the stick being pushed, not drift
+    private static final float MAX_DRIFT = 0.07f;
+    // Limits for the readings since the stick came to rest
+    private static final float MAX_REST_RANGE = 0.02f;
+    private static final double MAX_REST_VARIANCE = 0.005 * 0.005;
+    // How fast the averages follow new readings: after this many seconds a change is mostly taken over
+    private static final float TIME_CONSTANT_SECONDS = 2;
+    // Longer gaps between readings only count this much, so a rarely polled controller doesn't learn in one step
+    private static final long MAX_STEP_MICROS = 100_000;
+    // The deadzone around the corrected center, in standard deviations of the noise
+    private static final float DEADZONE_DEVIATIONS = 4;
+
+    // The readings since the stick came to rest: the time of the first one, their range and sums
+    private int restCount;
+    private long restStart;
+    private float restMinX, restMaxX, restMinY, restMaxY;
+    private double restSumX, restSumY, restSumSqX, restSumSqY;
+    private boolean stationary;
+
+    private float lastX;
+    private float lastY;
+    private long lastTimestamp;
+    private long previousTimestamp;
+    private boolean lastIdle;
+
+    private float meanX;
+    private float meanY;
+    private float varianceX;
+    private float varianceY;
+    private long idleMicros;
+    private boolean enabled = true;
+
+    /**
+     * Forget everything measured so far.
+     */
+    public void reset() {
+        meanX = 0;
+        meanY = 0;
+        varianceX = 0;
+        varianceY = 0;
+        idleMicros = 0;
+        restCount = 0;
+        stationary = false;
+        lastIdle = false;
+    }
+
+    /**
+     * Turn the correction on or off. While it is off, the resting position is still measured, so
+     * getDriftMagnitude() keeps working, but the values of the stick are left alone.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Whether or not the controller has been idle long enough to know the resting position
+     */
+    public boolean isEstimated() {
+        return idleMicros >= (long) (MIN_IDLE_SECONDS * 1_000_000);
+    }
+
+    /**
+     * @return How long the controller has been idle so far, in seconds
+     */
+    public float getIdleSeconds() {
+        return idleMicros / 1_000_000f;
+    }
+
+    /**
+     * @return Whether or not the stick was resting at the last reading
+     */
+    public boolean isStationary() {
+        return stationary;
+    }
+
+    /**
+     * @return The x value the stick rests at, between -1 and 1
+     */
+    public float getRestingX() {
+        return meanX;
+    }
+
+    /**
+     * @return The y value the stick rests at, between -1 and 1
+     */
+    public float getRestingY() {
+        return meanY;
+    }
+
+    /**
+     * @return The distance of the resting position from the center, 0 for a perfect stick
+     */
+    public float getDriftMagnitude() {
+        return (float) Math.sqrt(meanX * meanX + meanY * meanY);
+    }
+
+    /**
+     * @return The standard deviation of the stick's position while it rests
+     */
+    public float getNoise() {
+        return (float) Math.sqrt(Math.max(varianceX, varianceY));
+    }
+
+    /**
+     * @return The radius around the corrected center that is zeroed, 0 until the resting position is known
+     */
+    public float getMinimumDeadzone() {
+        return enabled && isEstimated() ? getNoise() * DEADZONE_DEVIATIONS : 0;
+    }
+
+    /**
+     * Add a raw reading of the stick, and check whether the stick is resting. Call learn() once
+     * the other stick has been checked as well.
+     *
+     * @param x the raw x value between -1 and 1
+     * @param y the raw y value between -1 and 1
+     * @param timestamp the time of the reading in microseconds
+     * @return Whether or not the stick is resting
+     */
+    boolean observe(float x, float y, long timestamp) {
+        if(restCount > 0 && timestamp - lastTimestamp > (long) (REST_WINDOW_SECONDS * 1_000_000)) {
+            // Nothing is known about the time in between
+            restCount = 0;
+        }
+        lastX = x;
+        lastY = y;
+        previousTimestamp = lastTimestamp;
+        lastTimestamp = timestamp;
+
+        if(x * x + y * y > MAX_DRIFT * MAX_DRIFT) {
+            restCount = 0;
+            stationary = false;
+            return false;
+        }
+
+        if(restCount > 0 && Math.max(restMaxX, x) - Math.min(restMinX, x) <= MAX_REST_RANGE
+                && Math.max(restMaxY, y) - Math.min(restMinY, y) <= MAX_REST_RANGE) {
+            restMinX = Math.min(restMinX, x);
+            restMaxX = Math.max(restMaxX, x);
+            restMinY = Math.min(restMinY, y);
+            restMaxY = Math.max(restMaxY, y);
+            restSumX += x;
+            restSumY += y;
+            restSumSqX += x * x;
+            restSumSqY += y * y;
+            restCount++;
+        } else {
+            // The stick moved, it may come to rest here
+            restStart = timestamp;
+            restMinX = restMaxX = x;
+            restMinY = restMaxY = y;
+            restSumX = x;
+            restSumY = y;
+            restSumSqX = x * x;
+            restSumSqY = y * y;
+            restCount = 1;
+        }
+
+        double restMeanX = restSumX / restCount;
+        double restMeanY = restSumY / restCount;
+        stationary = timestamp - restStart >= (long) (REST_WINDOW_SECONDS * 1_000_000)
+                && restSumSqX / restCount - restMeanX * restMeanX <= MAX_REST_VARIANCE
+                && restSumSqY / restCount - restMeanY * restMeanY <= MAX_REST_VARIANCE;
+        return stationary;
+    }
+
+    /**
+     * Take the last reading into the resting position if the whole controller is idle.
+     *
+     * @param padIdle whether or not the controller is idle, including both sticks resting
+     */
+    void learn(boolean padIdle) {
+        boolean wasIdle = lastIdle;
+        lastIdle = padIdle;
+        if(!padIdle) {
+            return;
+        }
+
+        if(idleMicros == 0 && !wasIdle) {
+            meanX = lastX;
+            meanY = lastY;
+            varianceX = 0;
+            varianceY = 0;
+            return;
+        }
+        long step = wasIdle ? Math.min(lastTimestamp - previousTimestamp, MAX_STEP_MICROS) : 0;
+        float smoothing = (float) (1 - Math.exp(-step / (TIME_CONSTANT_SECONDS * 1_000_000.0)));
+        float deltaX = lastX - meanX;
+        float deltaY = lastY - meanY;
+        meanX += deltaX * smoothing;
+        meanY += deltaY * smoothing;
+        varianceX = (1 - smoothing) * (varianceX + smoothing * deltaX * deltaX);
+        varianceY = (1 - smoothing) * (varianceY + smoothing * deltaY * deltaY);
+        idleMicros += step;
+    }
+
+    /**
+     * @param x the raw x value between -1 and 1
+     * @param y the raw y value between -1 and 1
+     * @return Whether or not the stick is inside the minimum deadzone around its resting position
+     */
+    boolean isResting(float x, float y) {
+        float deadzone = getMinimumDeadzone();
+        float offsetX = x - meanX;
+        float offsetY = y - meanY;
+        return offsetX * offsetX + offsetY * offsetY < deadzone * deadzone;
+    }
+
+    /**
+     * @return The offset to subtract from the raw x value, 0 until the resting position is known
+     */
+    float getCorrectionX() {
+        return enabled && isEstimated() ? meanX : 0;
+    }
+
+    /**
+     * @return The offset to subtract from the raw y value, 0 until the resting position is known
+     */
+    float getCorrectionY() {
+        return enabled && isEstimated() ? meanY : 0;
+    }
+}
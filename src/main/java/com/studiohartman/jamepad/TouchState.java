@@ -1,19 +1,26 @@
 package com.studiohartman.jamepad;
 
+import java.io.Serializable;
+
 /**
  * Contains information about the position of the finger on the touchpad of the controller.
  */
-public class TouchState {
+public class TouchState implements Serializable {
+    private static final long serialVersionUID = -4678819119627275574L;
+
     private boolean state;
 
     private float x;
 
     private float y;
 
+    private float pressure;
+
     TouchState() {
         this.state = false;
         this.x = 0;
         this.y = 0;
+        this.pressure = 0;
     }
 
     TouchState(boolean state, float x, float y) {
@@ -34,15 +41,28 @@ public class TouchState {
         return y;
     }
 
+    /**
+     * @return The pressure of the finger between 0 and 1, 0 if the touchpad doesn't report it
+     */
+    public float getPressure() {
+        return pressure;
+    }
+
     void update(boolean state, float x, float y){
+        update(state, x, y, 0);
+    }
+
+    void update(boolean state, float x, float y, float pressure){
         this.state = state;
         this.x = x;
         this.y = y;
+        this.pressure = pressure;
     }
 
     void update(TouchState touchState) {
         this.state = touchState.state;
         this.x = touchState.x;
         this.y = touchState.y;
+        this.pressure = touchState.pressure;
     }
 }
@@ -0,0 +1,134 @@
+package com.studiohartman.jamepad;
+
+/**
+ * A controller created from Java, see
+ * {@link ControllerManager#attachVirtualController(VirtualControllerLayout)}. Its inputs are set
+ * here, and the controller is read through its ControllerIndex like any other controller, so
+ * everything on top of it, like conditioning, the event buffer and recording, sees it as a real
+ * one. This makes it possible to load test an application with many players on a machine without
+ * any gamepad, or to feed inputs received over the network into the same pipeline as local ones.
+ *
+ * New inputs are picked up by the next poll. The controller is connected to a ControllerIndex by
+ * the next update(), getState() or pollAll(), like a controller that was plugged in. Use it from
+ * the thread that polls the controllers. While a ControllerSampler runs, that is the sampler
+ * thread, see ControllerSampler.execute().
+ */
+public final class VirtualController {
+    private static final int MAX_RAW_VALUE = 32767;
+
+    private final ControllerBackend backend;
+    private final PollingThread pollingThread;
+    private final int buttons;
+    private final int axes;
+    private final int numTouchpadFingers;
+    private final boolean hasSensors;
+    private final int instanceID;
+    private long handle;
+
+    VirtualController(ControllerBackend backend, PollingThread pollingThread, long handle, VirtualControllerLayout layout) {
+        this.backend = backend;
+        this.pollingThread = pollingThread;
+        this.handle = handle;
+        buttons = layout.buttons;
+        axes = layout.axes;
+        numTouchpadFingers = layout.numTouchpadFingers;
+        hasSensors = layout.hasSensors;
+        instanceID = backend.getVirtualInstanceID(handle);
+    }
+
+    /**
+     * @return The instance ID of the controller, compare it with ControllerIndex.getDeviceInstanceID()
+     */
+    public int getInstanceID() {
+        return instanceID;
+    }
+
+    /**
+     * @return Whether or not the controller is still attached
+     */
+    public boolean isAttached() {
+        return handle != 0;
+    }
+
+    /**
+     * Unplug the controller. It is reported like an unplugged controller by the next update(),
+     * getState() or pollAll(). Does nothing if it is not attached anymore.
+     */
+    public void detach() {
+        pollingThread.verify();
+        if(handle != 0) {
+            backend.detachVirtual(handle);
+            handle = 0;
+        }
+    }
+
+    /**
+     * @return false if the controller isn't attached anymore
+     */
+    public boolean setButton(ControllerButton button, boolean pressed) {
+        if((buttons & button.mask()) == 0) {
+            throw new IllegalArgumentException("The virtual controller has no button " + button + "!");
+        }
+        pollingThread.verify();
+        return handle != 0 && backend.setVirtualButton(handle, button.ordinal(), pressed);
+    }
+
+    /**
+     * Move an axis. Just like with SDL, positive y values of the sticks are down.
+     *
+     * @param axis The axis to move
+     * @param value Between -1 and 1 for the sticks, between 0 and 1 for the triggers
+     * @return false if the controller isn't attached anymore
+     */
+    public boolean setAxis(ControllerAxis axis, float value) {
+        return setRawAxis(axis, Math.round(value * MAX_RAW_VALUE));
+    }
+
+    /**
+     * @param axis The axis to move
+     * @param value The raw value between -32768 and 32767 for the sticks, between 0 and 32767 for
+     *              the triggers, like SDL reports it
+     * @return false if the controller isn't attached anymore
+     */
+    public boolean setRawAxis(ControllerAxis axis, int value) {
+        if((axes & (1 << axis.ordinal())) == 0) {
+            throw new IllegalArgumentException("The virtual controller has no axis " + axis + "!");
+        }
+        boolean isTrigger = axis == ControllerAxis.TRIGGERLEFT || axis == ControllerAxis.TRIGGERRIGHT;
+        int clamped = Math.max(isTrigger ? 0 : -MAX_RAW_VALUE - 1, Math.min(MAX_RAW_VALUE, value));
+        pollingThread.verify();
+        return handle != 0 && backend.setVirtualAxis(handle, axis.ordinal(), clamped);
+    }
+
+    /**
+     * @param finger The finger on the touchpad, below the number of fingers of the layout
+     * @param down Whether or not the finger touches the touchpad
+     * @param x The x position between 0 and 1
+     * @param y The y position between 0 and 1
+     * @param pressure The pressure between 0 and 1
+     * @return false if the controller isn't attached anymore
+     */
+    public boolean setTouchpadFinger(int finger, boolean down, float x, float y, float pressure) {
+        if(finger < 0 || finger >= numTouchpadFingers) {
+            throw new IllegalArgumentException("The finger must be between 0 and " + (numTouchpadFingers - 1) + "!");
+        }
+        pollingThread.verify();
+        return handle != 0 && backend.setVirtualTouchpadFinger(handle, finger, down, x, y, pressure);
+    }
+
+    /**
+     * Set a new reading of the accelerometer and the gyroscope.
+     *
+     * @param timestamp The time of the reading in microseconds, greater than the one of the previous reading
+     * @param accelX acceleration in m/s^2
+     * @param gyroX rotation in radians per second
+     * @return false if the controller isn't attached anymore
+     */
+    public boolean setSensors(long timestamp, float accelX, float accelY, float accelZ, float gyroX, float gyroY, float gyroZ) {
+        if(!hasSensors) {
+            throw new IllegalStateException("The virtual controller has no sensors!");
+        }
+        pollingThread.verify();
+        return handle != 0 && backend.setVirtualSensors(handle, timestamp, accelX, accelY, accelZ, gyroX, gyroY, gyroZ);
+    }
+}
@@ -0,0 +1,58 @@
+package com.studiohartman.jamepad;
+
+/**
+ * Class defining the layout of a {@link VirtualController}: which buttons, axes, touchpad and
+ * sensors it has, and how it identifies itself. Pass it to
+ * {@link ControllerManager#attachVirtualController(VirtualControllerLayout)}.
+ *
+ * With the default SDL backend, virtual controllers are joysticks of SDL's virtual joystick driver.
+ * SDL 2 can't emulate touchpads and sensors on them, so a layout with a touchpad or sensors can
+ * only be attached to an {@link InMemoryControllerBackend}.
+ */
+public class VirtualControllerLayout {
+    /**
+     * The name the controller reports
+     */
+    public String name = "Jamepad Virtual Controller";
+
+    /**
+     * The buttons of the controller, see ControllerButton.mask(). All buttons by default.
+     */
+    public int buttons = (1 << ControllerButton.values().length) - 1;
+
+    /**
+     * The axes of the controller, bit n is the ControllerAxis with ordinal n. All axes by default.
+     */
+    public int axes = (1 << ControllerAxis.values().length) - 1;
+
+    /**
+     * The number of fingers its touchpad tracks, 0 if it doesn't have one
+     */
+    public int numTouchpadFingers = 0;
+
+    /**
+     * Whether or not it has an accelerometer and a gyroscope
+     */
+    public boolean hasSensors = false;
+
+    /**
+     * The USB vendor and product id the controller reports. With the ids of a DualSense, adaptive
+     * trigger effects can be sent to it like to a real one.
+     */
+    public int vendorId = 0;
+    public int productId = 0;
+
+    /**
+     * @return Whether or not the layout has the given button
+     */
+    public boolean hasButton(ControllerButton button) {
+        return (buttons & button.mask()) != 0;
+    }
+
+    /**
+     * @return Whether or not the layout has the given axis
+     */
+    public boolean hasAxis(ControllerAxis axis) {
+        return (axes & (1 << axis.ordinal())) != 0;
+    }
+}
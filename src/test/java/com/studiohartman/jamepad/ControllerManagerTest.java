@@ -0,0 +1,241 @@
+package com.studiohartman.jamepad;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives a ControllerManager through an InMemoryControllerBackend, so the whole Java side runs
+ * without the native library or any gamepad.
+ */
+public class ControllerManagerTest {
+    private InMemoryControllerBackend backend;
+    private ControllerManager manager;
+    private MutableControllerState[] states;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryControllerBackend();
+        Configuration configuration = new Configuration();
+        configuration.backend = backend;
+        configuration.eventBufferCapacity = 64;
+        manager = new ControllerManager(configuration);
+        manager.initSDLGamepad();
+        states = new MutableControllerState[configuration.maxNumControllers];
+        for(int i = 0; i < states.length; i++) {
+            states[i] = new MutableControllerState();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        manager.quitSDLGamepad();
+    }
+
+    @Test
+    public void connectsPluggedInControllers() {
+        assertFalse(manager.getControllerIndex(0).isConnected());
+
+        backend.connect("Pad 0");
+        backend.connect("Pad 1");
+        assertTrue(manager.update());
+
+        assertTrue(manager.getControllerIndex(0).isConnected());
+        assertTrue(manager.getControllerIndex(1).isConnected());
+        assertFalse(manager.getControllerIndex(2).isConnected());
+        assertEquals(2, manager.getNumControllers());
+        assertFalse(manager.update());
+    }
+
+    @Test
+    public void unpluggedControllerFreesOnlyItsIndex() throws ControllerUnpluggedException {
+        SimulatedController pad0 = backend.connect("Pad 0");
+        SimulatedController pad1 = backend.connect("Pad 1");
+        manager.update();
+
+        backend.disconnect(pad0);
+        assertTrue(manager.update());
+        assertFalse(manager.getControllerIndex(0).isConnected());
+        assertEquals(pad1.getInstanceID(), manager.getControllerIndex(1).getDeviceInstanceID());
+
+        // The next controller takes the first free index
+        SimulatedController pad2 = backend.connect("Pad 2");
+        manager.update();
+        assertEquals(pad2.getInstanceID(), manager.getControllerIndex(0).getDeviceInstanceID());
+        assertEquals(pad1.getInstanceID(), manager.getControllerIndex(1).getDeviceInstanceID());
+    }
+
+    @Test
+    public void reconnectKeepsTheSameController() throws ControllerUnpluggedException {
+        SimulatedController pad0 = backend.connect("Pad 0");
+        SimulatedController pad1 = backend.connect("Pad 1");
+        manager.update();
+        backend.disconnect(pad0);
+        manager.update();
+
+        ControllerIndex controller = manager.getControllerIndex(1);
+        assertTrue(controller.reconnectController());
+        assertEquals(pad1.getInstanceID(), controller.getDeviceInstanceID());
+        assertFalse(manager.getControllerIndex(0).reconnectController());
+    }
+
+    @Test
+    public void pollAllReadsEveryController() {
+        SimulatedController pad0 = backend.connect("Pad 0");
+        SimulatedController pad1 = backend.connect("Pad 1");
+        pad0.setButton(ControllerButton.A, true);
+        pad1.setAxis(ControllerAxis.LEFTX, 1);
+        pad1.setAxis(ControllerAxis.TRIGGERRIGHT, 1);
+
+        assertEquals(2, manager.pollAll(states));
+        assertTrue(states[0].isConnected);
+        assertTrue(states[0].a);
+        assertTrue(states[0].aJustPressed);
+        assertFalse(states[1].a);
+        assertEquals(1, states[1].leftStickX, 0.01f);
+        assertEquals(1, states[1].rightTrigger, 0.01f);
+        assertFalse(states[2].isConnected);
+        assertEquals(states[0].frame, states[1].frame);
+
+        // Edges only last for one frame
+        manager.pollAll(states);
+        assertTrue(states[0].a);
+        assertFalse(states[0].aJustPressed);
+
+        pad0.setButton(ControllerButton.A, false);
+        manager.pollAll(states);
+        assertFalse(states[0].a);
+        assertTrue((states[0].justReleasedMask & ControllerButton.A.mask()) != 0);
+
+        backend.disconnect(pad1);
+        assertEquals(1, manager.pollAll(states));
+        assertFalse(states[1].isConnected);
+    }
+
+    @Test
+    public void getStateMatchesPollAll() {
+        SimulatedController pad = backend.connect("Pad 0");
+        pad.setButton(ControllerButton.DPAD_UP, true);
+        pad.setAxis(ControllerAxis.RIGHTY, -1);
+
+        MutableControllerState state = manager.getState(0, new MutableControllerState());
+        assertTrue(state.isConnected);
+        assertTrue(state.dpadUp);
+        assertEquals(-1, state.rightStickY, 0.01f);
+
+        ControllerState immutable = manager.getState(0);
+        assertTrue(immutable.isConnected);
+        assertTrue(immutable.dpadUp);
+
+        assertFalse(manager.getState(1, new MutableControllerState()).isConnected);
+    }
+
+    @Test
+    public void eventsArriveInOrder() {
+        ControllerEventBuffer events = manager.getEventBuffer();
+        SimulatedController pad = backend.connect("Pad 0");
+        manager.pollAll(states);
+        assertTrue(events.next());
+        assertEquals(ControllerEventBuffer.TYPE_DEVICE_ADDED, events.getType());
+        while(events.next()) {
+            // Skip the initial state
+        }
+
+        pad.setButton(ControllerButton.B, true);
+        pad.setRawAxis(ControllerAxis.LEFTY, 1000);
+        manager.pollAll(states);
+        assertTrue(events.next());
+        assertEquals(ControllerEventBuffer.TYPE_BUTTON_DOWN, events.getType());
+        assertEquals(ControllerButton.B.ordinal(), events.getCode());
+        assertEquals(pad.getInstanceID(), events.getInstanceId());
+        assertTrue(events.next());
+        assertEquals(ControllerEventBuffer.TYPE_AXIS_MOTION, events.getType());
+        assertEquals(ControllerAxis.LEFTY.ordinal(), events.getCode());
+        assertEquals(1000, events.getValue());
+        assertFalse(events.next());
+
+        backend.disconnect(pad);
+        manager.pollAll(states);
+        assertTrue(events.next());
+        assertEquals(ControllerEventBuffer.TYPE_DEVICE_REMOVED, events.getType());
+        assertEquals(pad.getInstanceID(), events.getInstanceId());
+    }
+
+    @Test
+    public void eventsAreDroppedWhenTheBufferIsFull() {
+        ControllerEventBuffer events = manager.getEventBuffer();
+        SimulatedController pad = backend.connect("Pad 0");
+        for(int i = 0; i < events.getCapacity() * 2; i++) {
+            pad.setButton(ControllerButton.A, i % 2 == 0);
+            manager.pollAll(states);
+        }
+        assertEquals(events.getCapacity(), events.size());
+        assertTrue(events.getDroppedEvents() > 0);
+    }
+
+    @Test
+    public void batteryUpdatesKeepTheBatchedPoll() throws ControllerUnpluggedException {
+        SimulatedController pad = backend.connect("Pad 0");
+        manager.pollAll(states);
+        int numSinglePolls = backend.getNumSinglePolls();
+
+        pad.setPowerLevel(ControllerPowerLevel.POWER_LOW);
+        pad.setButton(ControllerButton.Y, true);
+        manager.pollAll(states);
+        assertTrue(states[0].y);
+        assertEquals(ControllerPowerLevel.POWER_LOW, manager.getControllerIndex(0).getPowerLevel());
+        // The base class takes the snapshots of pollAll() with poll(), one per controller index
+        assertEquals(numSinglePolls + states.length, backend.getNumSinglePolls());
+    }
+
+    @Test
+    public void sensorReadingsThatDontFitAreCounted() {
+        InMemoryControllerBackend sensorBackend = new InMemoryControllerBackend();
+        Configuration configuration = new Configuration();
+        configuration.backend = sensorBackend;
+        configuration.useSonyControllerFeatures = Configuration.SonyControllerFeature.DUALSENSE_FEATURES;
+        configuration.maxNumControllers = 2;
+        // Room for one reading per controller, but every pad sends an accelerometer and a gyroscope reading
+        configuration.sensorBufferCapacity = 1;
+        ControllerManager sensorManager = new ControllerManager(configuration);
+        sensorManager.initSDLGamepad();
+        try {
+            SimulatedController pad0 = sensorBackend.connect("Pad 0", ControllerType.PS5, 2, true);
+            SimulatedController pad1 = sensorBackend.connect("Pad 1", ControllerType.PS5, 2, true);
+            sensorManager.pollAll(states);
+
+            pad0.setSensors(1000, 0, 9.81f, 0, 0, 0, 0);
+            sensorManager.pollAll(states);
+            assertEquals(0, sensorManager.getDroppedSensorSamples());
+            assertEquals(1, sensorManager.getControllerIndex(0).getSensorSampleBuffer().size());
+
+            pad0.setSensors(2000, 0, 9.81f, 0, 0, 0, 0);
+            pad1.setSensors(2000, 0, 9.81f, 0, 0, 0, 0);
+            sensorManager.pollAll(states);
+            assertEquals(2, sensorManager.getDroppedSensorSamples());
+        } finally {
+            sensorManager.quitSDLGamepad();
+        }
+    }
+
+    @Test
+    public void churnDoesNotGrowTheBackend() {
+        SimulatedController stayingPad = backend.connect("Staying Pad");
+        for(int i = 0; i < 1000; i++) {
+            SimulatedController pad = backend.connect("Pad " + i);
+            manager.pollAll(states);
+            assertTrue(states[1].isConnected);
+            backend.disconnect(pad);
+            manager.pollAll(states);
+            assertFalse(states[1].isConnected);
+        }
+        assertTrue(states[0].isConnected);
+        assertEquals(2, backend.getNumSlots());
+
+        stayingPad.setButton(ControllerButton.X, true);
+        manager.pollAll(states);
+        assertTrue(states[0].x);
+    }
+}
@@ -0,0 +1,142 @@
+package com.studiohartman.jamepad;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the controllers belong to the sampler thread while a ControllerSampler runs.
+ */
+public class ControllerSamplerTest {
+    private FailingBackend backend;
+    private ControllerManager manager;
+
+    @Before
+    public void setUp() {
+        backend = new FailingBackend();
+        Configuration configuration = new Configuration();
+        configuration.backend = backend;
+        manager = new ControllerManager(configuration);
+        manager.initSDLGamepad();
+    }
+
+    @After
+    public void tearDown() {
+        manager.quitSDLGamepad();
+    }
+
+    @Test
+    public void otherThreadsCantUseTheControllers() {
+        backend.connect("Pad 0");
+        manager.update();
+        ControllerIndex controller = manager.getControllerIndex(0);
+        manager.startSampler(1000);
+
+        try {
+            manager.doVibration(0, 1, 1, 100);
+            fail("Rumbling from another thread than the sampler");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        try {
+            controller.isConnected();
+            fail("Using a ControllerIndex from another thread than the sampler");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        manager.stopSampler();
+        assertTrue(controller.isConnected());
+    }
+
+    @Test
+    public void commandsRunOnTheSamplerThread() throws InterruptedException {
+        SimulatedController pad = backend.connect("Pad 0");
+        manager.update();
+        ControllerSampler sampler = manager.startSampler(1000);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean rumbled = new AtomicBoolean();
+        assertTrue(sampler.execute(new Runnable() {
+            @Override
+            public void run() {
+                rumbled.set(manager.doVibration(0, 1, 0.5f, 100));
+                done.countDown();
+            }
+        }));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(rumbled.get());
+
+        manager.stopSampler();
+        assertEquals(1, pad.getLeftRumble(), 0.01f);
+        assertEquals(0.5f, pad.getRightRumble(), 0.01f);
+        assertFalse(sampler.execute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+    }
+
+    @Test
+    public void failingCommandsDontStopTheSampler() throws InterruptedException {
+        ControllerSampler sampler = manager.startSampler(1000);
+        sampler.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalArgumentException("Broken command");
+            }
+        });
+
+        final CountDownLatch done = new CountDownLatch(1);
+        sampler.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(sampler.isRunning());
+    }
+
+    @Test
+    public void samplerStopsWhenPollingFails() throws InterruptedException {
+        backend.connect("Pad 0");
+        manager.update();
+        ControllerSampler sampler = manager.startSampler(1000);
+        backend.failure.set(new IllegalArgumentException("Broken backend"));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(sampler.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertFalse(sampler.isRunning());
+
+        // The controllers are given back, and a new sampler can be started
+        backend.failure.set(null);
+        assertTrue(manager.getControllerIndex(0).isConnected());
+        assertTrue(manager.startSampler(1000).isRunning());
+    }
+
+    private static final class FailingBackend extends InMemoryControllerBackend {
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        @Override
+        int pumpEvents(ByteBuffer eventRing, long eventTail, int eventCapacity, int[] hotplugEvents, int maxHotplugEvents,
+                       ByteBuffer sensorStaging, int sensorStagingCapacity) {
+            RuntimeException e = failure.get();
+            if(e != null) {
+                throw e;
+            }
+            return super.pumpEvents(eventRing, eventTail, eventCapacity, hotplugEvents, maxHotplugEvents,
+                    sensorStaging, sensorStagingCapacity);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.studiohartman.jamepad;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a ControllerState, including its touchpad and sensor state, can be serialized.
+ */
+public class ControllerStateTest {
+    @Test
+    public void survivesSerialization() throws IOException, ClassNotFoundException {
+        MutableControllerState mutable = new MutableControllerState();
+        mutable.isConnected = true;
+        mutable.controllerType = "PS5 Controller";
+        mutable.setAxes(0.5f, -0.25f, 0, 0, 1, 0);
+        mutable.setButtons(ControllerButton.A.mask() | ControllerButton.DPAD_UP.mask(), ControllerButton.A.mask(), 0);
+        mutable.hasTouchpadData = true;
+        mutable.touchStateFinger0.update(true, 0.25f, 0.75f, 1);
+        mutable.hasSensorData = true;
+        mutable.sensorState.update(0, 9.81f, 0, 0.5f, 0, 0, 1234);
+        mutable.aimDeltaYaw = 2.5f;
+        ControllerState state = ControllerState.getInstanceFromState(mutable);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        }
+        ControllerState copy;
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (ControllerState) in.readObject();
+        }
+
+        assertTrue(copy.isConnected);
+        assertEquals("PS5 Controller", copy.controllerType);
+        assertEquals(0.5f, copy.leftStickX, 0);
+        assertEquals(1, copy.leftTrigger, 0);
+        assertTrue(copy.a);
+        assertTrue(copy.isPressed(ControllerButton.DPAD_UP));
+        assertTrue(copy.isJustPressed(ControllerButton.A));
+        assertFalse(copy.isJustPressed(ControllerButton.DPAD_UP));
+        assertTrue(copy.touchStateFinger0.getState());
+        assertEquals(0.75f, copy.touchStateFinger0.getY(), 0);
+        assertEquals(9.81f, copy.sensorState.getAccelY(), 0);
+        assertEquals(1234, copy.sensorState.getTimestamp());
+        assertEquals(2.5f, copy.aimDeltaYaw, 0);
+    }
+}
@@ -0,0 +1,31 @@
+package com.studiohartman.jamepad;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks what a GyroCalibration leaves in the GyroCalibrationStore.
+ */
+public class GyroCalibrationTest {
+    @Test
+    public void disabledCalibrationKeepsTheStoredBias() {
+        GyroCalibrationStore store = new GyroCalibrationStore(null);
+        GyroCalibration calibration = new GyroCalibration();
+        calibration.setBias(0.01f, -0.02f, 0.03f);
+        calibration.setEnabled(false);
+        assertEquals(0, calibration.getBiasX(), 0);
+
+        calibration.saveTo(store, "serial.1234");
+        assertArrayEquals(new float[] {0.01f, -0.02f, 0.03f}, store.get("serial.1234"), 0);
+    }
+
+    @Test
+    public void nothingIsStoredWithoutABias() {
+        GyroCalibrationStore store = new GyroCalibrationStore(null);
+        store.put("serial.1234", 0.01f, 0.01f, 0.01f);
+
+        new GyroCalibration().saveTo(store, "serial.1234");
+        assertArrayEquals(new float[] {0.01f, 0.01f, 0.01f}, store.get("serial.1234"), 0);
+    }
+}
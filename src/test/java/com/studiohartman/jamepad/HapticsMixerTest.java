@@ -0,0 +1,63 @@
+package com.studiohartman.jamepad;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ticks the HapticsMixer of a controller of an InMemoryControllerBackend that can't take haptic
+ * feedback, to check that voices don't lose samples the controller never got.
+ */
+public class HapticsMixerTest {
+    private InMemoryControllerBackend backend;
+    private ControllerManager manager;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryControllerBackend();
+        Configuration configuration = new Configuration();
+        configuration.backend = backend;
+        manager = new ControllerManager(configuration);
+        manager.initSDLGamepad();
+    }
+
+    @After
+    public void tearDown() {
+        manager.quitSDLGamepad();
+    }
+
+    @Test
+    public void voicesWaitWhileNothingCanBeSent() throws ControllerUnpluggedException {
+        backend.connect("Pad 0");
+        manager.update();
+        HapticsMixer mixer = manager.getControllerIndex(0).getHapticsMixer();
+
+        HapticsVoice voice = mixer.play(new short[60], 1, false, 0);
+        // Without haptics the mix isn't sent, so the buffer isn't played to its end
+        assertFalse(mixer.tick(30));
+        assertFalse(mixer.tick(30));
+        assertTrue(voice.isPlaying());
+        assertEquals(1, mixer.getNumVoices());
+    }
+
+    @Test
+    public void unpluggingKeepsTheQueuedSamples() {
+        SimulatedController pad = backend.connect("Pad 0");
+        manager.update();
+        HapticsMixer mixer = manager.getControllerIndex(0).getHapticsMixer();
+        HapticsVoice stream = mixer.openStream(120, 1, 0);
+        assertEquals(100, stream.write(new short[100], 0, 100));
+
+        backend.disconnect(pad);
+        try {
+            mixer.tick(30);
+            fail("The controller is unplugged");
+        } catch (ControllerUnpluggedException e) {
+            // Expected
+        }
+        assertEquals(100, stream.getQueuedSamples());
+        assertTrue(stream.isPlaying());
+    }
+}
@@ -0,0 +1,197 @@
+package com.studiohartman.jamepad;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records frames with an InputRecorder and checks that an InputReplayer plays them back unchanged.
+ */
+public class InputRecorderTest {
+    private static final int NUM_CONTROLLERS = 2;
+    private static final int NUM_FRAMES = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysWhatWasRecorded() throws IOException {
+        File file = record(NUM_FRAMES);
+        MutableControllerState[] states = newStates();
+        MutableControllerState[] expected = newStates();
+
+        try(InputReplayer replayer = new InputReplayer(file.getPath())) {
+            assertEquals(NUM_CONTROLLERS, replayer.getNumControllers());
+            for(int frame = 0; frame < NUM_FRAMES; frame++) {
+                int numConnected = replayer.pollAll(states);
+                assertTrue("Frame " + frame + " is missing", numConnected >= 0);
+                int expectedConnected = 0;
+                for(int i = 0; i < NUM_CONTROLLERS; i++) {
+                    fill(expected[i], i, frame);
+                    assertSameState("Controller " + i + " in frame " + frame, expected[i], states[i]);
+                    if(expected[i].isConnected) {
+                        expectedConnected++;
+                    }
+                }
+                assertEquals(expectedConnected, numConnected);
+            }
+            assertEquals(-1, replayer.pollAll(states));
+            assertFalse(replayer.isCorrupted());
+
+            // Rewinding plays the same frames again
+            replayer.rewind();
+            assertTrue(replayer.pollAll(states) >= 0);
+            fill(expected[0], 0, 0);
+            assertSameState("Controller 0 after rewinding", expected[0], states[0]);
+        }
+    }
+
+    @Test
+    public void skipsTheTruncatedLastFrame() throws IOException {
+        File file = record(NUM_FRAMES);
+        try(RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+            truncated.setLength(truncated.length() - 1);
+        }
+
+        MutableControllerState[] states = newStates();
+        MutableControllerState expected = new MutableControllerState();
+        try(InputReplayer replayer = new InputReplayer(file.getPath())) {
+            int numFrames = 0;
+            while(replayer.pollAll(states) >= 0) {
+                numFrames++;
+            }
+            assertEquals(NUM_FRAMES - 1, numFrames);
+            assertFalse(replayer.isCorrupted());
+            fill(expected, 1, NUM_FRAMES - 2);
+            assertSameState("The last complete frame", expected, states[1]);
+        }
+    }
+
+    @Test
+    public void stopsAtAnInvalidControllerIndex() throws IOException {
+        File file = folder.newFile("corrupted.jprc");
+        try(FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] {
+                    // The header of a recording with one controller
+                    0x4A, 0x50, 0x52, 0x43, InputRecorder.VERSION, 1,
+                    // A frame of 4 bytes: frame + 1, timestamp + 0, the controller at index 4
+                    4, 2, 0, 5, 0
+            });
+        }
+
+        try(InputReplayer replayer = new InputReplayer(file.getPath())) {
+            assertEquals(-1, replayer.pollAll(newStates()));
+            assertTrue(replayer.isCorrupted());
+            assertFalse(replayer.nextFrame());
+        }
+    }
+
+    private File record(int numFrames) throws IOException {
+        File file = folder.newFile("recording.jprc");
+        MutableControllerState[] states = newStates();
+        try(InputRecorder recorder = new InputRecorder(file.getPath(), NUM_CONTROLLERS)) {
+            for(int frame = 0; frame < numFrames; frame++) {
+                for(int i = 0; i < NUM_CONTROLLERS; i++) {
+                    fill(states[i], i, frame);
+                }
+                recorder.record(states);
+            }
+            assertFalse(recorder.hasFailed());
+        }
+        return file;
+    }
+
+    private static MutableControllerState[] newStates() {
+        MutableControllerState[] states = new MutableControllerState[NUM_CONTROLLERS];
+        for(int i = 0; i < states.length; i++) {
+            states[i] = new MutableControllerState();
+        }
+        return states;
+    }
+
+    /**
+     * Fill a state with values that only depend on the controller index and the frame, so the
+     * expected state of any frame can be computed again when replaying.
+     */
+    private static void fill(MutableControllerState state, int index, int frame) {
+        // The second controller is unplugged now and then, and held still for a while
+        if(index == 1 && frame % 50 >= 40) {
+            state.setDisconnected();
+            state.setFrame(frame, frame * 16_667L);
+            return;
+        }
+        int step = index == 1 && frame % 50 >= 30 ? frame - frame % 50 + 30 : frame;
+
+        state.isConnected = true;
+        state.controllerType = step % 70 < 35 ? "PS5 Controller " + index : "Xbox Controller " + index;
+        state.setAxes((float) Math.sin(step * 0.1 + index), (float) Math.cos(step * 0.1 + index),
+                -0.5f, step % 3 == 0 ? 0.25f : 0, step / (float) NUM_FRAMES, 1 - step / (float) NUM_FRAMES);
+        int previousMask = buttonMask(index, frame == 0 ? -1 : frame - 1);
+        int mask = buttonMask(index, frame);
+        state.setButtons(mask, mask & ~previousMask, previousMask & ~mask);
+
+        state.hasTouchpadData = index == 0;
+        state.touchStateFinger0.update(step % 4 < 2, step * 0.005f, 0.5f, 1);
+        state.touchStateFinger1.update(false, 0, 0, 0);
+        state.hasSensorData = index == 0;
+        state.sensorState.update(0, 9.81f, step * 0.01f, -step * 0.02f, 0.1f, 0, step * 4_000L + index);
+        state.aimDeltaYaw = step % 5 * 0.1f;
+        state.aimDeltaPitch = -step % 7 * 0.1f;
+        state.setFrame(frame, frame * 16_667L);
+    }
+
+    private static int buttonMask(int index, int frame) {
+        if(frame < 0 || index == 1 && frame % 50 >= 40) {
+            return 0;
+        }
+        if(index == 1 && frame % 50 >= 30) {
+            frame = frame - frame % 50 + 30;
+        }
+        return (frame / 3 % 2 == 0 ? ControllerButton.A.mask() : 0)
+                | (frame / 7 % 2 == 0 ? ControllerButton.DPAD_LEFT.mask() : 0)
+                | (frame % 11 == index ? ControllerButton.BUTTON_TOUCHPAD.mask() : 0);
+    }
+
+    private static void assertSameState(String message, MutableControllerState expected, MutableControllerState actual) {
+        assertEquals(message, expected.isConnected, actual.isConnected);
+        assertEquals(message, expected.controllerType, actual.controllerType);
+        assertEquals(message, expected.frame, actual.frame);
+        assertEquals(message, expected.timestamp, actual.timestamp);
+        assertEquals(message, expected.leftStickX, actual.leftStickX, 0);
+        assertEquals(message, expected.leftStickY, actual.leftStickY, 0);
+        assertEquals(message, expected.rightStickX, actual.rightStickX, 0);
+        assertEquals(message, expected.rightStickY, actual.rightStickY, 0);
+        assertEquals(message, expected.leftTrigger, actual.leftTrigger, 0);
+        assertEquals(message, expected.rightTrigger, actual.rightTrigger, 0);
+        assertEquals(message, expected.buttonMask, actual.buttonMask);
+        assertEquals(message, expected.justPressedMask, actual.justPressedMask);
+        assertEquals(message, expected.justReleasedMask, actual.justReleasedMask);
+        assertEquals(message, expected.hasTouchpadData, actual.hasTouchpadData);
+        assertSameTouch(message, expected.touchStateFinger0, actual.touchStateFinger0);
+        assertSameTouch(message, expected.touchStateFinger1, actual.touchStateFinger1);
+        assertEquals(message, expected.hasSensorData, actual.hasSensorData);
+        assertEquals(message, expected.sensorState.getAccelX(), actual.sensorState.getAccelX(), 0);
+        assertEquals(message, expected.sensorState.getAccelY(), actual.sensorState.getAccelY(), 0);
+        assertEquals(message, expected.sensorState.getAccelZ(), actual.sensorState.getAccelZ(), 0);
+        assertEquals(message, expected.sensorState.getGyroX(), actual.sensorState.getGyroX(), 0);
+        assertEquals(message, expected.sensorState.getGyroY(), actual.sensorState.getGyroY(), 0);
+        assertEquals(message, expected.sensorState.getGyroZ(), actual.sensorState.getGyroZ(), 0);
+        assertEquals(message, expected.sensorState.getTimestamp(), actual.sensorState.getTimestamp());
+        assertEquals(message, expected.aimDeltaYaw, actual.aimDeltaYaw, 0);
+        assertEquals(message, expected.aimDeltaPitch, actual.aimDeltaPitch, 0);
+    }
+
+    private static void assertSameTouch(String message, TouchState expected, TouchState actual) {
+        assertEquals(message, expected.getState(), actual.getState());
+        assertEquals(message, expected.getX(), actual.getX(), 0);
+        assertEquals(message, expected.getY(), actual.getY(), 0);
+        assertEquals(message, expected.getPressure(), actual.getPressure(), 0);
+    }
+}